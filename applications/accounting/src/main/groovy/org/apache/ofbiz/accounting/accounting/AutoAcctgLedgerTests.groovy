@@ -18,7 +18,10 @@
  *******************************************************************************/
 package org.apache.ofbiz.accounting.accounting
 
+import java.sql.Timestamp
+
 import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.base.util.UtilProperties
 import org.apache.ofbiz.entity.GenericValue
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
@@ -55,4 +58,38 @@ class AutoAcctgLedgerTests extends OFBizTestCase {
         assert acctgTransEntry != null
     }
 
+    void testGetGlAccountBalancesForTimePeriod() {
+        // post a transaction in the FY2009 period of Company, and rebuild the daily totals from the posted entries
+        Map serviceResult = dispatcher.runSync('quickCreateAcctgTransAndEntries', [acctgTransTypeId: 'INTERNAL_ACCTG_TRANS',
+                glFiscalTypeId: 'ACTUAL', transactionDate: Timestamp.valueOf('2009-06-15 10:00:00'), organizationPartyId: 'Company',
+                debitGlAccountId: '111100', creditGlAccountId: '400000', amount: 125.50, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        serviceResult = dispatcher.runSync('postAcctgTrans', [acctgTransId: serviceResult.acctgTransId, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        serviceResult = dispatcher.runSync('rebuildGlAccountDailyTotals', [organizationPartyId: 'Company', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        try {
+            ['N', 'Y'].each { String readDailyTotals ->
+                UtilProperties.setPropertyValueInMemory('accounting', 'accounting.gl.daily.totals.read', readDailyTotals)
+                serviceResult = dispatcher.runSync('getGlAccountBalancesForTimePeriod',
+                        [organizationPartyIds: ['Company'], customTimePeriodId: '4900', userLogin: userLogin])
+                assert ServiceUtil.isSuccess(serviceResult)
+                List<Map> glAccountBalances = serviceResult.glAccountBalances
+                assert glAccountBalances
+                assert glAccountBalances*.glAccountId.containsAll(['111100', '400000'])
+                glAccountBalances.each { Map glAccountBalance ->
+                    Map accountResult = dispatcher.runSync('computeGlAccountBalanceForTimePeriod', [organizationPartyId: 'Company',
+                            customTimePeriodId: '4900', glAccountId: glAccountBalance.glAccountId, userLogin: userLogin])
+                    assert glAccountBalance.openingBalance == accountResult.openingBalance
+                    assert glAccountBalance.postedDebits == accountResult.postedDebits
+                    assert glAccountBalance.postedCredits == accountResult.postedCredits
+                    assert glAccountBalance.endingBalance == accountResult.endingBalance
+                }
+            }
+        } finally {
+            UtilProperties.setPropertyValueInMemory('accounting', 'accounting.gl.daily.totals.read', 'N')
+        }
+    }
+
 }
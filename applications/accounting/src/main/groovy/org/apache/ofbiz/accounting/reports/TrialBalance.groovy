@@ -39,15 +39,19 @@ if (parameters.customTimePeriodId) {
             EntityOperator.OR, EntityCondition.makeCondition('thruDate', EntityOperator.EQUALS, null)))
     List organizationGlAccounts = from('GlAccountOrganizationAndClass').where(exprList).orderBy('accountCode').queryList()
 
+    // the balances of all the accounts at once, by organization and account
+    Map glAccountBalances = [:]
+    runService('getGlAccountBalancesForTimePeriod', [organizationPartyIds: partyIds,
+            customTimePeriodId: customTimePeriod.customTimePeriodId]).glAccountBalances.each { glAccountBalance ->
+        glAccountBalances[glAccountBalance.organizationPartyId + '|' + glAccountBalance.glAccountId] = glAccountBalance
+    }
+
     accountBalances = []
     postedDebitsTotal = 0
     postedCreditsTotal = 0
     organizationGlAccounts.each { organizationGlAccount ->
-        accountBalance = [:]
-        accountBalance = runService('computeGlAccountBalanceForTimePeriod',
-                [organizationPartyId: organizationGlAccount.organizationPartyId,
-                 customTimePeriodId: customTimePeriod.customTimePeriodId, glAccountId: organizationGlAccount.glAccountId])
-        if (accountBalance.postedDebits != 0 || accountBalance.postedCredits != 0) {
+        accountBalance = glAccountBalances[organizationGlAccount.organizationPartyId + '|' + organizationGlAccount.glAccountId]
+        if (accountBalance && (accountBalance.postedDebits != 0 || accountBalance.postedCredits != 0)) {
             accountBalance.glAccountId = organizationGlAccount.glAccountId
             accountBalance.accountCode = organizationGlAccount.accountCode
             accountBalance.accountName = organizationGlAccount.accountName
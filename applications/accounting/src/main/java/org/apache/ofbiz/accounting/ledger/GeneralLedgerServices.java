@@ -19,13 +19,33 @@
 package org.apache.ofbiz.accounting.ledger;
 
 import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import javax.transaction.Transaction;
+
+import org.apache.ofbiz.accounting.util.UtilAccounting;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.model.DynamicViewEntity;
+import org.apache.ofbiz.entity.model.ModelKeyMap;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
@@ -77,4 +97,271 @@ public class GeneralLedgerServices {
         }
         return totalAmountPercentage;
     }
+
+    /**
+     * Adds the entries of a posted AcctgTrans to the GlAccountDailyTotal of their organization, GL account, fiscal type and day.
+     * Meant to be run as a service ECA of postAcctgTrans, in its transaction.
+     */
+    public static Map<String, Object> updateGlAccountDailyTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String acctgTransId = (String) context.get("acctgTransId");
+        try {
+            GenericValue acctgTrans = EntityQuery.use(delegator).from("AcctgTrans").where("acctgTransId", acctgTransId).queryOne();
+            // not posted when it was assigned to the error journal
+            if (acctgTrans == null || !"Y".equals(acctgTrans.getString("isPosted"))) {
+                return ServiceUtil.returnSuccess();
+            }
+            Map<String, GenericValue> dailyTotals = new TreeMap<>();
+            List<GenericValue> acctgTransEntries = EntityQuery.use(delegator).from("AcctgTransEntry")
+                    .where("acctgTransId", acctgTransId).queryList();
+            for (GenericValue acctgTransEntry : acctgTransEntries) {
+                addToDailyTotals(delegator, dailyTotals, acctgTransEntry, acctgTrans.getString("glFiscalTypeId"),
+                        acctgTrans.getTimestamp("transactionDate"));
+            }
+            // the sorted keys lock the rows always in the same order
+            for (GenericValue dailyTotal : dailyTotals.values()) {
+                addDailyTotal(delegator, dailyTotal, acctgTransId);
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Rebuilds the GlAccountDailyTotal records from the posted AcctgTransEntry records, for all the organizations or for one,
+     * and for all the days or for the days from the one of fromDate.
+     */
+    public static Map<String, Object> rebuildGlAccountDailyTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String organizationPartyId = (String) context.get("organizationPartyId");
+        Timestamp fromDate = (Timestamp) context.get("fromDate");
+
+        List<EntityCondition> dailyTotalConds = new LinkedList<>();
+        List<EntityCondition> entryConds = new LinkedList<>();
+        entryConds.add(EntityCondition.makeCondition("isPosted", "Y"));
+        if (UtilValidate.isNotEmpty(organizationPartyId)) {
+            dailyTotalConds.add(EntityCondition.makeCondition("organizationPartyId", organizationPartyId));
+            entryConds.add(EntityCondition.makeCondition("organizationPartyId", organizationPartyId));
+        }
+        if (fromDate != null) {
+            Timestamp dayStart = UtilDateTime.getDayStart(fromDate);
+            dailyTotalConds.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, new Date(dayStart.getTime())));
+            entryConds.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, dayStart));
+        }
+
+        DynamicViewEntity entryView = new DynamicViewEntity();
+        entryView.addMemberEntity("ATE", "AcctgTransEntry");
+        entryView.addMemberEntity("ACT", "AcctgTrans");
+        entryView.addViewLink("ATE", "ACT", Boolean.FALSE, ModelKeyMap.makeKeyMapList("acctgTransId"));
+        entryView.addAlias("ATE", "organizationPartyId");
+        entryView.addAlias("ATE", "glAccountId");
+        entryView.addAlias("ATE", "debitCreditFlag");
+        entryView.addAlias("ATE", "amount");
+        entryView.addAlias("ACT", "glFiscalTypeId");
+        entryView.addAlias("ACT", "isPosted");
+        entryView.addAlias("ACT", "transactionDate");
+
+        Map<String, GenericValue> dailyTotals = new TreeMap<>();
+        try {
+            int removed = delegator.removeByCondition("GlAccountDailyTotal", EntityCondition.makeCondition(dailyTotalConds));
+            try (EntityListIterator entries = EntityQuery.use(delegator).from(entryView).where(entryConds).queryIterator()) {
+                GenericValue entry;
+                while ((entry = entries.next()) != null) {
+                    addToDailyTotals(delegator, dailyTotals, entry, entry.getString("glFiscalTypeId"), entry.getTimestamp("transactionDate"));
+                }
+            }
+            delegator.storeAll(new LinkedList<>(dailyTotals.values()));
+            Debug.logInfo("Rebuilt GlAccountDailyTotal: removed " + removed + " and created " + dailyTotals.size() + " records", MODULE);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Gets the opening balance, posted debits, posted credits and ending balance in a CustomTimePeriod of all the GL accounts of
+     * the organizations at once, as computeGlAccountBalanceForTimePeriod does for one GL account. The debits and credits are summed
+     * from the GlAccountDailyTotal records when accounting.gl.daily.totals.read is Y, else from the AcctgTransEntry records.
+     */
+    public static Map<String, Object> getGlAccountBalancesForTimePeriod(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        List<String> organizationPartyIds = UtilGenerics.cast(context.get("organizationPartyIds"));
+        String customTimePeriodId = (String) context.get("customTimePeriodId");
+        String glFiscalTypeId = (String) context.get("glFiscalTypeId");
+        boolean useDailyTotals = EntityUtilProperties.propertyValueEqualsIgnoreCase("accounting", "accounting.gl.daily.totals.read", "Y", delegator);
+
+        List<Map<String, Object>> glAccountBalances = new LinkedList<>();
+        try {
+            GenericValue customTimePeriod = EntityQuery.use(delegator).from("CustomTimePeriod")
+                    .where("customTimePeriodId", customTimePeriodId).cache().queryOne();
+            if (customTimePeriod == null) {
+                return ServiceUtil.returnError("CustomTimePeriod [" + customTimePeriodId + "] not found");
+            }
+            Date fromDate = customTimePeriod.getDate("fromDate");
+            Date thruDate = customTimePeriod.getDate("thruDate");
+
+            Map<String, Map<String, Object>> balances = new TreeMap<>();
+            if (useDailyTotals) {
+                addDailyTotalSums(delegator, balances, organizationPartyIds, glFiscalTypeId, null, fromDate, "openingDebits", "openingCredits");
+                addDailyTotalSums(delegator, balances, organizationPartyIds, glFiscalTypeId, fromDate, thruDate, "postedDebits", "postedCredits");
+            } else {
+                // AcctgTransEntrySums does not group by organization, so one organization at a time
+                for (String organizationPartyId : organizationPartyIds) {
+                    addEntrySums(delegator, balances, organizationPartyId, glFiscalTypeId, null, new Timestamp(fromDate.getTime()),
+                            "openingDebits", "openingCredits");
+                    addEntrySums(delegator, balances, organizationPartyId, glFiscalTypeId, new Timestamp(fromDate.getTime()),
+                            new Timestamp(thruDate.getTime()), "postedDebits", "postedCredits");
+                }
+            }
+
+            for (Map<String, Object> balance : balances.values()) {
+                GenericValue glAccount = EntityQuery.use(delegator).from("GlAccount")
+                        .where("glAccountId", balance.get("glAccountId")).cache().queryOne();
+                BigDecimal postedDebits = (BigDecimal) balance.get("postedDebits");
+                BigDecimal postedCredits = (BigDecimal) balance.get("postedCredits");
+                BigDecimal openingBalance = ((BigDecimal) balance.remove("openingDebits")).subtract((BigDecimal) balance.remove("openingCredits"));
+                BigDecimal endingBalance = openingBalance.add(postedDebits).subtract(postedCredits);
+                if (!UtilAccounting.isDebitAccount(glAccount)) {
+                    openingBalance = openingBalance.negate();
+                    endingBalance = endingBalance.negate();
+                }
+                balance.put("openingBalance", openingBalance);
+                balance.put("endingBalance", endingBalance);
+                glAccountBalances.add(balance);
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("glAccountBalances", glAccountBalances);
+        return result;
+    }
+
+    private static void addToDailyTotals(Delegator delegator, Map<String, GenericValue> dailyTotals, GenericValue acctgTransEntry,
+            String glFiscalTypeId, Timestamp transactionDate) {
+        String organizationPartyId = acctgTransEntry.getString("organizationPartyId");
+        String glAccountId = acctgTransEntry.getString("glAccountId");
+        String debitCreditFlag = acctgTransEntry.getString("debitCreditFlag");
+        BigDecimal amount = acctgTransEntry.getBigDecimal("amount");
+        if (organizationPartyId == null || glAccountId == null || glFiscalTypeId == null || transactionDate == null || amount == null
+                || !("D".equals(debitCreditFlag) || "C".equals(debitCreditFlag))) {
+            return;
+        }
+        Date day = new Date(UtilDateTime.getDayStart(transactionDate).getTime());
+        String key = organizationPartyId + "|" + glAccountId + "|" + glFiscalTypeId + "|" + day;
+        GenericValue dailyTotal = dailyTotals.get(key);
+        if (dailyTotal == null) {
+            dailyTotal = delegator.makeValue("GlAccountDailyTotal", UtilMisc.toMap("organizationPartyId", organizationPartyId,
+                    "glAccountId", glAccountId, "glFiscalTypeId", glFiscalTypeId, "transactionDate", day,
+                    "postedDebits", BigDecimal.ZERO, "postedCredits", BigDecimal.ZERO));
+            dailyTotals.put(key, dailyTotal);
+        }
+        String totalField = "D".equals(debitCreditFlag) ? "postedDebits" : "postedCredits";
+        dailyTotal.set(totalField, dailyTotal.getBigDecimal(totalField).add(amount));
+    }
+
+    private static void addDailyTotal(Delegator delegator, GenericValue postedTotals, String acctgTransId) throws GenericEntityException {
+        GenericPK dailyTotalPK = postedTotals.getPrimaryKey();
+        if (EntityQuery.use(delegator).from("GlAccountDailyTotal").where(dailyTotalPK).queryOne() == null) {
+            createEmptyDailyTotal(delegator, postedTotals);
+        }
+        // updating the row first locks it, so the postings of concurrent transactions on the same day are added one after another
+        GenericValue lockValue = delegator.makeValue("GlAccountDailyTotal", dailyTotalPK);
+        lockValue.set("lastAcctgTransId", acctgTransId);
+        lockValue.store();
+        GenericValue dailyTotal = EntityQuery.use(delegator).from("GlAccountDailyTotal").where(dailyTotalPK).queryOne();
+        if (dailyTotal == null) {
+            throw new GenericEntityException("GlAccountDailyTotal " + dailyTotalPK + " not found after creating it");
+        }
+        dailyTotal.set("postedDebits", dailyTotal.getBigDecimal("postedDebits").add(postedTotals.getBigDecimal("postedDebits")));
+        dailyTotal.set("postedCredits", dailyTotal.getBigDecimal("postedCredits").add(postedTotals.getBigDecimal("postedCredits")));
+        dailyTotal.store();
+    }
+
+    /**
+     * Creates a GlAccountDailyTotal with zero totals in a transaction of its own: when a concurrent posting creates the same record,
+     * only this creation fails on the duplicate key and not the posting. Any other failure is thrown.
+     */
+    private static void createEmptyDailyTotal(Delegator delegator, GenericValue postedTotals) throws GenericEntityException {
+        GenericValue dailyTotal = delegator.makeValue("GlAccountDailyTotal", postedTotals.getPrimaryKey());
+        dailyTotal.set("postedDebits", BigDecimal.ZERO);
+        dailyTotal.set("postedCredits", BigDecimal.ZERO);
+        Transaction parentTransaction = TransactionUtil.suspend();
+        try {
+            boolean beganTransaction = TransactionUtil.begin();
+            try {
+                dailyTotal.create();
+                TransactionUtil.commit(beganTransaction);
+            } catch (GenericEntityException e) {
+                TransactionUtil.rollback(beganTransaction, "Could not create GlAccountDailyTotal", e);
+                // the duplicate key of a concurrent creation, whatever the database reports, leaves the record there
+                if (EntityQuery.use(delegator).from("GlAccountDailyTotal").where(dailyTotal.getPrimaryKey()).queryOne() == null) {
+                    throw e;
+                }
+            }
+        } finally {
+            if (parentTransaction != null) {
+                TransactionUtil.resume(parentTransaction);
+            }
+        }
+    }
+
+    private static void addDailyTotalSums(Delegator delegator, Map<String, Map<String, Object>> balances, List<String> organizationPartyIds,
+            String glFiscalTypeId, Date fromDate, Date thruDate, String debitsKey, String creditsKey) throws GenericEntityException {
+        List<EntityCondition> conds = UtilMisc.toList(
+                EntityCondition.makeCondition("organizationPartyId", EntityOperator.IN, organizationPartyIds),
+                EntityCondition.makeCondition("glFiscalTypeId", glFiscalTypeId),
+                EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, thruDate));
+        if (fromDate != null) {
+            conds.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+        }
+        List<GenericValue> sums = EntityQuery.use(delegator).select("organizationPartyId", "glAccountId", "postedDebits", "postedCredits")
+                .from("GlAccountDailyTotalSums").where(conds).queryList();
+        for (GenericValue sum : sums) {
+            addToBalance(balances, sum.getString("organizationPartyId"), sum.getString("glAccountId"),
+                    debitsKey, sum.getBigDecimal("postedDebits"), creditsKey, sum.getBigDecimal("postedCredits"));
+        }
+    }
+
+    private static void addEntrySums(Delegator delegator, Map<String, Map<String, Object>> balances, String organizationPartyId,
+            String glFiscalTypeId, Timestamp fromDate, Timestamp thruDate, String debitsKey, String creditsKey) throws GenericEntityException {
+        List<EntityCondition> conds = UtilMisc.toList(
+                EntityCondition.makeCondition("organizationPartyId", organizationPartyId),
+                EntityCondition.makeCondition("isPosted", "Y"),
+                EntityCondition.makeCondition("glFiscalTypeId", glFiscalTypeId),
+                EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, thruDate));
+        if (fromDate != null) {
+            conds.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+        }
+        List<GenericValue> sums = EntityQuery.use(delegator).select("glAccountId", "debitCreditFlag", "amount")
+                .from("AcctgTransEntrySums").where(conds).queryList();
+        for (GenericValue sum : sums) {
+            if ("D".equals(sum.getString("debitCreditFlag"))) {
+                addToBalance(balances, organizationPartyId, sum.getString("glAccountId"), debitsKey, sum.getBigDecimal("amount"), creditsKey, null);
+            } else if ("C".equals(sum.getString("debitCreditFlag"))) {
+                addToBalance(balances, organizationPartyId, sum.getString("glAccountId"), debitsKey, null, creditsKey, sum.getBigDecimal("amount"));
+            }
+        }
+    }
+
+    private static void addToBalance(Map<String, Map<String, Object>> balances, String organizationPartyId, String glAccountId,
+            String debitsKey, BigDecimal debits, String creditsKey, BigDecimal credits) {
+        Map<String, Object> balance = balances.get(organizationPartyId + "|" + glAccountId);
+        if (balance == null) {
+            balance = UtilMisc.toMap("organizationPartyId", organizationPartyId, "glAccountId", glAccountId,
+                    "openingDebits", BigDecimal.ZERO, "openingCredits", BigDecimal.ZERO,
+                    "postedDebits", BigDecimal.ZERO, "postedCredits", BigDecimal.ZERO);
+            balances.put(organizationPartyId + "|" + glAccountId, balance);
+        }
+        if (debits != null) {
+            balance.put(debitsKey, ((BigDecimal) balance.get(debitsKey)).add(debits));
+        }
+        if (credits != null) {
+            balance.put(creditsKey, ((BigDecimal) balance.get(creditsKey)).add(credits));
+        }
+    }
 }
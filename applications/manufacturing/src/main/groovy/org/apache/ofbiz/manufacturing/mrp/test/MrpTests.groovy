@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.manufacturing.mrp.test
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.manufacturing.mrp.MrpPlan
+import org.apache.ofbiz.manufacturing.mrp.MrpServices
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class MrpTests extends OFBizTestCase {
+
+    MrpTests(String name) {
+        super(name)
+    }
+
+    void testQuantityOnHandStatusFilter() {
+        createProductUnderMinimumStock()
+        MrpPlan plan = new MrpPlan(delegator, dispatcher, userLogin, 'MRP_TEST', 'WebStoreWarehouse')
+        assert plan.getQuantityOnHand('MRP_TEST_QOH') == 7
+        assert plan.getQuantityOnHand('MRP_TEST_QOH') ==
+                MrpServices.findProductMrpQoh('MRP_TEST', 'MRP_TEST_QOH', 'WebStoreWarehouse', dispatcher, delegator)
+    }
+
+    void testInMemoryRunMatchesDefaultRun() {
+        createProductUnderMinimumStock()
+        Map serviceResult = dispatcher.runSync('executeMrp', [facilityId: 'WebStoreWarehouse', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        List<String> defaultRunEvents = mrpEvents()
+        List<String> defaultRunRequirements = proposedRequirements()
+
+        serviceResult = dispatcher.runSync('executeMrp', [facilityId: 'WebStoreWarehouse', inMemory: true, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        List<String> inMemoryRunEvents = mrpEvents()
+
+        assert defaultRunEvents
+        // the product is only under its minimum stock when the defective inventory is not counted
+        assert defaultRunEvents.any { it.startsWith('MRP_TEST_QOH|') }
+        assert inMemoryRunEvents == defaultRunEvents
+        assert proposedRequirements() == defaultRunRequirements
+    }
+
+    /**
+     * Creates a product with a minimum stock of 10 in WebStoreWarehouse, and 107 on hand of which only 7 are counted by the MRP:
+     * 5 without status and 2 returned, but not the 100 defective.
+     */
+    private void createProductUnderMinimumStock() {
+        if (from('Product').where('productId', 'MRP_TEST_QOH').queryOne()) {
+            return
+        }
+        delegator.create('Product', [productId: 'MRP_TEST_QOH', productTypeId: 'FINISHED_GOOD', internalName: 'MRP test product'])
+        delegator.create('ProductFacility', [productId: 'MRP_TEST_QOH', facilityId: 'WebStoreWarehouse', minimumStock: 10,
+                reorderQuantity: 1, daysToShip: 1])
+        [MRP_TEST_QOH_1: [null, 5], MRP_TEST_QOH_2: ['INV_NS_RETURNED', 2], MRP_TEST_QOH_3: ['INV_NS_DEFECTIVE', 100]]
+                .each { String inventoryItemId, List statusAndQuantity ->
+            delegator.create('InventoryItem', [inventoryItemId: inventoryItemId, productId: 'MRP_TEST_QOH', facilityId: 'WebStoreWarehouse',
+                    inventoryItemTypeId: 'NON_SERIAL_INV_ITEM', statusId: statusAndQuantity[0],
+                    quantityOnHandTotal: statusAndQuantity[1], availableToPromiseTotal: statusAndQuantity[1]])
+        }
+    }
+
+    /**
+     * The MrpEvent records of the last run, without their mrpId. The event dates and the requirement ids in the event names of
+     * the proposed orders depend on when the run was done, so they are left out.
+     */
+    private List<String> mrpEvents() {
+        return from('MrpEvent').queryList().collect { GenericValue mrpEvent ->
+            String eventName = mrpEvent.mrpEventTypeId.startsWith('PROP_') ? null : mrpEvent.eventName
+            [mrpEvent.productId, mrpEvent.mrpEventTypeId, mrpEvent.facilityId, mrpEvent.quantity, mrpEvent.isLate, eventName].join('|')
+        }.sort()
+    }
+
+    private List<String> proposedRequirements() {
+        return from('Requirement').where(facilityId: 'WebStoreWarehouse', statusId: 'REQ_PROPOSED').queryList()
+                .collect { GenericValue requirement ->
+            [requirement.requirementTypeId, requirement.productId, requirement.quantity].join('|')
+        }.sort()
+    }
+
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.manufacturing.mrp;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.manufacturing.bom.BOMNode;
+import org.apache.ofbiz.manufacturing.bom.BOMTree;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * The <code>MrpEvent</code> records of one MRP run, kept in memory and written in one batch by {@link #store()}.
+ * <p>Adding an event to an existing key adds the quantities like
+ * {@link InventoryEventPlannedServices#createOrUpdateMrpEvent(Map, BigDecimal, String, String, boolean, Delegator)}.
+ * The plan also caches, for the whole run, the data the netting reads once per product: the <code>Product</code>
+ * records with their bill of materials level, the <code>ProductFacility</code> records and quantity on hand of the
+ * facility, and the single level bill of materials and routing of the products.</p>
+ */
+public final class MrpPlan {
+
+    private static final String MODULE = MrpPlan.class.getName();
+    /** Maximum number of values in the IN conditions of the bulk queries */
+    static final int IN_CHUNK_SIZE = 500;
+
+    private static final Comparator<GenericValue> EVENT_ORDER = Comparator.<GenericValue, String>comparing(event -> event.getString("productId"))
+            .thenComparing(event -> event.getTimestamp("eventDate"))
+            .thenComparing(event -> event.getString("mrpEventTypeId"));
+
+    private final Delegator delegator;
+    private final LocalDispatcher dispatcher;
+    private final GenericValue userLogin;
+    private final String mrpId;
+    private final String facilityId;
+    private final Map<List<Object>, GenericValue> events = new LinkedHashMap<>();
+    private final Set<String> productsWithEvents = new HashSet<>();
+    private final Map<String, GenericValue> products = new HashMap<>();
+    private Map<String, GenericValue> productFacilities = null;
+    private Map<String, BigDecimal> quantitiesOnHand = null;
+    private final Map<String, ProductBom> boms = new HashMap<>();
+
+    public MrpPlan(Delegator delegator, LocalDispatcher dispatcher, GenericValue userLogin, String mrpId, String facilityId) {
+        this.delegator = delegator;
+        this.dispatcher = dispatcher;
+        this.userLogin = userLogin;
+        this.mrpId = mrpId;
+        this.facilityId = facilityId;
+    }
+
+    public String getMrpId() {
+        return mrpId;
+    }
+
+    /** Adds <code>quantity</code> to the event with this key, creating the event if needed. */
+    public void addEvent(String productId, Timestamp eventDate, String mrpEventTypeId, BigDecimal quantity, String eventFacilityId,
+            String eventName, boolean isLate) {
+        List<Object> key = UtilMisc.toList(productId, eventDate, mrpEventTypeId);
+        GenericValue mrpEvent = events.get(key);
+        if (mrpEvent == null) {
+            mrpEvent = delegator.makeValue("MrpEvent", UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", eventDate,
+                    "mrpEventTypeId", mrpEventTypeId));
+            mrpEvent.put("quantity", quantity.doubleValue());
+            mrpEvent.put("eventName", eventName);
+            mrpEvent.put("facilityId", eventFacilityId);
+            mrpEvent.put("isLate", (isLate ? "Y" : "N"));
+            events.put(key, mrpEvent);
+            productsWithEvents.add(productId);
+        } else {
+            BigDecimal qties = quantity.add(mrpEvent.getBigDecimal("quantity"));
+            mrpEvent.put("quantity", qties.doubleValue());
+            if (UtilValidate.isNotEmpty(eventName)) {
+                String existingEventName = mrpEvent.getString("eventName");
+                mrpEvent.put("eventName", (UtilValidate.isEmpty(existingEventName) ? eventName : existingEventName + ", " + eventName));
+            }
+            if (isLate) {
+                mrpEvent.put("isLate", "Y");
+            }
+        }
+    }
+
+    /** Records an <code>ERROR</code> event, replacing the message of an error with the same key, like {@link MrpServices#logMrpError}. */
+    public void addError(String productId, Timestamp eventDate, String errorMessage) {
+        if (UtilValidate.isEmpty(productId) || UtilValidate.isEmpty(errorMessage)) {
+            return;
+        }
+        List<Object> key = UtilMisc.toList(productId, eventDate, "ERROR");
+        GenericValue mrpEvent = events.get(key);
+        if (mrpEvent == null) {
+            mrpEvent = delegator.makeValue("MrpEvent", UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", eventDate,
+                    "mrpEventTypeId", "ERROR"));
+            events.put(key, mrpEvent);
+            productsWithEvents.add(productId);
+        }
+        mrpEvent.put("eventName", errorMessage);
+    }
+
+    /** Returns true if an event has been added for the product. */
+    public boolean hasEvents(String productId) {
+        return productsWithEvents.contains(productId);
+    }
+
+    /**
+     * Returns a copy of the events of the products at this bill of materials level, ordered by product and date
+     * like a query on <code>MrpEventView</code>. Products without a level are at level 0.
+     */
+    public List<GenericValue> getEvents(long billOfMaterialLevel) throws GenericEntityException {
+        loadProducts(productsWithEvents);
+        List<GenericValue> result = new ArrayList<>();
+        for (GenericValue mrpEvent : events.values()) {
+            GenericValue product = products.get(mrpEvent.getString("productId"));
+            if (product == null) {
+                // the view entity join drops the events of unknown products
+                continue;
+            }
+            Long level = product.getLong("billOfMaterialLevel");
+            if ((level == null ? 0 : level) == billOfMaterialLevel) {
+                result.add(mrpEvent);
+            }
+        }
+        result.sort(EVENT_ORDER);
+        return result;
+    }
+
+    /** Returns the <code>Product</code>, loading it if it is not among the products of the events. */
+    public GenericValue getProduct(String productId) throws GenericEntityException {
+        GenericValue product = products.get(productId);
+        if (product == null && !products.containsKey(productId)) {
+            loadProducts(UtilMisc.toList(productId));
+            product = products.get(productId);
+        }
+        return product;
+    }
+
+    private void loadProducts(Collection<String> productIds) throws GenericEntityException {
+        List<String> missing = new ArrayList<>();
+        for (String productId : productIds) {
+            if (!products.containsKey(productId)) {
+                missing.add(productId);
+            }
+        }
+        for (GenericValue product : findByFieldIn("Product", "productId", missing, null)) {
+            products.put(product.getString("productId"), product);
+        }
+        for (String productId : missing) {
+            products.putIfAbsent(productId, null);
+        }
+    }
+
+    /** Returns the <code>ProductFacility</code> of the product in the plan facility, or null. */
+    public GenericValue getProductFacility(String productId) throws GenericEntityException {
+        return getProductFacilities().get(productId);
+    }
+
+    /** Returns the <code>ProductFacility</code> records of the plan facility by product, loaded once. */
+    public Map<String, GenericValue> getProductFacilities() throws GenericEntityException {
+        if (productFacilities == null) {
+            productFacilities = new LinkedHashMap<>();
+            for (GenericValue productFacility : EntityQuery.use(delegator).from("ProductFacility").where("facilityId", facilityId).queryList()) {
+                productFacilities.put(productFacility.getString("productId"), productFacility);
+            }
+        }
+        return productFacilities;
+    }
+
+    /**
+     * Returns the quantity on hand of the product in the plan facility, summed like the
+     * <code>getInventoryAvailableByFacility</code> service but for all the products of the facility in one query.
+     */
+    public BigDecimal getQuantityOnHand(String productId) throws GenericEntityException {
+        if (quantitiesOnHand == null) {
+            quantitiesOnHand = new HashMap<>();
+            try (EntityListIterator inventoryItems = EntityQuery.use(delegator)
+                    .select("productId", "statusId", "inventoryItemTypeId", "quantityOnHandTotal")
+                    .from("InventoryItem").where("facilityId", facilityId).queryIterator()) {
+                GenericValue inventoryItem;
+                while ((inventoryItem = inventoryItems.next()) != null) {
+                    String statusId = inventoryItem.getString("statusId");
+                    BigDecimal quantityOnHand = inventoryItem.getBigDecimal("quantityOnHandTotal");
+                    if (quantityOnHand != null && (statusId == null || "INV_AVAILABLE".equals(statusId) || "INV_NS_RETURNED".equals(statusId)
+                            || "SERIALIZED_INV_ITEM".equals(inventoryItem.getString("inventoryItemTypeId")))) {
+                        quantitiesOnHand.merge(inventoryItem.getString("productId"), quantityOnHand, BigDecimal::add);
+                    }
+                }
+            }
+        }
+        return quantitiesOnHand.getOrDefault(productId, BigDecimal.ZERO);
+    }
+
+    /**
+     * Returns the single level bill of materials of the product for <code>quantity</code>, as returned by the
+     * <code>getManufacturingComponents</code> service with <code>excludeWIPs</code> false. The tree is read once
+     * per product and the quantities are computed again at each call, so the nodes of the previous call must not
+     * be used anymore.
+     */
+    public List<BOMNode> getComponents(String productId, BigDecimal quantity) throws GenericEntityException {
+        BOMTree tree = getBom(productId).tree;
+        List<BOMNode> components = new LinkedList<>();
+        tree.setRootQuantity(quantity);
+        tree.print(components, false);
+        if (!components.isEmpty()) {
+            components.remove(0);
+        }
+        return components;
+    }
+
+    /** Returns the routing <code>WorkEffort</code> of the product, as found by the <code>getManufacturingComponents</code> service. */
+    public GenericValue getRouting(String productId) throws GenericEntityException {
+        return getBom(productId).routing;
+    }
+
+    private ProductBom getBom(String productId) throws GenericEntityException {
+        ProductBom bom = boms.get(productId);
+        if (bom == null) {
+            BOMTree tree = new BOMTree(productId, "MANUF_COMPONENT", new Date(), BOMTree.EXPLOSION_SINGLE_LEVEL, delegator, dispatcher,
+                    userLogin);
+            tree.setRootAmount(BigDecimal.ZERO);
+            GenericValue routing = null;
+            try {
+                Map<String, Object> routingOutMap = dispatcher.runSync("getProductRouting", UtilMisc.toMap("productId", productId,
+                        "ignoreDefaultRouting", "Y", "userLogin", userLogin));
+                if (ServiceUtil.isSuccess(routingOutMap)) {
+                    routing = (GenericValue) routingOutMap.get("routing");
+                    if (routing == null && tree.getRoot() != null && tree.getRoot().getProduct() != null) {
+                        // try to find a routing linked to the virtual product
+                        routingOutMap = dispatcher.runSync("getProductRouting", UtilMisc.toMap("productId",
+                                tree.getRoot().getProduct().getString("productId"), "userLogin", userLogin));
+                        if (ServiceUtil.isSuccess(routingOutMap)) {
+                            routing = (GenericValue) routingOutMap.get("routing");
+                        }
+                    }
+                }
+            } catch (GenericServiceException e) {
+                Debug.logWarning(e.getMessage(), MODULE);
+            }
+            if (routing != null) {
+                routing = EntityQuery.use(delegator).from("WorkEffort").where("workEffortId", routing.getString("workEffortId")).queryOne();
+            }
+            bom = new ProductBom(tree, routing);
+            boms.put(productId, bom);
+        }
+        return bom;
+    }
+
+    /** Inserts all the events with batched statements. */
+    public void store() throws GenericEntityException {
+        if (!events.isEmpty()) {
+            delegator.createAllByBatchProcess(new ArrayList<>(events.values()));
+        }
+    }
+
+    /** Returns the values whose <code>fieldName</code> is in <code>values</code>, querying at most {@link #IN_CHUNK_SIZE} values at once. */
+    List<GenericValue> findByFieldIn(String entityName, String fieldName, Collection<String> values, EntityCondition condition)
+            throws GenericEntityException {
+        List<GenericValue> result = new ArrayList<>();
+        List<String> valueList = new ArrayList<>(values);
+        for (int i = 0; i < valueList.size(); i += IN_CHUNK_SIZE) {
+            EntityCondition inCondition = EntityCondition.makeCondition(fieldName, EntityOperator.IN,
+                    valueList.subList(i, Math.min(i + IN_CHUNK_SIZE, valueList.size())));
+            result.addAll(EntityQuery.use(delegator).from(entityName)
+                    .where(condition == null ? inCondition : EntityCondition.makeCondition(inCondition, condition)).queryList());
+        }
+        return result;
+    }
+
+    private static final class ProductBom {
+        private final BOMTree tree;
+        private final GenericValue routing;
+
+        private ProductBom(BOMTree tree, GenericValue routing) {
+            this.tree = tree;
+            this.routing = routing;
+        }
+    }
+}
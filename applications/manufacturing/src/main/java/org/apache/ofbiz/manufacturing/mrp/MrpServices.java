@@ -22,12 +22,16 @@ package org.apache.ofbiz.manufacturing.mrp;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
@@ -60,13 +64,33 @@ public class MrpServices {
     private static final String RESOURCE = "ManufacturingUiLabels";
 
     public static Map<String, Object> initMrpEvents(DispatchContext ctx, Map<String, ? extends Object> context) {
+        Locale locale = (Locale) context.get("locale");
+        MrpPlan plan = new MrpPlan(ctx.getDelegator(), ctx.getDispatcher(), (GenericValue) context.get("userLogin"),
+                (String) context.get("mrpId"), (String) context.get("facilityId"));
+        Map<String, Object> result = initMrpEvents(ctx, context, plan);
+        if (ServiceUtil.isError(result)) {
+            return result;
+        }
+        try {
+            plan.store();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Unable to store the MrpEvent records.", MODULE);
+            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCreateOrUpdateEvent", UtilMisc.toMap(
+                    "parameters", UtilMisc.toMap("mrpId", plan.getMrpId())), locale));
+        }
+        return result;
+    }
+
+    /**
+     * Removes the events and proposed requirements of the previous runs and adds the initial events of the run to the plan.
+     * All the orders, work efforts and inventory of the facility are read with a few bulk queries.
+     */
+    static Map<String, Object> initMrpEvents(DispatchContext ctx, Map<String, ? extends Object> context, MrpPlan plan) {
         Delegator delegator = ctx.getDelegator();
-        LocalDispatcher dispatcher = ctx.getDispatcher();
         Timestamp now = UtilDateTime.nowTimestamp();
         Locale locale = (Locale) context.get("locale");
         String facilityId = (String) context.get("facilityId");
         Integer defaultYearsOffset = (Integer) context.get("defaultYearsOffset");
-        String mrpId = (String) context.get("mrpId");
 
         //Erases the old table for the moment and initializes it with the new orders,
         //Does not modify the old one now.
@@ -131,7 +155,6 @@ public class MrpServices {
             }
         }
 
-        Map<String, Object> parameters = null;
         List<GenericValue> resultList = null;
         // ----------------------------------------
         // Loads all the approved sales order items and purchase order items
@@ -196,14 +219,8 @@ public class MrpServices {
                     }
                 }
             }
-            parameters = UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", requiredByDate, "mrpEventTypeId", "SALES_ORDER_SHIP");
-            try {
-                InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, eventQuantityTmp, null,
-                        genericResult.getString("orderId") + "-" + genericResult.getString("orderItemSeqId"), false, delegator);
-            } catch (GenericEntityException e) {
-                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventProblemInitializing", UtilMisc.toMap(
-                        "mrpEventTypeId", "SALES_ORDER_SHIP"), locale));
-            }
+            plan.addEvent(productId, requiredByDate, "SALES_ORDER_SHIP", eventQuantityTmp, null,
+                    genericResult.getString("orderId") + "-" + genericResult.getString("orderItemSeqId"), false);
         }
         // ----------------------------------------
         // Loads all the approved product requirements (po requirements)
@@ -228,21 +245,14 @@ public class MrpServices {
                 estimatedShipDate = now;
             }
 
-            parameters = UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", estimatedShipDate, "mrpEventTypeId", "PROD_REQ_RECP");
-            try {
-                InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, eventQuantityTmp, null, genericResult.getString("requirementId"),
-                        false, delegator);
-            } catch (GenericEntityException e) {
-                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventProblemInitializing", UtilMisc.toMap(
-                        "mrpEventTypeId", "PROD_REQ_RECP"), locale));
-            }
+            plan.addEvent(productId, estimatedShipDate, "PROD_REQ_RECP", eventQuantityTmp, null, genericResult.getString("requirementId"), false);
         }
 
         // ----------------------------------------
         // Loads all the approved purchase order items
         // ----------------------------------------
-        String orderId = null;
-        GenericValue orderDeliverySchedule = null;
+        Map<List<String>, GenericValue> orderDeliverySchedules = new HashMap<>();
+        Map<List<String>, List<GenericValue>> shipmentReceipts = new HashMap<>();
         try {
             List<GenericValue> facilityContactMechs = EntityQuery.use(delegator).from("FacilityContactMech")
                     .where("facilityId", facilityId)
@@ -257,63 +267,50 @@ public class MrpServices {
                             EntityCondition.makeCondition("contactMechId", EntityOperator.IN, facilityContactMechIds))
                     .orderBy("orderDate")
                     .queryList();
-
+            Set<String> orderIds = new HashSet<>(EntityUtil.getFieldListFromEntityList(resultList, "orderId", true));
+            for (GenericValue orderDeliverySchedule : plan.findByFieldIn("OrderDeliverySchedule", "orderId", orderIds, null)) {
+                orderDeliverySchedules.put(UtilMisc.toList(orderDeliverySchedule.getString("orderId"), orderDeliverySchedule.getString(
+                        "orderItemSeqId")), orderDeliverySchedule);
+            }
+            for (GenericValue shipmentReceipt : plan.findByFieldIn("ShipmentReceipt", "orderId", orderIds, null)) {
+                shipmentReceipts.computeIfAbsent(UtilMisc.toList(shipmentReceipt.getString("orderId"), shipmentReceipt.getString(
+                        "orderItemSeqId")), k -> new LinkedList<>()).add(shipmentReceipt);
+            }
         } catch (GenericEntityException e) {
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventFindError", locale));
         }
         for (GenericValue genericResult : resultList) {
-            try {
-                String newOrderId = genericResult.getString("orderId");
-                if (!newOrderId.equals(orderId)) {
-                    orderDeliverySchedule = null;
-                    orderId = newOrderId;
-                    orderDeliverySchedule = EntityQuery.use(delegator).from("OrderDeliverySchedule").where("orderId", orderId, "orderItemSeqId",
-                            "_NA_").queryOne();
-                }
-                String productId = genericResult.getString("productId");
-                BigDecimal shipGroupQuantity = genericResult.getBigDecimal("quantity");
-                BigDecimal cancelledQuantity = genericResult.getBigDecimal("cancelQuantity");
-                if (UtilValidate.isEmpty(shipGroupQuantity)) {
-                    shipGroupQuantity = BigDecimal.ZERO;
-                }
-                if (UtilValidate.isNotEmpty(cancelledQuantity)) {
-                    shipGroupQuantity = shipGroupQuantity.subtract(cancelledQuantity);
-                }
-
-                try {
-                    List<GenericValue> shipmentReceipts = EntityQuery.use(delegator).select("quantityAccepted", "quantityRejected").from(
-                            "ShipmentReceipt").where("orderId", genericResult.getString("orderId"), "orderItemSeqId", genericResult.getString(
-                                    "orderItemSeqId")).queryList();
-                    for (GenericValue shipmentReceipt : shipmentReceipts) {
-                        shipGroupQuantity = shipGroupQuantity.subtract(shipmentReceipt.getBigDecimal("quantityAccepted"));
-                        shipGroupQuantity = shipGroupQuantity.subtract(shipmentReceipt.getBigDecimal("quantityRejected"));
-                    }
-                } catch (GenericEntityException e) {
-                    Debug.logWarning(e, MODULE);
-                }
-                GenericValue orderItemDeliverySchedule = null;
-                orderItemDeliverySchedule = EntityQuery.use(delegator).from("OrderDeliverySchedule").where("orderId", orderId, "orderItemSeqId",
-                        genericResult.getString("orderItemSeqId")).queryOne();
-                Timestamp estimatedShipDate = null;
-                if (orderItemDeliverySchedule != null && orderItemDeliverySchedule.get("estimatedReadyDate") != null) {
-                    estimatedShipDate = orderItemDeliverySchedule.getTimestamp("estimatedReadyDate");
-                } else if (orderDeliverySchedule != null && orderDeliverySchedule.get("estimatedReadyDate") != null) {
-                    estimatedShipDate = orderDeliverySchedule.getTimestamp("estimatedReadyDate");
-                } else {
-                    estimatedShipDate = genericResult.getTimestamp("oiEstimatedDeliveryDate");
-                }
-                if (estimatedShipDate == null) {
-                    estimatedShipDate = now;
-                }
-
-                parameters = UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", estimatedShipDate, "mrpEventTypeId",
-                        "PUR_ORDER_RECP");
-                InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, shipGroupQuantity, null,
-                        genericResult.getString("orderId") + "-" + genericResult.getString("orderItemSeqId"), false, delegator);
-            } catch (GenericEntityException e) {
-                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventProblemInitializing", UtilMisc.toMap(
-                        "mrpEventTypeId", "PUR_ORDER_RECP"), locale));
+            String orderId = genericResult.getString("orderId");
+            String orderItemSeqId = genericResult.getString("orderItemSeqId");
+            String productId = genericResult.getString("productId");
+            BigDecimal shipGroupQuantity = genericResult.getBigDecimal("quantity");
+            BigDecimal cancelledQuantity = genericResult.getBigDecimal("cancelQuantity");
+            if (UtilValidate.isEmpty(shipGroupQuantity)) {
+                shipGroupQuantity = BigDecimal.ZERO;
+            }
+            if (UtilValidate.isNotEmpty(cancelledQuantity)) {
+                shipGroupQuantity = shipGroupQuantity.subtract(cancelledQuantity);
+            }
+            for (GenericValue shipmentReceipt : shipmentReceipts.getOrDefault(UtilMisc.toList(orderId, orderItemSeqId),
+                    Collections.emptyList())) {
+                shipGroupQuantity = shipGroupQuantity.subtract(shipmentReceipt.getBigDecimal("quantityAccepted"));
+                shipGroupQuantity = shipGroupQuantity.subtract(shipmentReceipt.getBigDecimal("quantityRejected"));
+            }
+            GenericValue orderItemDeliverySchedule = orderDeliverySchedules.get(UtilMisc.toList(orderId, orderItemSeqId));
+            GenericValue orderDeliverySchedule = orderDeliverySchedules.get(UtilMisc.toList(orderId, "_NA_"));
+            Timestamp estimatedShipDate = null;
+            if (orderItemDeliverySchedule != null && orderItemDeliverySchedule.get("estimatedReadyDate") != null) {
+                estimatedShipDate = orderItemDeliverySchedule.getTimestamp("estimatedReadyDate");
+            } else if (orderDeliverySchedule != null && orderDeliverySchedule.get("estimatedReadyDate") != null) {
+                estimatedShipDate = orderDeliverySchedule.getTimestamp("estimatedReadyDate");
+            } else {
+                estimatedShipDate = genericResult.getTimestamp("oiEstimatedDeliveryDate");
+            }
+            if (estimatedShipDate == null) {
+                estimatedShipDate = now;
             }
+
+            plan.addEvent(productId, estimatedShipDate, "PUR_ORDER_RECP", shipGroupQuantity, null, orderId + "-" + orderItemSeqId, false);
         }
 
         // ----------------------------------------
@@ -325,6 +322,13 @@ public class MrpServices {
                             "statusId", "WEGS_CREATED",
                             "facilityId", facilityId)
                     .queryList();
+            // the inventory already consumed, by work effort and product
+            Map<List<String>, BigDecimal> consumedInventoryTotals = new HashMap<>();
+            for (GenericValue consumedInventoryItem : plan.findByFieldIn("WorkEffortAndInventoryAssign", "workEffortId",
+                    EntityUtil.getFieldListFromEntityList(resultList, "workEffortId", true), null)) {
+                consumedInventoryTotals.merge(UtilMisc.toList(consumedInventoryItem.getString("workEffortId"), consumedInventoryItem.getString(
+                        "productId")), consumedInventoryItem.getBigDecimal("quantity"), BigDecimal::add);
+            }
             for (GenericValue genericResult : resultList) {
                 if ("PRUN_CLOSED".equals(genericResult.getString("currentStatusId"))
                         || "PRUN_COMPLETED".equals(genericResult.getString("currentStatusId"))
@@ -332,25 +336,17 @@ public class MrpServices {
                     continue;
                 }
                 String productId = genericResult.getString("productId");
-                // get the inventory already consumed
-                BigDecimal consumedInventoryTotal = BigDecimal.ZERO;
-                List<GenericValue> consumedInventoryItems = EntityQuery.use(delegator).from("WorkEffortAndInventoryAssign")
-                        .where("workEffortId", genericResult.get("workEffortId"), "productId", productId)
-                        .queryList();
-                for (GenericValue consumedInventoryItem : consumedInventoryItems) {
-                    consumedInventoryTotal = consumedInventoryTotal.add(consumedInventoryItem.getBigDecimal("quantity"));
-                }
+                BigDecimal consumedInventoryTotal = consumedInventoryTotals.getOrDefault(UtilMisc.toList(genericResult.getString("workEffortId"),
+                        productId), BigDecimal.ZERO);
                 BigDecimal eventQuantityTmp = consumedInventoryTotal.subtract(genericResult.getBigDecimal("estimatedQuantity"));
                 Timestamp estimatedShipDate = genericResult.getTimestamp("estimatedStartDate");
                 if (estimatedShipDate == null) {
                     estimatedShipDate = now;
                 }
 
-                parameters = UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", estimatedShipDate, "mrpEventTypeId",
-                        "MANUF_ORDER_REQ");
                 String eventName = (UtilValidate.isEmpty(genericResult.getString("workEffortParentId")) ? genericResult.getString("workEffortId")
                         : genericResult.getString("workEffortParentId") + "-" + genericResult.getString("workEffortId"));
-                InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, eventQuantityTmp, null, eventName, false, delegator);
+                plan.addEvent(productId, estimatedShipDate, "MANUF_ORDER_REQ", eventQuantityTmp, null, eventName, false);
             }
         } catch (GenericEntityException e) {
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventProblemInitializing", UtilMisc.toMap(
@@ -392,10 +388,8 @@ public class MrpServices {
                     estimatedShipDate = now;
                 }
 
-                parameters = UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", estimatedShipDate, "mrpEventTypeId",
-                        "MANUF_ORDER_RECP");
-                InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, eventQuantityTmp, null, genericResult.getString("workEffortId"),
-                        false, delegator);
+                plan.addEvent(productId, estimatedShipDate, "MANUF_ORDER_RECP", eventQuantityTmp, null, genericResult.getString("workEffortId"),
+                        false);
             }
         } catch (GenericEntityException e) {
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventProblemInitializing", UtilMisc.toMap(
@@ -406,41 +400,24 @@ public class MrpServices {
         // Products without upcoming events but that are already under minimum quantity in warehouse
         // ----------------------------------------
         try {
-            resultList = EntityQuery.use(delegator).from("ProductFacility")
-                    .where("facilityId", facilityId)
-                    .queryList();
-        } catch (GenericEntityException e) {
-            Debug.logError(e, "Unable to retrieve ProductFacility records.", MODULE);
-            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductFacility", locale));
-        }
-        for (GenericValue genericResult : resultList) {
-            String productId = genericResult.getString("productId");
-            BigDecimal minimumStock = genericResult.getBigDecimal("minimumStock");
-            if (minimumStock == null) {
-                minimumStock = BigDecimal.ZERO;
-            }
-            try {
-                long numOfEvents = EntityQuery.use(delegator).from("MrpEvent")
-                        .where("mrpId", mrpId, "productId", productId)
-                        .queryCount();
-                if (numOfEvents > 0) {
+            for (GenericValue genericResult : plan.getProductFacilities().values()) {
+                String productId = genericResult.getString("productId");
+                BigDecimal minimumStock = genericResult.getBigDecimal("minimumStock");
+                if (minimumStock == null) {
+                    minimumStock = BigDecimal.ZERO;
+                }
+                if (plan.hasEvents(productId)) {
                     continue;
                 }
-            } catch (GenericEntityException e) {
-                Debug.logError(e, "Unable to count MrpEvent records.", MODULE);
-                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotCountRecords", locale));
-            }
-            BigDecimal qoh = findProductMrpQoh(mrpId, productId, facilityId, dispatcher, delegator);
-            if (qoh.compareTo(minimumStock) >= 0) {
-                continue;
-            }
-            parameters = UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", now, "mrpEventTypeId", "REQUIRED_MRP");
-            try {
-                InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, BigDecimal.ZERO, null, null, false, delegator);
-            } catch (GenericEntityException e) {
-                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventProblemInitializing", UtilMisc.toMap(
-                        "mrpEventTypeId", "REQUIRED_MRP"), locale));
+                BigDecimal qoh = plan.getQuantityOnHand(productId);
+                if (qoh.compareTo(minimumStock) >= 0) {
+                    continue;
+                }
+                plan.addEvent(productId, now, "REQUIRED_MRP", BigDecimal.ZERO, null, null, false);
             }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Unable to retrieve ProductFacility records.", MODULE);
+            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductFacility", locale));
         }
 
         // ----------------------------------------
@@ -488,15 +465,8 @@ public class MrpServices {
                             continue;
                         }
                         eventQuantityTmp = eventQuantityTmp.negate();
-                        parameters = UtilMisc.toMap("mrpId", mrpId, "productId", productId, "eventDate", customTimePeriod.getTimestamp("fromDate"),
-                                "mrpEventTypeId", "SALES_FORECAST");
-                        try {
-                            InventoryEventPlannedServices.createOrUpdateMrpEvent(parameters, eventQuantityTmp, null, sfd.getString(
-                                    "salesForecastDetailId"), false, delegator);
-                        } catch (GenericEntityException e) {
-                            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventProblemInitializing",
-                                    UtilMisc.toMap("mrpEventTypeId", "SALES_FORECAST"), locale));
-                        }
+                        plan.addEvent(productId, customTimePeriod.getTimestamp("fromDate"), "SALES_FORECAST", eventQuantityTmp, null,
+                                sfd.getString("salesForecastDetailId"), false);
                     }
                 }
             }
@@ -680,6 +650,9 @@ public class MrpServices {
         GenericValue routing = null;
 
         String mrpId = delegator.getNextSeqId("MrpEvent");
+        if (Boolean.TRUE.equals(context.get("inMemory"))) {
+            return executeMrpInMemory(ctx, context, mrpId, facilityId, manufacturingFacilityId);
+        }
 
         Map<String, Object> result = null;
         Map<String, Object> parameters = null;
@@ -895,4 +868,160 @@ public class MrpServices {
         Debug.logInfo("return from executeMrp", MODULE);
         return result;
     }
+
+    /**
+     * Runs the MRP on a {@link MrpPlan}: the events are netted in memory level by level of the bill of materials, the
+     * quantity on hand, <code>ProductFacility</code> records, bills of materials and routings are read once for the run,
+     * and the <code>MrpEvent</code> records are inserted in one batch at the end of the run. The proposed requirements
+     * are created once all the levels have been processed.
+     */
+    private static Map<String, Object> executeMrpInMemory(DispatchContext ctx, Map<String, ? extends Object> context, String mrpId,
+            String facilityId, String manufacturingFacilityId) {
+        Delegator delegator = ctx.getDelegator();
+        LocalDispatcher dispatcher = ctx.getDispatcher();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        Timestamp now = UtilDateTime.nowTimestamp();
+        Locale locale = (Locale) context.get("locale");
+        String mrpName = (String) context.get("mrpName");
+
+        MrpPlan plan = new MrpPlan(delegator, dispatcher, userLogin, mrpId, facilityId);
+        Map<String, Object> initContext = UtilMisc.toMap("mrpId", mrpId, "facilityId", facilityId, "manufacturingFacilityId",
+                manufacturingFacilityId, "defaultYearsOffset", context.get("defaultYearsOffset"), "locale", locale);
+        Map<String, Object> result = initMrpEvents(ctx, initContext, plan);
+        if (ServiceUtil.isError(result)) {
+            return result;
+        }
+
+        List<ProposedOrder> proposedOrders = new LinkedList<>();
+        List<GenericValue> proposedOrderEvents = new LinkedList<>();
+        int bomLevelWithNoEvent = 0;
+        long bomLevel = 0;
+        try {
+            do {
+                List<GenericValue> listInventoryEventForMRP = plan.getEvents(bomLevel);
+                if (UtilValidate.isNotEmpty(listInventoryEventForMRP)) {
+                    bomLevelWithNoEvent = 0;
+
+                    String oldProductId = "";
+                    GenericValue product = null;
+                    GenericValue productFacility = null;
+                    BigDecimal stockTmp = BigDecimal.ZERO;
+                    BigDecimal reorderQuantity = BigDecimal.ZERO;
+                    BigDecimal minimumStock = BigDecimal.ZERO;
+                    int daysToShip = 0;
+                    boolean isBuilt = false;
+                    int eventCount = 0;
+                    for (GenericValue inventoryEventForMRP : listInventoryEventForMRP) {
+                        eventCount++;
+
+                        String productId = inventoryEventForMRP.getString("productId");
+                        boolean isLastEvent = (eventCount == listInventoryEventForMRP.size()
+                                || !productId.equals(listInventoryEventForMRP.get(eventCount).getString("productId")));
+                        BigDecimal eventQuantity = inventoryEventForMRP.getBigDecimal("quantity");
+
+                        if (!productId.equals(oldProductId)) {
+                            // It's a new product, so it's necessary to read the MrpQoh
+                            product = plan.getProduct(productId);
+                            productFacility = plan.getProductFacility(productId);
+                            stockTmp = plan.getQuantityOnHand(productId);
+                            plan.addEvent(productId, now, "INITIAL_QOH", stockTmp, facilityId, null, false);
+                            daysToShip = 0;
+                            if (productFacility != null) {
+                                reorderQuantity = (productFacility.getBigDecimal("reorderQuantity") != null ? productFacility.getBigDecimal(
+                                        "reorderQuantity") : BigDecimal.ONE.negate());
+                                minimumStock = (productFacility.getBigDecimal("minimumStock") != null ? productFacility.getBigDecimal(
+                                        "minimumStock") : BigDecimal.ZERO);
+                                if ("SALES_ORDER_SHIP".equals(inventoryEventForMRP.getString("mrpEventTypeId"))) {
+                                    daysToShip = (productFacility.getLong("daysToShip") != null ? productFacility.getLong("daysToShip").intValue()
+                                            : 0);
+                                }
+                            } else {
+                                minimumStock = BigDecimal.ZERO;
+                                reorderQuantity = BigDecimal.ONE.negate();
+                            }
+                            isBuilt = isManufactured(plan.getComponents(productId, eventQuantity.abs()));
+                            oldProductId = productId;
+                        }
+
+                        stockTmp = stockTmp.add(eventQuantity);
+                        if (stockTmp.compareTo(minimumStock) < 0 && (eventQuantity.compareTo(BigDecimal.ZERO) < 0 || isLastEvent)) {
+                            BigDecimal qtyToStock = minimumStock.subtract(stockTmp);
+                            // to be just before the requirement; the event date is a key of the event and must not be modified
+                            Timestamp eventDate = new Timestamp(inventoryEventForMRP.getTimestamp("eventDate").getTime() - 1);
+                            ProposedOrder proposedOrder = new ProposedOrder(product, facilityId, manufacturingFacilityId, isBuilt, eventDate,
+                                    qtyToStock);
+                            proposedOrder.setMrpName(mrpName);
+                            proposedOrder.calculateQuantityToSupply(reorderQuantity, minimumStock, null);
+
+                            List<BOMNode> components = plan.getComponents(productId, proposedOrder.getQuantity());
+                            isBuilt = isManufactured(components);
+                            Map<String, Object> routingTaskStartDate = proposedOrder.calculateStartDate(daysToShip, plan.getRouting(productId),
+                                    delegator, dispatcher, userLogin);
+                            if (isBuilt) {
+                                processBomComponent(plan, productId, proposedOrder.getRequirementStartDate(), routingTaskStartDate, components);
+                            }
+                            if (productFacility != null) {
+                                proposedOrders.add(proposedOrder);
+                                proposedOrderEvents.add(delegator.makeValue("MrpEvent", UtilMisc.toMap("productId", productId,
+                                        "eventDate", eventDate, "mrpEventTypeId", (isBuilt ? "PROP_MANUF_O_RECP" : "PROP_PUR_O_RECP"))));
+                            } else if (!isBuilt) {
+                                plan.addError(productId, now, "No ProductFacility record for [" + facilityId + "]; no requirement created.");
+                            }
+                            plan.addEvent(productId, eventDate, (isBuilt ? "PROP_MANUF_O_RECP" : "PROP_PUR_O_RECP"), proposedOrder.getQuantity(),
+                                    null, null, (productFacility == null && proposedOrder.getRequirementStartDate().compareTo(now) < 0));
+                            stockTmp = stockTmp.add(proposedOrder.getQuantity());
+                        }
+                    }
+                } else {
+                    bomLevelWithNoEvent += 1;
+                }
+
+                bomLevel += 1;
+                // if there are 3 levels with no inventoryEvenPanned we stop
+            } while (bomLevelWithNoEvent < 3);
+
+            // create the proposed requirements and name the events of the proposed orders after them
+            Iterator<GenericValue> proposedOrderEventIt = proposedOrderEvents.iterator();
+            for (ProposedOrder proposedOrder : proposedOrders) {
+                GenericValue proposedOrderEvent = proposedOrderEventIt.next();
+                String requirementId = proposedOrder.create(ctx, userLogin);
+                plan.addEvent(proposedOrderEvent.getString("productId"), proposedOrderEvent.getTimestamp("eventDate"),
+                        proposedOrderEvent.getString("mrpEventTypeId"), BigDecimal.ZERO, null,
+                        (UtilValidate.isNotEmpty(requirementId) ? "*" + requirementId + " (" + proposedOrder.getRequirementStartDate() + ")*" : null),
+                        (proposedOrder.getRequirementStartDate().compareTo(now) < 0));
+            }
+            plan.store();
+        } catch (GenericEntityException e) {
+            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorForBomLevel", UtilMisc.toMap("bomLevel",
+                    Long.toString(bomLevel), "errorString", e.getMessage()), locale));
+        }
+
+        result = new HashMap<>();
+        result.put("msgResult", new LinkedList<>());
+        result.put(ModelService.RESPONSE_MESSAGE, ModelService.RESPOND_SUCCESS);
+        Debug.logInfo("return from executeMrp", MODULE);
+        return result;
+    }
+
+    private static boolean isManufactured(List<BOMNode> components) {
+        return UtilValidate.isNotEmpty(components) && components.get(0).getParentNode().isManufactured();
+    }
+
+    /**
+     * Adds to the plan the <code>MRP_REQUIREMENT</code> events of the components, like
+     * {@link #processBomComponent(String, GenericValue, BigDecimal, Timestamp, Map, List)}.
+     */
+    private static void processBomComponent(MrpPlan plan, String productId, Timestamp startDate, Map<String, Object> routingTaskStartDate,
+            List<BOMNode> listComponent) {
+        for (BOMNode node : listComponent) {
+            GenericValue productComponent = node.getProductAssoc();
+            String routingTask = productComponent.getString("routingWorkEffortId");
+            Timestamp eventDate = (routingTask == null || !routingTaskStartDate.containsKey(routingTask)) ? startDate
+                    : (Timestamp) routingTaskStartDate.get(routingTask);
+            if (EntityUtil.isValueActive(productComponent, eventDate)) {
+                plan.addEvent(node.getProduct().getString("productId"), eventDate, "MRP_REQUIREMENT", node.getQuantity().negate(), null,
+                        productId + ": " + eventDate, false);
+            }
+        }
+    }
 }
@@ -74,7 +74,8 @@ if (!product && productId) {
 if (product) {
     //if order is purchase then don't calculate available inventory for product.
     if (cart.isSalesOrder()) {
-        resultOutput = runService('getInventoryAvailableByFacility', [productId: product.productId, facilityId: facilityId, useCache: true])
+        resultOutput = runService('getInventoryAvailableByFacility', [productId: product.productId, facilityId: facilityId,
+                useCache: true, useAggregate: true])
         totalAvailableToPromise = resultOutput.availableToPromiseTotal
         if (totalAvailableToPromise && totalAvailableToPromise.doubleValue() > 0) {
             productFacility = from('ProductFacility').where('productId', product.productId, 'facilityId', facilityId).cache(true).queryOne()
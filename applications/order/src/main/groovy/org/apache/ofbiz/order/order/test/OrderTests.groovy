@@ -18,6 +18,10 @@
  *******************************************************************************/
 package org.apache.ofbiz.order.order.test
 
+import org.apache.ofbiz.base.util.cache.UtilCache
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.security.Security
+import org.apache.ofbiz.security.SecurityFactory
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
 
@@ -105,4 +109,41 @@ class OrderTests extends OFBizTestCase {
         assert ServiceUtil.isSuccess(serviceResult)
     }
 
+
+    void testGetRolePermittedKeys() {
+        Security security = SecurityFactory.getInstance(delegator)
+        GenericValue roleUserLogin = getUserLogin('TestOrderRoleUser')
+        UtilCache<String, Boolean> roleMembershipCache = UtilCache.findCache('security.RoleMembershipCache')
+        long expireTime = roleMembershipCache.getExpireTime()
+        try {
+            roleMembershipCache.setExpireTime(0)
+            assertRolePermittedKeys(security, roleUserLogin)
+
+            // the same results with the role membership cache, filled by the first check
+            roleMembershipCache.setExpireTime(60000)
+            assertRolePermittedKeys(security, roleUserLogin)
+            assertRolePermittedKeys(security, roleUserLogin)
+            assert roleMembershipCache.getCacheLineKeys().any { it.startsWith('OrderRole::TestDemoCustomer::') }
+            security.clearUserData(roleUserLogin)
+            assert !roleMembershipCache.getCacheLineKeys().any { it.startsWith('OrderRole::TestDemoCustomer::') }
+        } finally {
+            roleMembershipCache.setExpireTime(expireTime)
+            roleMembershipCache.clear()
+        }
+    }
+
+    private static void assertRolePermittedKeys(Security security, GenericValue roleUserLogin) {
+        List<String> orderIds = ['TEST_DEMO10090', 'TEST_DEMO10091', 'TEST_UNKNOWN_ORDER']
+        Map<List<String>, Set<String>> expectedKeys = [
+                (['PLACING_CUSTOMER']): ['TEST_DEMO10090'] as Set,
+                (['SUPPLIER_AGENT']): [] as Set,
+                (['SUPPLIER_AGENT', 'BILL_TO_CUSTOMER']): ['TEST_DEMO10090'] as Set
+        ]
+        expectedKeys.each { List<String> roles, Set<String> keys ->
+            Set<String> permittedKeys = security.getRolePermittedKeys('ORDERMGR', '_VIEW', orderIds, roles, roleUserLogin)
+            assert permittedKeys == keys
+            assert permittedKeys == orderIds.findAll { security.hasRolePermission('ORDERMGR', '_VIEW', it, roles, roleUserLogin) } as Set
+        }
+    }
+
 }
@@ -4990,7 +4990,7 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
 
                         // Get ATP for the product
                         Map<String, Object> getProductInventoryAvailableResult = dispatcher.runSync("getInventoryAvailableByFacility",
-                                UtilMisc.toMap("productId", productId, "facilityId", facilityId));
+                                UtilMisc.toMap("productId", productId, "facilityId", facilityId, "useAggregate", Boolean.TRUE));
                         if (ServiceUtil.isError(getProductInventoryAvailableResult)) {
                             String errorMessage = ServiceUtil.getErrorMessage(getProductInventoryAvailableResult);
                             Debug.logError(errorMessage, MODULE);
@@ -27,6 +27,7 @@ import org.apache.ofbiz.entity.GenericValue
 import org.apache.ofbiz.entity.condition.EntityConditionBuilder
 import org.apache.ofbiz.entity.serialize.XmlSerializer
 import org.apache.ofbiz.product.product.KeywordIndex
+import org.apache.ofbiz.product.product.ProductKeywordIndex
 import org.apache.ofbiz.product.product.ProductWorker
 import org.apache.ofbiz.service.ServiceUtil
 
@@ -322,6 +323,7 @@ Map forceIndexProductKeywords() {
 Map deleteProductKeywords() {
     GenericValue product = from('Product').where(parameters).cache().queryOne()
     product.removeRelated('ProductKeyword')
+    ProductKeywordIndex.productChanged(delegator, product.productId)
     return success()
 }
 
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.product.product.test
 
+import org.apache.ofbiz.entity.GenericValue
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
 
@@ -39,6 +40,74 @@ class InventoryTests extends OFBizTestCase {
         assert serviceResult.availableToPromiseTotal == 509
     }
 
+    void testGetInventoryAvailableByFacilityFromAggregate() {
+        Map serviceCtx = [
+                productId: 'GZ-2644',
+                facilityId: 'WebStoreWarehouse',
+                userLogin: userLogin
+        ]
+        Map serviceResult = dispatcher.runSync('rebuildProductFacilityInventoryTotals', serviceCtx)
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.productFacilityCount == 1
+        serviceResult = dispatcher.runSync('getInventoryAvailableByFacility', serviceCtx + [useAggregate: true])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.quantityOnHandTotal == 509
+        assert serviceResult.availableToPromiseTotal == 509
+
+        serviceResult = dispatcher.runSync('getProductsInventoryAvailableByFacility', [productIds: ['GZ-2644'],
+                facilityId: 'WebStoreWarehouse', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.inventoryAvailableMap['GZ-2644'].availableToPromiseTotal == 509
+    }
+
+    void testInventoryTransferUpdatesBothProductFacilityTotals() {
+        if (!from('ProductFacility').where(productId: 'GZ-2644', facilityId: 'RegionalWarehouse1').queryOne()) {
+            delegator.create('ProductFacility', [productId: 'GZ-2644', facilityId: 'RegionalWarehouse1'])
+        }
+        Map serviceResult = dispatcher.runSync('receiveInventoryProduct', [productId: 'GZ-2644', facilityId: 'WebStoreWarehouse',
+                inventoryItemTypeId: 'NON_SERIAL_INV_ITEM', quantityAccepted: 5.0, quantityRejected: 0.0, unitCost: 10.0,
+                userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        String inventoryItemId = serviceResult.inventoryItemId
+
+        serviceResult = dispatcher.runSync('createInventoryTransfer', [inventoryItemId: inventoryItemId, statusId: 'IXF_COMPLETE',
+                facilityId: 'WebStoreWarehouse', facilityIdTo: 'RegionalWarehouse1', xferQty: 5.0, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert from('InventoryItem').where(inventoryItemId: inventoryItemId).queryOne().facilityId == 'RegionalWarehouse1'
+
+        ['WebStoreWarehouse', 'RegionalWarehouse1'].each { facilityId ->
+            serviceResult = dispatcher.runSync('getInventoryAvailableByFacility', [productId: 'GZ-2644', facilityId: facilityId,
+                    userLogin: userLogin])
+            assert ServiceUtil.isSuccess(serviceResult)
+            GenericValue productFacility = from('ProductFacility').where(productId: 'GZ-2644', facilityId: facilityId).queryOne()
+            assert productFacility.availableToPromiseTotal == serviceResult.availableToPromiseTotal
+            assert productFacility.quantityOnHandTotal == serviceResult.quantityOnHandTotal
+        }
+    }
+
+    void testReceiveInventoryAddsToProductFacilityTotals() {
+        Map serviceResult = dispatcher.runSync('rebuildProductFacilityInventoryTotals', [productId: 'GZ-2644',
+                facilityId: 'WebStoreWarehouse', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        GenericValue productFacility = from('ProductFacility').where(productId: 'GZ-2644', facilityId: 'WebStoreWarehouse').queryOne()
+        BigDecimal availableToPromiseTotal = productFacility.availableToPromiseTotal
+
+        3.times {
+            serviceResult = dispatcher.runSync('receiveInventoryProduct', [productId: 'GZ-2644', facilityId: 'WebStoreWarehouse',
+                    inventoryItemTypeId: 'NON_SERIAL_INV_ITEM', quantityAccepted: 2.0, quantityRejected: 0.0, unitCost: 10.0,
+                    userLogin: userLogin])
+            assert ServiceUtil.isSuccess(serviceResult)
+        }
+
+        productFacility.refresh()
+        assert productFacility.availableToPromiseTotal == availableToPromiseTotal + 6
+        serviceResult = dispatcher.runSync('getInventoryAvailableByFacility', [productId: 'GZ-2644', facilityId: 'WebStoreWarehouse',
+                userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert productFacility.availableToPromiseTotal == serviceResult.availableToPromiseTotal
+        assert productFacility.quantityOnHandTotal == serviceResult.quantityOnHandTotal
+    }
+
     // Test Physical Inventory Adjustment
     void testCreatePhysicalInventoryAndVariance() {
         Map serviceCtx = [
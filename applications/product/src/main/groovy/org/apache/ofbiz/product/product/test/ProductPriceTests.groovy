@@ -18,7 +18,12 @@
  *******************************************************************************/
 package org.apache.ofbiz.product.product.test
 
+import java.sql.Timestamp
+
+import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.product.price.PriceServices
+import org.apache.ofbiz.product.price.ProductPriceRuleIndex
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
 
@@ -63,4 +68,36 @@ class ProductPriceTests extends OFBizTestCase {
         assert resultMap.defaultPrice == 10
     }
 
+    void testPriceRuleIndexSelection() {
+        // the rules returned by the index must give the same matching rules as all the rules, for each input
+        ProductPriceRuleIndex index = ProductPriceRuleIndex.getInstance(delegator)
+        List<GenericValue> allRules = from('ProductPriceRule').queryList()
+        Timestamp nowTimestamp = UtilDateTime.nowTimestamp()
+        Map<List<String>, List<String>> expectedTestRuleIds = [
+                (['DemoProduct-1', null, null]): ['TestPriceRuleCategory', 'TestPriceRuleProduct'],
+                (['DemoProduct-1', null, 'TestPriceCustomer']): ['TestPriceRuleCategory', 'TestPriceRuleParty', 'TestPriceRuleProduct'],
+                (['DemoProduct-2', 'DemoProduct', null]): ['TestPriceRuleNotProduct', 'TestPriceRuleVirtual', 'TestPriceRuleVirtualCat'],
+                (['DemoProduct-3', 'DemoProduct', 'TestPriceCustomer']):
+                        ['TestPriceRuleNotProduct', 'TestPriceRuleVirtual', 'TestPriceRuleVirtualCat'],
+                (['GZ-2002', null, 'TestPriceCustomer']): ['TestPriceRuleNotProduct']
+        ]
+        expectedTestRuleIds.each { List<String> input, List<String> testRuleIds ->
+            String productId = input[0]
+            String virtualProductId = input[1]
+            String partyId = input[2]
+            Closure<List<String>> matchingRuleIds = { List<GenericValue> rules ->
+                rules.findAll { GenericValue rule ->
+                    from('ProductPriceCond').where('productPriceRuleId', rule.productPriceRuleId).queryList().every { GenericValue cond ->
+                        PriceServices.checkPriceCondition(cond, productId, virtualProductId, null, null, null, partyId,
+                                BigDecimal.ONE, BigDecimal.TEN, 'USD', delegator, nowTimestamp)
+                    }
+                }*.productPriceRuleId.sort()
+            }
+            List<String> indexedRuleIds = matchingRuleIds(index.getRules(delegator, productId, virtualProductId, null, null, null,
+                    partyId, 'USD', nowTimestamp))
+            assert indexedRuleIds == matchingRuleIds(allRules)
+            assert indexedRuleIds.findAll { it.startsWith('TestPriceRule') } == testRuleIds
+        }
+    }
+
 }
@@ -27,6 +27,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.ofbiz.base.util.Debug;
@@ -37,12 +38,14 @@ import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
+import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelKeyMap;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
@@ -62,6 +65,8 @@ public class InventoryServices {
     private static final String MODULE = InventoryServices.class.getName();
     private static final String RESOURCE = "ProductUiLabels";
     private static final MathContext GEN_ROUNDING = new MathContext(10);
+    private static final List<String> INVENTORY_TOTAL_FIELDS = UtilMisc.toList("availableToPromiseTotal", "quantityOnHandTotal",
+            "accountingQuantityTotal");
 
     public static Map<String, Object> prepareInventoryTransfer(DispatchContext dctx, Map<String, ? extends Object> context) {
         Delegator delegator = dctx.getDelegator();
@@ -1029,4 +1034,234 @@ public class InventoryServices {
         }
         return result;
     }
+
+    /**
+     * The InventoryItems counted by getProductInventoryAvailable when no status is given: the items without status, available or
+     * returned, and the serialized items whose status is already reflected in their totals.
+     */
+    private static EntityCondition makeAvailableInventoryItemCondition() {
+        return EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("statusId", EntityOperator.EQUALS, null),
+                EntityCondition.makeCondition("statusId", EntityOperator.IN, UtilMisc.toList("INV_AVAILABLE", "INV_NS_RETURNED")),
+                EntityCondition.makeCondition("inventoryItemTypeId", EntityOperator.EQUALS, "SERIALIZED_INV_ITEM")),
+                EntityOperator.OR);
+    }
+
+    private static Map<String, Object> makeInventoryTotals(GenericValue sums) {
+        Map<String, Object> totals = new HashMap<>();
+        totals.put("availableToPromiseTotal", sums != null && sums.get("availableToPromiseSum") != null
+                ? sums.getBigDecimal("availableToPromiseSum") : BigDecimal.ZERO);
+        totals.put("quantityOnHandTotal", sums != null && sums.get("quantityOnHandSum") != null
+                ? sums.getBigDecimal("quantityOnHandSum") : BigDecimal.ZERO);
+        totals.put("accountingQuantityTotal", sums != null && sums.get("accountingQuantitySum") != null
+                ? sums.getBigDecimal("accountingQuantitySum") : BigDecimal.ZERO);
+        return totals;
+    }
+
+    /** Same test as makeAvailableInventoryItemCondition, on an InventoryItem value. */
+    private static boolean isAvailableInventoryItem(GenericEntity inventoryItem) {
+        String statusId = inventoryItem.getString("statusId");
+        return statusId == null || "INV_AVAILABLE".equals(statusId) || "INV_NS_RETURNED".equals(statusId)
+                || "SERIALIZED_INV_ITEM".equals(inventoryItem.getString("inventoryItemTypeId"));
+    }
+
+    /** What an InventoryItem adds to the totals of its ProductFacility, zero when it is not available. */
+    private static Map<String, BigDecimal> getInventoryItemTotals(GenericEntity inventoryItem) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        for (String fieldName : INVENTORY_TOTAL_FIELDS) {
+            BigDecimal quantity = inventoryItem != null && isAvailableInventoryItem(inventoryItem) ? inventoryItem.getBigDecimal(fieldName) : null;
+            totals.put(fieldName, quantity != null ? quantity : BigDecimal.ZERO);
+        }
+        return totals;
+    }
+
+    private static GenericValue findStoredInventoryItem(Delegator delegator, GenericEntity inventoryItem) throws GenericEntityException {
+        if (inventoryItem == null || inventoryItem.get("inventoryItemId") == null) {
+            return null;
+        }
+        return EntityQuery.use(delegator).from("InventoryItem").where("inventoryItemId", inventoryItem.get("inventoryItemId")).queryOne();
+    }
+
+    /**
+     * Adds the difference an InventoryItem create or store makes to the inventory totals of the ProductFacility of its product and
+     * facility; an item moved to another product or facility, for instance by an inventory transfer, is taken off the totals of
+     * the ProductFacility it leaves. Meant to be run as an Entity ECA before the InventoryItem is written, while the stored row
+     * still has the previous quantities and status.
+     */
+    public static Map<String, Object> updateProductFacilityInventoryTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        GenericEntity inventoryItem = (GenericEntity) context.get("inventoryItem");
+        try {
+            GenericValue storedInventoryItem = findStoredInventoryItem(delegator, inventoryItem);
+            GenericValue newInventoryItem = delegator.makeValue("InventoryItem", storedInventoryItem);
+            newInventoryItem.setFields(inventoryItem);
+            String productId = newInventoryItem.getString("productId");
+            String facilityId = newInventoryItem.getString("facilityId");
+            Map<String, BigDecimal> newTotals = getInventoryItemTotals(newInventoryItem);
+            Map<String, BigDecimal> storedTotals = getInventoryItemTotals(storedInventoryItem);
+            if (storedInventoryItem == null || (Objects.equals(productId, storedInventoryItem.getString("productId"))
+                    && Objects.equals(facilityId, storedInventoryItem.getString("facilityId")))) {
+                storedTotals.forEach((fieldName, quantity) -> newTotals.merge(fieldName, quantity, BigDecimal::subtract));
+            } else {
+                storedTotals.replaceAll((fieldName, quantity) -> quantity.negate());
+                addProductFacilityInventoryTotals(delegator, storedInventoryItem.getString("productId"),
+                        storedInventoryItem.getString("facilityId"), storedTotals);
+            }
+            addProductFacilityInventoryTotals(delegator, productId, facilityId, newTotals);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Takes a removed InventoryItem off the inventory totals of its ProductFacility. Meant to be run as an Entity ECA before the
+     * InventoryItem is removed.
+     */
+    public static Map<String, Object> removeProductFacilityInventoryTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        try {
+            GenericValue storedInventoryItem = findStoredInventoryItem(delegator, (GenericEntity) context.get("inventoryItem"));
+            if (storedInventoryItem != null) {
+                Map<String, BigDecimal> storedTotals = getInventoryItemTotals(storedInventoryItem);
+                storedTotals.replaceAll((fieldName, quantity) -> quantity.negate());
+                addProductFacilityInventoryTotals(delegator, storedInventoryItem.getString("productId"),
+                        storedInventoryItem.getString("facilityId"), storedTotals);
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static void addProductFacilityInventoryTotals(Delegator delegator, String productId, String facilityId,
+            Map<String, BigDecimal> quantities) throws GenericEntityException {
+        if (UtilValidate.isEmpty(productId) || UtilValidate.isEmpty(facilityId)
+                || quantities.values().stream().allMatch(quantity -> quantity.signum() == 0)) {
+            return;
+        }
+        GenericValue productFacility = EntityQuery.use(delegator)
+                .from("ProductFacility")
+                .where("productId", productId, "facilityId", facilityId)
+                .queryOne();
+        if (productFacility == null) {
+            return;
+        }
+        // updating the row first locks it, so the totals read next include the changes of any concurrent transaction on the same
+        // product and facility, and they are added one after another
+        GenericValue productFacilityLock = delegator.makeValue("ProductFacility", productFacility.getPrimaryKey());
+        productFacilityLock.set(ModelEntity.STAMP_FIELD, UtilDateTime.nowTimestamp());
+        productFacilityLock.store();
+        productFacility.refresh();
+        if (productFacility.get("availableToPromiseTotal") == null) {
+            // not maintained yet: start from the sums of the items as they are stored before this change
+            productFacility.setNonPKFields(makeInventoryTotals(sumProductFacilityInventory(delegator, productId, facilityId)));
+        }
+        for (String fieldName : INVENTORY_TOTAL_FIELDS) {
+            BigDecimal total = productFacility.getBigDecimal(fieldName);
+            productFacility.set(fieldName, (total != null ? total : BigDecimal.ZERO).add(quantities.get(fieldName)));
+        }
+        productFacility.store();
+    }
+
+    private static GenericValue sumProductFacilityInventory(Delegator delegator, String productId, String facilityId)
+            throws GenericEntityException {
+        return EntityQuery.use(delegator)
+                .select("availableToPromiseSum", "quantityOnHandSum", "accountingQuantitySum")
+                .from("InventoryItemForSum")
+                .where(EntityCondition.makeCondition("productId", productId), EntityCondition.makeCondition("facilityId", facilityId),
+                        makeAvailableInventoryItemCondition())
+                .queryFirst();
+    }
+
+    /**
+     * Sets the inventory totals of the ProductFacility rows, only those of a product or of a facility when given, from the sums of
+     * the available InventoryItems. Meant to fill in the rows that existed before the totals were maintained, or to repair them
+     * after InventoryItems were changed without Entity ECAs; the InventoryItem Entity ECAs keep them up to date afterwards.
+     */
+    public static Map<String, Object> rebuildProductFacilityInventoryTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productId = (String) context.get("productId");
+        String facilityId = (String) context.get("facilityId");
+        List<EntityCondition> conds = new LinkedList<>();
+        if (UtilValidate.isNotEmpty(productId)) {
+            conds.add(EntityCondition.makeCondition("productId", productId));
+        }
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            conds.add(EntityCondition.makeCondition("facilityId", facilityId));
+        }
+        int productFacilityCount = 0;
+        try {
+            List<GenericValue> productFacilities = EntityQuery.use(delegator).from("ProductFacility").where(conds).queryList();
+            for (GenericValue productFacility : productFacilities) {
+                productFacility.setNonPKFields(makeInventoryTotals(sumProductFacilityInventory(delegator,
+                        productFacility.getString("productId"), productFacility.getString("facilityId"))));
+                productFacility.store();
+                productFacilityCount++;
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("productFacilityCount", productFacilityCount);
+        return result;
+    }
+
+    /**
+     * Gets the inventory available in a facility for several products at once: the totals maintained on ProductFacility are read
+     * with one query, and the products without them are summed from their InventoryItems with one grouped query.
+     */
+    public static Map<String, Object> getProductsInventoryAvailableByFacility(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String facilityId = (String) context.get("facilityId");
+        List<String> productIds = UtilGenerics.cast(context.get("productIds"));
+
+        Map<String, Map<String, Object>> inventoryAvailableMap = new HashMap<>();
+        try {
+            List<GenericValue> productFacilities = EntityQuery.use(delegator)
+                    .select("productId", "availableToPromiseTotal", "quantityOnHandTotal", "accountingQuantityTotal")
+                    .from("ProductFacility")
+                    .where(EntityCondition.makeCondition("facilityId", facilityId),
+                            EntityCondition.makeCondition("productId", EntityOperator.IN, productIds),
+                            EntityCondition.makeCondition("availableToPromiseTotal", EntityOperator.NOT_EQUAL, null))
+                    .queryList();
+            for (GenericValue productFacility : productFacilities) {
+                inventoryAvailableMap.put(productFacility.getString("productId"), UtilMisc.toMap(
+                        "availableToPromiseTotal", productFacility.getBigDecimal("availableToPromiseTotal"),
+                        "quantityOnHandTotal", productFacility.getBigDecimal("quantityOnHandTotal"),
+                        "accountingQuantityTotal", productFacility.getBigDecimal("accountingQuantityTotal")));
+            }
+
+            List<String> productIdsToSum = new LinkedList<>();
+            for (String productId : productIds) {
+                if (!inventoryAvailableMap.containsKey(productId)) {
+                    productIdsToSum.add(productId);
+                }
+            }
+            if (!productIdsToSum.isEmpty()) {
+                List<GenericValue> productSums = EntityQuery.use(delegator)
+                        .select("productId", "availableToPromiseSum", "quantityOnHandSum", "accountingQuantitySum")
+                        .from("InventoryItemForSum")
+                        .where(EntityCondition.makeCondition("facilityId", facilityId),
+                                EntityCondition.makeCondition("productId", EntityOperator.IN, productIdsToSum),
+                                makeAvailableInventoryItemCondition())
+                        .queryList();
+                for (GenericValue productSum : productSums) {
+                    inventoryAvailableMap.put(productSum.getString("productId"), makeInventoryTotals(productSum));
+                }
+                for (String productId : productIdsToSum) {
+                    inventoryAvailableMap.computeIfAbsent(productId, k -> makeInventoryTotals(null));
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("inventoryAvailableMap", inventoryAvailableMap);
+        return result;
+    }
 }
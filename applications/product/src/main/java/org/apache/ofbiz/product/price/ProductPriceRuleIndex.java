@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.price;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.Cache;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * ProductPriceRuleIndex - All the price rules with their conditions and actions, read in three queries
+ * and indexed by the input values that select them.
+ * <p>A rule with an equals condition on the product, category, catalog, store group, web site, party or
+ * currency can only apply when the input has the condition value, so it is only returned for that
+ * value. The other rules are returned for every input and their conditions are checked as before.</p>
+ * <p>The index is kept in the entity object cache under the null condition of <code>ProductPriceRule</code>,
+ * so any write to a rule drops it. It also records the generations of <code>ProductPriceCond</code> and
+ * <code>ProductPriceAction</code>, objects cached under the null condition that any write to those
+ * entities removes, and is rebuilt when either changes.</p>
+ */
+public final class ProductPriceRuleIndex {
+
+    private static final String CACHE_NAME = "price.rule.index";
+
+    /** The input parameters indexed on an equals condition, most selective first. */
+    private static final List<String> KEY_INPUT_PARAMS = UtilMisc.toList("PRIP_PRODUCT_ID", "PRIP_PARTY_ID", "PRIP_PROD_CAT_ID",
+            "PRIP_WEBSITE_ID", "PRIP_PROD_CLG_ID", "PRIP_PROD_SGRP_ID", "PRIP_CURRENCY_UOMID");
+
+    private final Object condGeneration;
+    private final Object actionGeneration;
+    private final Map<String, List<GenericValue>> conds = new HashMap<>();
+    private final Map<String, List<GenericValue>> actions = new HashMap<>();
+    private final Map<String, Map<String, List<GenericValue>>> keyedRules = new HashMap<>();
+    private final List<GenericValue> unkeyedRules = new ArrayList<>();
+
+    private ProductPriceRuleIndex(Object condGeneration, Object actionGeneration) {
+        this.condGeneration = condGeneration;
+        this.actionGeneration = actionGeneration;
+    }
+
+    /** Returns the current index for the delegator, building it when the rules, conditions or actions have changed. */
+    public static ProductPriceRuleIndex getInstance(Delegator delegator) throws GenericEntityException {
+        Cache cache = delegator.getCache();
+        // get the generations before reading the rules, so a concurrent change makes the index stale
+        Object condGeneration = getGeneration(cache, "ProductPriceCond");
+        Object actionGeneration = getGeneration(cache, "ProductPriceAction");
+        ProductPriceRuleIndex index = cache.get("ProductPriceRule", null, CACHE_NAME);
+        if (index == null || index.condGeneration != condGeneration || index.actionGeneration != actionGeneration) {
+            index = new ProductPriceRuleIndex(condGeneration, actionGeneration);
+            index.load(delegator);
+            cache.put("ProductPriceRule", null, CACHE_NAME, index);
+        }
+        return index;
+    }
+
+    private static Object getGeneration(Cache cache, String entityName) {
+        Object generation = cache.get(entityName, null, CACHE_NAME);
+        if (generation == null) {
+            generation = new Object();
+            cache.put(entityName, null, CACHE_NAME, generation);
+        }
+        return generation;
+    }
+
+    private void load(Delegator delegator) throws GenericEntityException {
+        List<GenericValue> productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond")
+                .orderBy("productPriceRuleId", "productPriceCondSeqId").queryList();
+        for (GenericValue productPriceCond : productPriceConds) {
+            productPriceCond.setImmutable();
+            conds.computeIfAbsent(productPriceCond.getString("productPriceRuleId"), k -> new ArrayList<>()).add(productPriceCond);
+        }
+        List<GenericValue> productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction")
+                .orderBy("productPriceRuleId", "productPriceActionSeqId").queryList();
+        for (GenericValue productPriceAction : productPriceActions) {
+            productPriceAction.setImmutable();
+            actions.computeIfAbsent(productPriceAction.getString("productPriceRuleId"), k -> new ArrayList<>()).add(productPriceAction);
+        }
+        List<GenericValue> productPriceRules = EntityQuery.use(delegator).from("ProductPriceRule").orderBy("productPriceRuleId").queryList();
+        for (GenericValue productPriceRule : productPriceRules) {
+            productPriceRule.setImmutable();
+            GenericValue keyCond = getKeyCondition(getConditions(productPriceRule.getString("productPriceRuleId")));
+            if (keyCond == null) {
+                unkeyedRules.add(productPriceRule);
+            } else {
+                keyedRules.computeIfAbsent(keyCond.getString("inputParamEnumId"), k -> new HashMap<>())
+                        .computeIfAbsent(keyCond.getString("condValue"), k -> new ArrayList<>()).add(productPriceRule);
+            }
+        }
+    }
+
+    /** Returns the equals condition on the most selective indexed input parameter, or null if there is none. */
+    private static GenericValue getKeyCondition(List<GenericValue> productPriceConds) {
+        GenericValue keyCond = null;
+        int keyRank = KEY_INPUT_PARAMS.size();
+        for (GenericValue productPriceCond : productPriceConds) {
+            int rank = KEY_INPUT_PARAMS.indexOf(productPriceCond.getString("inputParamEnumId"));
+            if (rank >= 0 && rank < keyRank && "PRC_EQ".equals(productPriceCond.getString("operatorEnumId"))
+                    && productPriceCond.get("condValue") != null) {
+                keyCond = productPriceCond;
+                keyRank = rank;
+            }
+        }
+        return keyCond;
+    }
+
+    /**
+     * Returns the rules that may apply to the given inputs, ordered by <code>productPriceRuleId</code>. The rules
+     * are not filtered by date and all their conditions still have to be checked.
+     */
+    public List<GenericValue> getRules(Delegator delegator, String productId, String virtualProductId, String prodCatalogId,
+            String productStoreGroupId, String webSiteId, String partyId, String currencyUomId, Timestamp nowTimestamp)
+            throws GenericEntityException {
+        Map<String, GenericValue> productPriceRules = new TreeMap<>();
+        addKeyedRules(productPriceRules, "PRIP_PRODUCT_ID", productId);
+        addKeyedRules(productPriceRules, "PRIP_PRODUCT_ID", virtualProductId);
+        addKeyedRules(productPriceRules, "PRIP_PARTY_ID", partyId);
+        addKeyedRules(productPriceRules, "PRIP_WEBSITE_ID", webSiteId);
+        addKeyedRules(productPriceRules, "PRIP_PROD_CLG_ID", prodCatalogId);
+        addKeyedRules(productPriceRules, "PRIP_PROD_SGRP_ID", productStoreGroupId);
+        addKeyedRules(productPriceRules, "PRIP_CURRENCY_UOMID", currencyUomId);
+        if (keyedRules.containsKey("PRIP_PROD_CAT_ID")) {
+            // a category condition is true when the product, or else its virtual product, is a member of the category
+            List<GenericValue> productCategoryMembers = new LinkedList<>();
+            productCategoryMembers.addAll(EntityQuery.use(delegator).from("ProductCategoryMember").where("productId", productId)
+                    .cache(true).filterByDate(nowTimestamp).queryList());
+            if (UtilValidate.isNotEmpty(virtualProductId)) {
+                productCategoryMembers.addAll(EntityQuery.use(delegator).from("ProductCategoryMember").where("productId", virtualProductId)
+                        .cache(true).filterByDate(nowTimestamp).queryList());
+            }
+            for (GenericValue productCategoryMember : productCategoryMembers) {
+                addKeyedRules(productPriceRules, "PRIP_PROD_CAT_ID", productCategoryMember.getString("productCategoryId"));
+            }
+        }
+        for (GenericValue productPriceRule : unkeyedRules) {
+            productPriceRules.put(productPriceRule.getString("productPriceRuleId"), productPriceRule);
+        }
+        return new LinkedList<>(productPriceRules.values());
+    }
+
+    private void addKeyedRules(Map<String, GenericValue> productPriceRules, String inputParamEnumId, String value) {
+        if (UtilValidate.isEmpty(value)) {
+            return;
+        }
+        Map<String, List<GenericValue>> rulesByValue = keyedRules.get(inputParamEnumId);
+        if (rulesByValue == null) {
+            return;
+        }
+        List<GenericValue> rules = rulesByValue.get(value);
+        if (rules != null) {
+            for (GenericValue productPriceRule : rules) {
+                productPriceRules.put(productPriceRule.getString("productPriceRuleId"), productPriceRule);
+            }
+        }
+    }
+
+    /** Returns the conditions of a rule in sequence order. */
+    public List<GenericValue> getConditions(String productPriceRuleId) {
+        List<GenericValue> productPriceConds = conds.get(productPriceRuleId);
+        return productPriceConds != null ? Collections.unmodifiableList(productPriceConds) : Collections.emptyList();
+    }
+
+    /** Returns the actions of a rule in sequence order. */
+    public List<GenericValue> getActions(String productPriceRuleId) {
+        List<GenericValue> productPriceActions = actions.get(productPriceRuleId);
+        return productPriceActions != null ? Collections.unmodifiableList(productPriceActions) : Collections.emptyList();
+    }
+}
@@ -219,6 +219,7 @@ public class KeywordIndex {
             }
 
             delegator.storeAll(toBeStored);
+            ProductKeywordIndex.productChanged(delegator, product.getString("productId"));
         }
     }
 
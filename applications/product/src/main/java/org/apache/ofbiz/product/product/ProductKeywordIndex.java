@@ -0,0 +1,443 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.product;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import javax.transaction.Synchronization;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+/**
+ * In-memory inverted index of the <code>ProductKeyword</code> records, used by the product search instead of joining
+ * <code>ProductKeyword</code> once per keyword.
+ * <p>Each keyword points to the list of the products having it, with the relevancy weight of the keyword for the
+ * product. The lists are sorted by product and stored as variable length deltas. The index of a delegator is loaded
+ * at the first search when <code>index.memory.enable</code> is true in <code>prodsearch.properties</code>; the
+ * products whose keywords change are marked once per product by {@link KeywordIndex} and the keyword services, and
+ * reloaded at the next search.</p>
+ * <p>There is no entity ECA on <code>ProductKeyword</code>, so the batch insert of the keywords by
+ * <code>storeAll</code> stays available: the keywords written otherwise, e.g. by a data import, the
+ * <code>ProductKeyword</code> entity-auto services or direct delegator calls, are only seen once the
+ * <code>rebuildProductKeywordIndex</code> service is run, see {@link #rebuild(Delegator)}.</p>
+ */
+public final class ProductKeywordIndex {
+
+    private static final String MODULE = ProductKeywordIndex.class.getName();
+    private static final Map<String, ProductKeywordIndex> INDEXES = new ConcurrentHashMap<>();
+    private static final int IN_CHUNK_SIZE = 500;
+
+    private final Delegator delegator;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<String> changedProductIds = ConcurrentHashMap.newKeySet();
+    /** The product of each product number */
+    private final List<String> productIds = new ArrayList<>();
+    private final Map<String, Integer> productNumbers = new HashMap<>();
+    /** The keywords of each product number, to update their lists when the product changes */
+    private final Map<Integer, Set<String>> productKeywords = new HashMap<>();
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    ProductKeywordIndex(Delegator delegator) {
+        this.delegator = delegator;
+    }
+
+    /** Returns true if the product search uses the in-memory keyword index. */
+    public static boolean isEnabled(Delegator delegator) {
+        return EntityUtilProperties.propertyValueEqualsIgnoreCase("prodsearch", "index.memory.enable", "true", delegator);
+    }
+
+    /** Returns the keyword index of the delegator, loading it if needed. */
+    public static ProductKeywordIndex getInstance(Delegator delegator) throws GenericEntityException {
+        ProductKeywordIndex index = INDEXES.get(delegator.getDelegatorName());
+        if (index == null) {
+            synchronized (INDEXES) {
+                index = INDEXES.get(delegator.getDelegatorName());
+                if (index == null) {
+                    index = new ProductKeywordIndex(delegator);
+                    index.load();
+                    INDEXES.put(delegator.getDelegatorName(), index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Marks the keywords of the product as changed; they are read again at the next search. When called in a
+     * transaction the product is marked again once the transaction is completed, so the committed keywords are read.
+     * Does nothing when the index of the delegator is not loaded, i.e. when the in-memory index is not enabled.
+     */
+    public static void productChanged(Delegator delegator, String productId) {
+        ProductKeywordIndex index = INDEXES.get(delegator.getDelegatorName());
+        if (index == null || productId == null) {
+            return;
+        }
+        index.changedProductIds.add(productId);
+        try {
+            TransactionUtil.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    index.changedProductIds.add(productId);
+                }
+            });
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to register the keyword index update of product [" + productId + "]", MODULE);
+        }
+    }
+
+    /**
+     * Loads the keyword index of the delegator again from the <code>ProductKeyword</code> records and replaces the
+     * current one, for the keywords changed without marking their product.
+     * Does nothing when the in-memory index is not enabled.
+     */
+    public static void rebuild(Delegator delegator) throws GenericEntityException {
+        if (!isEnabled(delegator)) {
+            return;
+        }
+        ProductKeywordIndex index = new ProductKeywordIndex(delegator);
+        index.load();
+        ProductKeywordIndex previous = INDEXES.put(delegator.getDelegatorName(), index);
+        if (previous != null) {
+            // the products marked while loading may have been changed after they were read
+            index.changedProductIds.addAll(previous.changedProductIds);
+        }
+    }
+
+    private void load() throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        Map<String, Map<Integer, Long>> keywordProducts = new HashMap<>();
+        try (EntityListIterator productKeywordIt = EntityQuery.use(delegator).select("productId", "keyword", "relevancyWeight")
+                .from("ProductKeyword").orderBy("productId").queryIterator()) {
+            GenericValue productKeyword;
+            while ((productKeyword = productKeywordIt.next()) != null) {
+                int productNumber = getProductNumber(productKeyword.getString("productId"));
+                String keyword = productKeyword.getString("keyword");
+                keywordProducts.computeIfAbsent(keyword, k -> new TreeMap<>()).merge(productNumber, getWeight(productKeyword), Long::sum);
+                productKeywords.computeIfAbsent(productNumber, k -> new HashSet<>()).add(keyword);
+            }
+        }
+        for (Map.Entry<String, Map<Integer, Long>> entry : keywordProducts.entrySet()) {
+            postings.put(entry.getKey(), new Postings(entry.getValue()));
+        }
+        Debug.logInfo("Loaded the keyword index of " + productIds.size() + " products and " + postings.size() + " keywords in "
+                + (System.currentTimeMillis() - startTime) + "ms", MODULE);
+    }
+
+    private int getProductNumber(String productId) {
+        Integer productNumber = productNumbers.get(productId);
+        if (productNumber == null) {
+            productNumber = productIds.size();
+            productIds.add(productId);
+            productNumbers.put(productId, productNumber);
+        }
+        return productNumber;
+    }
+
+    private static long getWeight(GenericValue productKeyword) {
+        Long weight = productKeyword.getLong("relevancyWeight");
+        return weight == null ? 0 : weight;
+    }
+
+    /** Reads again the keywords of the products changed since the last call, one call at a time so the latest keywords win. */
+    private synchronized void update() throws GenericEntityException {
+        List<String> changed = new ArrayList<>(changedProductIds);
+        changedProductIds.removeAll(changed);
+        if (changed.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, Long>> newKeywords = new HashMap<>();
+        for (int i = 0; i < changed.size(); i += IN_CHUNK_SIZE) {
+            List<GenericValue> productKeywordList = EntityQuery.use(delegator).select("productId", "keyword", "relevancyWeight")
+                    .from("ProductKeyword")
+                    .where(EntityCondition.makeCondition("productId", EntityOperator.IN, changed.subList(i, Math.min(i + IN_CHUNK_SIZE,
+                            changed.size()))))
+                    .queryList();
+            for (GenericValue productKeyword : productKeywordList) {
+                newKeywords.computeIfAbsent(productKeyword.getString("productId"), k -> new HashMap<>())
+                        .merge(productKeyword.getString("keyword"), getWeight(productKeyword), Long::sum);
+            }
+        }
+        applyChanges(changed, newKeywords);
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Updated the keyword index for products " + changed, MODULE);
+        }
+    }
+
+    /**
+     * Replaces the keywords of the changed products by their new keywords and weights; a changed product without new
+     * keywords is removed from the index.
+     */
+    void applyChanges(Collection<String> changed, Map<String, Map<String, Long>> newKeywords) {
+        lock.writeLock().lock();
+        try {
+            // the changes of each keyword list: the weight of the product, or null to remove the product
+            Map<String, Map<Integer, Long>> changes = new HashMap<>();
+            for (String productId : changed) {
+                int productNumber = getProductNumber(productId);
+                Map<String, Long> keywords = newKeywords.getOrDefault(productId, new HashMap<>());
+                Set<String> oldKeywords = productKeywords.remove(productNumber);
+                if (oldKeywords != null) {
+                    for (String keyword : oldKeywords) {
+                        changes.computeIfAbsent(keyword, k -> new HashMap<>()).put(productNumber, null);
+                    }
+                }
+                for (Map.Entry<String, Long> entry : keywords.entrySet()) {
+                    changes.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(productNumber, entry.getValue());
+                }
+                if (!keywords.isEmpty()) {
+                    productKeywords.put(productNumber, new HashSet<>(keywords.keySet()));
+                }
+            }
+            for (Map.Entry<String, Map<Integer, Long>> entry : changes.entrySet()) {
+                Postings keywordPostings = postings.get(entry.getKey());
+                Map<Integer, Long> products = keywordPostings == null ? new TreeMap<>() : keywordPostings.toMap();
+                for (Map.Entry<Integer, Long> change : entry.getValue().entrySet()) {
+                    if (change.getValue() == null) {
+                        products.remove(change.getKey());
+                    } else {
+                        products.put(change.getKey(), change.getValue());
+                    }
+                }
+                if (products.isEmpty()) {
+                    postings.remove(entry.getKey());
+                } else {
+                    postings.put(entry.getKey(), new Postings(products));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the relevancy of the products matching the keywords, computed like the SQL product search.
+     * <ul>
+     * <li>a product must have a keyword matching each of the <code>andKeywords</code>; the weight of the best
+     * matching keyword is added to the relevancy.</li>
+     * <li>a product must have a keyword matching one of each of the <code>orKeywordSets</code>; the weights of all
+     * the matching keywords are added to the relevancy.</li>
+     * </ul>
+     * The keywords are SQL <code>LIKE</code> patterns.
+     */
+    public Map<String, Long> search(Collection<String> andKeywords, Collection<Set<String>> orKeywordSets) throws GenericEntityException {
+        if (!changedProductIds.isEmpty()) {
+            update();
+        }
+        lock.readLock().lock();
+        try {
+            Map<Integer, Long> result = null;
+            for (String keyword : andKeywords) {
+                Map<Integer, Long> matches = new HashMap<>();
+                for (Postings keywordPostings : findPostings(keyword)) {
+                    keywordPostings.forEach((productNumber, weight) -> matches.merge(productNumber, weight, Math::max));
+                }
+                result = intersect(result, matches);
+                if (result.isEmpty()) {
+                    return new HashMap<>();
+                }
+            }
+            for (Set<String> orKeywordSet : orKeywordSets) {
+                Map<Integer, Long> matches = new HashMap<>();
+                for (String keyword : orKeywordSet) {
+                    for (Postings keywordPostings : findPostings(keyword)) {
+                        keywordPostings.forEach((productNumber, weight) -> matches.merge(productNumber, weight, Long::sum));
+                    }
+                }
+                result = intersect(result, matches);
+                if (result.isEmpty()) {
+                    return new HashMap<>();
+                }
+            }
+            Map<String, Long> relevancies = new HashMap<>();
+            if (result != null) {
+                for (Map.Entry<Integer, Long> entry : result.entrySet()) {
+                    relevancies.put(productIds.get(entry.getKey()), entry.getValue());
+                }
+            }
+            return relevancies;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Map<Integer, Long> intersect(Map<Integer, Long> result, Map<Integer, Long> matches) {
+        if (result == null) {
+            return matches;
+        }
+        Map<Integer, Long> intersection = new HashMap<>();
+        Map<Integer, Long> smaller = result.size() <= matches.size() ? result : matches;
+        Map<Integer, Long> larger = smaller == result ? matches : result;
+        for (Map.Entry<Integer, Long> entry : smaller.entrySet()) {
+            Long weight = larger.get(entry.getKey());
+            if (weight != null) {
+                intersection.put(entry.getKey(), entry.getValue() + weight);
+            }
+        }
+        return intersection;
+    }
+
+    /** Returns the lists of the keywords matching the <code>LIKE</code> pattern. */
+    private List<Postings> findPostings(String keyword) {
+        List<Postings> result = new ArrayList<>();
+        int wildcard = indexOfWildcard(keyword);
+        if (wildcard < 0) {
+            Postings keywordPostings = postings.get(keyword);
+            if (keywordPostings != null) {
+                result.add(keywordPostings);
+            }
+        } else if (wildcard == keyword.length() - 1 && keyword.charAt(wildcard) == '%') {
+            // prefix search, read the range of keywords starting with the prefix
+            String prefix = keyword.substring(0, wildcard);
+            for (Map.Entry<String, Postings> entry : postings.tailMap(prefix, true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                result.add(entry.getValue());
+            }
+        } else {
+            Pattern pattern = toPattern(keyword);
+            String prefix = keyword.substring(0, wildcard);
+            for (Map.Entry<String, Postings> entry : postings.tailMap(prefix, true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                if (pattern.matcher(entry.getKey()).matches()) {
+                    result.add(entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int indexOfWildcard(String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (keyword.charAt(i) == '%' || keyword.charAt(i) == '_') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static Pattern toPattern(String keyword) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            if (c == '%' || c == '_') {
+                if (i > start) {
+                    regex.append(Pattern.quote(keyword.substring(start, i)));
+                }
+                regex.append(c == '%' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < keyword.length()) {
+            regex.append(Pattern.quote(keyword.substring(start)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /** The products of a keyword and their weight, sorted by product number and stored as variable length integers. */
+    static final class Postings {
+        private final byte[] data;
+
+        Postings(Map<Integer, Long> products) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(products.size() * 2);
+            int previous = 0;
+            for (Map.Entry<Integer, Long> entry : new TreeMap<>(products).entrySet()) {
+                writeVarLong(out, entry.getKey() - previous);
+                writeVarLong(out, entry.getValue());
+                previous = entry.getKey();
+            }
+            this.data = out.toByteArray();
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            // zigzag encoding keeps the negative weights short
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.write((int) zigzag);
+        }
+
+        private void forEach(PostingConsumer consumer) {
+            int position = 0;
+            int productNumber = 0;
+            long[] value = new long[1];
+            while (position < data.length) {
+                position = readVarLong(position, value);
+                productNumber += (int) value[0];
+                position = readVarLong(position, value);
+                consumer.accept(productNumber, value[0]);
+            }
+        }
+
+        private int readVarLong(int position, long[] value) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value[0] = (zigzag >>> 1) ^ -(zigzag & 1);
+            return position;
+        }
+
+        Map<Integer, Long> toMap() {
+            Map<Integer, Long> products = new TreeMap<>();
+            forEach(products::put);
+            return products;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PostingConsumer {
+        void accept(int productNumber, long weight);
+    }
+}
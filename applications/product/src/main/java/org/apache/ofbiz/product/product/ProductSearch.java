@@ -22,6 +22,7 @@ import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -149,6 +150,8 @@ public class ProductSearch {
      * The type Product search context.
      */
     public static class ProductSearchContext {
+        /** Maximum number of products checked by one query when the keywords are searched in the keyword index */
+        private static final int KEYWORD_INDEX_CHUNK_SIZE = 500;
         private int index = 1;
         private List<EntityCondition> entityConditionList = new LinkedList<>();
         private List<String> orderByList = new LinkedList<>();
@@ -310,8 +313,15 @@ public class ProductSearch {
 
             // do the query
             ArrayList<String> productIds = null;
-            try (EntityListIterator eli = this.doQuery(delegator)) {
-                productIds = this.makeProductIdList(eli);
+            try {
+                if (ProductKeywordIndex.isEnabled(delegator)) {
+                    productIds = this.doIndexedKeywordSearch();
+                }
+                if (productIds == null) {
+                    try (EntityListIterator eli = this.doQuery(delegator)) {
+                        productIds = this.makeProductIdList(eli);
+                    }
+                }
             } catch (GenericEntityException e) {
                 Debug.logError(e, MODULE);
                 return null;
@@ -326,6 +336,67 @@ public class ProductSearch {
             return productIds;
         }
 
+        /**
+         * Searches the keywords in the {@link ProductKeywordIndex} instead of joining <code>ProductKeyword</code>, and
+         * checks the other constraints of the matching products with the database. The results are sorted by keyword
+         * relevancy.
+         * @return the product ids, or null if the search cannot use the keyword index and must be done by {@link #doQuery(Delegator)}
+         * @throws GenericEntityException
+         */
+        private ArrayList<String> doIndexedKeywordSearch() throws GenericEntityException {
+            if (orKeywordFixedSet.isEmpty() && andKeywordFixedSet.isEmpty() && keywordFixedOrSetAndList.isEmpty()) {
+                return null;
+            }
+            // the index does not keep the keyword types and statuses, and the other sort orders are done by the database
+            if (UtilValidate.isNotEmpty(keywordTypeIds) || UtilValidate.isNotEmpty(statusId)
+                    || (resultSortOrder != null && !(resultSortOrder instanceof SortKeywordRelevancy))) {
+                return null;
+            }
+            Map<String, Long> relevancies = null;
+            try {
+                List<Set<String>> orKeywordSets = new LinkedList<>(keywordFixedOrSetAndList);
+                if (!orKeywordFixedSet.isEmpty()) {
+                    orKeywordSets.add(orKeywordFixedSet);
+                }
+                relevancies = ProductKeywordIndex.getInstance(delegator).search(andKeywordFixedSet, orKeywordSets);
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error searching the product keyword index, searching the database instead", MODULE);
+                return null;
+            }
+            this.includedKeywordSearch = true;
+
+            List<String> productIdList = new ArrayList<>(relevancies.keySet());
+            Map<String, Long> productRelevancies = relevancies;
+            productIdList.sort(Comparator.comparing((String productId) -> productRelevancies.get(productId)).reversed()
+                    .thenComparing(Comparator.naturalOrder()));
+
+            this.finishCategoryAndFeatureConstraints();
+            if (!entityConditionList.isEmpty() && !productIdList.isEmpty()) {
+                dynamicViewEntity.addAlias("PROD", "mainProductId", "productId", null, null, null, null);
+                Set<String> matchingProductIds = new HashSet<>();
+                for (int i = 0; i < productIdList.size(); i += KEYWORD_INDEX_CHUNK_SIZE) {
+                    List<EntityCondition> conditions = new LinkedList<>(entityConditionList);
+                    conditions.add(EntityCondition.makeCondition("mainProductId", EntityOperator.IN, productIdList.subList(i,
+                            Math.min(i + KEYWORD_INDEX_CHUNK_SIZE, productIdList.size()))));
+                    try (EntityListIterator eli = EntityQuery.use(delegator).select("mainProductId").from(dynamicViewEntity)
+                            .where(conditions).distinct(true).queryIterator()) {
+                        GenericValue searchResult;
+                        while ((searchResult = eli.next()) != null) {
+                            matchingProductIds.add(searchResult.getString("mainProductId"));
+                        }
+                    }
+                }
+                productIdList.removeIf(productId -> !matchingProductIds.contains(productId));
+            }
+
+            this.totalResults = productIdList.size();
+            int fromIndex = Math.min(resultOffset != null && resultOffset > 1 ? resultOffset - 1 : 0, productIdList.size());
+            int toIndex = maxResults != null ? Math.min(fromIndex + maxResults, productIdList.size()) : productIdList.size();
+            Debug.logInfo("Got indexed keyword search values, keyword matches=" + relevancies.size() + ", totalResults=" + totalResults
+                    + ", maxResults=" + maxResults + ", resultOffset=" + resultOffset, MODULE);
+            return new ArrayList<>(productIdList.subList(fromIndex, toIndex));
+        }
+
         /**
          * Finish keyword constraints.
          */
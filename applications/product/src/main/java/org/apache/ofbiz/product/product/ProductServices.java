@@ -1553,4 +1553,27 @@ public class ProductServices {
         }
         return ServiceUtil.returnSuccess();
     }
+
+    /**
+     * Marks the product as changed in the in-memory keyword index; called after the keyword of a product is created,
+     * updated or deleted by a service.
+     */
+    public static Map<String, Object> updateProductKeywordIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        ProductKeywordIndex.productChanged(dctx.getDelegator(), (String) context.get("productId"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Loads the in-memory keyword index again, for the <code>ProductKeyword</code> records written without going through
+     * the keyword indexing or the keyword services, e.g. by a data import.
+     */
+    public static Map<String, Object> rebuildProductKeywordIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        try {
+            ProductKeywordIndex.rebuild(dctx.getDelegator());
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
 }
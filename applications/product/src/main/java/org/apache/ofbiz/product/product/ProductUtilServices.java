@@ -449,6 +449,7 @@ public final class ProductUtilServices {
                     Debug.logInfo("Test mode, would remove: " + product, MODULE);
                 } else {
                     product.removeRelated("ProductKeyword");
+                    ProductKeywordIndex.productChanged(delegator, product.getString("productId"));
                     product.remove();
                 }
             }
@@ -222,7 +222,7 @@ public final class ProductWorker {
 
         try {
             Map<String, Object> result = dispatcher.runSync("getInventoryAvailableByFacility",
-                                            UtilMisc.toMap("productId", productId, "facilityId", inventoryFacilityId));
+                                            UtilMisc.toMap("productId", productId, "facilityId", inventoryFacilityId, "useAggregate", Boolean.TRUE));
 
             availableToPromise = (BigDecimal) result.get("availableToPromiseTotal");
 
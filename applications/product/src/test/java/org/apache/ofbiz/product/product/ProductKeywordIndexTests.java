@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.product;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProductKeywordIndexTests {
+
+    private ProductKeywordIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ProductKeywordIndex(null);
+        Map<String, Map<String, Long>> keywords = new HashMap<>();
+        keywords.put("P1", UtilMisc.toMap("red", 5L, "shirt", 10L, "cotton", 2L));
+        keywords.put("P2", UtilMisc.toMap("red", 3L, "shoe", 7L));
+        keywords.put("P3", UtilMisc.toMap("blue", 4L, "shirt", 1L));
+        index.applyChanges(Arrays.asList("P1", "P2", "P3"), keywords);
+    }
+
+    private Map<String, Long> search(List<String> andKeywords, List<Set<String>> orKeywordSets) throws GenericEntityException {
+        return index.search(andKeywords, orKeywordSets);
+    }
+
+    @Test
+    public void testPostingsEncodeDecode() {
+        Map<Integer, Long> products = new HashMap<>();
+        products.put(70000, 0L);
+        products.put(0, 5L);
+        products.put(1001, Long.MIN_VALUE);
+        products.put(3, -2L);
+        products.put(1000, Long.MAX_VALUE);
+        Map<Integer, Long> decoded = new ProductKeywordIndex.Postings(products).toMap();
+        assertEquals("decoded products", new TreeMap<>(products), decoded);
+        assertEquals("sorted by product number", Arrays.asList(0, 3, 1000, 1001, 70000), Arrays.asList(decoded.keySet().toArray()));
+        assertTrue("empty postings", new ProductKeywordIndex.Postings(Collections.emptyMap()).toMap().isEmpty());
+    }
+
+    @Test
+    public void testLikePattern() {
+        Pattern pattern = ProductKeywordIndex.toPattern("a%b_c");
+        assertTrue("any then one character", pattern.matcher("axxxbyc").matches());
+        assertTrue("empty any", pattern.matcher("abyc").matches());
+        assertFalse("missing one character", pattern.matcher("abc").matches());
+        assertFalse("no trailing characters", pattern.matcher("abycd").matches());
+        Pattern quoted = ProductKeywordIndex.toPattern("a.b%");
+        assertTrue("literal dot", quoted.matcher("a.bz").matches());
+        assertFalse("dot is not a wildcard", quoted.matcher("axbz").matches());
+        assertTrue("percent only", ProductKeywordIndex.toPattern("%").matcher("").matches());
+    }
+
+    @Test
+    public void testLikeSearch() throws GenericEntityException {
+        assertEquals("exact", UtilMisc.toMap("P1", 10L, "P3", 1L), search(UtilMisc.toList("shirt"), Collections.emptyList()));
+        assertEquals("prefix", UtilMisc.toMap("P1", 10L, "P2", 7L, "P3", 1L), search(UtilMisc.toList("sh%"), Collections.emptyList()));
+        assertEquals("pattern", UtilMisc.toMap("P2", 7L), search(UtilMisc.toList("s_o%"), Collections.emptyList()));
+        assertEquals("leading wildcard", UtilMisc.toMap("P1", 2L, "P2", 7L), search(UtilMisc.toList("%o%"), Collections.emptyList()));
+        assertTrue("no match", search(UtilMisc.toList("green"), Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testAndOrScoring() throws GenericEntityException {
+        // AND: the best matching keyword of each pattern counts
+        assertEquals("and", UtilMisc.toMap("P1", 15L, "P2", 10L), search(UtilMisc.toList("red", "sh%"), Collections.emptyList()));
+        // OR: every matching keyword of the set counts
+        assertEquals("or", UtilMisc.toMap("P1", 15L, "P2", 10L, "P3", 1L),
+                search(Collections.emptyList(), UtilMisc.toList(UtilMisc.toSet("sh%", "red"))));
+        assertEquals("and with or", UtilMisc.toMap("P1", 15L, "P3", 5L),
+                search(UtilMisc.toList("shirt"), UtilMisc.toList(UtilMisc.toSet("red", "blue"))));
+        assertEquals("two or sets", UtilMisc.toMap("P1", 7L),
+                search(Collections.emptyList(), UtilMisc.toList(UtilMisc.toSet("red"), UtilMisc.toSet("cotton", "blue"))));
+        assertTrue("and without match", search(UtilMisc.toList("blue", "shoe"), Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testUpdateAndRemove() throws GenericEntityException {
+        index.applyChanges(UtilMisc.toList("P1"), UtilMisc.toMap("P1", UtilMisc.toMap("blue", 6L)));
+        assertEquals("old keyword removed", UtilMisc.toMap("P2", 3L), search(UtilMisc.toList("red"), Collections.emptyList()));
+        assertEquals("new keyword added", UtilMisc.toMap("P1", 6L, "P3", 4L), search(UtilMisc.toList("blue"), Collections.emptyList()));
+        assertTrue("unused keyword dropped", search(UtilMisc.toList("cotton"), Collections.emptyList()).isEmpty());
+
+        index.applyChanges(UtilMisc.toList("P2"), Collections.emptyMap());
+        assertTrue("removed product", search(UtilMisc.toList("red"), Collections.emptyList()).isEmpty());
+        assertTrue("removed product keyword", search(UtilMisc.toList("shoe"), Collections.emptyList()).isEmpty());
+
+        index.applyChanges(UtilMisc.toList("P2", "P4"), UtilMisc.toMap("P2", UtilMisc.toMap("red", 8L), "P4", UtilMisc.toMap("red", 1L)));
+        assertEquals("added again and new product", UtilMisc.toMap("P2", 8L, "P4", 1L),
+                search(UtilMisc.toList("red"), Collections.emptyList()));
+    }
+}
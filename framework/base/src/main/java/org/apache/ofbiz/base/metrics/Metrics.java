@@ -62,6 +62,15 @@ public interface Metrics {
     /** Returns the total number of processed events. */
     long getTotalEvents();
 
+    /**
+     * Returns the service time in milliseconds below which <code>percentile</code>
+     * percent of the events recorded since the last reset were processed.
+     */
+    long getServiceTimePercentile(double percentile);
+
+    /** Returns the longest service time in milliseconds recorded since the last reset. */
+    long getMaxServiceTime();
+
     /**
      * Records the service time for <code>numEvents</code> taking
      * <code>time</code> milliseconds to be processed.
@@ -30,6 +30,9 @@ package org.apache.ofbiz.base.metrics;
 
 import java.util.Collection;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.ofbiz.base.lang.ThreadSafe;
 import org.apache.ofbiz.base.util.Assert;
@@ -159,13 +162,20 @@ public final class MetricsFactory {
         return new TreeSet<>(METRICS_CACHE.values());
     }
 
+    /**
+     * Default <code>Metrics</code> implementation.
+     * <p>Recording is lock-free: counters are <code>LongAdder</code>s and the moving average is
+     * recalculated by whichever caller closes the estimation window, the others just skip it.</p>
+     */
     private static final class MetricsImpl implements Metrics, Comparable<Metrics> {
-        private int count = 0;
-        private long lastTime = System.currentTimeMillis();
-        private double serviceRate = 0.0;
-        private long totalServiceTime = 0;
-        private long totalEvents = 0;
-        private long cumulativeEvents = 0;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicBoolean updating = new AtomicBoolean();
+        private volatile long lastTime = System.currentTimeMillis();
+        private volatile double serviceRate = 0.0;
+        private final LongAdder totalServiceTime = new LongAdder();
+        private final LongAdder totalEvents = new LongAdder();
+        private final LongAdder cumulativeEvents = new LongAdder();
+        private final LatencyHistogram histogram = new LatencyHistogram();
         private final String name;
         private final int estimationSize;
         private final long estimationTime;
@@ -206,7 +216,7 @@ public final class MetricsFactory {
         }
 
         @Override
-        public synchronized double getServiceRate() {
+        public double getServiceRate() {
             return serviceRate;
         }
 
@@ -216,8 +226,18 @@ public final class MetricsFactory {
         }
 
         @Override
-        public synchronized long getTotalEvents() {
-            return cumulativeEvents;
+        public long getTotalEvents() {
+            return cumulativeEvents.sum();
+        }
+
+        @Override
+        public long getServiceTimePercentile(double percentile) {
+            return histogram.getValueAtPercentile(percentile);
+        }
+
+        @Override
+        public long getMaxServiceTime() {
+            return histogram.getMax();
         }
 
         @Override
@@ -226,33 +246,40 @@ public final class MetricsFactory {
         }
 
         @Override
-        public synchronized void recordServiceRate(int numEvents, long time) {
-            totalEvents += numEvents;
-            cumulativeEvents += numEvents;
-            totalServiceTime += time;
-            count++;
+        public void recordServiceRate(int numEvents, long time) {
+            totalEvents.add(numEvents);
+            cumulativeEvents.add(numEvents);
+            totalServiceTime.add(time);
+            if (numEvents > 0) {
+                histogram.record(time / numEvents, numEvents);
+            }
+            int currentCount = count.incrementAndGet();
             long curTime = System.currentTimeMillis();
-            if ((count == estimationSize) || (curTime - lastTime >= estimationTime)) {
-                if (totalEvents == 0) {
-                    totalEvents = 1;
+            if ((currentCount >= estimationSize || curTime - lastTime >= estimationTime) && updating.compareAndSet(false, true)) {
+                try {
+                    count.set(0);
+                    long events = totalEvents.sumThenReset();
+                    if (events == 0) {
+                        events = 1;
+                    }
+                    double rate = totalServiceTime.sumThenReset() / (double) events;
+                    serviceRate = (rate * smoothing) + (serviceRate * (1.0 - smoothing));
+                    lastTime = curTime;
+                } finally {
+                    updating.set(false);
                 }
-                double rate = totalServiceTime / (double) totalEvents;
-                serviceRate = (rate * smoothing) + (serviceRate * (1.0 - smoothing));
-                count = 0;
-                lastTime = curTime;
-                totalEvents = 0;
-                totalServiceTime = 0;
             }
         }
 
         @Override
-        public synchronized void reset() {
+        public void reset() {
             serviceRate = 0.0;
-            count = 0;
+            count.set(0);
             lastTime = System.currentTimeMillis();
-            totalEvents = 0;
-            totalServiceTime = 0;
-            cumulativeEvents = 0;
+            totalEvents.reset();
+            totalServiceTime.reset();
+            cumulativeEvents.reset();
+            histogram.reset();
         }
 
         @Override
@@ -283,6 +310,16 @@ public final class MetricsFactory {
             return 0;
         }
 
+        @Override
+        public long getServiceTimePercentile(double percentile) {
+            return 0;
+        }
+
+        @Override
+        public long getMaxServiceTime() {
+            return 0;
+        }
+
         @Override
         public void recordServiceRate(int numEvents, long time) {
         }
@@ -32,6 +32,7 @@ import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
+import org.apache.ofbiz.base.util.string.UelPath;
 import org.apache.ofbiz.base.util.string.UelUtil;
 
 /**
@@ -50,6 +51,8 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
     private final boolean isEmpty;
     private final String original;
     private final String bracketedOriginal;
+    /** The expression compiled once, if it is a simple path. */
+    private final UelPath path;
     private final FlexibleStringExpander fse;
     private final boolean isAscending;
 
@@ -75,6 +78,7 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
             }
         }
         this.bracketedOriginal = bracketedOriginal;
+        this.path = UelPath.compile(bracketedOriginal);
         this.isAscending = isAscending;
         this.fse = fse;
         if (Debug.verboseOn()) {
@@ -147,7 +151,7 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
         }
         Object obj = null;
         try {
-            obj = UelUtil.evaluate(base, getExpression(base));
+            obj = this.path != null ? this.path.evaluate(base) : UelUtil.evaluate(base, getExpression(base));
         } catch (PropertyNotFoundException e) {
             // PropertyNotFound exceptions are common, so log verbose.
             if (Debug.verboseOn()) {
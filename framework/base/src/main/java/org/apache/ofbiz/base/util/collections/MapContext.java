@@ -23,17 +23,18 @@ import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -44,22 +45,60 @@ import org.apache.ofbiz.base.util.UtilGenerics;
  *
  * Provide a combined view for a collection of maps which are organized in a deque.
  * All write operations affect only the head of the deque.
+ *
+ * The Maps put on the stack by {@link #push()} tell this context when a key is added to or removed from them,
+ * which lets the context remember in which Map it found a key and find it again without looking at the Maps
+ * above it. Contexts sharing the same Maps (see {@link MapStack#create(MapStack)}) share this bookkeeping, so
+ * a change made through one of them is seen by the others. Keys found below an existing Map pushed with
+ * {@link #push(Map)} are always looked up through the whole stack, since such a Map can change at any time.
  */
 public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
 
-    private Deque<Map<K, V>> contexts = new LinkedList<>();
+    /** The value of a key that is in none of the Maps of the stack. */
+    private static final Map<?, ?> MISSING = Collections.emptyMap();
+
+    private Deque<Map<K, V>> contexts = new ArrayDeque<>();
+
+    /** Changed each time a key is added to or removed from a Map made by {@link #push()}. */
+    private Generation generation = new Generation();
+    /** The Map containing a key, valid as long as the generation is the one the index was made for. */
+    private Map<Object, Map<K, V>> index = null;
+    private int indexGeneration;
+    private boolean indexed = true;
 
     /**
      * Gets contexts.
+     * <p>As the returned deque can be changed without this context knowing it, this context looks up keys
+     * through the whole stack once this method has been called.</p>
      * @return the contexts
      */
     public Deque<Map<K, V>> getContexts() {
+        indexed = false;
+        index = null;
         return contexts;
     }
 
+    /**
+     * Gets the Map on the top of the stack.
+     * @return the Map on the top of the stack
+     */
+    protected Map<K, V> getFirstContext() {
+        return contexts.getFirst();
+    }
+
+    /** Puts the Maps of another context on the bottom of the stack, sharing them with that context. */
+    void addAllContexts(MapContext<K, V> source) {
+        if (contexts.isEmpty()) {
+            generation = source.generation;
+        }
+        contexts.addAll(source.contexts);
+        index = null;
+    }
+
     /** Puts a new Map on the top of the stack */
     public void push() {
-        contexts.addFirst(new HashMap<>());
+        // an empty Map hides nothing, so the index stays valid
+        contexts.addFirst(new Level<>(generation));
     }
 
     /** Puts an existing Map on the top of the stack (top meaning will override lower layers on the stack) */
@@ -68,6 +107,7 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
             throw new IllegalArgumentException("Error: cannot push null existing Map onto a MapContext");
         }
         contexts.addFirst(existingMap);
+        index = null;
     }
 
     /** Puts an existing Map on the BOTTOM of the stack (bottom meaning will be overriden by lower layers on the stack,
@@ -77,12 +117,82 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
             throw new IllegalArgumentException("Error: cannot add null existing Map to bottom of a MapContext");
         }
         contexts.addLast(existingMap);
+        index = null;
     }
 
     /** Remove and returns the Map from the top of the stack; if there is only one Map on the stack it returns null and does not remove it */
     public Map<K, V> pop() {
         // always leave at least one Map in the List, ie never pop off the last Map
-        return contexts.size() > 1 ? contexts.removeFirst() : null;
+        if (contexts.size() <= 1) {
+            return null;
+        }
+        boolean indexValid = isIndexValid();
+        Map<K, V> popped = contexts.removeFirst();
+        if (isOwned(popped)) {
+            Level<K, V> level = (Level<K, V>) popped;
+            // the popped Map may still be on the stack of another context, which must not trust it anymore
+            level.detach();
+            if (indexValid) {
+                for (K key : level.keySet()) {
+                    index.remove(key);
+                }
+                indexGeneration = generation.value;
+            }
+        } else {
+            index = null;
+        }
+        return popped;
+    }
+
+    private boolean isOwned(Map<K, V> ctx) {
+        return ctx instanceof Level<?, ?> && ((Level<?, ?>) ctx).generation == generation;
+    }
+
+    private boolean isIndexValid() {
+        return index != null && indexGeneration == generation.value;
+    }
+
+    /**
+     * Finds the Map of the stack containing a key.
+     * @param key the key
+     * @return the first Map containing the key, or null if none does
+     */
+    private Map<K, V> findContext(Object key) {
+        if (!indexed) {
+            for (Map<K, V> ctx: contexts) {
+                if (ctx.containsKey(key)) {
+                    return ctx;
+                }
+            }
+            return null;
+        }
+        if (index == null) {
+            index = new HashMap<>();
+            indexGeneration = generation.value;
+        } else if (indexGeneration != generation.value) {
+            index.clear();
+            indexGeneration = generation.value;
+        }
+        Map<K, V> found = index.get(key);
+        if (found != null) {
+            return found == MISSING ? null : found;
+        }
+        boolean cacheable = true;
+        for (Map<K, V> ctx: contexts) {
+            cacheable = cacheable && isOwned(ctx);
+            /* Use `containsKey` rather than checking for null.
+               This allows a null value at the head of the deque to override the followings. */
+            if (ctx.containsKey(key)) {
+                if (cacheable) {
+                    index.put(key, ctx);
+                }
+                return ctx;
+            }
+        }
+        if (cacheable) {
+            index.put(key, UtilGenerics.cast(MISSING));
+        }
+        return null;
     }
 
     /* (non-Javadoc)
@@ -119,7 +229,7 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
      */
     @Override
     public boolean containsKey(Object key) {
-        return contexts.stream().anyMatch(ctx -> ctx.containsKey(key));
+        return findContext(key) != null;
     }
 
     /* (non-Javadoc)
@@ -131,14 +241,8 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
     }
 
     private V withContextContainingKey(Object key, Function<Map<K, V>, V> f) {
-        for (Map<K, V> ctx: contexts) {
-            /* Use `containsKey` rather than checking for null.
-               This allows a null value at the head of the deque to override the followings. */
-            if (ctx.containsKey(key)) {
-                return f.apply(ctx);
-            }
-        }
-        return null;
+        Map<K, V> ctx = findContext(key);
+        return ctx != null ? f.apply(ctx) : null;
     }
 
     /* (non-Javadoc)
@@ -168,7 +272,19 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
      */
     @Override
     public V put(K key, V value) {
-        return contexts.getFirst().put(key, value);
+        boolean indexValid = isIndexValid();
+        Map<K, V> top = contexts.getFirst();
+        V old = top.put(key, value);
+        if (indexValid) {
+            // the top Map now hides the key in the Maps below
+            if (isOwned(top)) {
+                index.put(key, top);
+            } else {
+                index.remove(key);
+            }
+            indexGeneration = generation.value;
+        }
+        return old;
     }
 
     /* (non-Javadoc)
@@ -176,7 +292,13 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
      */
     @Override
     public V remove(Object key) {
-        return contexts.getFirst().remove(key);
+        boolean indexValid = isIndexValid();
+        V old = contexts.getFirst().remove(key);
+        if (indexValid) {
+            index.remove(key);
+            indexGeneration = generation.value;
+        }
+        return old;
     }
 
     /* (non-Javadoc)
@@ -184,7 +306,19 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
      */
     @Override
     public void putAll(Map<? extends K, ? extends V> arg0) {
-        contexts.getFirst().putAll(arg0);
+        boolean indexValid = isIndexValid();
+        Map<K, V> top = contexts.getFirst();
+        top.putAll(arg0);
+        if (indexValid) {
+            if (isOwned(top)) {
+                for (K key : arg0.keySet()) {
+                    index.put(key, top);
+                }
+            } else {
+                index.keySet().removeAll(arg0.keySet());
+            }
+            indexGeneration = generation.value;
+        }
     }
 
     /* (non-Javadoc)
@@ -193,6 +327,7 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
     @Override
     public void clear() {
         contexts.getFirst().clear();
+        index = null;
     }
 
     /* (non-Javadoc)
@@ -249,4 +384,109 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
         }
         return fullMapString.toString();
     }
+
+    /** The number of times a key was added to or removed from the Maps shared by a group of contexts. */
+    private static final class Generation {
+        private int value;
+    }
+
+    /**
+     * A Map made by {@link MapContext#push()}, that changes the generation of its contexts when a key is added
+     * to or removed from it. Its views cannot be changed, as such changes could not be seen.
+     */
+    @SuppressWarnings("serial")
+    private static final class Level<K, V> extends HashMap<K, V> {
+        private transient Generation generation;
+
+        Level(Generation generation) {
+            this.generation = generation;
+        }
+
+        private void detach() {
+            changed();
+            generation = null;
+        }
+
+        private void changed() {
+            if (generation != null) {
+                generation.value++;
+            }
+        }
+
+        private <T> T track(int oldSize, T result) {
+            if (size() != oldSize) {
+                changed();
+            }
+            return result;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return track(size(), super.put(key, value));
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> m) {
+            int oldSize = size();
+            super.putAll(m);
+            track(oldSize, null);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return track(size(), super.remove(key));
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return track(size(), super.remove(key, value));
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            return track(size(), super.putIfAbsent(key, value));
+        }
+
+        @Override
+        public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+            return track(size(), super.computeIfAbsent(key, mappingFunction));
+        }
+
+        @Override
+        public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            return track(size(), super.computeIfPresent(key, remappingFunction));
+        }
+
+        @Override
+        public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            return track(size(), super.compute(key, remappingFunction));
+        }
+
+        @Override
+        public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+            return track(size(), super.merge(key, value, remappingFunction));
+        }
+
+        @Override
+        public void clear() {
+            int oldSize = size();
+            super.clear();
+            track(oldSize, null);
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return Collections.unmodifiableSet(super.keySet());
+        }
+
+        @Override
+        public Collection<V> values() {
+            return Collections.unmodifiableCollection(super.values());
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return Collections.unmodifiableSet(super.entrySet());
+        }
+    }
 }
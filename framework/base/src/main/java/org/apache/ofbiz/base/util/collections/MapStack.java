@@ -41,9 +41,9 @@ public class MapStack<K> extends MapContext<K, Object> {
     public static <K> MapStack<K> create(Map<K, Object> baseMap) {
         MapStack<K> newValue = new MapStack<>();
         if (baseMap instanceof MapStack) {
-            newValue.getContexts().addAll(((MapStack<K>) baseMap).getContexts());
+            newValue.addAllContexts((MapStack<K>) baseMap);
         } else {
-            newValue.getContexts().addFirst(baseMap);
+            newValue.push(baseMap);
         }
         return newValue;
     }
@@ -51,7 +51,7 @@ public class MapStack<K> extends MapContext<K, Object> {
     /** Does a shallow copy of the internal stack of the passed MapStack; enables simultaneous stacks that share common parent Maps */
     public static <K> MapStack<K> create(MapStack<K> source) {
         MapStack<K> newValue = new MapStack<>();
-        newValue.getContexts().addAll(source.getContexts());
+        newValue.addAllContexts(source);
         return newValue;
     }
 
@@ -625,6 +625,7 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
     /** An object that represents a currency portion of an expression. */
     protected static class CurrElem extends ArrayOffsetString {
         private final char[] valueStr;
+        private final UelPath valuePath;
         private final FlexibleStringExpander codeExpr;
 
         protected CurrElem(char[] chars, int offset, int length, int parseStart, int parseLength) {
@@ -635,12 +636,13 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
             this.codeExpr = FlexibleStringExpander.getInstance(parse, chars, parseStart + currencyPos + 10, closeParen - currencyPos - 10,
                     true);
             this.valueStr = OPEN_BRACKET.concat(parse.substring(0, currencyPos)).concat(CLOSE_BRACKET).toCharArray();
+            this.valuePath = UelPath.compile(new String(this.valueStr));
         }
 
         @Override
         protected Object get(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) {
             try {
-                Object obj = UelUtil.evaluate(context, new String(this.valueStr));
+                Object obj = this.valuePath != null ? this.valuePath.evaluate(context) : UelUtil.evaluate(context, new String(this.valueStr));
                 if (obj != null) {
                     String currencyCode = this.codeExpr.expandString(context, timeZone, locale);
                     return UtilFormatOut.formatCurrency(new BigDecimal(obj.toString()), currencyCode, locale);
@@ -748,18 +750,21 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
     /** An object that represents a simple, non-nested expression. */
     protected static class VarElem extends ArrayOffsetString {
         private final char[] bracketedOriginal;
+        /** The expression compiled once, if it is a simple path. */
+        private final UelPath path;
 
         protected VarElem(char[] chars, int offset, int length, int parseStart, int parseLength) {
             super(chars, offset, length);
             this.bracketedOriginal = OPEN_BRACKET.concat(UelUtil.prepareExpression(new String(chars, parseStart, parseLength)))
                     .concat(CLOSE_BRACKET).toCharArray();
+            this.path = UelPath.compile(new String(this.bracketedOriginal));
         }
 
         @Override
         protected Object get(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) {
             Object obj = null;
             try {
-                obj = UelUtil.evaluate(context, new String(this.bracketedOriginal));
+                obj = this.path != null ? this.path.evaluate(context) : UelUtil.evaluate(context, new String(this.bracketedOriginal));
             } catch (PropertyNotFoundException e) {
                 if (Debug.verboseOn()) {
                     Debug.logVerbose("Error evaluating expression " + this + ": " + e, MODULE);
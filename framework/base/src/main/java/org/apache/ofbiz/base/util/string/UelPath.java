@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.string;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.el.PropertyNotFoundException;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.collections.LocalizedMap;
+
+/**
+ * A UEL expression made only of a variable followed by properties and indexes, like <code>${a.b[0]['c']}</code>,
+ * compiled once into the keys to get from each Map or List on the path.
+ * <p>The value is found with the same rules as {@link UelUtil#evaluate(Map, String)} for Maps, LocalizedMaps and
+ * Lists, without going through the EL resolvers. Any other object on the path, like a bean or a DOM node, makes
+ * the evaluation fall back to {@link UelUtil#evaluate(Map, String)}.</p>
+ */
+@SuppressWarnings("serial")
+public final class UelPath implements Serializable {
+    private static final String MODULE = UelPath.class.getName();
+    /** The words of the expression language that cannot be identifiers. */
+    private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList("and", "or", "not", "eq", "ne", "lt", "gt", "le", "ge",
+            "true", "false", "null", "instanceof", "empty", "div", "mod"));
+
+    private final String expression;
+    private final String variable;
+    /** The key of each step of the path: a <code>String</code> for a property, a <code>Long</code> for an index. */
+    private final Object[] properties;
+
+    private UelPath(String expression, String variable, Object[] properties) {
+        this.expression = expression;
+        this.variable = variable;
+        this.properties = properties;
+    }
+
+    /**
+     * Compiles an expression.
+     * @param expression a prepared expression, like <code>${a.b}</code>
+     * @return the compiled expression, or null if the expression is not a simple path
+     */
+    public static UelPath compile(String expression) {
+        if (expression == null || !expression.startsWith(FlexibleStringExpander.OPEN_BRACKET)
+                || !expression.endsWith(FlexibleStringExpander.CLOSE_BRACKET)) {
+            return null;
+        }
+        String path = expression.substring(2, expression.length() - 1).trim();
+        int end = identifierEnd(path, 0);
+        if (end < 0) {
+            return null;
+        }
+        String variable = path.substring(0, end);
+        List<Object> properties = new ArrayList<>();
+        int pos = end;
+        while (pos < path.length()) {
+            char c = path.charAt(pos);
+            if (c == '.') {
+                end = identifierEnd(path, pos + 1);
+                if (end < 0) {
+                    return null;
+                }
+                properties.add(path.substring(pos + 1, end));
+                pos = end;
+            } else if (c == '[') {
+                int close = path.indexOf(']', pos);
+                if (close < 0) {
+                    return null;
+                }
+                Object property = parseIndex(path.substring(pos + 1, close));
+                if (property == null) {
+                    return null;
+                }
+                properties.add(property);
+                pos = close + 1;
+            } else {
+                return null;
+            }
+        }
+        return new UelPath(expression, variable, properties.toArray());
+    }
+
+    private static int identifierEnd(String path, int start) {
+        if (start >= path.length() || !Character.isJavaIdentifierStart(path.charAt(start))) {
+            return -1;
+        }
+        int end = start + 1;
+        while (end < path.length() && Character.isJavaIdentifierPart(path.charAt(end))) {
+            end++;
+        }
+        return RESERVED_WORDS.contains(path.substring(start, end)) ? -1 : end;
+    }
+
+    private static Object parseIndex(String index) {
+        if (index.length() >= 2) {
+            char quote = index.charAt(0);
+            if ((quote == '\'' || quote == '"') && index.charAt(index.length() - 1) == quote) {
+                String key = index.substring(1, index.length() - 1);
+                return key.indexOf(quote) < 0 && key.indexOf('\\') < 0 ? key : null;
+            }
+        }
+        if (index.isEmpty() || index.length() > 18) {
+            return null;
+        }
+        for (int i = 0; i < index.length(); i++) {
+            if (index.charAt(i) < '0' || index.charAt(i) > '9') {
+                return null;
+            }
+        }
+        return Long.valueOf(index);
+    }
+
+    /**
+     * Gets the expression this path was compiled from.
+     * @return the expression
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluates the path.
+     * @param context the variables
+     * @return the value at the end of the path, or null if there is a null value on the path
+     * @throws PropertyNotFoundException if the variable is not found, like {@link UelUtil#evaluate(Map, String)}
+     */
+    public Object evaluate(Map<String, ? extends Object> context) {
+        Object base = UelUtil.resolveVariable(variable, context, null);
+        if (base == null) {
+            throw new PropertyNotFoundException("Cannot resolve identifier '" + variable + "'");
+        }
+        for (Object property : properties) {
+            if (base == null) {
+                return null;
+            }
+            if (base instanceof LocalizedMap<?> && base instanceof Map<?, ?>) {
+                base = UelUtil.resolveVariable(property.toString(), UtilGenerics.cast(base), getLocale(context));
+            } else if (base instanceof Map<?, ?>) {
+                Map<String, Object> map = UtilGenerics.cast(base);
+                base = property instanceof String ? UelUtil.resolveVariable((String) property, map, null) : map.get(property);
+            } else if (base instanceof List<?> && property instanceof Long) {
+                List<?> list = (List<?>) base;
+                long index = (Long) property;
+                base = index < list.size() ? list.get((int) index) : null;
+            } else {
+                return UelUtil.evaluate(context, expression);
+            }
+        }
+        return base;
+    }
+
+    /** Gets the locale used to get a value from a LocalizedMap, like the <code>MapELResolver</code> of UelUtil. */
+    private static Locale getLocale(Map<String, ? extends Object> context) {
+        Locale locale = null;
+        try {
+            locale = (Locale) UelUtil.resolveVariable(UelUtil.getLocalizedMapLocaleKey(), context, null);
+            if (locale == null) {
+                locale = (Locale) UelUtil.resolveVariable("locale", context, null);
+            }
+        } catch (Exception e) {
+            Debug.logWarning("Exception thrown while getting LocalizedMap element, locale = " + locale + ", exception " + e, MODULE);
+        }
+        return locale != null ? locale : Locale.getDefault();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -494,7 +494,7 @@ public final class UelUtil {
         return result;
     }
 
-    private static Object resolveVariable(String variable, Map<String, ? extends Object> variables, Locale locale) {
+    static Object resolveVariable(String variable, Map<String, ? extends Object> variables, Locale locale) {
         Object obj = null;
         String createObjectType = null;
         String name = variable;
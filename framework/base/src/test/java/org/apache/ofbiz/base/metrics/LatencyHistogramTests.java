@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.base.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long highest = LatencyHistogram.bucketHighestValue(index);
+            assertTrue("value " + value + " is in its bucket", value <= highest);
+            assertTrue("bucket of " + value + " is at most 1/32 too wide", highest - value <= Math.max(value / 32, 0));
+            assertEquals("bucket index of " + value + " is monotonic", index, LatencyHistogram.bucketIndex(highest));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("empty histogram", 0, histogram.getValueAtPercentile(99));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals("count", 1000, histogram.getCount());
+        assertEquals("max", 1000, histogram.getMax());
+        assertEquals("p0", 1, histogram.getValueAtPercentile(0));
+        assertEquals("p100", 1000, histogram.getValueAtPercentile(100));
+        assertWithin("p50", 500, histogram.getValueAtPercentile(50));
+        assertWithin("p95", 950, histogram.getValueAtPercentile(95));
+        assertWithin("p99", 990, histogram.getValueAtPercentile(99));
+        histogram.reset();
+        assertEquals("count after reset", 0, histogram.getCount());
+        assertEquals("max after reset", 0, histogram.getMax());
+    }
+
+    @Test
+    public void testMetrics() {
+        Metrics metrics = MetricsFactory.getInstance("LatencyHistogramTests", 10, 1000, 1.0, 0.0);
+        for (int i = 0; i < 10; i++) {
+            metrics.recordServiceRate(1, 20);
+        }
+        metrics.recordServiceRate(1, 300);
+        assertEquals("total events", 11, metrics.getTotalEvents());
+        assertEquals("service rate", 20.0, metrics.getServiceRate(), 0.0);
+        assertEquals("p50", 20, metrics.getServiceTimePercentile(50));
+        assertEquals("max", 300, metrics.getMaxServiceTime());
+        metrics.reset();
+        assertEquals("total events after reset", 0, metrics.getTotalEvents());
+        assertEquals("max after reset", 0, metrics.getMaxServiceTime());
+    }
+
+    private static void assertWithin(String label, long expected, long actual) {
+        assertTrue(label + ": " + actual + " >= " + expected, actual >= expected);
+        assertTrue(label + ": " + actual + " within 1/32 of " + expected, actual - expected <= expected / 32);
+    }
+}
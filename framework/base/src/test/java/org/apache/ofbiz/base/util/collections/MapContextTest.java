@@ -20,9 +20,14 @@ package org.apache.ofbiz.base.util.collections;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -93,4 +98,46 @@ public class MapContextTest {
         assertThat("insertion order of LinkedHashMap is preserved by the 'values' method",
                 mc.values(), contains("1", "1", "3", "8", "1", "14"));
     }
+
+    // Checks that the keys found once are found again after changes made
+    // through the context, through a context sharing its Maps and directly in the Maps.
+    @Test
+    public void lookupsFollowChanges() {
+        MapStack<String> ms = MapStack.create();
+        ms.put("a", "base");
+        MapStack<String> global = ms.standAloneStack();
+        ms.push();
+        assertEquals("base", ms.get("a"));
+        assertNull(ms.get("b"));
+
+        ms.put("a", "top");
+        assertEquals("top", ms.get("a"));
+        global.put("b", "global");
+        assertEquals("global", ms.get("b"));
+
+        MapStack<String> child = ms.standAloneChildStack();
+        child.put("c", "child");
+        assertFalse(ms.containsKey("c"));
+        assertNull(child.get("e"));
+        ms.getFirstContext().put("e", "direct");
+        assertEquals("direct", child.get("e"));
+        assertNull(global.get("e"));
+
+        ms.put("d", null);
+        assertTrue(ms.containsKey("d"));
+        Map<String, Object> popped = ms.pop();
+        assertEquals("top", popped.get("a"));
+        assertEquals("base", ms.get("a"));
+        assertFalse(ms.containsKey("d"));
+        popped.put("a", "detached");
+        assertEquals("base", ms.get("a"));
+
+        Map<String, Object> existing = new HashMap<>();
+        ms.push(existing);
+        assertEquals("base", ms.get("a"));
+        existing.put("a", "existing");
+        assertEquals("existing", ms.get("a"));
+        existing.remove("a");
+        assertEquals("base", ms.get("a"));
+    }
 }
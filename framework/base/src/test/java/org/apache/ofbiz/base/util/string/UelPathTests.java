@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.string;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.el.PropertyNotFoundException;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.junit.Test;
+
+public class UelPathTests {
+
+    private static void pathTest(String label, String expression, Map<String, Object> context) {
+        UelPath path = UelPath.compile(expression);
+        assertNotNull(label + ":compiled", path);
+        Object expected;
+        try {
+            expected = UelUtil.evaluate(context, expression);
+        } catch (PropertyNotFoundException e) {
+            try {
+                path.evaluate(context);
+                fail(label + ":PropertyNotFoundException expected");
+            } catch (PropertyNotFoundException e2) {
+                return;
+            }
+            return;
+        }
+        assertEquals(label, expected, path.evaluate(context));
+    }
+
+    @Test
+    public void compile() {
+        assertNull(UelPath.compile("${a + 1}"));
+        assertNull(UelPath.compile("${a.b()}"));
+        assertNull(UelPath.compile("${empty a}"));
+        assertNull(UelPath.compile("${a[b]}"));
+        assertNull(UelPath.compile("${a['b\\'c']}"));
+        assertNull(UelPath.compile("Hello ${a}"));
+        assertNotNull(UelPath.compile("${a.b[0]['c'][\"d\"]}"));
+    }
+
+    @Test
+    public void sameValuesAsUel() {
+        Map<String, Object> context = new HashMap<>();
+        context.put("var", "World");
+        context.put("nullVar", null);
+        context.put("amount", new BigDecimal("1.5"));
+        context.put("list", UtilMisc.toList("a", UtilMisc.toMap("key", "value")));
+        context.put("map", UtilMisc.toMap("var", "inner", "list", UtilMisc.toList("x")));
+        context.put("bean", new StringBuilder("bean"));
+        pathTest("variable", "${var}", context);
+        pathTest("missing variable", "${missing}", context);
+        pathTest("null variable", "${nullVar.noProp}", context);
+        pathTest("map property", "${map.var}", context);
+        pathTest("map missing property", "${map.missing.deeper}", context);
+        pathTest("map bracket", "${map['var']}", context);
+        pathTest("list index", "${list[0]}", context);
+        pathTest("list out of range", "${list[5]}", context);
+        pathTest("list then map", "${list[1].key}", context);
+        pathTest("map then list", "${map.list[0]}", context);
+        pathTest("string suffix", "${missing$string}", context);
+        pathTest("bigDecimal suffix", "${map.missing$bigDecimal}", context);
+        pathTest("bean property", "${bean.length}", context);
+    }
+}
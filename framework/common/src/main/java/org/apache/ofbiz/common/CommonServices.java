@@ -508,6 +508,10 @@ public class CommonServices {
             metricsMap.put("serviceRate", metrics.getServiceRate());
             metricsMap.put("threshold", metrics.getThreshold());
             metricsMap.put("totalEvents", metrics.getTotalEvents());
+            metricsMap.put("p50", metrics.getServiceTimePercentile(50));
+            metricsMap.put("p95", metrics.getServiceTimePercentile(95));
+            metricsMap.put("p99", metrics.getServiceTimePercentile(99));
+            metricsMap.put("maxTime", metrics.getMaxServiceTime());
             metricsMapList.add(metricsMap);
         }
         Map<String, Object> result = ServiceUtil.returnSuccess();
@@ -479,7 +479,8 @@ public class FindServices {
         Integer listSize = 0;
         try (EntityListIterator it = (EntityListIterator) result.get("listIt")) {
             list = it.getPartialList(start + 1, viewSize); // list starts at '1'
-            listSize = it.getResultsSizeAfterPartialList();
+            // the size has been determined by executeFind with the paginateCount strategy
+            listSize = (Integer) result.get("listSize");
         } catch (ClassCastException | NullPointerException | GenericEntityException e) {
             Debug.logInfo("Problem getting partial list" + e, MODULE);
         }
@@ -503,6 +504,7 @@ public class FindServices {
         Map<String, ?> inputFields = checkMap(context.get("inputFields"), String.class, Object.class); // Input
         String noConditionFind = (String) context.get("noConditionFind");
         String distinct = (String) context.get("distinct");
+        String paginateCount = (String) context.get("paginateCount");
         List<String> fieldList = UtilGenerics.cast(context.get("fieldList"));
         GenericValue userLogin = (GenericValue) context.get("userLogin");
         Locale locale = (Locale) context.get("locale");
@@ -563,7 +565,7 @@ public class FindServices {
                                                                              "fieldList", fieldList, "entityConditionList", exprList,
                                                                              "noConditionFind", noConditionFind, "distinct", distinct,
                                                                              "locale", context.get("locale"), "timeZone", context.get("timeZone"),
-                                                                             "maxRows", maxRows));
+                                                                             "maxRows", maxRows, "paginateCount", paginateCount));
         } catch (GenericServiceException gse) {
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "CommonFindErrorRetrieveIterator",
                     UtilMisc.toMap("errorString", gse.getMessage()), locale));
@@ -578,6 +580,7 @@ public class FindServices {
         Map<String, Object> results = ServiceUtil.returnSuccess();
         results.put("listIt", executeResult.get("listIt"));
         results.put("listSize", executeResult.get("listSize"));
+        results.put("listSizeExact", executeResult.get("listSizeExact"));
         results.put("queryString", prepareResult.get("queryString"));
         results.put("queryStringMap", prepareResult.get("queryStringMap"));
         return results;
@@ -694,7 +697,23 @@ public class FindServices {
         }
         Integer maxRows = (Integer) context.get("maxRows");
         maxRows = maxRows != null ? maxRows : -1;
+        boolean paged = maxRows > 0;
         Delegator delegator = dctx.getDelegator();
+        // with the estimate and none strategies the rows are only counted up to maxSize, see widget.form.paginateCount
+        String paginateCount = (String) context.get("paginateCount");
+        if (UtilValidate.isEmpty(paginateCount)) {
+            paginateCount = EntityUtilProperties.getPropertyValue("widget", "widget.form.paginateCount", "count", delegator);
+        }
+        int maxSize = -1;
+        if ("none".equals(paginateCount) && paged) {
+            maxSize = maxRows;
+        } else if ("estimate".equals(paginateCount) || "none".equals(paginateCount)) {
+            maxSize = Math.max(maxRows, UtilProperties.getPropertyAsInteger("widget", "widget.form.paginateCountEstimateMax", 1000));
+        }
+        if (maxSize >= 0 && paged) {
+            // a paged caller only reads up to maxRows, one more row tells whether there is a next page
+            maxRows = maxSize + 1;
+        }
         // Retrieve entities  - an iterator over all the values
         EntityListIterator listIt = null;
         int listSize = 0;
@@ -706,14 +725,17 @@ public class FindServices {
                 } else {
                     query.from(entityName);
                 }
-                listIt = query.select(fieldSet)
+                query.select(fieldSet)
                         .where(entityConditionList)
                         .orderBy(orderByList)
                         .cursorScrollInsensitive()
-                        .maxRows(maxRows)
-                        .distinct(distinct)
-                        .queryIterator();
-                listSize = listIt.getResultsSizeAfterPartialList();
+                        .distinct(distinct);
+                if (paged) {
+                    // an unpaged caller reads the complete list, only the count is limited to maxSize
+                    query.maxRows(maxRows);
+                }
+                listIt = query.queryIterator();
+                listSize = maxSize >= 0 ? listIt.getResultsSizeUpTo(maxSize) : listIt.getResultsSizeAfterPartialList();
             }
         } catch (GenericEntityException e) {
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "CommonFindErrorRunning",
@@ -724,6 +746,7 @@ public class FindServices {
         Map<String, Object> results = ServiceUtil.returnSuccess();
         results.put("listIt", listIt);
         results.put("listSize", listSize);
+        results.put("listSizeExact", maxSize < 0 || listSize <= maxSize);
         return results;
     }
 
@@ -27,6 +27,7 @@ import java.util.Map;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -127,6 +128,7 @@ public class PerformFindTests extends OFBizTestCase {
         performFindGroupOrAnd();
         performFindDateFindAndIgnoreCase();
         performFindFilterByDateWithDedicateDateField();
+        performFindPaginateCount();
     }
 
     private void performFindConditionFieldEquals() throws Exception {
@@ -348,4 +350,51 @@ public class PerformFindTests extends OFBizTestCase {
         foundElements = getCompleteList(result);
         assertEquals("performFind search with filterDate Y and specific date field name", 4, foundElements.size());
     }
+
+    private void performFindPaginateCount() throws Exception {
+        GenericValue userLogin = getUserLogin("system");
+        prepareData();
+
+        LocalDispatcher dispatcher = getDispatcher();
+        String estimateMax = UtilProperties.getPropertyValue("widget", "widget.form.paginateCountEstimateMax");
+        UtilProperties.setPropertyValueInMemory("widget", "widget.form.paginateCountEstimateMax", "3");
+        try {
+            //first test unpaged with estimate, the count is limited but not the list
+            Map<String, Object> inputFields = UtilMisc.toMap("testingTypeId", "PERFOMFINDTEST");
+            Map<String, Object> performFindMap = UtilMisc.toMap("userLogin", userLogin, "entityName", "Testing",
+                    "inputFields", inputFields, "paginateCount", "estimate");
+            Map<String, Object> result = dispatcher.runSync("performFind", performFindMap);
+            assertTrue(ServiceUtil.isSuccess(result));
+            assertEquals("performFind unpaged estimate listSize", 4, result.get("listSize"));
+            assertEquals("performFind unpaged estimate listSizeExact", Boolean.FALSE, result.get("listSizeExact"));
+            List<GenericValue> foundElements = getCompleteList(result);
+            assertEquals("performFind unpaged estimate complete list", 9, foundElements.size());
+
+            //second test unpaged with none
+            performFindMap.put("paginateCount", "none");
+            result = dispatcher.runSync("performFind", performFindMap);
+            assertTrue(ServiceUtil.isSuccess(result));
+            foundElements = getCompleteList(result);
+            assertEquals("performFind unpaged none complete list", 9, foundElements.size());
+
+            //third test paged with none, the rows are counted up to the end of the page
+            performFindMap.put("viewIndex", 0);
+            performFindMap.put("viewSize", 2);
+            result = dispatcher.runSync("performFind", performFindMap);
+            assertTrue(ServiceUtil.isSuccess(result));
+            assertEquals("performFind paged none listSize", 3, result.get("listSize"));
+            assertEquals("performFind paged none listSizeExact", Boolean.FALSE, result.get("listSizeExact"));
+            getCompleteList(result);
+
+            //fourth test with count, the exact size
+            performFindMap.put("paginateCount", "count");
+            result = dispatcher.runSync("performFind", performFindMap);
+            assertTrue(ServiceUtil.isSuccess(result));
+            assertEquals("performFind count listSize", 9, result.get("listSize"));
+            assertEquals("performFind count listSizeExact", Boolean.TRUE, result.get("listSizeExact"));
+            getCompleteList(result);
+        } finally {
+            UtilProperties.setPropertyValueInMemory("widget", "widget.form.paginateCountEstimateMax", estimateMax);
+        }
+    }
 }
@@ -22,6 +22,7 @@ package org.apache.ofbiz.entity;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -55,6 +56,7 @@ import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.entity.cache.Cache;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.DelegatorElement;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
@@ -105,6 +107,9 @@ public class GenericDelegator implements Delegator {
     private static final boolean ALWAYS_USE_TRANS = true;
     // TODO should this is be handled by tenant?
     private static final boolean SAVE_ENTITY_SYNC_REMOVE_INFO = UtilProperties.getPropertyAsBoolean("general", "saveEntitySyncRemoveInfo", false);
+    private static final boolean SAVE_ENTITY_SYNC_CHANGE_INFO = UtilProperties.getPropertyAsBoolean("general", "saveEntitySyncChangeInfo", false);
+    /** The most values storeAll looks up with one query, and creates with one JDBC batch. */
+    private static final int STORE_ALL_CHUNK_SIZE = 500;
 
     private String delegatorBaseName = null;
     private String delegatorFullName = null;
@@ -128,6 +133,7 @@ public class GenericDelegator implements Delegator {
      * doesn't know anything about the Visit entity) */
     private static final ThreadLocal<List<String>> SESSION_IDENTIFIER_STACK = new ThreadLocal<>();
 
+    private boolean entitySyncChangeInfoEnabled = SAVE_ENTITY_SYNC_CHANGE_INFO;
     private boolean testMode = false;
     private boolean testRollbackInProgress = false;
     private static final AtomicReferenceFieldUpdater<GenericDelegator, LinkedBlockingDeque<?>> TEST_OPERATIONS_UPDATER =
@@ -851,6 +857,9 @@ public class GenericDelegator implements Delegator {
                     ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_CREATE, value, false);
                     this.clearCacheLine(value);
                 }
+                if (this.entitySyncChangeInfoEnabled) {
+                    this.saveEntitySyncChangeInfo(value, EntityEcaHandler.OP_CREATE);
+                }
                 ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_CREATE, value, false);
             }
 
@@ -909,6 +918,9 @@ public class GenericDelegator implements Delegator {
                     ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_CREATE, value, false);
                     this.clearCacheLine(value);
                 }
+                if (this.entitySyncChangeInfoEnabled) {
+                    this.saveEntitySyncChangeInfo(value, EntityEcaHandler.OP_CREATE);
+                }
                 ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_CREATE, value, false);
             }
 
@@ -949,6 +961,11 @@ public class GenericDelegator implements Delegator {
                     entityValues.forEach(v ->
                             storeForTestRollback(new TestOperation(OperationType.INSERT, v)));
                 }
+                if (this.entitySyncChangeInfoEnabled) {
+                    for (GenericValue entityValue : entityValues) {
+                        this.saveEntitySyncChangeInfo(entityValue, EntityEcaHandler.OP_CREATE);
+                    }
+                }
                 if (distribute) {
                     this.clearCacheLine(entityName);
                 }
@@ -1035,6 +1052,39 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /**
+     * Save entity sync change info, so that an entity sync can find the created and updated values without looking at each entity.
+     * @param value the value created or updated
+     * @param operation the operation, {@link EntityEcaHandler#OP_CREATE} or {@link EntityEcaHandler#OP_STORE}
+     * @throws GenericEntityException the generic entity exception
+     */
+    protected void saveEntitySyncChangeInfo(GenericEntity value, String operation) throws GenericEntityException {
+        // don't store change info on entities without stamps, as entity sync does not look at them
+        if (value.getModelEntity().getNoAutoStamp() || this.testRollbackInProgress) {
+            return;
+        }
+
+        // don't store change info on things changed by an entity sync, nor on the change info itself
+        if (value.getIsFromEntitySync() || "EntitySyncChange".equals(value.getEntityName())) {
+            return;
+        }
+
+        String serializedPK = null;
+        try {
+            serializedPK = XmlSerializer.serialize(value.getPrimaryKey());
+        } catch (SerializeException | IOException e) {
+            Debug.logError(e, "Could not serialize primary key to save EntitySyncChange", MODULE);
+        }
+
+        if (serializedPK != null) {
+            GenericValue entitySyncChange = this.makeValue("EntitySyncChange");
+            entitySyncChange.set("changedEntityName", value.getEntityName());
+            entitySyncChange.set("changeOperation", operation);
+            entitySyncChange.set("primaryKeyChanged", serializedPK);
+            this.createSetNextSeqId(entitySyncChange);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#removeByPrimaryKey(org.apache.ofbiz.entity.GenericPK)
      */
@@ -1279,7 +1329,7 @@ public class GenericDelegator implements Delegator {
             GenericHelper helper = getEntityHelper(entityName);
 
             List<GenericValue> updatedEntities = null;
-            if (testMode) {
+            if (testMode || this.entitySyncChangeInfoEnabled) {
                 updatedEntities = this.findList(entityName, condition, null, null, null, false);
             }
 
@@ -1288,6 +1338,12 @@ public class GenericDelegator implements Delegator {
                 this.clearCacheLine(entityName);
             }
 
+            if (this.entitySyncChangeInfoEnabled) {
+                for (GenericValue entity : updatedEntities) {
+                    this.saveEntitySyncChangeInfo(entity, EntityEcaHandler.OP_STORE);
+                }
+            }
+
             if (testMode) {
                 for (GenericValue entity : updatedEntities) {
                     storeForTestRollback(new TestOperation(OperationType.UPDATE, entity));
@@ -1337,6 +1393,10 @@ public class GenericDelegator implements Delegator {
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_STORE, value, false);
             this.clearCacheLine(value);
 
+            if (this.entitySyncChangeInfoEnabled) {
+                this.saveEntitySyncChangeInfo(value, EntityEcaHandler.OP_STORE);
+            }
+
             if (testMode) {
                 storeForTestRollback(new TestOperation(OperationType.UPDATE, updatedEntity));
             }
@@ -1384,10 +1444,16 @@ public class GenericDelegator implements Delegator {
         try {
             beganTransaction = TransactionUtil.begin();
 
-            for (GenericValue value: values) {
+            // the existing values are found for a chunk of values at a time, the values of the chunk already created are added to them
+            Map<String, GenericValue> existingValues = Collections.emptyMap();
+            int chunkEnd = 0;
+            // the values to create with one JDBC batch, all of the same entity and in the order of the list
+            List<GenericValue> valuesToInsert = new ArrayList<>();
+            Map<String, Boolean> insertByBatch = new HashMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                GenericValue value = values.get(i);
                 String entityName = value.getEntityName();
                 GenericPK primaryKey = value.getPrimaryKey();
-                GenericHelper helper = getEntityHelper(entityName);
 
                 // exists?
                 // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
@@ -1395,20 +1461,47 @@ public class GenericDelegator implements Delegator {
                     throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: "
                             + primaryKey);
                 }
-                GenericValue existing;
-                try {
-                    existing = helper.findByPrimaryKey(primaryKey);
-                } catch (GenericEntityNotFoundException e) {
-                    existing = null;
+                if (i == chunkEnd) {
+                    this.createAllInBatch(valuesToInsert);
+                    chunkEnd = Math.min(values.size(), i + STORE_ALL_CHUNK_SIZE);
+                    existingValues = this.findExistingValues(values.subList(i, chunkEnd));
+                }
+                String existingKey = entityName + "::" + primaryKey.getPkShortValueString();
+                GenericValue existing = existingValues.get(existingKey);
+                if (existing == null && !hasStringPk(primaryKey)) {
+                    // the key read back from the database may not be written the same, e.g. a timestamp or a decimal:
+                    // look for the value by its key, after creating the values waiting for the batch since one may have the same key
+                    this.createAllInBatch(valuesToInsert);
+                    existing = this.findExistingValue(primaryKey);
+                    if (existing != null) {
+                        existingValues.put(existingKey, existing);
+                    }
                 }
 
                 if (existing == null) {
                     if (storeOptions.isCreateDummyFks()) {
                         value.checkFks(true);
                     }
-                    this.create(value);
+                    Boolean canInsertByBatch = insertByBatch.get(entityName);
+                    if (canInsertByBatch == null) {
+                        canInsertByBatch = this.canInsertByBatch(value.getModelEntity(), storeOptions);
+                        insertByBatch.put(entityName, canInsertByBatch);
+                    }
+                    if (canInsertByBatch) {
+                        if (!valuesToInsert.isEmpty() && !entityName.equals(valuesToInsert.get(0).getEntityName())) {
+                            this.createAllInBatch(valuesToInsert);
+                        }
+                        valuesToInsert.add(value);
+                    } else {
+                        this.createAllInBatch(valuesToInsert);
+                        this.create(value);
+                    }
+                    existingValues.put(existingKey, GenericValue.create(value));
                     numberChanged++;
                 } else {
+                    // the created values are written first, the value may refer to one of them
+                    this.createAllInBatch(valuesToInsert);
+
                     // don't send fields that are the same, and if no fields have changed, update nothing
                     ModelEntity modelEntity = value.getModelEntity();
                     GenericValue toStore = GenericValue.create(this, modelEntity, value.getPrimaryKey());
@@ -1432,9 +1525,12 @@ public class GenericDelegator implements Delegator {
                             value.checkFks(true);
                         }
                         numberChanged += this.store(toStore);
+                        // the same key may come again in the list
+                        existing.putAll(toStore);
                     }
                 }
             }
+            this.createAllInBatch(valuesToInsert);
             TransactionUtil.commit(beganTransaction);
             return numberChanged;
         } catch (GenericEntityException e) {
@@ -1445,6 +1541,122 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /**
+     * Finds the values stored for the keys of the passed values, with one query for each entity.
+     * @param values the values to look for, all with a valid primary key
+     * @return the values found, by entity name and primary key short value string
+     * @throws GenericEntityException the generic entity exception
+     */
+    private Map<String, GenericValue> findExistingValues(List<GenericValue> values) throws GenericEntityException {
+        Map<String, GenericValue> existingValues = new HashMap<>();
+        Map<String, List<GenericValue>> valuesByEntityName = values.stream()
+                .filter(value -> value.getPrimaryKey().isPrimaryKey())
+                .collect(Collectors.groupingBy(GenericValue::getEntityName));
+        for (Map.Entry<String, List<GenericValue>> entry : valuesByEntityName.entrySet()) {
+            String entityName = entry.getKey();
+            ModelEntity modelEntity = entry.getValue().get(0).getModelEntity();
+            GenericHelper helper = getEntityHelper(entityName);
+            if (modelEntity instanceof ModelViewEntity) {
+                for (GenericValue value : entry.getValue()) {
+                    try {
+                        GenericValue existing = helper.findByPrimaryKey(value.getPrimaryKey());
+                        existingValues.put(entityName + "::" + existing.getPkShortValueString(), existing);
+                    } catch (GenericEntityNotFoundException e) {
+                        // not stored yet
+                    }
+                }
+                continue;
+            }
+
+            EntityCondition condition;
+            List<ModelField> pkFields = modelEntity.getPkFieldsUnmodifiable();
+            if (pkFields.size() == 1) {
+                String pkFieldName = pkFields.get(0).getName();
+                Set<Object> pkValues = entry.getValue().stream().map(value -> value.get(pkFieldName)).collect(Collectors.toSet());
+                condition = EntityCondition.makeCondition(pkFieldName, EntityOperator.IN, pkValues);
+            } else {
+                List<EntityCondition> pkConditions = new ArrayList<>(entry.getValue().size());
+                for (GenericValue value : entry.getValue()) {
+                    pkConditions.add(EntityCondition.makeCondition(value.getPrimaryKey()));
+                }
+                condition = EntityCondition.makeCondition(pkConditions, EntityOperator.OR);
+            }
+            try (EntityListIterator eli = helper.findListIteratorByCondition(this, modelEntity, condition, null, null, null, null)) {
+                GenericValue existing;
+                while ((existing = eli.next()) != null) {
+                    existingValues.put(entityName + "::" + existing.getPkShortValueString(), existing);
+                }
+            }
+        }
+        return existingValues;
+    }
+
+    /**
+     * Tells if all the primary key fields of a key are strings, whose short value string is the same for the passed
+     * value and the value read back from the database.
+     */
+    private static boolean hasStringPk(GenericPK primaryKey) {
+        for (Object pkValue : primaryKey.values()) {
+            if (!(pkValue instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the value stored for a key, without running the find ECA rules.
+     * @param primaryKey the primary key
+     * @return the value found, or null if there is none
+     * @throws GenericEntityException the generic entity exception
+     */
+    private GenericValue findExistingValue(GenericPK primaryKey) throws GenericEntityException {
+        try {
+            return getEntityHelper(primaryKey.getEntityName()).findByPrimaryKey(primaryKey);
+        } catch (GenericEntityNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells if the values of an entity can be created by storeAll with a JDBC batch: creating each value must do nothing but the insert,
+     * the cache clear and the test and entity sync info.
+     */
+    private boolean canInsertByBatch(ModelEntity modelEntity, EntityStoreOptions storeOptions) {
+        if (storeOptions.isCreateDummyFks() || modelEntity instanceof ModelViewEntity || modelEntity.getHasFieldWithAuditLog()
+                || modelEntity.lock()) {
+            return false;
+        }
+        String entityEcaReaderName = EntityEcaUtil.getEntityEcaReaderName(this.delegatorBaseName);
+        return entityEcaReaderName == null || UtilValidate.isEmpty(EntityEcaUtil.getEntityEcaCache(entityEcaReaderName)
+                .get(modelEntity.getEntityName()));
+    }
+
+    /**
+     * Creates the values with one JDBC batch, then empties the list.
+     * @param values the values to create, all of the same entity
+     * @throws GenericEntityException the generic entity exception
+     */
+    private void createAllInBatch(List<GenericValue> values) throws GenericEntityException {
+        if (values.isEmpty()) {
+            return;
+        }
+        for (GenericValue value : values) {
+            value.setDelegator(this);
+        }
+        getEntityHelper(values.get(0).getEntityName()).createAll(values);
+        for (GenericValue value : values) {
+            this.clearCacheLine(value);
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.INSERT, value));
+            }
+            if (this.entitySyncChangeInfoEnabled) {
+                this.saveEntitySyncChangeInfo(value, EntityEcaHandler.OP_CREATE);
+            }
+        }
+        values.clear();
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#removeAll(java.lang.String)
      */
@@ -2695,6 +2907,7 @@ public class GenericDelegator implements Delegator {
         newDelegator.originalDelegatorName = getOriginalDelegatorName();
         newDelegator.entityEcaHandler.set(this.entityEcaHandler.get());
         newDelegator.crypto = this.crypto;
+        newDelegator.entitySyncChangeInfoEnabled = this.entitySyncChangeInfoEnabled;
         // In case this delegator is in testMode give it a reference to
         // the rollback list
         newDelegator.testMode = this.testMode;
@@ -2724,6 +2937,15 @@ public class GenericDelegator implements Delegator {
         return testDelegator;
     }
 
+    /**
+     * Sets if this delegator saves an EntitySyncChange record for each value created or stored, see saveEntitySyncChangeInfo in
+     * general.properties for the default. Meant for a clone of the delegator, the cached delegators share the default.
+     * @param entitySyncChangeInfoEnabled true to save the EntitySyncChange records
+     */
+    public void setEntitySyncChangeInfoEnabled(boolean entitySyncChangeInfoEnabled) {
+        this.entitySyncChangeInfoEnabled = entitySyncChangeInfoEnabled;
+    }
+
     private void setTestMode(boolean testMode) {
         this.testMode = testMode;
         if (testMode) {
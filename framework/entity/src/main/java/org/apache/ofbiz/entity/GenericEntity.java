@@ -91,7 +91,8 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      * GenericValue objects instantiated through it. You may set this manually for objects you instantiate manually, but it is optional. */
     private transient Delegator internalDelegator = null;
 
-    /** A Map containing the original field values from the database.
+    /** A Map containing the original field values from the database, when the fields are not
+     *  kept in a {@link GenericEntityFields} that keeps the original values itself.
      */
     private Map<String, Object> originalDbValues = null;
 
@@ -100,7 +101,8 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      *  writes are done through synchronized setters) and being able to store
      *  null values. Null values are important because with them we can distinguish
      *  between desiring to set a value to null and desiring to not modify the
-     *  current value on an update.
+     *  current value on an update. Once the ModelEntity is known this is a
+     *  {@link GenericEntityFields}, that keeps the values in an array by field position.
      */
     private Map<String, Object> fields = new HashMap<>();
 
@@ -183,6 +185,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
+        this.fields = new GenericEntityFields(modelEntity.getFieldLayout());
         this.observable = new Observable();
 
         // check some things
@@ -199,6 +202,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
+        this.fields = new GenericEntityFields(modelEntity.getFieldLayout());
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
         this.observable = new Observable();
@@ -221,6 +225,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
+        this.fields = new GenericEntityFields(modelEntity.getFieldLayout());
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
         this.observable = new Observable();
@@ -243,6 +248,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         // NOTE: could call getModelEntity to insure we have a value, just in case the value passed in has been serialized
         // but might as well leave it null to keep the object light if it isn't there
         this.modelEntity = value.modelEntity;
+        if (value.modelEntity != null) {
+            this.fields = new GenericEntityFields(value.modelEntity.getFieldLayout());
+        }
         if (value.fields != null) {
             this.fields.putAll(value.fields);
         }
@@ -286,7 +294,16 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
             throw new GenericEntityException("Could not refresh value, new value did not have the same primary key; this PK="
                     + thisPK + ", new value PK=" + newPK);
         }
-        this.fields = new HashMap<>(newValue.fields);
+        boolean originalValuesAvailable = originalDbValuesAvailable();
+        if (newValue.fields instanceof GenericEntityFields) {
+            GenericEntityFields newFields = ((GenericEntityFields) newValue.fields).copy();
+            if (originalValuesAvailable && this.originalDbValues == null) {
+                newFields.synchronizedWithDatasource();
+            }
+            this.fields = newFields;
+        } else {
+            this.fields = new HashMap<>(newValue.fields);
+        }
         this.setDelegator(newValue.getDelegator());
         this.generateHashCode = newValue.generateHashCode;
         this.cachedHashCode = newValue.cachedHashCode;
@@ -308,7 +325,12 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      */
     public void synchronizedWithDatasource() {
         assertIsMutable();
-        this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        if (this.fields instanceof GenericEntityFields) {
+            ((GenericEntityFields) this.fields).synchronizedWithDatasource();
+            this.originalDbValues = null;
+        } else {
+            this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        }
         this.clearChanged();
     }
 
@@ -338,7 +360,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     public void setImmutable() {
         if (this.mutable) {
             this.mutable = false;
-            this.fields = Collections.unmodifiableMap(this.fields);
+            if (this.fields instanceof GenericEntityFields) {
+                ((GenericEntityFields) this.fields).setImmutable();
+            } else {
+                this.fields = Collections.unmodifiableMap(this.fields);
+            }
         }
     }
 
@@ -1772,6 +1798,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      * @return the boolean
      */
     public boolean originalDbValuesAvailable() {
+        if (this.fields instanceof GenericEntityFields && ((GenericEntityFields) this.fields).originalValuesAvailable()) {
+            return true;
+        }
         return this.originalDbValues != null;
     }
 
@@ -1784,6 +1813,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         if (getModelEntity().getField(name) == null) {
             throw new IllegalArgumentException("[GenericEntity.get] \"" + name + "\" is not a field of " + getEntityName());
         }
+        if (this.fields instanceof GenericEntityFields && ((GenericEntityFields) this.fields).originalValuesAvailable()) {
+            return ((GenericEntityFields) this.fields).getOriginalValue(name);
+        }
         if (originalDbValues == null) {
             return null;
         }
@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.ofbiz.entity.model.ModelFieldLayout;
+
+/**
+ * The fields of a {@link GenericEntity}, kept in an array by the position of the field in the entity.
+ * <p>A field that is not set is told apart from a field set to null, like with a <code>HashMap</code>.
+ * Names that are not fields of the entity are kept in a separate map. Once synchronized with the
+ * data source, the first change of a field keeps its original value and marks it as changed, so the
+ * original values do not need a copy of all the fields.</p>
+ */
+@SuppressWarnings("serial")
+final class GenericEntityFields extends AbstractMap<String, Object> implements Serializable {
+
+    /** The value of a field that is not set. */
+    private enum Absent { INSTANCE }
+
+    private static final Object ABSENT = Absent.INSTANCE;
+
+    private final ModelFieldLayout layout;
+    private final Object[] values;
+    private int size;
+    private Map<String, Object> otherFields = null;
+    private boolean immutable = false;
+    private BitSet changedFields = null;
+    private Object[] originalValues = null;
+    private transient Set<Map.Entry<String, Object>> entrySet = null;
+
+    GenericEntityFields(ModelFieldLayout layout) {
+        this.layout = layout;
+        this.values = new Object[layout.size()];
+        Arrays.fill(this.values, ABSENT);
+    }
+
+    private GenericEntityFields(GenericEntityFields fields) {
+        this.layout = fields.layout;
+        this.values = fields.values.clone();
+        this.size = fields.size;
+        if (fields.otherFields != null) {
+            this.otherFields = new HashMap<>(fields.otherFields);
+        }
+    }
+
+    /**
+     * Makes a mutable copy of these fields, without the original values.
+     * @return the copy
+     */
+    GenericEntityFields copy() {
+        return new GenericEntityFields(this);
+    }
+
+    /** Makes these fields unchangeable. */
+    void setImmutable() {
+        this.immutable = true;
+    }
+
+    /** Takes the current values as the original values from the data source. */
+    void synchronizedWithDatasource() {
+        this.changedFields = new BitSet(values.length);
+        this.originalValues = null;
+    }
+
+    /**
+     * Tells if the original values from the data source are known.
+     * @return true if {@link #synchronizedWithDatasource()} was called
+     */
+    boolean originalValuesAvailable() {
+        return changedFields != null;
+    }
+
+    /**
+     * Gets the value a field had when synchronized with the data source.
+     * @param name the field name
+     * @return the original value, or null if not known
+     */
+    Object getOriginalValue(String name) {
+        if (changedFields == null) {
+            return null;
+        }
+        int index = layout.indexOf(name);
+        if (index >= 0 && changedFields.get(index)) {
+            return originalValues[index] == ABSENT ? null : originalValues[index];
+        }
+        return get(name);
+    }
+
+    private void assertIsMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private Object setValue(int index, Object value) {
+        Object old = values[index];
+        if (changedFields != null && !changedFields.get(index)) {
+            if (originalValues == null) {
+                originalValues = new Object[values.length];
+            }
+            originalValues[index] = old;
+            changedFields.set(index);
+        }
+        values[index] = value;
+        if (old == ABSENT) {
+            if (value != ABSENT) {
+                size++;
+            }
+        } else if (value == ABSENT) {
+            size--;
+        }
+        return old == ABSENT ? null : old;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            Object value = values[index];
+            return value == ABSENT ? null : value;
+        }
+        return otherFields != null ? otherFields.get(key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            return values[index] != ABSENT;
+        }
+        return otherFields != null && otherFields.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        assertIsMutable();
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            return setValue(index, value);
+        }
+        if (otherFields == null) {
+            otherFields = new HashMap<>();
+        }
+        return otherFields.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends Object> map) {
+        if (map instanceof GenericEntityFields && size == 0 && otherFields == null && changedFields == null
+                && ((GenericEntityFields) map).layout == layout) {
+            GenericEntityFields fields = (GenericEntityFields) map;
+            assertIsMutable();
+            System.arraycopy(fields.values, 0, values, 0, values.length);
+            size = fields.size;
+            if (fields.otherFields != null) {
+                otherFields = new HashMap<>(fields.otherFields);
+            }
+            return;
+        }
+        super.putAll(map);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        assertIsMutable();
+        int index = layout.indexOf(key);
+        if (index >= 0) {
+            return setValue(index, ABSENT);
+        }
+        return otherFields != null ? otherFields.remove(key) : null;
+    }
+
+    @Override
+    public void clear() {
+        assertIsMutable();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != ABSENT) {
+                setValue(i, ABSENT);
+            }
+        }
+        otherFields = null;
+    }
+
+    @Override
+    public int size() {
+        return size + (otherFields != null ? otherFields.size() : 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj instanceof GenericEntityFields && ((GenericEntityFields) obj).layout == layout) {
+            GenericEntityFields that = (GenericEntityFields) obj;
+            return Arrays.equals(values, that.values) && Objects.equals(otherFields != null && !otherFields.isEmpty() ? otherFields : null,
+                    that.otherFields != null && !that.otherFields.isEmpty() ? that.otherFields : null);
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        // the same as the sum of the entry hash codes of any Map with these entries
+        int hashCode = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != ABSENT) {
+                hashCode += layout.getFieldName(i).hashCode() ^ Objects.hashCode(values[i]);
+            }
+        }
+        if (otherFields != null) {
+            hashCode += otherFields.hashCode();
+        }
+        return hashCode;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return GenericEntityFields.this.size();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int nextIndex = -1;
+        private int lastIndex = -1;
+        private Iterator<Map.Entry<String, Object>> otherIterator = null;
+        private boolean inOtherFields = false;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                nextIndex++;
+            } while (nextIndex < values.length && values[nextIndex] == ABSENT);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextIndex < values.length) {
+                return true;
+            }
+            if (otherIterator == null && otherFields != null) {
+                otherIterator = otherFields.entrySet().iterator();
+            }
+            return otherIterator != null && otherIterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextIndex < values.length) {
+                lastIndex = nextIndex;
+                inOtherFields = false;
+                advance();
+                return new Entry(lastIndex);
+            }
+            inOtherFields = true;
+            Map.Entry<String, Object> entry = otherIterator.next();
+            return immutable ? new SimpleImmutableEntry<>(entry) : entry;
+        }
+
+        @Override
+        public void remove() {
+            assertIsMutable();
+            if (inOtherFields) {
+                otherIterator.remove();
+            } else if (lastIndex >= 0 && values[lastIndex] != ABSENT) {
+                setValue(lastIndex, ABSENT);
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private final class Entry implements Map.Entry<String, Object> {
+        private final int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return layout.getFieldName(index);
+        }
+
+        @Override
+        public Object getValue() {
+            Object value = values[index];
+            return value == ABSENT ? null : value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            assertIsMutable();
+            return GenericEntityFields.this.setValue(index, value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            Map.Entry<?, ?> that = (Map.Entry<?, ?>) obj;
+            return getKey().equals(that.getKey()) && Objects.equals(getValue(), that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
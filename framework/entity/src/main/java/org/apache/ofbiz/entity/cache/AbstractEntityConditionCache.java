@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.cache;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +43,9 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
 
     private static final String MODULE = AbstractEntityConditionCache.class.getName();
 
+    /** The index of the condition keys of each cache, by cache name. */
+    private final ConcurrentMap<String, EntityConditionCacheIndex<ConcurrentMap<K, V>>> conditionIndexes = new ConcurrentHashMap<>();
+
     protected AbstractEntityConditionCache(String delegatorName, String id) {
         super(delegatorName, id);
     }
@@ -82,10 +86,18 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
     }
 
     /**
-     * Removes all condition caches that include the specified entity.
+     * Removes the conditions of the entity cache that may match the specified entity, and all the condition
+     * caches of the views that include the entity.
+     * The conditions requiring a different value of a primary key field of the entity are kept.
      */
     public void remove(GenericEntity entity) {
-        UtilCache.clearCache(getCacheName(entity.getEntityName()));
+        String cacheName = getCacheName(entity.getEntityName());
+        EntityConditionCacheIndex<ConcurrentMap<K, V>> conditionIndex = conditionIndexes.get(cacheName);
+        if (conditionIndex != null) {
+            conditionIndex.removeMatching(entity);
+        } else {
+            UtilCache.clearCache(cacheName);
+        }
         ModelEntity model = entity.getModelEntity();
         Iterator<String> it = model.getViewConvertorsIterator();
         while (it.hasNext()) {
@@ -153,6 +165,11 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
      */
     protected Map<K, V> getOrCreateConditionCache(String entityName, EntityCondition condition) {
         UtilCache<EntityCondition, ConcurrentMap<K, V>> utilCache = getOrCreateCache(entityName);
+        String cacheName = getCacheName(entityName);
+        if (!conditionIndexes.containsKey(cacheName)) {
+            List<String> pkFieldNames = getDelegator().getModelEntity(entityName).getPkFieldNames();
+            conditionIndexes.computeIfAbsent(cacheName, k -> EntityConditionCacheIndex.create(utilCache, pkFieldNames));
+        }
         EntityCondition conditionKey = getConditionKey(condition);
         ConcurrentMap<K, V> conditionCache = utilCache.get(conditionKey);
         if (conditionCache == null) {
@@ -268,7 +285,16 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         if (entityCache == null) {
             return;
         }
-        for (EntityCondition condition: entityCache.getCacheLineKeys()) {
+        Collection<? extends EntityCondition> conditions;
+        EntityConditionCacheIndex<ConcurrentMap<K, V>> conditionIndex = conditionIndexes.get(getCacheName(entityName));
+        if (conditionIndex != null && !isPK) {
+            // only the conditions filed under a value of the values to match can match them
+            entityCache.remove(null);
+            conditions = conditionIndex.getCandidates(oldValues != null ? oldValues : newValues);
+        } else {
+            conditions = entityCache.getCacheLineKeys();
+        }
+        for (EntityCondition condition: conditions) {
             boolean shouldRemove = false;
             if (condition == null) {
                 shouldRemove = true;
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import org.apache.ofbiz.entity.condition.EntityCondition;
+
+/**
+ * A batch of cache clear lines sent by the {@link EntityCacheClearBus}, and its binary encoding.
+ * <p>A message starts with a header (magic number, version, node id, node incarnation, delegator name,
+ * sequence number and send time) followed by the lines. A line is a type, an entity name and field values
+ * tagged with their type. Conditions are sent as the field values they require to be equal: the receiving
+ * node clears the cached values matching them, and the cached lists and objects of every condition that
+ * may match a row with the same primary key field values; nothing is deserialized as a Java object.</p>
+ */
+public final class CacheClearMessage {
+
+    private static final short MAGIC = 0x0FBC;
+    private static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BIG_DECIMAL = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte TIMESTAMP = 6;
+    private static final byte DATE = 7;
+    private static final byte TIME = 8;
+    private static final byte BOOLEAN = 9;
+
+    private final String nodeId;
+    private final long incarnation;
+    private final String delegatorName;
+    private final long sequence;
+    private final long sentTime;
+    private final List<Line> lines;
+
+    private CacheClearMessage(String nodeId, long incarnation, String delegatorName, long sequence, long sentTime, List<Line> lines) {
+        this.nodeId = nodeId;
+        this.incarnation = incarnation;
+        this.delegatorName = delegatorName;
+        this.sequence = sequence;
+        this.sentTime = sentTime;
+        this.lines = lines;
+    }
+
+    /** The kind of cache clear of a {@link Line}. */
+    public enum Type {
+        /** Clears a primary key, or a partial one, like {@link Cache#remove(org.apache.ofbiz.entity.GenericPK)}. */
+        KEY,
+        /**
+         * Clears the values matching an AND of field equals conditions, and the lists and objects cached under
+         * a condition that may match a row with the same primary key field values.
+         */
+        CONDITION,
+        /** Clears all the lines of an entity. */
+        ENTITY,
+        /** Clears all the entity caches. */
+        ALL
+    }
+
+    /** One cache clear operation. */
+    public static final class Line {
+
+        private static final Line ALL_LINE = new Line(Type.ALL, "", Collections.emptyMap());
+
+        private final Type type;
+        private final String entityName;
+        private final Map<String, Object> fields;
+
+        private Line(Type type, String entityName, Map<String, Object> fields) {
+            this.type = type;
+            this.entityName = entityName;
+            this.fields = fields;
+        }
+
+        /**
+         * Makes the line clearing the lines of a primary key. A key with a field value of a type that cannot
+         * be sent clears the whole entity instead.
+         * @param entityName the entity name
+         * @param fields the primary key fields, all or some of them
+         * @return the line
+         */
+        public static Line forKey(String entityName, Map<String, ? extends Object> fields) {
+            for (Object value : fields.values()) {
+                if (getTag(value) < 0) {
+                    return forEntity(entityName);
+                }
+            }
+            return new Line(Type.KEY, entityName, Collections.unmodifiableMap(new LinkedHashMap<>(fields)));
+        }
+
+        /**
+         * Makes the line clearing the lines matching a condition, as the AND of the String equals conditions
+         * it requires. A condition requiring none of them clears the whole entity.
+         * @param entityName the entity name
+         * @param condition the condition
+         * @return the line
+         */
+        public static Line forCondition(String entityName, EntityCondition condition) {
+            Map<String, String> constraints = condition != null ? EntityConditionCacheIndex.getEqualityConstraints(condition)
+                    : Collections.emptyMap();
+            if (constraints.isEmpty()) {
+                return forEntity(entityName);
+            }
+            return new Line(Type.CONDITION, entityName, Collections.unmodifiableMap(new LinkedHashMap<>(constraints)));
+        }
+
+        /**
+         * Makes the line clearing all the lines of an entity.
+         * @param entityName the entity name
+         * @return the line
+         */
+        public static Line forEntity(String entityName) {
+            return new Line(Type.ENTITY, entityName, Collections.emptyMap());
+        }
+
+        /**
+         * Gets the line clearing all the entity caches.
+         * @return the line
+         */
+        public static Line forAll() {
+            return ALL_LINE;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getEntityName() {
+            return entityName;
+        }
+
+        public Map<String, Object> getFields() {
+            return fields;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return type == other.type && entityName.equals(other.entityName) && fields.equals(other.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, entityName, fields);
+        }
+
+        @Override
+        public String toString() {
+            return type + "[" + entityName + "]" + fields;
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public String getDelegatorName() {
+        return delegatorName;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getSentTime() {
+        return sentTime;
+    }
+
+    public List<Line> getLines() {
+        return lines;
+    }
+
+    /**
+     * Encodes lines in as few messages as fit in the maximum message size. A line too large for a message
+     * on its own is replaced by the line clearing its whole entity.
+     * @param nodeId the id of the sending node
+     * @param incarnation the id of this run of the sending node
+     * @param delegatorName the delegator name
+     * @param nextSequence gives the sequence number of each message
+     * @param lines the lines, none to encode a heartbeat message
+     * @param maxMessageSize the maximum size of a message in bytes
+     * @return the messages
+     * @throws IOException if the header alone does not fit in a message
+     */
+    public static List<byte[]> encode(String nodeId, long incarnation, String delegatorName, LongSupplier nextSequence,
+            Collection<Line> lines, int maxMessageSize) throws IOException {
+        int headerSize = encodeHeader(nodeId, incarnation, delegatorName, 0, 0, 0).length;
+        if (headerSize > maxMessageSize) {
+            throw new IOException("A cache clear message header needs " + headerSize + " bytes, more than the maximum message size");
+        }
+        List<byte[]> messages = new ArrayList<>();
+        List<byte[]> messageLines = new ArrayList<>();
+        int messageSize = headerSize;
+        for (Line line : lines) {
+            byte[] encodedLine = encodeLine(line);
+            if (headerSize + encodedLine.length > maxMessageSize) {
+                encodedLine = encodeLine(Line.forEntity(line.getEntityName()));
+            }
+            if (messageSize + encodedLine.length > maxMessageSize) {
+                messages.add(encodeMessage(nodeId, incarnation, delegatorName, nextSequence.getAsLong(), messageLines));
+                messageLines.clear();
+                messageSize = headerSize;
+            }
+            messageLines.add(encodedLine);
+            messageSize += encodedLine.length;
+        }
+        if (!messageLines.isEmpty() || messages.isEmpty()) {
+            messages.add(encodeMessage(nodeId, incarnation, delegatorName, nextSequence.getAsLong(), messageLines));
+        }
+        return messages;
+    }
+
+    private static byte[] encodeMessage(String nodeId, long incarnation, String delegatorName, long sequence, List<byte[]> encodedLines)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(encodeHeader(nodeId, incarnation, delegatorName, sequence, System.currentTimeMillis(), encodedLines.size()));
+        for (byte[] encodedLine : encodedLines) {
+            bytes.write(encodedLine);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeHeader(String nodeId, long incarnation, String delegatorName, long sequence, long sentTime, int lineCount)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(MAGIC);
+        out.writeByte(VERSION);
+        writeString(out, nodeId);
+        out.writeLong(incarnation);
+        writeString(out, delegatorName);
+        out.writeLong(sequence);
+        out.writeLong(sentTime);
+        out.writeInt(lineCount);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeLine(Line line) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(line.getType().ordinal());
+        writeString(out, line.getEntityName());
+        out.writeShort(line.getFields().size());
+        for (Map.Entry<String, Object> field : line.getFields().entrySet()) {
+            writeString(out, field.getKey());
+            writeValue(out, field.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a message.
+     * @param message the message bytes
+     * @return the message
+     * @throws IOException if the bytes are not a cache clear message of this version
+     */
+    public static CacheClearMessage decode(byte[] message) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        if (in.readShort() != MAGIC) {
+            throw new IOException("Not a cache clear message");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cache clear message version " + version);
+        }
+        String nodeId = readString(in);
+        long incarnation = in.readLong();
+        String delegatorName = readString(in);
+        long sequence = in.readLong();
+        long sentTime = in.readLong();
+        int lineCount = in.readInt();
+        List<Line> lines = new ArrayList<>(Math.min(lineCount, 1024));
+        Type[] types = Type.values();
+        for (int i = 0; i < lineCount; i++) {
+            int typeIndex = in.readUnsignedByte();
+            if (typeIndex >= types.length) {
+                throw new IOException("Unknown cache clear line type " + typeIndex);
+            }
+            String entityName = readString(in);
+            int fieldCount = in.readUnsignedShort();
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (int j = 0; j < fieldCount; j++) {
+                String fieldName = readString(in);
+                fields.put(fieldName, readValue(in));
+            }
+            lines.add(new Line(types[typeIndex], entityName, Collections.unmodifiableMap(fields)));
+        }
+        return new CacheClearMessage(nodeId, incarnation, delegatorName, sequence, sentTime, Collections.unmodifiableList(lines));
+    }
+
+    private static int getTag(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        Class<?> valueClass = value.getClass();
+        if (valueClass == String.class) {
+            return STRING;
+        } else if (valueClass == Long.class) {
+            return LONG;
+        } else if (valueClass == Integer.class) {
+            return INTEGER;
+        } else if (valueClass == BigDecimal.class) {
+            return BIG_DECIMAL;
+        } else if (valueClass == Double.class) {
+            return DOUBLE;
+        } else if (valueClass == Timestamp.class) {
+            return TIMESTAMP;
+        } else if (valueClass == Date.class) {
+            return DATE;
+        } else if (valueClass == Time.class) {
+            return TIME;
+        } else if (valueClass == Boolean.class) {
+            return BOOLEAN;
+        }
+        return -1;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        int tag = getTag(value);
+        out.writeByte(tag);
+        switch (tag) {
+        case NULL:
+            break;
+        case STRING:
+            writeString(out, (String) value);
+            break;
+        case LONG:
+            out.writeLong((Long) value);
+            break;
+        case INTEGER:
+            out.writeInt((Integer) value);
+            break;
+        case BIG_DECIMAL:
+            writeString(out, value.toString());
+            break;
+        case DOUBLE:
+            out.writeDouble((Double) value);
+            break;
+        case TIMESTAMP:
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+            break;
+        case DATE:
+        case TIME:
+            out.writeLong(((java.util.Date) value).getTime());
+            break;
+        case BOOLEAN:
+            out.writeBoolean((Boolean) value);
+            break;
+        default:
+            throw new IOException("Cannot encode a value of type " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case LONG:
+            return in.readLong();
+        case INTEGER:
+            return in.readInt();
+        case BIG_DECIMAL:
+            return new BigDecimal(readString(in));
+        case DOUBLE:
+            return in.readDouble();
+        case TIMESTAMP:
+            Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+            return timestamp;
+        case DATE:
+            return new Date(in.readLong());
+        case TIME:
+            return new Time(in.readLong());
+        case BOOLEAN:
+            return in.readBoolean();
+        default:
+            throw new IOException("Unknown cache clear value type " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid cache clear string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries the messages of the {@link EntityCacheClearBus} between the nodes of a cluster.
+ * <p>An implementation needs a public no-argument constructor and reads its settings from
+ * <code>cacheclear.properties</code>. A message is delivered whole or not at all, the bus detects the
+ * lost ones from their sequence numbers. A node may receive its own messages.</p>
+ */
+public interface CacheClearTransport {
+
+    /**
+     * Starts the transport.
+     * @param receiver called with each message received, from a single thread
+     * @throws IOException if the transport cannot be started
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Sends a message to all the nodes.
+     * @param message the message, no longer than {@link #getMaxMessageSize()}
+     * @throws IOException if the message cannot be sent
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * Gets the maximum size in bytes of a message.
+     * @return the maximum message size
+     */
+    int getMaxMessageSize();
+
+    /** Stops the transport. */
+    void stop();
+}
@@ -18,7 +18,9 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.cache;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.cache.UtilCache;
@@ -83,7 +85,8 @@ public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
     }
 
     /**
-     * Remove.
+     * Removes the cached values matching the condition. When the condition requires a value for every primary
+     * key field only that primary key is looked at, otherwise all the cached values are.
      * @param entityName the entity name
      * @param condition the condition
      */
@@ -92,6 +95,20 @@ public class EntityCache extends AbstractCache<GenericPK, GenericValue> {
         if (entityCache == null) {
             return;
         }
+        ModelEntity model = getDelegator().getModelEntity(entityName);
+        Map<String, String> constraints = EntityConditionCacheIndex.getEqualityConstraints(condition);
+        if (model != null && constraints.keySet().containsAll(model.getPkFieldNames())) {
+            Map<String, Object> pkFields = new HashMap<>();
+            for (String pkFieldName : model.getPkFieldNames()) {
+                pkFields.put(pkFieldName, constraints.get(pkFieldName));
+            }
+            GenericPK pk = GenericPK.create(getDelegator(), model, pkFields);
+            GenericValue entity = entityCache.get(pk);
+            if (entity != null && condition.entityMatches(entity)) {
+                entityCache.remove(pk);
+            }
+            return;
+        }
         for (GenericPK pk: entityCache.getCacheLineKeys()) {
             GenericValue entity = entityCache.get(pk);
             if (entity == null) {
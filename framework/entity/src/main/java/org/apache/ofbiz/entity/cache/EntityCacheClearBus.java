@@ -0,0 +1,437 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.util.DistributedCacheClear;
+
+/**
+ * Distributed cache clear sending the cache clear operations to the other nodes over a {@link CacheClearTransport},
+ * without going through the service engine.
+ * <p>The operations are queued and sent every <code>cacheclear.flushDelay</code> milliseconds, the same operation
+ * queued twice is sent once and a clear all caches replaces the queued operations. A node that has sent nothing
+ * for <code>cacheclear.heartbeatInterval</code> milliseconds sends an empty message, so the other nodes notice
+ * a lost message soon: they then clear all their entity caches, since they do not know what it held. A message is
+ * only counted as lost once <code>cacheclear.reorderWindow</code> later messages of the same node were received,
+ * so messages delivered slightly out of order do not clear the caches.</p>
+ * <p>When <code>cacheclear.secret</code> is set, each message ends with an HMAC-SHA256 of its content keyed by
+ * the secret, and the messages without a valid one are dropped: only the nodes sharing the secret can clear the
+ * caches, and two clusters on the same multicast group ignore each other. All the nodes must use the same secret.</p>
+ * <p>For each sending node the receivers keep the count of messages, lines and lost messages and the delay
+ * between the send and the processing of the messages, see {@link #getNodeMetrics()}. The delay is only
+ * meaningful with synchronized clocks.</p>
+ * <p>Use it with the <code>distributed-cache-clear-class-name</code> attribute of the delegator in
+ * <code>entityengine.xml</code>; the settings are in <code>cacheclear.properties</code>.</p>
+ */
+public final class EntityCacheClearBus implements DistributedCacheClear {
+
+    private static final String MODULE = EntityCacheClearBus.class.getName();
+    private static final String RESOURCE = "cacheclear";
+    private static final ConcurrentMap<String, EntityCacheClearBus> BUSES = new ConcurrentHashMap<>();
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+
+    // random, so two nodes started in the same millisecond with the same node id are still told apart
+    private final long incarnation = UUID.randomUUID().getMostSignificantBits();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong linesQueued = new AtomicLong();
+    private final AtomicLong linesSent = new AtomicLong();
+    private final ConcurrentMap<String, NodeMetrics> nodeMetrics = new ConcurrentHashMap<>();
+    private Set<CacheClearMessage.Line> pendingLines = new LinkedHashSet<>();
+    private Delegator delegator;
+    private String nodeId;
+    private long heartbeatInterval;
+    private int reorderWindow;
+    private SecretKeySpec secretKey;
+    private volatile long lastSendTime;
+    private volatile CacheClearTransport transport;
+    private ScheduledExecutorService executor;
+
+    public EntityCacheClearBus() { }
+
+    /**
+     * Gets the bus of a delegator.
+     * @param delegatorName the delegator name
+     * @return the bus, or null if the delegator does not use this distributed cache clear
+     */
+    public static EntityCacheClearBus getInstance(String delegatorName) {
+        return BUSES.get(delegatorName);
+    }
+
+    @Override
+    public void setDelegator(Delegator delegator, String userLoginId) {
+        setDelegator(delegator, makeTransport());
+    }
+
+    /**
+     * Starts the bus of a delegator on a transport.
+     * @param delegator the delegator
+     * @param transport the transport, or null to not distribute
+     */
+    public synchronized void setDelegator(Delegator delegator, CacheClearTransport transport) {
+        this.delegator = delegator;
+        this.nodeId = UtilProperties.getPropertyValue(RESOURCE, "cacheclear.nodeId");
+        if (UtilValidate.isEmpty(this.nodeId)) {
+            try {
+                this.nodeId = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                this.nodeId = "node";
+            }
+        }
+        this.heartbeatInterval = UtilProperties.getPropertyAsLong(RESOURCE, "cacheclear.heartbeatInterval", 2000);
+        this.reorderWindow = Math.max(1, UtilProperties.getPropertyAsInteger(RESOURCE, "cacheclear.reorderWindow", 4));
+        String secret = UtilProperties.getPropertyValue(RESOURCE, "cacheclear.secret");
+        this.secretKey = UtilValidate.isEmpty(secret) ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.start(this::receive);
+        } catch (IOException e) {
+            Debug.logError(e, "Could not start the cache clear transport, distributed cache clearing will be disabled", MODULE);
+            return;
+        }
+        this.transport = transport;
+        long flushDelay = UtilProperties.getPropertyAsLong(RESOURCE, "cacheclear.flushDelay", 50);
+        this.executor = ExecutionPool.getScheduledExecutor(null, "OFBiz-CacheClear-" + delegator.getDelegatorName(), 1, 0, true);
+        this.executor.scheduleWithFixedDelay(this::flush, flushDelay, flushDelay, TimeUnit.MILLISECONDS);
+        BUSES.put(delegator.getDelegatorName(), this);
+    }
+
+    private static CacheClearTransport makeTransport() {
+        String transportClassName = UtilProperties.getPropertyValue(RESOURCE, "cacheclear.transport",
+                MulticastCacheClearTransport.class.getName());
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Class<?> transportClass = loader.loadClass(transportClassName);
+            return (CacheClearTransport) transportClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            Debug.logError(e, "Could not create the cache clear transport " + transportClassName
+                    + ", distributed cache clearing will be disabled", MODULE);
+            return null;
+        }
+    }
+
+    /** Sends the queued lines and stops the bus. */
+    public synchronized void stop() {
+        if (transport == null) {
+            return;
+        }
+        executor.shutdown();
+        flush();
+        transport.stop();
+        transport = null;
+        BUSES.remove(delegator.getDelegatorName(), this);
+    }
+
+    @Override
+    public void distributedClearCacheLine(GenericValue value) {
+        queue(CacheClearMessage.Line.forKey(value.getEntityName(), value.getPrimaryKey()));
+    }
+
+    @Override
+    public void distributedClearCacheLineFlexible(GenericEntity dummyPK) {
+        // the receiving side only uses the primary key fields, see AbstractEntityConditionCache.remove(GenericEntity)
+        Map<String, Object> pkFields = new HashMap<>();
+        for (String pkFieldName : dummyPK.getModelEntity().getPkFieldNames()) {
+            if (dummyPK.get(pkFieldName) != null) {
+                pkFields.put(pkFieldName, dummyPK.get(pkFieldName));
+            }
+        }
+        queue(CacheClearMessage.Line.forKey(dummyPK.getEntityName(), pkFields));
+    }
+
+    @Override
+    public void distributedClearCacheLineByCondition(String entityName, EntityCondition condition) {
+        queue(CacheClearMessage.Line.forCondition(entityName, condition));
+    }
+
+    @Override
+    public void distributedClearCacheLine(GenericPK primaryKey) {
+        queue(CacheClearMessage.Line.forKey(primaryKey.getEntityName(), primaryKey));
+    }
+
+    @Override
+    public void clearAllCaches() {
+        queue(CacheClearMessage.Line.forAll());
+    }
+
+    private void queue(CacheClearMessage.Line line) {
+        if (transport == null) {
+            return;
+        }
+        linesQueued.incrementAndGet();
+        synchronized (this) {
+            if (line.getType() == CacheClearMessage.Type.ALL) {
+                pendingLines.clear();
+            } else if (pendingLines.contains(CacheClearMessage.Line.forAll())) {
+                return;
+            }
+            pendingLines.add(line);
+        }
+    }
+
+    /** Sends the queued lines, or a heartbeat message if nothing was sent for a while. */
+    void flush() {
+        List<CacheClearMessage.Line> lines;
+        CacheClearTransport flushTransport;
+        synchronized (this) {
+            flushTransport = transport;
+            if (flushTransport == null) {
+                return;
+            }
+            lines = new ArrayList<>(pendingLines);
+            pendingLines = new LinkedHashSet<>();
+        }
+        if (lines.isEmpty() && System.currentTimeMillis() - lastSendTime < heartbeatInterval) {
+            return;
+        }
+        try {
+            int maxMessageSize = flushTransport.getMaxMessageSize() - (secretKey != null ? MAC_LENGTH : 0);
+            List<byte[]> messages = CacheClearMessage.encode(nodeId, incarnation, delegator.getDelegatorName(), sequence::incrementAndGet,
+                    lines, maxMessageSize);
+            for (byte[] message : messages) {
+                flushTransport.send(sign(message));
+            }
+            lastSendTime = System.currentTimeMillis();
+            messagesSent.addAndGet(messages.size());
+            linesSent.addAndGet(lines.size());
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            // the other nodes see the sequence gap and clear all their caches
+            Debug.logError(e, "Could not send " + lines.size() + " cache clear lines", MODULE);
+        }
+    }
+
+    /** Appends the HMAC of the message when a secret is set. */
+    private byte[] sign(byte[] message) throws GeneralSecurityException {
+        if (secretKey == null) {
+            return message;
+        }
+        byte[] signed = Arrays.copyOf(message, message.length + MAC_LENGTH);
+        System.arraycopy(mac(message, message.length), 0, signed, message.length, MAC_LENGTH);
+        return signed;
+    }
+
+    /** Returns the message without its HMAC when a secret is set, or null when the HMAC is missing or wrong. */
+    private byte[] verify(byte[] bytes) throws GeneralSecurityException {
+        if (secretKey == null) {
+            return bytes;
+        }
+        int length = bytes.length - MAC_LENGTH;
+        if (length <= 0 || !MessageDigest.isEqual(mac(bytes, length), Arrays.copyOfRange(bytes, length, bytes.length))) {
+            return null;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private byte[] mac(byte[] bytes, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(secretKey);
+        mac.update(bytes, 0, length);
+        return mac.doFinal();
+    }
+
+    private void receive(byte[] bytes) {
+        CacheClearMessage message;
+        try {
+            byte[] content = verify(bytes);
+            if (content == null) {
+                Debug.logWarning("Ignoring a cache clear message without a valid signature", MODULE);
+                return;
+            }
+            message = CacheClearMessage.decode(content);
+        } catch (GeneralSecurityException e) {
+            Debug.logError(e, "Could not check the signature of a cache clear message", MODULE);
+            return;
+        } catch (IOException e) {
+            Debug.logWarning("Ignoring an invalid cache clear message: " + e.getMessage(), MODULE);
+            return;
+        }
+        if (!delegator.getDelegatorName().equals(message.getDelegatorName())
+                || (nodeId.equals(message.getNodeId()) && incarnation == message.getIncarnation())) {
+            return;
+        }
+        NodeMetrics metrics = nodeMetrics.computeIfAbsent(message.getNodeId(), NodeMetrics::new);
+        long missed = metrics.update(message, reorderWindow);
+        if (missed > 0) {
+            Debug.logWarning("Lost " + missed + " cache clear messages from node " + message.getNodeId() + ", clearing all entity caches",
+                    MODULE);
+            delegator.clearAllCaches(false);
+        }
+        for (CacheClearMessage.Line line : message.getLines()) {
+            try {
+                apply(line);
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Error applying cache clear line " + line + ", clearing the entity caches", MODULE);
+                delegator.clearCacheLine(line.getEntityName());
+            }
+        }
+        metrics.processed(message);
+    }
+
+    private void apply(CacheClearMessage.Line line) {
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Applying cache clear line " + line, MODULE);
+        }
+        if (line.getType() == CacheClearMessage.Type.ALL) {
+            delegator.clearAllCaches(false);
+            return;
+        }
+        ModelEntity model = delegator.getModelEntity(line.getEntityName());
+        if (model == null) {
+            Debug.logWarning("Ignoring a cache clear line for the unknown entity " + line.getEntityName(), MODULE);
+            return;
+        }
+        switch (line.getType()) {
+        case KEY:
+            delegator.clearCacheLine(GenericPK.create(delegator, model, line.getFields()), false);
+            break;
+        case CONDITION:
+            // the values matching the sent equals constraints include the ones matching the original condition
+            delegator.clearCacheLineByCondition(line.getEntityName(), EntityCondition.makeCondition(line.getFields()), false);
+            // the list and object cache lines are keyed by the original condition, which is not sent: remove every condition
+            // that may match a row with the constrained primary key fields
+            Map<String, Object> pkFields = new HashMap<>();
+            for (String pkFieldName : model.getPkFieldNames()) {
+                if (line.getFields().containsKey(pkFieldName)) {
+                    pkFields.put(pkFieldName, line.getFields().get(pkFieldName));
+                }
+            }
+            delegator.clearCacheLineFlexible(GenericPK.create(delegator, model, pkFields), false);
+            break;
+        default:
+            delegator.clearCacheLine(line.getEntityName());
+            break;
+        }
+    }
+
+    /**
+     * Gets the counters of this node and of the nodes it received messages from.
+     * @return the metrics of this node and, under <code>nodes</code>, a map of metrics by sending node id
+     */
+    public Map<String, Object> getNodeMetrics() {
+        Map<String, Object> nodes = new HashMap<>();
+        for (NodeMetrics metrics : nodeMetrics.values()) {
+            nodes.put(metrics.nodeId, metrics.toMap());
+        }
+        return UtilMisc.<String, Object>toMap("nodeId", nodeId, "messagesSent", messagesSent.get(), "linesQueued", linesQueued.get(),
+                "linesSent", linesSent.get(), "nodes", nodes);
+    }
+
+    /** The counters of the messages received from a node. */
+    private static final class NodeMetrics {
+        private final String nodeId;
+        private boolean started;
+        private long incarnation;
+        private long lastSequence;
+        private final TreeSet<Long> missingSequences = new TreeSet<>();
+        private long messages;
+        private long lines;
+        private long missedMessages;
+        private long lastLag;
+        private long maxLag;
+        private long totalLag;
+
+        private NodeMetrics(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        /**
+         * Records the sequence number of a message and returns the number of messages now known to be lost: the messages
+         * skipped and still not received once <code>reorderWindow</code> later messages were received.
+         */
+        private synchronized long update(CacheClearMessage message, int reorderWindow) {
+            long sequence = message.getSequence();
+            if (!started || incarnation != message.getIncarnation()) {
+                // a first message, or the node restarted
+                started = true;
+                incarnation = message.getIncarnation();
+                lastSequence = sequence;
+                missingSequences.clear();
+                return 0;
+            }
+            long missed = 0;
+            if (sequence > lastSequence) {
+                // the skipped messages older than the window are lost right away, the others may still arrive
+                long firstWaited = Math.max(lastSequence + 1, sequence - reorderWindow + 1);
+                missed += firstWaited - lastSequence - 1;
+                for (long skipped = firstWaited; skipped < sequence; skipped++) {
+                    missingSequences.add(skipped);
+                }
+                lastSequence = sequence;
+            } else {
+                missingSequences.remove(sequence);
+            }
+            while (!missingSequences.isEmpty() && missingSequences.first() <= lastSequence - reorderWindow) {
+                missingSequences.pollFirst();
+                missed++;
+            }
+            missedMessages += missed;
+            return missed;
+        }
+
+        private synchronized void processed(CacheClearMessage message) {
+            long lag = Math.max(0, System.currentTimeMillis() - message.getSentTime());
+            messages++;
+            lines += message.getLines().size();
+            lastLag = lag;
+            maxLag = Math.max(maxLag, lag);
+            totalLag += lag;
+        }
+
+        private synchronized Map<String, Object> toMap() {
+            return UtilMisc.<String, Object>toMap("messages", messages, "lines", lines, "missedMessages", missedMessages, "lastLag", lastLag,
+                    "maxLag", maxLag, "averageLag", messages > 0 ? totalLag / messages : 0L);
+        }
+    }
+}
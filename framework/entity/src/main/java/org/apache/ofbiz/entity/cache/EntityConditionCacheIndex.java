@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionList;
+import org.apache.ofbiz.entity.condition.EntityExpr;
+import org.apache.ofbiz.entity.condition.EntityFieldMap;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+
+/**
+ * Indexes the condition keys of a condition cache by the primary key field values they require.
+ * <p>A condition that ANDs an equals expression on a primary key field with a String value can only match
+ * a row having that value, so it is filed under the first such field and value. The other conditions are
+ * kept in a separate set. A write then only has to look at the conditions filed under the values of the
+ * written row, and at the other conditions.</p>
+ * <p>Primary key fields are used because they are the only fields known to be the same in the old and
+ * the new value of a written row. The index follows the cache through a {@link CacheListener}; lines
+ * dropped by the LRU are not notified and a cleared cache notifies its lines before dropping them, so
+ * entries may be left over. They are harmless and pruned when the index grows larger than the cache.</p>
+ * @param <V> the type of the cache values
+ */
+final class EntityConditionCacheIndex<V> implements CacheListener<EntityCondition, V> {
+
+    private final UtilCache<EntityCondition, V> cache;
+    private final List<String> pkFieldNames;
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<EntityCondition>>> indexedConditions = new ConcurrentHashMap<>();
+    private final Set<EntityCondition> otherConditions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private EntityConditionCacheIndex(UtilCache<EntityCondition, V> cache, List<String> pkFieldNames) {
+        this.cache = cache;
+        this.pkFieldNames = pkFieldNames;
+    }
+
+    /**
+     * Creates the index of a cache, registers it as a listener of the cache and adds the conditions already in the cache.
+     * @param cache the condition cache to index
+     * @param pkFieldNames the primary key field names of the cached entity
+     * @return the index
+     */
+    static <V> EntityConditionCacheIndex<V> create(UtilCache<EntityCondition, V> cache, List<String> pkFieldNames) {
+        EntityConditionCacheIndex<V> index = new EntityConditionCacheIndex<>(cache, pkFieldNames);
+        // register first, so a condition put meanwhile is either seen by the listener or in the keys
+        cache.addListener(index);
+        for (EntityCondition condition : cache.getCacheLineKeys()) {
+            index.add(condition);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the equals constraints with a String value that a condition requires, by field name.
+     * Only the expressions joined with AND are looked at, a field constrained twice keeps its first value.
+     * @param condition the condition
+     * @return the String value each field must be equal to, empty if none
+     */
+    static Map<String, String> getEqualityConstraints(EntityCondition condition) {
+        Map<String, String> constraints = new LinkedHashMap<>();
+        addEqualityConstraints(constraints, condition);
+        return constraints;
+    }
+
+    private static void addEqualityConstraints(Map<String, String> constraints, EntityCondition condition) {
+        if (condition instanceof EntityExpr) {
+            EntityExpr expr = (EntityExpr) condition;
+            if (EntityOperator.AND.equals(expr.getOperator())) {
+                addEqualityConstraints(constraints, (EntityCondition) expr.getLhs());
+                addEqualityConstraints(constraints, (EntityCondition) expr.getRhs());
+            } else if (EntityOperator.EQUALS.equals(expr.getOperator()) && expr.getLhs() instanceof EntityFieldValue
+                    && expr.getRhs() instanceof String) {
+                constraints.putIfAbsent(((EntityFieldValue) expr.getLhs()).getFieldName(), (String) expr.getRhs());
+            }
+        } else if (condition instanceof EntityConditionList<?>) {
+            EntityConditionList<?> conditionList = (EntityConditionList<?>) condition;
+            if (conditionList.getOperator() == EntityOperator.AND) {
+                for (EntityCondition subCondition : conditionList.getConditions()) {
+                    addEqualityConstraints(constraints, subCondition);
+                }
+            }
+        } else if (condition instanceof EntityFieldMap) {
+            EntityFieldMap fieldMap = (EntityFieldMap) condition;
+            if (fieldMap.getOperator() == EntityOperator.AND) {
+                for (EntityExpr expr : fieldMap.getConditions()) {
+                    addEqualityConstraints(constraints, expr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the conditions that may match one of the values: the ones filed under a value of the maps and all
+     * the conditions not filed. The null condition is not included.
+     * @param values the maps the conditions are going to be matched against, null items match no filed condition
+     * @return the candidate conditions
+     */
+    Collection<EntityCondition> getCandidates(List<? extends Map<String, Object>> values) {
+        Set<EntityCondition> candidates = new HashSet<>(otherConditions);
+        for (Map.Entry<String, ConcurrentMap<String, Set<EntityCondition>>> entry : indexedConditions.entrySet()) {
+            for (Map<String, Object> value : values) {
+                if (value == null || value instanceof GenericEntity.NULL) {
+                    continue;
+                }
+                Object fieldValue = value.get(entry.getKey());
+                if (fieldValue instanceof String) {
+                    Set<EntityCondition> conditions = entry.getValue().get(fieldValue);
+                    if (conditions != null) {
+                        candidates.addAll(conditions);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Removes from the cache the null condition and every condition that may match a row of the entity,
+     * that is all of them but the ones filed under a different value of a primary key field of the entity.
+     * A primary key field the entity has no String value for is taken as unknown.
+     * @param entity the written entity or primary key, it may only hold some of the primary key fields
+     */
+    void removeMatching(GenericEntity entity) {
+        cache.remove(null);
+        for (EntityCondition condition : otherConditions) {
+            cache.remove(condition);
+        }
+        for (Map.Entry<String, ConcurrentMap<String, Set<EntityCondition>>> entry : indexedConditions.entrySet()) {
+            Object fieldValue = entity.get(entry.getKey());
+            if (fieldValue instanceof String) {
+                Set<EntityCondition> conditions = entry.getValue().get(fieldValue);
+                if (conditions != null) {
+                    for (EntityCondition condition : conditions) {
+                        cache.remove(condition);
+                    }
+                }
+            } else {
+                for (Set<EntityCondition> conditions : entry.getValue().values()) {
+                    for (EntityCondition condition : conditions) {
+                        cache.remove(condition);
+                    }
+                }
+            }
+        }
+        if (size.get() > 2 * cache.size() + 64) {
+            prune();
+        }
+    }
+
+    /** Drops the conditions no longer in the cache, such as the ones removed by the LRU. */
+    private void prune() {
+        for (EntityCondition condition : otherConditions) {
+            if (!cache.containsKey(condition)) {
+                remove(condition);
+            }
+        }
+        for (ConcurrentMap<String, Set<EntityCondition>> conditionsByValue : indexedConditions.values()) {
+            for (Set<EntityCondition> conditions : conditionsByValue.values()) {
+                for (EntityCondition condition : conditions) {
+                    if (!cache.containsKey(condition)) {
+                        remove(condition);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of conditions in the index.
+     * @return the size
+     */
+    int size() {
+        return size.get();
+    }
+
+    private void add(EntityCondition condition) {
+        if (condition == null) {
+            return;
+        }
+        Map<String, String> constraints = getEqualityConstraints(condition);
+        String pkFieldName = getIndexFieldName(constraints);
+        boolean added;
+        if (pkFieldName == null) {
+            added = otherConditions.add(condition);
+        } else {
+            boolean[] result = new boolean[1];
+            indexedConditions.computeIfAbsent(pkFieldName, k -> new ConcurrentHashMap<>()).compute(constraints.get(pkFieldName), (k, conditions) -> {
+                Set<EntityCondition> newConditions = conditions != null ? conditions : ConcurrentHashMap.newKeySet();
+                result[0] = newConditions.add(condition);
+                return newConditions;
+            });
+            added = result[0];
+        }
+        if (added) {
+            size.incrementAndGet();
+        }
+    }
+
+    private void remove(EntityCondition condition) {
+        if (condition == null) {
+            return;
+        }
+        Map<String, String> constraints = getEqualityConstraints(condition);
+        String pkFieldName = getIndexFieldName(constraints);
+        boolean removed = false;
+        if (pkFieldName == null) {
+            removed = otherConditions.remove(condition);
+        } else {
+            ConcurrentMap<String, Set<EntityCondition>> conditionsByValue = indexedConditions.get(pkFieldName);
+            if (conditionsByValue != null) {
+                boolean[] result = new boolean[1];
+                conditionsByValue.computeIfPresent(constraints.get(pkFieldName), (k, conditions) -> {
+                    result[0] = conditions.remove(condition);
+                    return conditions.isEmpty() ? null : conditions;
+                });
+                removed = result[0];
+            }
+        }
+        if (removed) {
+            size.decrementAndGet();
+        }
+        // the condition may have been put back meanwhile, an extra entry is harmless but a missing one is not
+        if (cache.containsKey(condition)) {
+            add(condition);
+        }
+    }
+
+    /** Gets the first primary key field constrained by the condition, or null if there is none. */
+    private String getIndexFieldName(Map<String, String> constraints) {
+        for (String pkFieldName : pkFieldNames) {
+            if (constraints.containsKey(pkFieldName)) {
+                return pkFieldName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void noteKeyRemoval(UtilCache<EntityCondition, V> cache, EntityCondition key, V oldValue) {
+        remove(key);
+    }
+
+    @Override
+    public void noteKeyAddition(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue) {
+        add(key);
+    }
+
+    @Override
+    public void noteKeyUpdate(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue, V oldValue) {
+        add(key);
+    }
+}
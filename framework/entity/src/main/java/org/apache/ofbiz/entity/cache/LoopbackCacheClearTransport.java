@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * A {@link CacheClearTransport} between the transports of the same JVM that joined the same channel,
+ * for tests and single JVM setups with several delegators.
+ */
+public final class LoopbackCacheClearTransport implements CacheClearTransport {
+
+    private static final ConcurrentMap<String, Set<LoopbackCacheClearTransport>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final String channel;
+    private volatile Consumer<byte[]> receiver;
+
+    public LoopbackCacheClearTransport() {
+        this(UtilProperties.getPropertyValue("cacheclear", "cacheclear.loopback.channel", "default"));
+    }
+
+    public LoopbackCacheClearTransport(String channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        CHANNELS.computeIfAbsent(channel, k -> new CopyOnWriteArraySet<>()).add(this);
+    }
+
+    @Override
+    public void send(byte[] message) {
+        Set<LoopbackCacheClearTransport> transports = CHANNELS.get(channel);
+        if (transports == null) {
+            return;
+        }
+        for (LoopbackCacheClearTransport transport : transports) {
+            Consumer<byte[]> transportReceiver = transport.receiver;
+            if (transport != this && transportReceiver != null) {
+                synchronized (transport) {
+                    transportReceiver.accept(message.clone());
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return 65536;
+    }
+
+    @Override
+    public void stop() {
+        Set<LoopbackCacheClearTransport> transports = CHANNELS.get(channel);
+        if (transports != null) {
+            transports.remove(this);
+        }
+        receiver = null;
+    }
+}
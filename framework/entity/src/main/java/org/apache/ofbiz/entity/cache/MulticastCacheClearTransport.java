@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+
+/**
+ * A {@link CacheClearTransport} sending each message as one UDP multicast datagram.
+ * <p>The group, port, time to live, network interface and maximum message size are read from the
+ * <code>cacheclear.multicast.*</code> properties. Keep the maximum message size under the network MTU
+ * so the datagrams are not fragmented, and the group on a private network. The messages are only signed when
+ * <code>cacheclear.secret</code> is set, see {@link EntityCacheClearBus}.</p>
+ */
+public final class MulticastCacheClearTransport implements CacheClearTransport {
+
+    private static final String MODULE = MulticastCacheClearTransport.class.getName();
+    private static final String RESOURCE = "cacheclear";
+
+    private final InetAddress group;
+    private final int port;
+    private final int timeToLive;
+    private final String interfaceName;
+    private final int maxMessageSize;
+    private volatile MulticastSocket socket;
+
+    public MulticastCacheClearTransport() throws IOException {
+        this.group = InetAddress.getByName(UtilProperties.getPropertyValue(RESOURCE, "cacheclear.multicast.group", "239.255.27.1"));
+        this.port = UtilProperties.getPropertyAsInteger(RESOURCE, "cacheclear.multicast.port", 45564);
+        this.timeToLive = UtilProperties.getPropertyAsInteger(RESOURCE, "cacheclear.multicast.ttl", 1);
+        this.interfaceName = UtilProperties.getPropertyValue(RESOURCE, "cacheclear.multicast.interface");
+        this.maxMessageSize = UtilProperties.getPropertyAsInteger(RESOURCE, "cacheclear.multicast.maxMessageSize", 1400);
+    }
+
+    @Override
+    public synchronized void start(Consumer<byte[]> receiver) throws IOException {
+        NetworkInterface networkInterface = null;
+        if (UtilValidate.isNotEmpty(interfaceName)) {
+            networkInterface = NetworkInterface.getByName(interfaceName);
+            if (networkInterface == null) {
+                throw new IOException("Network interface [" + interfaceName + "] not found");
+            }
+        }
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(timeToLive);
+        if (networkInterface != null) {
+            socket.setNetworkInterface(networkInterface);
+        }
+        socket.joinGroup(new InetSocketAddress(group, port), networkInterface);
+        MulticastSocket receiverSocket = socket;
+        Thread receiverThread = new Thread(() -> receive(receiverSocket, receiver), "OFBiz-CacheClear-" + group.getHostAddress() + ":" + port);
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        Debug.logInfo("Joined the cache clear multicast group " + group.getHostAddress() + ":" + port, MODULE);
+    }
+
+    private void receive(MulticastSocket receiverSocket, Consumer<byte[]> receiver) {
+        byte[] buffer = new byte[65536];
+        while (!receiverSocket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                receiverSocket.receive(packet);
+                receiver.accept(Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength()));
+            } catch (IOException e) {
+                if (!receiverSocket.isClosed()) {
+                    Debug.logError(e, "Error receiving a cache clear message", MODULE);
+                }
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Error processing a cache clear message", MODULE);
+            }
+        }
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        MulticastSocket sendSocket = socket;
+        if (sendSocket == null) {
+            throw new IOException("The cache clear multicast transport is not started");
+        }
+        sendSocket.send(new DatagramPacket(message, message.length, group, port));
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (socket != null) {
+            socket.close();
+            socket = null;
+        }
+    }
+}
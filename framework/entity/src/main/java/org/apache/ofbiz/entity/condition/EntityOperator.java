@@ -285,6 +285,12 @@ public abstract class EntityOperator<L, R> implements Serializable {
         return codeString;
     }
 
+    /** Resolves a deserialized operator to the registered instance, operators are compared by identity. */
+    protected Object readResolve() {
+        EntityOperator<?, ?> operator = codeString == null ? null : registry.get(codeString.replace(' ', '-'));
+        return operator != null && operator.getClass() == getClass() ? operator : this;
+    }
+
     @Override
     public int hashCode() {
         return this.codeString.hashCode();
@@ -63,6 +63,7 @@ public final class Datasource {
     private final boolean dropFkUseForeignKeyKeyword;
     private final boolean useBinaryTypeForBlob;
     private final boolean useOrderByNulls;
+    private final boolean useSkipLocked;
     private final String offsetStyle;
     private final String tableType; // type = xs:string
     private final String characterSet; // type = xs:string
@@ -146,6 +147,7 @@ public final class Datasource {
         this.dropFkUseForeignKeyKeyword = "true".equals(element.getAttribute("drop-fk-use-foreign-key-keyword"));
         this.useBinaryTypeForBlob = "true".equals(element.getAttribute("use-binary-type-for-blob"));
         this.useOrderByNulls = "true".equals(element.getAttribute("use-order-by-nulls"));
+        this.useSkipLocked = "true".equals(element.getAttribute("use-skip-locked"));
         String offsetStyle = element.getAttribute("offset-style").intern();
         if (offsetStyle.isEmpty()) {
             offsetStyle = "none";
@@ -358,6 +360,11 @@ public final class Datasource {
         return this.useOrderByNulls;
     }
 
+    /** Returns the value of the <code>use-skip-locked</code> attribute. */
+    public boolean getUseSkipLocked() {
+        return this.useSkipLocked;
+    }
+
     /** Returns the value of the <code>offset-style</code> attribute. */
     public String getOffsetStyle() {
         return this.offsetStyle;
@@ -160,6 +160,7 @@ public class GenericDAO {
         try {
             sqlP.prepareStatement(sqlB.toString());
             for (GenericEntity ent : entities) {
+                setCreateStamps(ent, modelEntity, fieldsToSave);
                 SqlJdbcUtil.setValues(sqlP, fieldsToSave, ent, modelFieldTypeReader);
                 sqlP.addBatch();
             }
@@ -174,12 +175,13 @@ public class GenericDAO {
         }
     }
 
-    private int singleInsert(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave, SQLProcessor sqlP)
-            throws GenericEntityException {
-        if (modelEntity instanceof ModelViewEntity) {
-            return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
-        }
-
+    /**
+     * Sets the stamp fields of an entity to insert.
+     * @param entity the entity
+     * @param modelEntity the model of the entity
+     * @param fieldsToSave the fields to insert, the stamp fields are added when missing
+     */
+    private static void setCreateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD or CREATE_STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -216,6 +218,15 @@ public class GenericDAO {
                 addFieldIfMissing(fieldsToSave, ModelEntity.CREATE_STAMP_FIELD, modelEntity);
             }
         }
+    }
+
+    private int singleInsert(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave, SQLProcessor sqlP)
+            throws GenericEntityException {
+        if (modelEntity instanceof ModelViewEntity) {
+            return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
+        }
+
+        setCreateStamps(entity, modelEntity, fieldsToSave);
 
         StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
 
@@ -851,6 +862,11 @@ public class GenericDAO {
         // OFFSET clause
         makeOffsetString(sqlBuffer, findOptions);
 
+        // row locking clause
+        if (findOptions.getSkipLocked() && datasource.getUseSkipLocked()) {
+            sqlBuffer.append(" FOR UPDATE SKIP LOCKED");
+        }
+
         // make the final SQL String
         String sql = sqlBuffer.toString();
 
@@ -18,6 +18,9 @@
  */
 package org.apache.ofbiz.entity.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -90,7 +93,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     /** Synchronization object used to control access to the ModelField collection objects.
      * A single lock is used for all ModelField collections so collection updates are atomic. */
-    private final Object fieldsLock = new Object();
+    private transient Object fieldsLock = new Object();
 
     /** Model fields in the order they were defined. This list duplicates the values in fieldsMap, but
      *  we must keep the list in its original sequence for SQL DISTINCT operations to work properly. */
@@ -98,6 +101,9 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     private final Map<String, ModelField> fieldsMap = new HashMap<>();
 
+    /** The positions of the fields in the values of this entity, made on first use and dropped when the fields change. */
+    private transient volatile ModelFieldLayout fieldLayout = null;
+
     private final ArrayList<String> pkFieldNames = new ArrayList<>();
 
     /** A List of the Field objects for the Entity, one for each Primary Key */
@@ -305,6 +311,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
         this.fieldsList.add(newField);
         this.fieldsMap.put(newField.getName(), newField);
+        this.fieldLayout = null;
     }
 
     /**
@@ -421,6 +428,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
                 }
                 this.fieldsList.add(newField);
                 this.fieldsMap.put(newField.getName(), newField);
+                this.fieldLayout = null;
                 if (!newField.getIsPk()) {
                     if (existingField != null) {
                         this.nopks.remove(existingField);
@@ -749,6 +757,21 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
     }
 
+    /**
+     * Gets the positions of the fields in the values of this entity.
+     * @return the field layout
+     */
+    public ModelFieldLayout getFieldLayout() {
+        ModelFieldLayout layout = this.fieldLayout;
+        if (layout == null) {
+            synchronized (fieldsLock) {
+                layout = new ModelFieldLayout(this.fieldsList);
+                this.fieldLayout = layout;
+            }
+        }
+        return layout;
+    }
+
     /**
      * Gets fields iterator.
      * @return the fields iterator
@@ -804,6 +827,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         synchronized (fieldsLock) {
             this.fieldsList.add(field);
             fieldsMap.put(field.getName(), field);
+            this.fieldLayout = null;
             if (field.getIsPk()) {
                 pks.add(field);
                 if (!pkFieldNames.contains(field.getName())) {
@@ -828,6 +852,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
             ModelField field = fieldsMap.remove(fieldName);
             if (field != null) {
                 this.fieldsList.remove(field);
+                this.fieldLayout = null;
                 if (field.getIsPk()) {
                     pks.remove(field);
                     pkFieldNames.remove(field.getName());
@@ -2373,4 +2398,20 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         return modelInfo.getVersion();
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(modelInfo.getTitle());
+        out.writeObject(modelInfo.getDescription());
+        out.writeObject(modelInfo.getCopyright());
+        out.writeObject(modelInfo.getAuthor());
+        out.writeObject(modelInfo.getVersion());
+        out.writeObject(modelInfo.getDefaultResourceName());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        modelInfo = new ModelInfo((String) in.readObject(), (String) in.readObject(), (String) in.readObject(), (String) in.readObject(),
+                (String) in.readObject(), (String) in.readObject());
+        fieldsLock = new Object();
+    }
 }
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.model;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The position of each field of an entity, in the order the fields are defined, used to keep the field
+ * values of a <code>GenericEntity</code> in an array. An instance never changes: a change of the entity
+ * fields makes a new one.
+ */
+@SuppressWarnings("serial")
+public final class ModelFieldLayout implements Serializable {
+
+    private final String[] fieldNames;
+    private transient Map<String, Integer> fieldIndexes;
+
+    ModelFieldLayout(List<ModelField> fields) {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (ModelField field : fields) {
+            indexes.putIfAbsent(field.getName(), indexes.size());
+        }
+        this.fieldNames = new String[indexes.size()];
+        for (Map.Entry<String, Integer> entry : indexes.entrySet()) {
+            this.fieldNames[entry.getValue()] = entry.getKey();
+        }
+        this.fieldIndexes = indexes;
+    }
+
+    /**
+     * Gets the number of fields.
+     * @return the number of fields
+     */
+    public int size() {
+        return fieldNames.length;
+    }
+
+    /**
+     * Gets the position of a field.
+     * @param fieldName the field name
+     * @return the position of the field, or -1 if the entity has no such field
+     */
+    public int indexOf(Object fieldName) {
+        Map<String, Integer> indexes = fieldIndexes;
+        if (indexes == null) {
+            // deserialized
+            indexes = new HashMap<>();
+            for (int i = 0; i < fieldNames.length; i++) {
+                indexes.put(fieldNames[i], i);
+            }
+            fieldIndexes = indexes;
+        }
+        Integer index = indexes.get(fieldName);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Gets the name of the field at a position.
+     * @param index the position
+     * @return the field name
+     */
+    public String getFieldName(int index) {
+        return fieldNames[index];
+    }
+}
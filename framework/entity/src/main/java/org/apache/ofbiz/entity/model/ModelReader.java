@@ -18,7 +18,22 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.model;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -29,12 +44,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.ofbiz.base.component.ComponentConfig;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.SafeObjectInputStream;
+import org.apache.ofbiz.base.util.StringUtil;
 import org.apache.ofbiz.base.util.UtilTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
@@ -59,6 +79,10 @@ public final class ModelReader implements Serializable {
 
     private static final String MODULE = ModelReader.class.getName();
     private static final UtilCache<String, ModelReader> READERS = UtilCache.createUtilCache("entity.ModelReader", 0, 0);
+    /** Changed whenever the snapshot content changes in a way the serialized classes do not show */
+    private static final String SNAPSHOT_FORMAT = "entity-model-snapshot-1";
+    /** The reader a snapshot is being written or read for, see {@link #writeReplace()} */
+    private static final ThreadLocal<ModelReader> SNAPSHOT_READER = new ThreadLocal<>();
 
     private volatile Map<String, ModelEntity> entityCache = null;
 
@@ -83,6 +107,9 @@ public final class ModelReader implements Serializable {
      */
     private Map<String, ResourceHandler> entityResourceHandlerMap;
 
+    /** file the loaded model is saved to and restored from, null when not used */
+    private Path snapshotPath;
+
     public static ModelReader getModelReader(String delegatorName) throws GenericEntityException {
         DelegatorElement delegatorInfo = EntityConfig.getInstance().getDelegator(delegatorName);
 
@@ -114,6 +141,12 @@ public final class ModelReader implements Serializable {
             throw new GenericEntityConfException("Cound not find an entity-model-reader with the name " + modelName);
         }
 
+        String snapshotFile = entityModelReaderInfo.getSnapshotFile();
+        if (!snapshotFile.isEmpty()) {
+            Path path = Paths.get(snapshotFile);
+            snapshotPath = path.isAbsolute() ? path : Paths.get(System.getProperty("ofbiz.home", "."), snapshotFile);
+        }
+
         // get all of the main resource model stuff, ie specified in the entityengine.xml file
         for (Resource resourceElement : entityModelReaderInfo.getResourceList()) {
             ResourceHandler handler = new MainResourceHandler(EntityConfig.ENTITY_ENGINE_XML_FILENAME, resourceElement
@@ -198,6 +231,10 @@ public final class ModelReader implements Serializable {
             synchronized (ModelReader.class) {
                 // must check if null again as one of the blocked threads can still enter
                 if (entityCache == null) { // now it's safe
+                    String snapshotKey = snapshotPath != null ? createSnapshotKey() : null;
+                    if (snapshotKey != null && readSnapshot(snapshotKey)) {
+                        return entityCache;
+                    }
                     numEntities = 0;
                     numViewEntities = 0;
                     numFields = 0;
@@ -210,16 +247,16 @@ public final class ModelReader implements Serializable {
 
                     UtilTimer utilTimer = new UtilTimer();
 
+                    // parse all the files concurrently, then build the entities in the file order so
+                    // that redefinitions and extensions are applied as in a sequential load
+                    List<Future<Document>> documentFutures = new ArrayList<>(entityResourceHandlers.size());
+                    for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
+                        documentFutures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(entityResourceHandler::getDocument));
+                    }
+                    Iterator<Future<Document>> documentFutureIt = documentFutures.iterator();
                     for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
 
-                        // utilTimer.timerString("Before getDocument in file " + entityFileName);
-                        Document document = null;
-
-                        try {
-                            document = entityResourceHandler.getDocument();
-                        } catch (GenericConfigException e) {
-                            throw new GenericEntityConfException("Error getting document from resource handler", e);
-                        }
+                        Document document = getDocument(entityResourceHandler, documentFutureIt.next());
                         if (document == null) {
                             throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
                         }
@@ -446,12 +483,194 @@ public final class ModelReader implements Serializable {
                                 + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations
                                 + " #AutoRelationships=" + numAutoRelations, MODULE);
                     }
+                    if (snapshotKey != null) {
+                        writeSnapshot(snapshotKey);
+                    }
                 }
             }
         }
         return entityCache;
     }
 
+    private static Document getDocument(ResourceHandler entityResourceHandler, Future<Document> documentFuture)
+            throws GenericEntityConfException {
+        try {
+            return documentFuture.get();
+        } catch (ExecutionException e) {
+            throw new GenericEntityConfException("Error getting document from resource handler " + entityResourceHandler, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenericEntityConfException("Interrupted while reading " + entityResourceHandler, e);
+        }
+    }
+
+    /**
+     * Returns a digest of the location and content of all the entity definition files, or null
+     * if a file could not be read. A snapshot is only used when it was written for the same key.
+     */
+    private String createSnapshotKey() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SNAPSHOT_FORMAT.getBytes(StandardCharsets.UTF_8));
+            for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
+                URL url = entityResourceHandler.getURL();
+                digest.update(url.toExternalForm().getBytes(StandardCharsets.UTF_8));
+                try (InputStream in = url.openStream()) {
+                    digest.update(in.readAllBytes());
+                }
+            }
+            return StringUtil.toHexString(digest.digest());
+        } catch (GenericConfigException | IOException | NoSuchAlgorithmException e) {
+            Debug.logWarning(e, "Could not check the entity definition files, not using the entity model snapshot " + snapshotPath, MODULE);
+            return null;
+        }
+    }
+
+    /** Loads the entity model from the snapshot file, returns false if there is no usable snapshot for this key. */
+    private boolean readSnapshot(String snapshotKey) {
+        if (!Files.isReadable(snapshotPath)) {
+            return false;
+        }
+        UtilTimer utilTimer = new UtilTimer();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshotPath))) {
+            Snapshot snapshot = readSnapshot(in, snapshotKey);
+            if (snapshot == null) {
+                Debug.logInfo("Entity definitions changed since the entity model snapshot " + snapshotPath + " was written, reloading them", MODULE);
+                return false;
+            }
+            List<ResourceHandler> handlers = new ArrayList<>(entityResourceHandlers);
+            Map<String, ResourceHandler> handlerMap = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : snapshot.entityResourceIndexes.entrySet()) {
+                handlerMap.put(entry.getKey(), handlers.get(entry.getValue()));
+            }
+            entityResourceHandlerMap = handlerMap;
+            rebuildResourceHandlerEntities();
+            numEntities = snapshot.numEntities;
+            numViewEntities = snapshot.numViewEntities;
+            numFields = snapshot.numFields;
+            numRelations = snapshot.numRelations;
+            numAutoRelations = snapshot.numAutoRelations;
+            entityCache = snapshot.entityCache;
+        } catch (IOException | ClassNotFoundException | ClassCastException | IndexOutOfBoundsException e) {
+            Debug.logWarning("Could not read the entity model snapshot " + snapshotPath + ", reloading the entity definitions: " + e, MODULE);
+            return false;
+        }
+        utilTimer.timerString("Loaded " + entityCache.size() + " entities from the entity model snapshot " + snapshotPath, MODULE);
+        if (Debug.infoOn()) {
+            Debug.logInfo("Finished loading entities from snapshot; #Entities=" + numEntities + " #ViewEntities="
+                    + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations
+                    + " #AutoRelationships=" + numAutoRelations, MODULE);
+        }
+        return true;
+    }
+
+    /** Saves the loaded entity model to the snapshot file, failures are logged and otherwise ignored. */
+    private void writeSnapshot(String snapshotKey) {
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(snapshotPath.toAbsolutePath().getParent());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                writeSnapshot(out, snapshotKey);
+            }
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Debug.logWarning(e, "Could not write the entity model snapshot " + snapshotPath, MODULE);
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException e2) {
+                Debug.logWarning("Could not delete " + tempPath + ": " + e2, MODULE);
+            }
+        }
+    }
+
+    /**
+     * Writes the loaded entity model to the stream as it is saved in the <code>snapshot-file</code>
+     * of the entity-model-reader, after the key it is valid for.
+     * @param out the stream to write to, not closed
+     * @param snapshotKey the key the snapshot is read back with
+     * @throws IOException if the model could not be written
+     */
+    public void writeSnapshot(OutputStream out, String snapshotKey) throws IOException {
+        Snapshot snapshot = new Snapshot();
+        snapshot.entityCache = entityCache;
+        List<ResourceHandler> handlers = new ArrayList<>(entityResourceHandlers);
+        for (Map.Entry<String, ResourceHandler> entry : entityResourceHandlerMap.entrySet()) {
+            snapshot.entityResourceIndexes.put(entry.getKey(), handlers.indexOf(entry.getValue()));
+        }
+        snapshot.numEntities = numEntities;
+        snapshot.numViewEntities = numViewEntities;
+        snapshot.numFields = numFields;
+        snapshot.numRelations = numRelations;
+        snapshot.numAutoRelations = numAutoRelations;
+        SNAPSHOT_READER.set(this);
+        try {
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeUTF(snapshotKey);
+            objectOut.writeObject(snapshot);
+            objectOut.flush();
+        } finally {
+            SNAPSHOT_READER.remove();
+        }
+    }
+
+    /**
+     * Reads the entities of a model written by {@link #writeSnapshot(OutputStream, String)}, they refer to
+     * this reader but do not replace its entities.
+     * @param in the stream to read from, not closed
+     * @param snapshotKey the key the snapshot must have been written with
+     * @return the entities by name, or <code>null</code> if the snapshot was written with another key
+     * @throws IOException if the snapshot could not be read
+     * @throws ClassNotFoundException if the snapshot refers to a class that does not exist or is not allowed
+     */
+    public Map<String, ModelEntity> readSnapshotEntities(InputStream in, String snapshotKey) throws IOException, ClassNotFoundException {
+        Snapshot snapshot = readSnapshot(in, snapshotKey);
+        return snapshot != null ? snapshot.entityCache : null;
+    }
+
+    private Snapshot readSnapshot(InputStream in, String snapshotKey) throws IOException, ClassNotFoundException {
+        SNAPSHOT_READER.set(this);
+        try {
+            SafeObjectInputStream objectIn = new SafeObjectInputStream(in);
+            if (!snapshotKey.equals(objectIn.readUTF())) {
+                return null;
+            }
+            return (Snapshot) objectIn.readObject();
+        } finally {
+            SNAPSHOT_READER.remove();
+        }
+    }
+
+    /**
+     * Replaces this reader by a {@link SnapshotReference} in a snapshot, the model entities refer to
+     * their reader which must not be saved with them.
+     */
+    private Object writeReplace() {
+        return SNAPSHOT_READER.get() == this ? new SnapshotReference() : this;
+    }
+
+    /** Stands for the reader that is writing or reading a snapshot. */
+    private static final class SnapshotReference implements Serializable {
+        private Object readResolve() throws InvalidObjectException {
+            ModelReader reader = SNAPSHOT_READER.get();
+            if (reader == null) {
+                throw new InvalidObjectException("Entity model snapshot can only be read by a ModelReader");
+            }
+            return reader;
+        }
+    }
+
+    /** The content of a snapshot file, after the key. */
+    private static final class Snapshot implements Serializable {
+        private Map<String, ModelEntity> entityCache;
+        /** entity name to the index of its resource handler in entityResourceHandlers */
+        private Map<String, Integer> entityResourceIndexes = new HashMap<>();
+        private int numEntities;
+        private int numViewEntities;
+        private int numFields;
+        private int numRelations;
+        private int numAutoRelations;
+    }
+
     /**
      * rebuilds the resourceHandlerEntities Map of Collections based on the current
      * entityResourceHandlerMap Map, must be done whenever a manual change is made
@@ -18,12 +18,18 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -40,24 +46,32 @@ import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.Observable;
 import org.apache.ofbiz.base.util.Observer;
+import org.apache.ofbiz.base.util.SafeObjectInputStream;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.GenericDelegator;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.EntityCacheClearBus;
+import org.apache.ofbiz.entity.cache.LoopbackCacheClearTransport;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.model.ModelReader;
+import org.apache.ofbiz.entity.model.ModelViewEntity;
+import org.apache.ofbiz.entity.serialize.XmlSerializer;
 import org.apache.ofbiz.entity.testtools.EntityTestCase;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityBatchIterator;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntitySaxReader;
@@ -100,6 +114,65 @@ public class EntityTestSuite extends EntityTestCase {
         assertNull("TestingType.newDesc field model is null", modelField);
     }
 
+    /**
+     * Tests that the entity model snapshot reads back the model it was written from.
+     * @throws Exception the exception
+     */
+    public void testModelSnapshot() throws Exception {
+        ModelReader reader = getDelegator().getModelReader();
+        Map<String, ModelEntity> entities = reader.getEntityCache();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.writeSnapshot(out, "testModelSnapshot");
+        assertNull("Snapshot of another key not read",
+                reader.readSnapshotEntities(new ByteArrayInputStream(out.toByteArray()), "otherKey"));
+        Map<String, ModelEntity> snapshotEntities = reader.readSnapshotEntities(new ByteArrayInputStream(out.toByteArray()),
+                "testModelSnapshot");
+        assertNotNull("Snapshot read", snapshotEntities);
+        assertEquals("Same entities", entities.keySet(), snapshotEntities.keySet());
+        int viewEntities = 0;
+        for (ModelEntity modelEntity : entities.values()) {
+            String entityName = modelEntity.getEntityName();
+            ModelEntity snapshotEntity = snapshotEntities.get(entityName);
+            assertNotSame(entityName + " copied", modelEntity, snapshotEntity);
+            assertSame(entityName + " reader", reader, snapshotEntity.getModelReader());
+            assertEquals(entityName + " fields", new HashSet<>(modelEntity.getAllFieldNames()), new HashSet<>(snapshotEntity.getAllFieldNames()));
+            assertEquals(entityName + " primary key", modelEntity.getPkFieldNames(), snapshotEntity.getPkFieldNames());
+            assertEquals(entityName + " relations", modelEntity.getRelationsSize(), snapshotEntity.getRelationsSize());
+            assertEquals(entityName + " indexes", modelEntity.getIndexesSize(), snapshotEntity.getIndexesSize());
+            assertEquals(entityName + " view entities", modelEntity.getViewEntitiesSize(), snapshotEntity.getViewEntitiesSize());
+            assertEquals(entityName + " title", modelEntity.getTitle(), snapshotEntity.getTitle());
+            assertEquals(entityName + " description", modelEntity.getDescription(), snapshotEntity.getDescription());
+            if (modelEntity instanceof ModelViewEntity) {
+                viewEntities++;
+                ModelViewEntity modelViewEntity = (ModelViewEntity) modelEntity;
+                ModelViewEntity snapshotViewEntity = (ModelViewEntity) snapshotEntity;
+                assertEquals(entityName + " aliases", modelViewEntity.getAliasesSize(), snapshotViewEntity.getAliasesSize());
+                assertEquals(entityName + " view links", modelViewEntity.getViewLinksSize(), snapshotViewEntity.getViewLinksSize());
+                assertEquals(entityName + " member entities", modelViewEntity.getAllModelMemberEntities().size(),
+                        snapshotViewEntity.getAllModelMemberEntities().size());
+            }
+        }
+        assertTrue("View entities checked", viewEntities > 0);
+        // the snapshotted fields lock still guards the field lists
+        ModelEntity testingType = snapshotEntities.get("TestingType");
+        testingType.addField(ModelField.create(testingType, null, "newDesc", testingType.getField("description").getType(), "NEW_DESC",
+                null, null, false, false, false, false, false, null));
+        assertNotNull("TestingType.newDesc field model added to the snapshot copy", testingType.getField("newDesc"));
+        assertNull("TestingType.newDesc field model not in the model", entities.get("TestingType").getField("newDesc"));
+
+        // operators are compared by identity, they must come back as the registered instances
+        for (EntityOperator<?, ?> operator : UtilMisc.<EntityOperator<?, ?>>toList(EntityOperator.EQUALS, EntityOperator.IN,
+                EntityOperator.AND, EntityOperator.LIKE)) {
+            ByteArrayOutputStream operatorOut = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(operatorOut)) {
+                objectOut.writeObject(operator);
+            }
+            try (SafeObjectInputStream objectIn = new SafeObjectInputStream(new ByteArrayInputStream(operatorOut.toByteArray()))) {
+                assertSame(operator.getCode() + " operator resolved", operator, objectIn.readObject());
+            }
+        }
+    }
+
     /**
      * Tests storing values with the delegator's .create, .makeValue, and .storeAll methods
      */
@@ -336,6 +409,38 @@ public class EntityTestSuite extends EntityTestCase {
                 testValue.getString("subtypeDescription"));
     }
 
+    /**
+     * Tests that a list cached under a condition is cleared by a condition cache clear received from another node, the nodes being
+     * two cache clear buses joined by a loopback transport.
+     * @throws Exception the exception
+     */
+    public void testCacheClearBusCondition() throws Exception {
+        Delegator delegator = getDelegator();
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-BUS-%"));
+        delegator.create("TestingType", "testingTypeId", "TEST-BUS-1", "description", "Testing Type #Bus-1");
+        String channel = "test-" + UUID.randomUUID();
+        EntityCacheClearBus receivingBus = new EntityCacheClearBus();
+        receivingBus.setDelegator(delegator, new LoopbackCacheClearTransport(channel));
+        try {
+            EntityCondition condition = EntityCondition.makeCondition(EntityCondition.makeCondition("testingTypeId", "TEST-BUS-1"),
+                    EntityCondition.makeCondition("description", EntityOperator.LIKE, "Testing Type%"));
+            List<GenericValue> testList = EntityQuery.use(delegator).from("TestingType").where(condition).cache(true).queryList();
+            assertEquals("List cached", 1, testList.size());
+            assertNotNull("List in the cache", delegator.getCache().get("TestingType", condition, (List<String>) null));
+            EntityCacheClearBus sendingBus = new EntityCacheClearBus();
+            sendingBus.setDelegator(delegator, new LoopbackCacheClearTransport(channel));
+            try {
+                sendingBus.distributedClearCacheLineByCondition("TestingType", condition);
+            } finally {
+                // sends the queued line
+                sendingBus.stop();
+            }
+            assertNull("List cleared by the received condition", delegator.getCache().get("TestingType", condition, (List<String>) null));
+        } finally {
+            receivingBus.stop();
+        }
+    }
+
     /**
      * Test xml serialization.
      * @throws Exception the exception
@@ -796,6 +901,191 @@ public class EntityTestSuite extends EntityTestCase {
         }
     }
 
+    /**
+     * Tests storeAll with values to create and values to update in the same list, with keys coming more than once
+     */
+    public void testStoreAllCreatesAndUpdates() throws Exception {
+        Delegator delegator = getDelegator();
+        try {
+            delegator.create("Testing", "testingId", "T3-existing", "description", "old");
+            List<GenericValue> newValues = new LinkedList<>();
+            newValues.add(delegator.makeValue("Testing", "testingId", "T3-existing", "description", "new"));
+            for (int i = 0; i < TEST_COUNT; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T3-", i), "description", "first"));
+            }
+            newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T3-", 0), "description", "second"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T3-existing", "description", "old"));
+            int numberChanged = delegator.storeAll(newValues);
+            assertEquals("Values created or updated", TEST_COUNT + 3, numberChanged);
+
+            GenericValue existing = EntityQuery.use(delegator).from("Testing").where("testingId", "T3-existing").queryOne();
+            assertEquals("Existing value updated twice", "old", existing.getString("description"));
+            GenericValue created = EntityQuery.use(delegator).from("Testing").where("testingId", getTestId("T3-", 0)).queryOne();
+            assertEquals("Created value updated", "second", created.getString("description"));
+            assertNotNull("Created value has a tx stamp", created.get(ModelEntity.CREATE_STAMP_TX_FIELD));
+            long count = EntityQuery.use(delegator).from("Testing")
+                    .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T3-%")).queryCount();
+            assertEquals("Values stored", TEST_COUNT + 1, count);
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T3-%"));
+        }
+    }
+
+    /**
+     * Tests storeAll with values of an entity whose primary key holds a timestamp, existing or not
+     */
+    public void testStoreAllTimestampKey() throws Exception {
+        Delegator delegator = getDelegator();
+        Timestamp fromDate = UtilDateTime.nowTimestamp();
+        try {
+            delegator.create("TestingNode", "testingNodeId", "T8-node");
+            delegator.create("Testing", "testingId", "T8-testing");
+            delegator.create("TestingNodeMember", "testingNodeId", "T8-node", "testingId", "T8-testing", "fromDate", fromDate);
+            Timestamp thruDate = UtilDateTime.getNextDayStart(fromDate);
+            List<GenericValue> newValues = UtilMisc.toList(
+                    delegator.makeValue("TestingNodeMember", "testingNodeId", "T8-node", "testingId", "T8-testing",
+                            "fromDate", new Timestamp(fromDate.getTime()), "thruDate", thruDate),
+                    delegator.makeValue("TestingNodeMember", "testingNodeId", "T8-node", "testingId", "T8-testing",
+                            "fromDate", thruDate, "thruDate", thruDate));
+            assertEquals("Values created or updated", 2, delegator.storeAll(newValues));
+
+            List<GenericValue> members = EntityQuery.use(delegator).from("TestingNodeMember").where("testingNodeId", "T8-node")
+                    .orderBy("fromDate").queryList();
+            assertEquals("Existing value updated, new value created", 2, members.size());
+            assertEquals("Existing value updated", thruDate, members.get(0).getTimestamp("thruDate"));
+        } finally {
+            delegator.removeByAnd("TestingNodeMember", "testingNodeId", "T8-node");
+            delegator.removeByAnd("TestingNode", "testingNodeId", "T8-node");
+            delegator.removeByAnd("Testing", "testingId", "T8-testing");
+        }
+    }
+
+    /**
+     * Tests the EntitySyncChange records saved for the values created and stored with saveEntitySyncChangeInfo on
+     */
+    public void testSaveEntitySyncChangeInfo() throws Exception {
+        Delegator delegator = getDelegator();
+        GenericDelegator changeLogDelegator = (GenericDelegator) delegator.cloneDelegator();
+        changeLogDelegator.setEntitySyncChangeInfoEnabled(true);
+        try {
+            GenericValue created = changeLogDelegator.create("Testing", "testingId", "T4-create", "description", "created");
+            created.set("description", "stored");
+            changeLogDelegator.store(created);
+            changeLogDelegator.storeByCondition("Testing", UtilMisc.toMap("description", "by condition"),
+                    EntityCondition.makeCondition("testingId", "T4-create"));
+            changeLogDelegator.createAllByBatchProcess(UtilMisc.toList(
+                    changeLogDelegator.makeValue("Testing", "testingId", "T4-batch1"),
+                    changeLogDelegator.makeValue("Testing", "testingId", "T4-batch2")));
+            GenericValue fromSync = changeLogDelegator.makeValue("Testing", "testingId", "T4-sync");
+            fromSync.setIsFromEntitySync(true);
+            changeLogDelegator.create(fromSync);
+            delegator.create("Testing", "testingId", "T4-off");
+
+            List<String> expected = Arrays.asList("create T4-batch1", "create T4-batch2", "create T4-create", "store T4-create",
+                    "store T4-create");
+            assertEquals("EntitySyncChange records", expected, getSyncChanges(delegator, "T4-"));
+        } finally {
+            for (GenericValue change : EntityQuery.use(delegator).from("EntitySyncChange").where("changedEntityName", "Testing").queryList()) {
+                GenericPK changedKey = (GenericPK) XmlSerializer.deserialize(change.getString("primaryKeyChanged"), delegator);
+                if (changedKey.getString("testingId").startsWith("T4-")) {
+                    change.remove();
+                }
+            }
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T4-%"));
+        }
+    }
+
+    /** the sorted operations and ids of the EntitySyncChange records saved for the Testing values with an id starting with the prefix */
+    private static List<String> getSyncChanges(Delegator delegator, String testingIdPrefix) throws Exception {
+        List<String> changes = new ArrayList<>();
+        for (GenericValue change : EntityQuery.use(delegator).from("EntitySyncChange").where("changedEntityName", "Testing").queryList()) {
+            GenericPK changedKey = (GenericPK) XmlSerializer.deserialize(change.getString("primaryKeyChanged"), delegator);
+            String testingId = changedKey.getString("testingId");
+            if (testingId.startsWith(testingIdPrefix)) {
+                changes.add(change.getString("changeOperation") + " " + testingId);
+            }
+        }
+        Collections.sort(changes);
+        return changes;
+    }
+
+    /**
+     * Tests the keyset mode of EntityBatchIterator on a composite primary key, with batch boundaries between equal values of
+     * its first field
+     */
+    public void testSeekBatchIteratorCompositeKey() throws Exception {
+        Delegator delegator = getDelegator();
+        try {
+            List<String> expected = new ArrayList<>();
+            for (String testingId : Arrays.asList("T6-A", "T6-B")) {
+                delegator.create("Testing", "testingId", testingId);
+                for (int i = 1; i <= (testingId.endsWith("A") ? 5 : 3); i++) {
+                    String testingSeqId = "0" + i;
+                    delegator.create("TestingItem", "testingId", testingId, "testingSeqId", testingSeqId);
+                    expected.add(testingId + "/" + testingSeqId);
+                }
+            }
+            EntityBatchIterator iterator = EntityQuery.use(delegator).from("TestingItem")
+                    .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T6-%"))
+                    .orderBy("testingId").limit(2).querySeekBatchIterator();
+            List<String> found = new ArrayList<>();
+            GenericValue testingItem;
+            while ((testingItem = iterator.nextWithException()) != null) {
+                found.add(testingItem.getString("testingId") + "/" + testingItem.getString("testingSeqId"));
+            }
+            assertEquals("All items found once in key order", expected, found);
+        } finally {
+            delegator.removeByCondition("TestingItem", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T6-%"));
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T6-%"));
+        }
+    }
+
+    /**
+     * Tests the keyset mode of EntityBatchIterator refuses the orderBy items it cannot seek on
+     */
+    public void testSeekBatchIteratorRefusesOrderBy() throws Exception {
+        for (String orderBy : Arrays.asList("-testingId", "description", "unknownField")) {
+            try {
+                EntityQuery.use(getDelegator()).from("Testing").orderBy(orderBy).querySeekBatchIterator();
+                fail("Keyset mode refuses the orderBy [" + orderBy + "]");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Tests the keyset mode of EntityBatchIterator neither repeats nor skips rows when rows are created or removed between batches
+     */
+    public void testSeekBatchIteratorConcurrentChanges() throws Exception {
+        Delegator delegator = getDelegator();
+        try {
+            for (int i = 0; i < 10; i++) {
+                delegator.create("Testing", "testingId", "T7-" + i);
+            }
+            EntityBatchIterator iterator = EntityQuery.use(delegator).from("Testing")
+                    .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T7-%"))
+                    .limit(3).querySeekBatchIterator();
+            List<String> found = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                found.add(iterator.nextWithException().getString("testingId"));
+            }
+            // one row read and one row still to read removed, one row created before and one after the last row read
+            delegator.removeByAnd("Testing", "testingId", "T7-1");
+            delegator.removeByAnd("Testing", "testingId", "T7-7");
+            delegator.create("Testing", "testingId", "T7-0a");
+            delegator.create("Testing", "testingId", "T7-5a");
+            GenericValue testing;
+            while ((testing = iterator.nextWithException()) != null) {
+                found.add(testing.getString("testingId"));
+            }
+            assertEquals("Rows found once, with the rows created after the last row read",
+                    Arrays.asList("T7-0", "T7-1", "T7-2", "T7-3", "T7-4", "T7-5", "T7-5a", "T7-6", "T7-8", "T7-9"), found);
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T7-%"));
+        }
+    }
+
     /**
      * This test will use the large number of unique items from above and test the EntityListIterator looping through the list
      */
@@ -18,13 +18,28 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.util;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.condition.OrderByItem;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
 
+/**
+ * Iterates over the results of an EntityQuery in batches of <code>limit</code> rows (500 by default).
+ * <p>By default each batch is queried with an increasing offset, which makes the database skip all the rows
+ * already read. In keyset mode, see {@link EntityQuery#querySeekBatchIterator()}, each batch is queried with
+ * a condition that seeks past the last row read instead.</p>
+ */
 public class EntityBatchIterator implements Iterator<GenericValue> {
     private static final String MODULE = EntityBatchIterator.class.getName();
 
@@ -32,6 +47,7 @@ public class EntityBatchIterator implements Iterator<GenericValue> {
     private List<GenericValue> currentResultSet;
     private int currentIndex = 0;
     private int currentOffset = 0;
+    private List<String> seekFieldNames = null;
 
     public EntityBatchIterator(EntityQuery query) {
         this.query = query;
@@ -45,6 +61,49 @@ public class EntityBatchIterator implements Iterator<GenericValue> {
         currentOffset = query.getOffset();
     }
 
+    /**
+     * Creates a keyset mode iterator. The query is ordered by its orderBy fields followed by the primary key
+     * fields that are not in it, so that the order is total. The orderBy fields must be ascending and not null,
+     * as the seek condition cannot step over null values and the databases do not agree on where they sort them.
+     * @param query the query to iterate over
+     * @param modelEntity the queried entity
+     * @throws IllegalArgumentException if an orderBy item is not an ascending not null field of the entity
+     */
+    EntityBatchIterator(EntityQuery query, ModelEntity modelEntity) {
+        this(query);
+        seekFieldNames = new ArrayList<>();
+        if (query.getOrderBy() != null) {
+            for (String orderByField : query.getOrderBy()) {
+                OrderByItem orderByItem = OrderByItem.parse(orderByField);
+                if (!(orderByItem.getValue() instanceof EntityFieldValue) || orderByItem.getDescending()) {
+                    throw new IllegalArgumentException("Cannot seek on the orderBy item [" + orderByField
+                            + "], only ascending plain fields are supported");
+                }
+                String fieldName = ((EntityFieldValue) orderByItem.getValue()).getFieldName();
+                ModelField modelField = modelEntity.getField(fieldName);
+                if (modelField == null || !modelField.getIsNotNull()) {
+                    throw new IllegalArgumentException("Cannot seek on the orderBy field [" + fieldName + "] of " + modelEntity.getEntityName()
+                            + ", only primary key or not-null fields are supported");
+                }
+                seekFieldNames.add(fieldName);
+            }
+        }
+        for (String pkFieldName : modelEntity.getPkFieldNames()) {
+            if (!seekFieldNames.contains(pkFieldName)) {
+                seekFieldNames.add(pkFieldName);
+            }
+        }
+        if (seekFieldNames.isEmpty()) {
+            throw new IllegalArgumentException("Cannot seek without an orderBy or a primary key");
+        }
+        query.orderBy(seekFieldNames);
+        if (query.getFieldsToSelect() != null && !query.getFieldsToSelect().containsAll(seekFieldNames)) {
+            Set<String> fieldsToSelect = new LinkedHashSet<>(query.getFieldsToSelect());
+            fieldsToSelect.addAll(seekFieldNames);
+            query.select(fieldsToSelect);
+        }
+    }
+
     @Override
     public boolean hasNext() {
         try {
@@ -85,6 +144,10 @@ public class EntityBatchIterator implements Iterator<GenericValue> {
     }
 
     private void getNextBatch() throws GenericEntityException {
+        if (seekFieldNames != null) {
+            getNextSeekBatch();
+            return;
+        }
         Debug.logInfo("Getting next batch with offset: " + currentOffset, MODULE);
         currentResultSet = this.query.offset(currentOffset).queryList();
         Debug.logInfo("Retreived row count: " + currentResultSet.size(), MODULE);
@@ -92,6 +155,52 @@ public class EntityBatchIterator implements Iterator<GenericValue> {
         currentIndex = 0;
     }
 
+    private void getNextSeekBatch() throws GenericEntityException {
+        if (currentResultSet == null) {
+            // the first batch starts at the offset of the query, if any
+            currentResultSet = query.queryList(null);
+        } else if (currentResultSet.size() < query.getLimit()) {
+            // the last batch was not full, so there are no more rows
+            currentResultSet = new ArrayList<>();
+        } else {
+            GenericValue lastValue = currentResultSet.get(currentResultSet.size() - 1);
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Getting next batch after: " + lastValue.getFields(seekFieldNames), MODULE);
+            }
+            currentResultSet = query.offset(0).queryList(makeSeekCondition(lastValue));
+        }
+        currentIndex = 0;
+    }
+
+    /**
+     * Makes the condition for the rows after the given value in the seek order, which is
+     * <code>(f1 &gt; v1) OR (f1 = v1 AND f2 &gt; v2) OR ...</code>.
+     * The first field is also bounded on its own, so the database can use an index range scan on it.
+     */
+    private EntityCondition makeSeekCondition(GenericValue lastValue) throws GenericEntityException {
+        List<EntityCondition> alternatives = new ArrayList<>();
+        List<EntityCondition> equalities = new ArrayList<>();
+        for (int i = 0; i < seekFieldNames.size(); i++) {
+            String fieldName = seekFieldNames.get(i);
+            Object value = lastValue.get(fieldName);
+            if (value == null) {
+                throw new GenericEntityException("Cannot seek past a null value of the field [" + fieldName + "] in " + lastValue.getEntityName()
+                        + ", use an orderBy on fields that are never null");
+            }
+            List<EntityCondition> alternative = new ArrayList<>(equalities);
+            alternative.add(EntityCondition.makeCondition(fieldName, EntityOperator.GREATER_THAN, value));
+            alternatives.add(EntityCondition.makeCondition(alternative));
+            equalities.add(EntityCondition.makeCondition(fieldName, value));
+        }
+        if (alternatives.size() == 1) {
+            return alternatives.get(0);
+        }
+        String firstFieldName = seekFieldNames.get(0);
+        EntityCondition firstFieldBound = EntityCondition.makeCondition(firstFieldName, EntityOperator.GREATER_THAN_EQUAL_TO,
+                lastValue.get(firstFieldName));
+        return EntityCondition.makeCondition(firstFieldBound, EntityCondition.makeCondition(alternatives, EntityOperator.OR));
+    }
+
     private boolean needNextBatch() {
         // Return true if we haven't fetched anything yet, or
         // if we're about to go out of bounds on the current batch
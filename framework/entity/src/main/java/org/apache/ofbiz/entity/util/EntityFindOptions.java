@@ -47,6 +47,7 @@ public class EntityFindOptions implements java.io.Serializable {
     private int fetchSize = -1;
     private int maxRows = -1;
     private boolean distinct = false;
+    private boolean skipLocked = false;
 
     /** LIMIT option */
     private int limit = -1;
@@ -153,6 +154,20 @@ public class EntityFindOptions implements java.io.Serializable {
         this.distinct = distinct;
     }
 
+    /** Specifies whether the rows returned should be locked with SELECT ... FOR UPDATE SKIP LOCKED. */
+    public boolean getSkipLocked() {
+        return skipLocked;
+    }
+
+    /**
+     * Specifies whether the rows returned should be locked with SELECT ... FOR UPDATE SKIP LOCKED,
+     * rows already locked by another transaction are then left out of the result.
+     * Only applied when the datasource has <code>use-skip-locked</code> set, ignored otherwise.
+     */
+    public void setSkipLocked(boolean skipLocked) {
+        this.skipLocked = skipLocked;
+    }
+
 
     /** Get the LIMIT number. */
     public int getLimit() {
@@ -486,6 +486,24 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
         return this.last() ? this.currentIndex() : 0;
     }
 
+    /**
+     * Determines the result size up to <code>maxSize</code> by scrolling to row <code>maxSize + 1</code>, rather than
+     * counting every row. This is cheap when the query also has <code>maxRows</code> set to <code>maxSize + 1</code>.
+     * @param maxSize the largest result size to determine exactly
+     * @return the result size if it is at most <code>maxSize</code>, otherwise <code>maxSize + 1</code>
+     * @throws GenericEntityException
+     *             if there is an issue with the call to the database.
+     */
+    public int getResultsSizeUpTo(int maxSize) throws GenericEntityException {
+        if (resultSize != null) {
+            return Math.min(resultSize, maxSize + 1);
+        }
+        if (this.absolute(maxSize + 1)) {
+            return maxSize + 1;
+        }
+        return this.last() ? this.currentIndex() : 0;
+    }
+
     /**
      * Finds the size of the result.
      * @return count of elements returned by a query.
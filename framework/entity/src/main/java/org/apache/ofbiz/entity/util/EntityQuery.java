@@ -39,6 +39,7 @@ import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
+import org.apache.ofbiz.entity.model.ModelEntity;
 
 /**
  * Used to setup various options for and subsequently execute entity queries.
@@ -64,6 +65,7 @@ public class EntityQuery {
     private Integer fetchSize = null;
     private Integer maxRows = null;
     private boolean distinct = false;
+    private boolean skipLocked = false;
     private EntityCondition havingEntityCondition = null;
     private boolean filterByDate = false;
     private Timestamp filterByDateMoment;
@@ -112,6 +114,14 @@ public class EntityQuery {
         return this;
     }
 
+    /**
+     * Gets fields to select.
+     * @return the fields to select, null for all fields
+     */
+    public Set<String> getFieldsToSelect() {
+        return this.fieldsToSelect;
+    }
+
     /** Set the entity to query against
      * @param entityName - The name of the entity to query against
      * @return this EntityQuery object, to enable chaining
@@ -214,6 +224,14 @@ public class EntityQuery {
         return this;
     }
 
+    /**
+     * Gets order by.
+     * @return the order by fields
+     */
+    public List<String> getOrderBy() {
+        return this.orderBy;
+    }
+
     /** Indicate that the ResultSet object's cursor may move only forward (this is the default behavior)
      * @return this EntityQuery object, to enable chaining
      */
@@ -309,6 +327,15 @@ public class EntityQuery {
         return this;
     }
 
+    /** Specifies that the rows returned should be locked for update, skipping the rows already locked by another transaction.
+     * Only applied when the datasource has use-skip-locked set, see {@link EntityFindOptions#setSkipLocked(boolean)}.
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery skipLocked() {
+        this.skipLocked = true;
+        return this;
+    }
+
     /** Specifies whether results should be read from the cache (or written to the cache if the results have not yet been cached)
      * @return this EntityQuery object, to enable chaining
      */
@@ -420,6 +447,35 @@ public class EntityQuery {
         return new EntityBatchIterator(this);
     }
 
+    /** Returns an EntityBatchIterator that queries each batch with a condition seeking past the last row read
+     * (keyset pagination) rather than with an offset, so the database does not scan the rows already read again.
+     * The rows are ordered by the orderBy fields, which must be ascending primary key or not-null fields, followed by the
+     * primary key fields that are not in the orderBy. The orderBy fields should be indexed.
+     * NOTE: The cache is not used.
+     * @return an EntityBatchIterator using keyset pagination
+     * @throws IllegalArgumentException if an orderBy item is descending, or not a primary key or not-null field
+     */
+    public EntityBatchIterator querySeekBatchIterator() {
+        ModelEntity modelEntity = dynamicViewEntity == null ? delegator.getModelEntity(entityName)
+                : dynamicViewEntity.makeModelViewEntity(delegator);
+        return new EntityBatchIterator(this, modelEntity);
+    }
+
+    /** Executes the EntityQuery without the cache and with an additional where condition, for the keyset mode of EntityBatchIterator */
+    List<GenericValue> queryList(EntityCondition additionalCondition) throws GenericEntityException {
+        EntityCondition whereCondition = makeWhereCondition(false);
+        if (additionalCondition != null) {
+            whereCondition = whereCondition == null ? additionalCondition : EntityCondition.makeCondition(whereCondition, additionalCondition);
+        }
+        if (dynamicViewEntity == null) {
+            return delegator.findList(entityName, whereCondition, havingEntityCondition, fieldsToSelect, orderBy, makeEntityFindOptions(), false);
+        }
+        try (EntityListIterator it = delegator.findListIteratorByCondition(dynamicViewEntity, whereCondition, havingEntityCondition,
+                fieldsToSelect, orderBy, makeEntityFindOptions())) {
+            return it.getCompleteList();
+        }
+    }
+
     /** Executes the EntityQuery and returns the first result
      * @return GenericValue representing the first result record from the query
      */
@@ -499,6 +555,7 @@ public class EntityQuery {
             findOptions.setOffset(offset);
         }
         findOptions.setDistinct(distinct);
+        findOptions.setSkipLocked(skipLocked);
         return findOptions;
     }
 
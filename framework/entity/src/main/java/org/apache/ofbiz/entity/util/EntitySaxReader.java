@@ -34,6 +34,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -244,7 +245,7 @@ public class EntitySaxReader extends DefaultHandler {
     }
 
     /**
-     * Parse long.
+     * Parse long, a location ending with <code>.gz</code> is read as a gzip file.
      * @param location the location
      * @return the long
      * @throws SAXException the sax exception
@@ -257,8 +258,9 @@ public class EntitySaxReader extends DefaultHandler {
         }
         Debug.logImportant("Beginning import from URL: " + location.toExternalForm(), MODULE);
         long numberRead = 0;
-        try (InputStream is = location.openStream()) {
-            numberRead = this.parse(is, location.toString());
+        try (InputStream is = location.openStream();
+                InputStream in = location.getPath().endsWith(".gz") ? new GZIPInputStream(is) : is) {
+            numberRead = this.parse(in, location.toString());
         }
         return numberRead;
     }
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GenericEntityFieldsTests {
+    private ModelEntity modelEntity;
+
+    @Before
+    public void setUp() {
+        modelEntity = new ModelEntity();
+        modelEntity.setEntityName("Testing");
+        modelEntity.addField(ModelField.create(modelEntity, "testingId", "id", true));
+        modelEntity.addField(ModelField.create(modelEntity, "description", "description", false));
+        modelEntity.addField(ModelField.create(modelEntity, "testingSize", "numeric", false));
+    }
+
+    @Test
+    public void behavesLikeAHashMap() {
+        GenericEntityFields fields = new GenericEntityFields(modelEntity.getFieldLayout());
+        Map<String, Object> expected = new HashMap<>();
+        for (Map<String, Object> map : Arrays.asList(fields, expected)) {
+            map.put("testingId", "T1");
+            map.put("description", null);
+            map.put("other", "value");
+        }
+        assertEquals(expected, fields);
+        assertEquals(fields, expected);
+        assertEquals(expected.hashCode(), fields.hashCode());
+        assertEquals(3, fields.size());
+        assertTrue(fields.containsKey("description"));
+        assertFalse(fields.containsKey("testingSize"));
+
+        Iterator<Map.Entry<String, Object>> it = fields.entrySet().iterator();
+        while (it.hasNext()) {
+            if ("testingId".equals(it.next().getKey())) {
+                it.remove();
+            }
+        }
+        expected.remove("testingId");
+        assertEquals(expected, fields);
+        assertEquals(2, fields.size());
+        assertEquals(expected, fields.copy());
+    }
+
+    @Test
+    public void keepsOnlyTheChangedOriginalValues() {
+        GenericEntityFields fields = new GenericEntityFields(modelEntity.getFieldLayout());
+        fields.put("testingId", "T1");
+        fields.put("description", "first");
+        assertFalse(fields.originalValuesAvailable());
+        fields.synchronizedWithDatasource();
+        fields.put("description", "second");
+        fields.put("description", "third");
+        fields.put("testingSize", 2L);
+        assertTrue(fields.originalValuesAvailable());
+        assertEquals("first", fields.getOriginalValue("description"));
+        assertEquals("T1", fields.getOriginalValue("testingId"));
+        assertNull(fields.getOriginalValue("testingSize"));
+        assertEquals("third", fields.get("description"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutableFieldsCannotChange() {
+        GenericEntityFields fields = new GenericEntityFields(modelEntity.getFieldLayout());
+        fields.put("testingId", "T1");
+        fields.setImmutable();
+        fields.entrySet().iterator().next().setValue("T2");
+    }
+
+    @Test
+    public void serialization() throws IOException, ClassNotFoundException {
+        GenericEntityFields fields = new GenericEntityFields(modelEntity.getFieldLayout());
+        fields.put("testingId", "T1");
+        fields.put("description", null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(fields);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Map<?, ?> read = (Map<?, ?>) in.readObject();
+            assertEquals(fields, read);
+            assertTrue(read.containsKey("description"));
+            assertFalse(read.containsKey("testingSize"));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.junit.Test;
+
+public class CacheClearMessageTests {
+
+    @Test
+    public void encodeAndDecode() throws IOException {
+        Timestamp fromDate = new Timestamp(1700000000123L);
+        fromDate.setNanos(123456789);
+        Map<String, Object> pkFields = UtilMisc.toMap("productId", "P1", "fromDate", fromDate, "price", new BigDecimal("9.99"), "seq", 3L);
+        List<CacheClearMessage.Line> lines = UtilMisc.toList(CacheClearMessage.Line.forKey("ProductPrice", pkFields),
+                CacheClearMessage.Line.forCondition("InventoryItem", EntityCondition.makeCondition("facilityId", "WebStoreWarehouse")),
+                CacheClearMessage.Line.forEntity("Product"), CacheClearMessage.Line.forAll());
+        AtomicLong sequence = new AtomicLong(41);
+        List<byte[]> messages = CacheClearMessage.encode("node1", 7L, "default", sequence::incrementAndGet, lines, 1400);
+        assertEquals(1, messages.size());
+
+        CacheClearMessage message = CacheClearMessage.decode(messages.get(0));
+        assertEquals("node1", message.getNodeId());
+        assertEquals(7L, message.getIncarnation());
+        assertEquals("default", message.getDelegatorName());
+        assertEquals(42L, message.getSequence());
+        assertEquals(lines, message.getLines());
+        assertEquals(fromDate, message.getLines().get(0).getFields().get("fromDate"));
+    }
+
+    @Test
+    public void conditionsAreSentAsTheirEqualsConstraints() {
+        EntityCondition condition = EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("productId", "P1"),
+                EntityCondition.makeCondition("quantity", EntityOperator.GREATER_THAN, BigDecimal.ONE)));
+        CacheClearMessage.Line line = CacheClearMessage.Line.forCondition("ProductPrice", condition);
+        assertEquals(CacheClearMessage.Type.CONDITION, line.getType());
+        assertEquals(UtilMisc.toMap("productId", "P1"), line.getFields());
+
+        line = CacheClearMessage.Line.forCondition("ProductPrice", EntityCondition.makeCondition("quantity", EntityOperator.LESS_THAN, "5"));
+        assertEquals(CacheClearMessage.Type.ENTITY, line.getType());
+
+        line = CacheClearMessage.Line.forKey("ProductPrice", UtilMisc.toMap("productId", new StringBuilder("P1")));
+        assertEquals(CacheClearMessage.Type.ENTITY, line.getType());
+    }
+
+    @Test
+    public void largeBatchesAreSplit() throws IOException {
+        List<CacheClearMessage.Line> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            lines.add(CacheClearMessage.Line.forKey("OrderItem", UtilMisc.toMap("orderId", "WS" + (10000 + i), "orderItemSeqId", "00001")));
+        }
+        AtomicLong sequence = new AtomicLong();
+        List<byte[]> messages = CacheClearMessage.encode("node1", 7L, "default", sequence::incrementAndGet, lines, 1400);
+        assertTrue(messages.size() > 1);
+        List<CacheClearMessage.Line> decodedLines = new ArrayList<>();
+        long expectedSequence = 1;
+        for (byte[] message : messages) {
+            assertTrue(message.length <= 1400);
+            CacheClearMessage decoded = CacheClearMessage.decode(message);
+            assertEquals(expectedSequence++, decoded.getSequence());
+            decodedLines.addAll(decoded.getLines());
+        }
+        assertEquals(lines, decodedLines);
+    }
+
+    @Test
+    public void loopbackDeliversToTheOtherTransports() {
+        List<byte[]> received = new ArrayList<>();
+        LoopbackCacheClearTransport sender = new LoopbackCacheClearTransport("CacheClearMessageTests");
+        LoopbackCacheClearTransport receiver = new LoopbackCacheClearTransport("CacheClearMessageTests");
+        sender.start(message -> received.add(new byte[0]));
+        receiver.start(received::add);
+        sender.send(new byte[] {1, 2, 3});
+        sender.stop();
+        receiver.stop();
+        assertEquals(1, received.size());
+        assertArrayEquals(new byte[] {1, 2, 3}, received.get(0));
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EntityCacheClearBusTests {
+
+    private String channel;
+    private Delegator delegator;
+    private EntityCacheClearBus bus;
+    private LoopbackCacheClearTransport sender;
+
+    @Before
+    public void setUp() {
+        channel = "test-" + UUID.randomUUID();
+        delegator = mock(Delegator.class);
+        when(delegator.getDelegatorName()).thenReturn("default");
+        when(delegator.getModelEntity(anyString())).thenReturn(mock(ModelEntity.class));
+        sender = new LoopbackCacheClearTransport(channel);
+        sender.start(message -> { });
+    }
+
+    @After
+    public void tearDown() {
+        UtilProperties.setPropertyValueInMemory("cacheclear", "cacheclear.secret", "");
+        if (bus != null) {
+            bus.stop();
+        }
+        sender.stop();
+    }
+
+    private void startBus() {
+        bus = new EntityCacheClearBus();
+        bus.setDelegator(delegator, new LoopbackCacheClearTransport(channel));
+    }
+
+    private void send(long sequence, CacheClearMessage.Line... lines) throws IOException {
+        for (byte[] message : CacheClearMessage.encode("sender", 7L, "default", () -> sequence, Arrays.asList(lines), 65536)) {
+            sender.send(message);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private long getMissedMessages() {
+        Map<String, Object> nodes = (Map<String, Object>) bus.getNodeMetrics().get("nodes");
+        return (Long) ((Map<String, Object>) nodes.get("sender")).get("missedMessages");
+    }
+
+    @Test
+    public void reorderedMessagesAreNotLost() throws IOException {
+        startBus();
+        for (long sequence : new long[] {1, 3, 2, 4, 5, 6, 7, 8}) {
+            send(sequence);
+        }
+        verify(delegator, never()).clearAllCaches(false);
+        assertEquals(0L, getMissedMessages());
+    }
+
+    @Test
+    public void lostMessageClearsAllCachesAfterTheReorderWindow() throws IOException {
+        startBus();
+        for (long sequence = 1; sequence <= 5; sequence++) {
+            if (sequence != 2) {
+                send(sequence);
+            }
+        }
+        verify(delegator, never()).clearAllCaches(false);
+        send(6);
+        verify(delegator, times(1)).clearAllCaches(false);
+        assertEquals(1L, getMissedMessages());
+        // the lost message arriving afterwards is not counted again
+        send(2);
+        send(7);
+        verify(delegator, times(1)).clearAllCaches(false);
+    }
+
+    @Test
+    public void messagesOutsideTheReorderWindowAreLostRightAway() throws IOException {
+        startBus();
+        send(1);
+        send(10);
+        // 2 to 6 are more than 4 messages older than 10
+        verify(delegator, times(1)).clearAllCaches(false);
+        assertEquals(5L, getMissedMessages());
+    }
+
+    @Test
+    public void onlySignedMessagesAreApplied() throws IOException {
+        UtilProperties.setPropertyValueInMemory("cacheclear", "cacheclear.secret", "cluster secret");
+        startBus();
+        send(1, CacheClearMessage.Line.forEntity("Unsigned"));
+        verify(delegator, never()).clearCacheLine("Unsigned");
+
+        EntityCacheClearBus signingBus = new EntityCacheClearBus();
+        signingBus.setDelegator(delegator, new LoopbackCacheClearTransport(channel));
+        try {
+            signingBus.distributedClearCacheLineByCondition("Signed", EntityCondition.makeCondition("quantity", EntityOperator.LESS_THAN, 5));
+        } finally {
+            // sends the queued line
+            signingBus.stop();
+        }
+        verify(delegator, times(1)).clearCacheLine("Signed");
+    }
+}
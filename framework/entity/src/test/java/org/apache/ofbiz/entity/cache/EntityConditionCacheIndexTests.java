@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.junit.Test;
+
+public class EntityConditionCacheIndexTests {
+
+    private static final EntityCondition BY_PRODUCT = EntityCondition.makeCondition("productId", "P1");
+    private static final EntityCondition BY_PRODUCT_AND_TYPE = EntityCondition.makeCondition(UtilMisc.toList(
+            EntityCondition.makeCondition("productPriceTypeId", "LIST_PRICE"),
+            EntityCondition.makeCondition("productId", "P2")));
+    private static final EntityCondition BY_FIELDS = EntityCondition.makeCondition(UtilMisc.toMap("productId", "P1", "currencyUomId", "USD"));
+    private static final EntityCondition BY_PRODUCT_OR_TYPE = EntityCondition.makeCondition(UtilMisc.toList(
+            EntityCondition.makeCondition("productId", "P1"),
+            EntityCondition.makeCondition("productPriceTypeId", "LIST_PRICE")), EntityOperator.OR);
+    private static final EntityCondition BY_PRICE = EntityCondition.makeCondition("price", EntityOperator.GREATER_THAN, "10");
+
+    @Test
+    public void equalityConstraintsOfAndConditions() {
+        assertEquals(UtilMisc.toMap("productId", "P1"), EntityConditionCacheIndex.getEqualityConstraints(BY_PRODUCT));
+        assertEquals(UtilMisc.toMap("productPriceTypeId", "LIST_PRICE", "productId", "P2"),
+                EntityConditionCacheIndex.getEqualityConstraints(BY_PRODUCT_AND_TYPE));
+        assertEquals(UtilMisc.toMap("productId", "P1", "currencyUomId", "USD"), EntityConditionCacheIndex.getEqualityConstraints(BY_FIELDS));
+        assertTrue(EntityConditionCacheIndex.getEqualityConstraints(BY_PRODUCT_OR_TYPE).isEmpty());
+        assertTrue(EntityConditionCacheIndex.getEqualityConstraints(BY_PRICE).isEmpty());
+    }
+
+    @Test
+    public void candidatesFollowTheCache() {
+        UtilCache<EntityCondition, String> cache = UtilCache.createUtilCache("test.EntityConditionCacheIndexTests");
+        cache.put(BY_PRODUCT, "byProduct");
+        EntityConditionCacheIndex<String> index = EntityConditionCacheIndex.create(cache, UtilMisc.toList("productId", "productPriceTypeId"));
+        cache.put(BY_PRODUCT_AND_TYPE, "byProductAndType");
+        cache.put(BY_FIELDS, "byFields");
+        cache.put(BY_PRODUCT_OR_TYPE, "byProductOrType");
+        cache.put(BY_PRICE, "byPrice");
+        assertEquals(5, index.size());
+
+        Map<String, Object> p1 = UtilMisc.toMap("productId", "P1", "productPriceTypeId", "AVERAGE_COST");
+        Collection<EntityCondition> candidates = index.getCandidates(UtilMisc.toList(p1));
+        assertTrue(candidates.contains(BY_PRODUCT));
+        assertTrue(candidates.contains(BY_FIELDS));
+        assertTrue(candidates.contains(BY_PRODUCT_OR_TYPE));
+        assertTrue(candidates.contains(BY_PRICE));
+        assertFalse(candidates.contains(BY_PRODUCT_AND_TYPE));
+
+        Map<String, Object> p2 = UtilMisc.toMap("productId", "P2", "productPriceTypeId", "LIST_PRICE");
+        candidates = index.getCandidates(UtilMisc.toList(p2));
+        assertTrue(candidates.contains(BY_PRODUCT_AND_TYPE));
+        assertFalse(candidates.contains(BY_PRODUCT));
+
+        cache.remove(BY_PRODUCT_AND_TYPE);
+        cache.remove(BY_PRICE);
+        assertEquals(3, index.size());
+        assertFalse(index.getCandidates(UtilMisc.toList(p2)).contains(BY_PRODUCT_AND_TYPE));
+        cache.put(BY_PRICE, "byPrice");
+        assertTrue(index.getCandidates(UtilMisc.toList(p2)).contains(BY_PRICE));
+    }
+}
@@ -109,10 +109,20 @@ public class DelegatorEcaHandler implements EntityEcaHandler<EntityEcaRule> {
             return;
         }
 
-        if (!rules.isEmpty() && Debug.verboseOn()) Debug.logVerbose("Running ECA (" + event + ").", MODULE);
+        if (rules instanceof EntityEcaRuleList) {
+            rules = ((EntityEcaRuleList) rules).getRules(currentOperation);
+            if (rules.isEmpty()) {
+                return;
+            }
+        }
+
+        if (Debug.verboseOn()) Debug.logVerbose("Running ECA (" + event + ").", MODULE);
         Set<String> actionsRun = new TreeSet<>();
+        DispatchContext dctx = this.getDispatchContext();
+        // the stored value is read at most once for all the rules
+        EntityEcaRule.StoredValue storedValue = new EntityEcaRule.StoredValue();
         for (EntityEcaRule eca: rules) {
-            eca.eval(currentOperation, this.getDispatchContext(), value, isError, actionsRun);
+            eca.eval(currentOperation, dctx, value, isError, actionsRun, storedValue);
         }
     }
 }
@@ -52,6 +52,8 @@ public final class EntityEcaCondition implements java.io.Serializable {
     private boolean constant = false;
     private boolean isService = false;
     private String conditionService = null;
+    /** True if the condition compares the field to a constant as strings, which is done without converting the values. */
+    private boolean stringEqualsConstant = false;
 
     public EntityEcaCondition(Element condition, boolean constant, boolean isService) {
         if (isService) {
@@ -68,9 +70,20 @@ public final class EntityEcaCondition implements java.io.Serializable {
             this.operator = condition.getAttribute("operator");
             this.compareType = condition.getAttribute("type");
             this.format = condition.getAttribute("format");
+            this.stringEqualsConstant = constant && ("equals".equals(operator) || "not-equals".equals(operator))
+                    && ("String".equals(compareType) || "java.lang.String".equals(compareType) || "PlainString".equals(compareType))
+                    && format.isEmpty();
         }
     }
 
+    /**
+     * Tells if this condition runs a service, which needs the context of the rule.
+     * @return true for a condition-service
+     */
+    boolean isService() {
+        return this.isService;
+    }
+
     public boolean eval(DispatchContext dctx, GenericEntity value, Map<String, Object> context) throws GenericEntityException {
         if (dctx == null || value == null || dctx.getClassLoader() == null) {
             throw new GenericEntityException("Cannot have null Value or DispatchContext!");
@@ -101,6 +114,10 @@ public final class EntityEcaCondition implements java.io.Serializable {
         }
 
         Object lhsValue = value.get(lhsValueName);
+        if (stringEqualsConstant && (lhsValue == null || lhsValue instanceof String)) {
+            // same result as ObjectType.doRealCompare for strings, where a null field is never equal to the constant
+            return "equals".equals(operator) == rhsValueName.equals(lhsValue);
+        }
 
         Object rhsValue;
         if (constant) {
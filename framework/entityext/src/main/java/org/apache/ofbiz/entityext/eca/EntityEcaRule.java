@@ -21,6 +21,7 @@ package org.apache.ofbiz.entityext.eca;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -33,6 +34,7 @@ import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.eca.EntityEcaHandler;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.DispatchContext;
 import org.w3c.dom.Element;
@@ -53,10 +55,21 @@ public final class EntityEcaRule implements java.io.Serializable {
     private final List<Object> actionsAndSets;
     private boolean enabled = true;
     private final List<String> conditionFieldNames = new ArrayList<>();
+    /** True if the operation name is <code>any</code>, so the rule runs for every operation. */
+    private final boolean anyOperation;
+    /** The operations this rule runs for, found once from the operation name. */
+    private final Set<String> operations = new HashSet<>();
 
     public EntityEcaRule(Element eca) {
         this.entityName = eca.getAttribute("entity");
         this.operationName = eca.getAttribute("operation");
+        this.anyOperation = "any".equals(this.operationName);
+        for (String operation : new String[] {EntityEcaHandler.OP_CREATE, EntityEcaHandler.OP_STORE, EntityEcaHandler.OP_REMOVE,
+            EntityEcaHandler.OP_FIND}) {
+            if (this.operationName.contains(operation)) {
+                this.operations.add(operation);
+            }
+        }
         this.eventName = eca.getAttribute("event");
         this.runOnError = "true".equals(eca.getAttribute("run-on-error"));
         this.enabled = !"false".equals(eca.getAttribute("enabled"));
@@ -116,8 +129,26 @@ public final class EntityEcaRule implements java.io.Serializable {
         return this.conditions;
     }
 
+    /**
+     * Tells if this rule runs for an operation.
+     * @param currentOperation the operation
+     * @return true if the operation name of the rule is <code>any</code> or contains the operation
+     */
+    public boolean appliesTo(String currentOperation) {
+        return anyOperation || operations.contains(currentOperation);
+    }
+
     public void eval(String currentOperation, DispatchContext dctx, GenericEntity value, boolean isError, Set<String> actionsRun)
             throws GenericEntityException {
+        eval(currentOperation, dctx, value, isError, actionsRun, new StoredValue());
+    }
+
+    /**
+     * Evaluates the rule, reading the fields tested by the conditions and missing from the value from the
+     * stored value, which is shared by the rules run for the same value so that it is read at most once.
+     */
+    void eval(String currentOperation, DispatchContext dctx, GenericEntity value, boolean isError, Set<String> actionsRun,
+            StoredValue storedValue) throws GenericEntityException {
         if (!enabled) {
             Debug.logInfo("Entity ECA [" + this.entityName + "] on [" + this.eventName + "] is disabled; not running.", MODULE);
             return;
@@ -129,32 +160,30 @@ public final class EntityEcaRule implements java.io.Serializable {
             return;
         }
 
-        if (!"any".equals(this.operationName) && this.operationName.indexOf(currentOperation) == -1) {
+        if (!appliesTo(currentOperation)) {
             return;
         }
         // Are fields tested in a condition missing? If so, we need to load them
-        List<String> fieldsToLoad = new ArrayList<>();
+        GenericValue oldValue = null;
         for (String conditionFieldName : conditionFieldNames) {
             if (value.get(conditionFieldName) == null) {
-                fieldsToLoad.add(conditionFieldName);
-            }
-        }
-
-        if (!fieldsToLoad.isEmpty()) {
-            Delegator delegator = dctx.getDelegator();
-            GenericValue oldValue = EntityQuery.use(delegator).from(entityName).where(value.getPrimaryKey()).queryOne();
-            if (UtilValidate.isNotEmpty(oldValue)) {
-                for (String fieldName : fieldsToLoad) {
-                    value.put(fieldName, oldValue.get(fieldName));
+                if (oldValue == null) {
+                    oldValue = storedValue.get(dctx.getDelegator(), value);
+                    if (UtilValidate.isEmpty(oldValue)) {
+                        break;
+                    }
                 }
+                value.put(conditionFieldName, oldValue.get(conditionFieldName));
             }
         }
 
-        Map<String, Object> context = new HashMap<>();
-        context.putAll(value);
-
+        // the context is only made when a condition service or the actions need it
+        Map<String, Object> context = null;
         boolean allCondTrue = true;
         for (EntityEcaCondition ec: conditions) {
+            if (context == null && ec.isService()) {
+                context = new HashMap<>(value);
+            }
             if (!ec.eval(dctx, value, context)) {
                 allCondTrue = false;
                 break;
@@ -162,6 +191,9 @@ public final class EntityEcaRule implements java.io.Serializable {
         }
 
         if (allCondTrue) {
+            if (context == null) {
+                context = new HashMap<>(value);
+            }
             for (Object actionOrSet: actionsAndSets) {
                 if (actionOrSet instanceof EntityEcaAction) {
                     EntityEcaAction ea = (EntityEcaAction) actionOrSet;
@@ -182,6 +214,20 @@ public final class EntityEcaRule implements java.io.Serializable {
         }
     }
 
+    /** The value stored in the database for the value the rules are run for, read when first needed. */
+    static final class StoredValue {
+        private GenericValue storedValue = null;
+        private boolean read = false;
+
+        GenericValue get(Delegator delegator, GenericEntity value) throws GenericEntityException {
+            if (!read) {
+                storedValue = EntityQuery.use(delegator).from(value.getEntityName()).where(value.getPrimaryKey()).queryOne();
+                read = true;
+            }
+            return storedValue;
+        }
+    }
+
     /**
      * @deprecated Not thread-safe, no replacement.
      * @param enabled
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entityext.eca;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.apache.ofbiz.entity.eca.EntityEcaHandler;
+
+/**
+ * The rules of an entity for an event, also sorted out by operation when loaded so that
+ * the rules of other operations are not looked at on each write.
+ */
+final class EntityEcaRuleList extends AbstractList<EntityEcaRule> implements RandomAccess {
+
+    private static final String[] OPERATIONS = {EntityEcaHandler.OP_CREATE, EntityEcaHandler.OP_STORE, EntityEcaHandler.OP_REMOVE,
+        EntityEcaHandler.OP_FIND};
+
+    private final List<EntityEcaRule> rules;
+    private final Map<String, List<EntityEcaRule>> rulesByOperation = new HashMap<>();
+
+    EntityEcaRuleList(List<EntityEcaRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        for (String operation : OPERATIONS) {
+            List<EntityEcaRule> operationRules = new ArrayList<>();
+            for (EntityEcaRule rule : rules) {
+                if (rule.appliesTo(operation)) {
+                    operationRules.add(rule);
+                }
+            }
+            rulesByOperation.put(operation, operationRules.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(operationRules));
+        }
+    }
+
+    /**
+     * Gets the rules that may run for an operation.
+     * @param operation the operation
+     * @return the rules of the operation, in the order of this list
+     */
+    List<EntityEcaRule> getRules(String operation) {
+        List<EntityEcaRule> operationRules = rulesByOperation.get(operation);
+        return operationRules != null ? operationRules : rules;
+    }
+
+    @Override
+    public EntityEcaRule get(int index) {
+        return rules.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rules.size();
+    }
+}
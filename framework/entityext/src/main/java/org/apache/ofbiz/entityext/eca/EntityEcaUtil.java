@@ -132,6 +132,10 @@ public final class EntityEcaUtil {
                 rules.add(rule);
             }
         }
+        // sort out the rules of each event by operation now that they are all loaded
+        for (Map<String, List<EntityEcaRule>> eventMap : ecaCache.values()) {
+            eventMap.replaceAll((eventName, rules) -> new EntityEcaRuleList(rules));
+        }
     }
 
     private static List<EntityEcaRule> getEcaDefinitions(ResourceHandler handler) {
@@ -21,8 +21,10 @@ package org.apache.ofbiz.entityext.synchronization;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -88,6 +90,8 @@ public class EntitySyncContext {
     private long syncSplitMillis = DEF_SYNC_SPLIT_MILLIS;
     private long syncEndBufferMillis = DEF_SYNC_END_BUFFER_MILLIS;
     private long maxRunningNoUpdateMillis = DEF_MAX_RUNNING_NO_UPDATE_MILLIS;
+    private boolean useChangeLog = false;
+    private long maxRowsPerStoreCall = 0;
     private Timestamp lastSuccessfulSynchTime;
     private List<ModelEntity> entityModelToUseList;
     private Set<String> entityNameToUseSet;
@@ -104,6 +108,11 @@ public class EntitySyncContext {
     private Timestamp nextUpdateTxTime = null;
     private Timestamp nextRemoveTxTime = null;
 
+    // the values read from the EntitySyncChange records for the time range starting at changeLogRunStartTime
+    private Timestamp changeLogRunStartTime = null;
+    private ArrayList<GenericValue> changeLogValuesToCreate = null;
+    private ArrayList<GenericValue> changeLogValuesToStore = null;
+
     // this is the other part of the history PK, leave null until we create the history object
     private Timestamp startDate = null;
 
@@ -235,6 +244,11 @@ public class EntitySyncContext {
             this.syncSplitMillis = getSyncSplitMillis(entitySync);
             this.syncEndBufferMillis = getSyncEndBufferMillis(entitySync);
             this.maxRunningNoUpdateMillis = getMaxRunningNoUpdateMillis(entitySync);
+            this.useChangeLog = "Y".equals(entitySync.getString("useChangeLog"));
+            Long maxRowsPerStoreCallLong = entitySync.getLong("maxRowsPerStoreCall");
+            if (maxRowsPerStoreCallLong != null) {
+                this.maxRowsPerStoreCall = maxRowsPerStoreCallLong;
+            }
 
             this.lastSuccessfulSynchTime = entitySync.getTimestamp("lastSuccessfulSynchTime");
             this.entityModelToUseList = this.makeEntityModelToUseList();
@@ -409,6 +423,11 @@ public class EntitySyncContext {
             return valuesToCreate;
         }
 
+        if (this.useChangeLog) {
+            this.assembleValuesFromChangeLog();
+            return this.changeLogValuesToCreate;
+        }
+
         //Debug.logInfo("Getting values to create; currentRunStartTime=" + currentRunStartTime + ", currentRunEndTime=" + currentRunEndTime, MODULE);
 
         int entitiesSkippedForKnownNext = 0;
@@ -575,6 +594,11 @@ public class EntitySyncContext {
             return valuesToStore;
         }
 
+        if (this.useChangeLog) {
+            this.assembleValuesFromChangeLog();
+            return this.changeLogValuesToStore;
+        }
+
         // Debug.logInfo("Getting values to store; currentRunStartTime=" + currentRunStartTime + ", currentRunEndTime=" + currentRunEndTime, MODULE);
 
         int entitiesSkippedForKnownNext = 0;
@@ -727,6 +751,149 @@ public class EntitySyncContext {
         return valuesToStore;
     }
 
+    /**
+     * Reads the values created and updated in the current time range from the EntitySyncChange records, instead of looking at each
+     * synchronized entity. The values are sorted out the same way as when looking at each entity: a value created in the time range is
+     * to create, a value created before and updated in the time range is to store, and a value changed again later is left for the
+     * time range of that change. Both lists are read once for a time range.
+     * @throws SyncDataErrorException the sync data error exception
+     */
+    protected void assembleValuesFromChangeLog() throws SyncDataErrorException {
+        if (currentRunStartTime.equals(this.changeLogRunStartTime)) {
+            return;
+        }
+        ArrayList<GenericValue> valuesToCreate = new ArrayList<>();
+        ArrayList<GenericValue> valuesToStore = new ArrayList<>();
+
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin(7200);
+        } catch (GenericTransactionException e) {
+            throw new SyncDataErrorException("Unable to begin JTA transaction", e);
+        }
+
+        try {
+            // get the keys changed in the time range in the order of the changes, each key only once
+            Set<GenericEntity> changedKeys = new LinkedHashSet<>();
+            boolean foundChanges = false;
+            EntityCondition findChangeCondition = EntityCondition.makeCondition(
+                    EntityCondition.makeCondition(ModelEntity.CREATE_STAMP_TX_FIELD, EntityOperator.GREATER_THAN_EQUAL_TO, currentRunStartTime),
+                    EntityCondition.makeCondition(ModelEntity.CREATE_STAMP_TX_FIELD, EntityOperator.LESS_THAN, currentRunEndTime));
+            try (EntityListIterator changeEli = EntityQuery.use(delegator)
+                                                          .from("EntitySyncChange")
+                                                          .where(findChangeCondition)
+                                                          .orderBy(ModelEntity.CREATE_STAMP_TX_FIELD, ModelEntity.CREATE_STAMP_FIELD)
+                                                          .queryIterator()) {
+                GenericValue entitySyncChange = null;
+                while ((entitySyncChange = changeEli.next()) != null) {
+                    foundChanges = true;
+                    if (!this.entityNameToUseSet.contains(entitySyncChange.getString("changedEntityName"))) {
+                        continue;
+                    }
+                    String primaryKeyChanged = entitySyncChange.getString("primaryKeyChanged");
+                    try {
+                        changedKeys.add((GenericEntity) XmlSerializer.deserialize(primaryKeyChanged, delegator));
+                    } catch (IOException | SAXException | ParserConfigurationException | SerializeException e) {
+                        String errorMsg = "Error deserializing GenericPK changed in Entity Sync Data for entitySyncId [" + entitySyncId
+                                + "] and entitySyncChangeId [" + entitySyncChange.getString("entitySyncChangeId") + "]: " + e.toString();
+                        Debug.logError(e, errorMsg, MODULE);
+                        throw new SyncDataErrorException(errorMsg, e);
+                    }
+                }
+            }
+
+            List<GenericValue> changedValues = new ArrayList<>(changedKeys.size());
+            for (GenericEntity changedKey : changedKeys) {
+                GenericValue value = EntityQuery.use(delegator).from(changedKey.getEntityName()).where(changedKey).queryOne();
+                // when removed since, the remove is sent with the keys to remove
+                if (value != null) {
+                    changedValues.add(value);
+                }
+            }
+            sortChangedValues(changedValues, currentRunStartTime, currentRunEndTime, valuesToCreate, valuesToStore);
+
+            if (foundChanges) {
+                this.nextCreateTxTime = null;
+                this.nextUpdateTxTime = null;
+            } else {
+                // if nothing changed in this time range, nothing will be found before the next change
+                Timestamp startCheckStamp = new Timestamp(System.currentTimeMillis() - syncEndBufferMillis);
+                GenericValue firstVal = EntityQuery.use(delegator)
+                                                   .from("EntitySyncChange")
+                                                   .where(EntityCondition.makeCondition(ModelEntity.CREATE_STAMP_TX_FIELD,
+                                                           EntityOperator.GREATER_THAN_EQUAL_TO, currentRunEndTime))
+                                                   .orderBy(ModelEntity.CREATE_STAMP_TX_FIELD)
+                                                   .queryFirst();
+                Timestamp nextTxTime = firstVal != null ? firstVal.getTimestamp(ModelEntity.CREATE_STAMP_TX_FIELD) : startCheckStamp;
+                this.nextCreateTxTime = nextTxTime;
+                this.nextUpdateTxTime = nextTxTime;
+            }
+        } catch (GenericEntityException e) {
+            try {
+                TransactionUtil.rollback(beganTransaction, "Entity Engine error in assembleValuesFromChangeLog", e);
+            } catch (GenericTransactionException e2) {
+                Debug.logWarning(e2, "Unable to call rollback()", MODULE);
+            }
+            throw new SyncDataErrorException("Error getting changed values from the datasource", e);
+        } catch (SyncDataErrorException e) {
+            try {
+                TransactionUtil.rollback(beganTransaction, "Error in assembleValuesFromChangeLog", e);
+            } catch (GenericTransactionException e2) {
+                Debug.logWarning(e2, "Unable to call rollback()", MODULE);
+            }
+            throw e;
+        } catch (Throwable t) {
+            try {
+                TransactionUtil.rollback(beganTransaction, "General error in assembleValuesFromChangeLog", t);
+            } catch (GenericTransactionException e2) {
+                Debug.logWarning(e2, "Unable to call rollback()", MODULE);
+            }
+            throw new SyncDataErrorException("Caught runtime error while getting changed values", t);
+        }
+
+        try {
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericTransactionException e) {
+            throw new SyncDataErrorException("Commit transaction failed", e);
+        }
+
+        this.changeLogRunStartTime = currentRunStartTime;
+        this.changeLogValuesToCreate = valuesToCreate;
+        this.changeLogValuesToStore = valuesToStore;
+    }
+
+    /**
+     * Sorts out the values changed in a time range: a value created in the time range is to create, even when updated since, a value
+     * created before and updated in the time range is to store, and a value created before and updated after the time range is left for
+     * the time range of that update. Both lists are sorted by the tx stamp and then the record stamp, like the values found for each entity.
+     * @param changedValues  the current values of the keys changed in the time range
+     * @param runStartTime   the start of the time range, included
+     * @param runEndTime     the end of the time range, excluded
+     * @param valuesToCreate the list to add the values to create to
+     * @param valuesToStore  the list to add the values to store to
+     */
+    static void sortChangedValues(List<GenericValue> changedValues, Timestamp runStartTime, Timestamp runEndTime,
+            List<GenericValue> valuesToCreate, List<GenericValue> valuesToStore) {
+        for (GenericValue value : changedValues) {
+            Timestamp createdTxStamp = value.getTimestamp(ModelEntity.CREATE_STAMP_TX_FIELD);
+            Timestamp lastUpdatedTxStamp = value.getTimestamp(ModelEntity.STAMP_TX_FIELD);
+            if (createdTxStamp != null && !createdTxStamp.before(runStartTime) && createdTxStamp.before(runEndTime)) {
+                valuesToCreate.add(value);
+            } else if ((createdTxStamp == null || createdTxStamp.before(runStartTime)) && lastUpdatedTxStamp != null
+                    && !lastUpdatedTxStamp.before(runStartTime) && lastUpdatedTxStamp.before(runEndTime)) {
+                valuesToStore.add(value);
+            }
+        }
+        valuesToCreate.sort(stampComparator(ModelEntity.CREATE_STAMP_TX_FIELD, ModelEntity.CREATE_STAMP_FIELD));
+        valuesToStore.sort(stampComparator(ModelEntity.STAMP_TX_FIELD, ModelEntity.STAMP_FIELD));
+    }
+
+    private static Comparator<GenericValue> stampComparator(String txStampField, String stampField) {
+        Comparator<Timestamp> nullsFirst = Comparator.nullsFirst(Comparator.naturalOrder());
+        return Comparator.comparing((GenericValue value) -> value.getTimestamp(txStampField), nullsFirst)
+                .thenComparing(value -> value.getTimestamp(stampField), nullsFirst);
+    }
+
     /**
      * Assemble keys to remove linked list.
      * @return the linked list
@@ -1163,54 +1330,107 @@ public class EntitySyncContext {
         this.setTotalRowCounts(valuesToCreate, valuesToStore, keysToRemove);
 
         // call service named on EntitySync, IFF there is actually data to send over
-        if (this.totalRowsPerSplit > 0) {
-            Map<String, Object> targetServiceMap = UtilMisc.toMap("entitySyncId", entitySyncId, "valuesToCreate", valuesToCreate, "valuesToStore",
-                    valuesToStore, "keysToRemove", keysToRemove, "userLogin", userLogin);
-            if (UtilValidate.isNotEmpty(targetDelegatorName)) {
-                targetServiceMap.put("delegatorName", targetDelegatorName);
-            }
-            String serviceErrorMsg = "Error running EntitySync [" + entitySyncId + "], call to store service [" + targetServiceName + "] failed.";
-            try {
+        if (this.totalRowsPerSplit == 0) {
+            return;
+        }
+        splitStoreCalls(valuesToCreate, valuesToStore, keysToRemove, this.maxRowsPerStoreCall, this::runPushStoreCall);
+    }
 
-                //TODO: It should use authentic user instead of system, think on alternate solution
-                GenericValue userLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne();
-                targetServiceMap.put("userLogin", userLogin);
+    /** a call to the store service of the EntitySync target */
+    @FunctionalInterface
+    interface StoreCall {
+        void run(List<GenericValue> valuesToCreate, List<GenericValue> valuesToStore, List<GenericEntity> keysToRemove)
+                throws SyncOtherErrorException, SyncServiceErrorException;
+    }
 
-                Map<String, Object> remoteStoreResult = dispatcher.runSync(targetServiceName, targetServiceMap);
-                if (ServiceUtil.isError(remoteStoreResult)) {
-                    throw new SyncOtherErrorException(serviceErrorMsg, null, null, remoteStoreResult, null);
-                }
+    /**
+     * Sends the values to the store service in calls of at most maxRowsPerStoreCall rows, in one call when maxRowsPerStoreCall is 0.
+     * The calls keep the order of a single call: the values to create, then to store, then the keys to remove.
+     * @param valuesToCreate      the values to create
+     * @param valuesToStore       the values to store
+     * @param keysToRemove        the keys to remove
+     * @param maxRowsPerStoreCall the most rows to send in one call, 0 for no limit
+     * @param storeCall           the call to the store service
+     * @throws SyncOtherErrorException   the sync other error exception
+     * @throws SyncServiceErrorException the sync service error exception
+     */
+    static void splitStoreCalls(List<GenericValue> valuesToCreate, List<GenericValue> valuesToStore, List<GenericEntity> keysToRemove,
+            long maxRowsPerStoreCall, StoreCall storeCall) throws SyncOtherErrorException, SyncServiceErrorException {
+        if (maxRowsPerStoreCall <= 0 || valuesToCreate.size() + valuesToStore.size() + keysToRemove.size() <= maxRowsPerStoreCall) {
+            storeCall.run(valuesToCreate, valuesToStore, keysToRemove);
+            return;
+        }
+
+        int createIndex = 0;
+        int storeIndex = 0;
+        int removeIndex = 0;
+        while (createIndex < valuesToCreate.size() || storeIndex < valuesToStore.size() || removeIndex < keysToRemove.size()) {
+            int rowsLeft = (int) Math.min(maxRowsPerStoreCall, Integer.MAX_VALUE);
+            List<GenericValue> createChunk = chunkOf(valuesToCreate, createIndex, rowsLeft);
+            createIndex += createChunk.size();
+            rowsLeft -= createChunk.size();
+            List<GenericValue> storeChunk = chunkOf(valuesToStore, storeIndex, rowsLeft);
+            storeIndex += storeChunk.size();
+            rowsLeft -= storeChunk.size();
+            List<GenericEntity> removeChunk = chunkOf(keysToRemove, removeIndex, rowsLeft);
+            removeIndex += removeChunk.size();
+            storeCall.run(createChunk, storeChunk, removeChunk);
+        }
+    }
+
+    private static <T> List<T> chunkOf(List<T> list, int fromIndex, int maxSize) {
+        return new ArrayList<>(list.subList(Math.min(fromIndex, list.size()), Math.min(list.size(), fromIndex + maxSize)));
+    }
+
+    /** calls the target service once with the given values, adding the results to the totals */
+    private void runPushStoreCall(List<GenericValue> valuesToCreate, List<GenericValue> valuesToStore, List<GenericEntity> keysToRemove)
+            throws SyncOtherErrorException, SyncServiceErrorException {
+        Map<String, Object> targetServiceMap = UtilMisc.toMap("entitySyncId", entitySyncId, "valuesToCreate", valuesToCreate, "valuesToStore",
+                valuesToStore, "keysToRemove", keysToRemove, "userLogin", userLogin);
+        if (UtilValidate.isNotEmpty(targetDelegatorName)) {
+            targetServiceMap.put("delegatorName", targetDelegatorName);
+        }
+        String serviceErrorMsg = "Error running EntitySync [" + entitySyncId + "], call to store service [" + targetServiceName + "] failed.";
+        try {
 
-                this.totalStoreCalls++;
-
-                long toCreateInsertedCur = remoteStoreResult.get("toCreateInserted") == null ? 0
-                        : (Long) remoteStoreResult.get("toCreateInserted");
-                long toCreateUpdatedCur = remoteStoreResult.get("toCreateUpdated") == null ? 0
-                        : (Long) remoteStoreResult.get("toCreateUpdated");
-                long toCreateNotUpdatedCur = remoteStoreResult.get("toCreateNotUpdated") == null ? 0
-                        : (Long) remoteStoreResult.get("toCreateNotUpdated");
-                long toStoreInsertedCur = remoteStoreResult.get("toStoreInserted") == null ? 0
-                        : (Long) remoteStoreResult.get("toStoreInserted");
-                long toStoreUpdatedCur = remoteStoreResult.get("toStoreUpdated") == null ? 0
-                        : (Long) remoteStoreResult.get("toStoreUpdated");
-                long toStoreNotUpdatedCur = remoteStoreResult.get("toStoreNotUpdated") == null ? 0
-                        : (Long) remoteStoreResult.get("toStoreNotUpdated");
-                long toRemoveDeletedCur = remoteStoreResult.get("toRemoveDeleted") == null ? 0
-                        : (Long) remoteStoreResult.get("toRemoveDeleted");
-                long toRemoveAlreadyDeletedCur = remoteStoreResult.get("toRemoveAlreadyDeleted") == null ? 0
-                        : (Long) remoteStoreResult.get("toRemoveAlreadyDeleted");
-
-                this.toCreateInserted += toCreateInsertedCur;
-                this.toCreateUpdated += toCreateUpdatedCur;
-                this.toCreateNotUpdated += toCreateNotUpdatedCur;
-                this.toStoreInserted += toStoreInsertedCur;
-                this.toStoreUpdated += toStoreUpdatedCur;
-                this.toStoreNotUpdated += toStoreNotUpdatedCur;
-                this.toRemoveDeleted += toRemoveDeletedCur;
-                this.toRemoveAlreadyDeleted += toRemoveAlreadyDeletedCur;
-            } catch (GenericServiceException | GenericEntityException e) {
-                throw new SyncServiceErrorException(serviceErrorMsg, e);
+            //TODO: It should use authentic user instead of system, think on alternate solution
+            GenericValue userLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne();
+            targetServiceMap.put("userLogin", userLogin);
+
+            Map<String, Object> remoteStoreResult = dispatcher.runSync(targetServiceName, targetServiceMap);
+            if (ServiceUtil.isError(remoteStoreResult)) {
+                throw new SyncOtherErrorException(serviceErrorMsg, null, null, remoteStoreResult, null);
             }
+
+            this.totalStoreCalls++;
+
+            long toCreateInsertedCur = remoteStoreResult.get("toCreateInserted") == null ? 0
+                    : (Long) remoteStoreResult.get("toCreateInserted");
+            long toCreateUpdatedCur = remoteStoreResult.get("toCreateUpdated") == null ? 0
+                    : (Long) remoteStoreResult.get("toCreateUpdated");
+            long toCreateNotUpdatedCur = remoteStoreResult.get("toCreateNotUpdated") == null ? 0
+                    : (Long) remoteStoreResult.get("toCreateNotUpdated");
+            long toStoreInsertedCur = remoteStoreResult.get("toStoreInserted") == null ? 0
+                    : (Long) remoteStoreResult.get("toStoreInserted");
+            long toStoreUpdatedCur = remoteStoreResult.get("toStoreUpdated") == null ? 0
+                    : (Long) remoteStoreResult.get("toStoreUpdated");
+            long toStoreNotUpdatedCur = remoteStoreResult.get("toStoreNotUpdated") == null ? 0
+                    : (Long) remoteStoreResult.get("toStoreNotUpdated");
+            long toRemoveDeletedCur = remoteStoreResult.get("toRemoveDeleted") == null ? 0
+                    : (Long) remoteStoreResult.get("toRemoveDeleted");
+            long toRemoveAlreadyDeletedCur = remoteStoreResult.get("toRemoveAlreadyDeleted") == null ? 0
+                    : (Long) remoteStoreResult.get("toRemoveAlreadyDeleted");
+
+            this.toCreateInserted += toCreateInsertedCur;
+            this.toCreateUpdated += toCreateUpdatedCur;
+            this.toCreateNotUpdated += toCreateNotUpdatedCur;
+            this.toStoreInserted += toStoreInsertedCur;
+            this.toStoreUpdated += toStoreUpdatedCur;
+            this.toStoreNotUpdated += toStoreNotUpdatedCur;
+            this.toRemoveDeleted += toRemoveDeletedCur;
+            this.toRemoveAlreadyDeleted += toRemoveAlreadyDeletedCur;
+        } catch (GenericServiceException | GenericEntityException e) {
+            throw new SyncServiceErrorException(serviceErrorMsg, e);
         }
     }
 
@@ -653,6 +653,12 @@ public class EntitySyncServices {
                     EntityOperator.LESS_THAN, keepAfterStamp));
             Debug.logInfo("In cleanSyncRemoveInfo removed [" + numRemoved + "] values with TX timestamp before [" + keepAfterStamp + "]", MODULE);
 
+            // the change info is kept as long as the remove info
+            int numChangesRemoved = delegator.removeByCondition("EntitySyncChange", EntityCondition.makeCondition(ModelEntity.CREATE_STAMP_TX_FIELD,
+                    EntityOperator.LESS_THAN, keepAfterStamp));
+            Debug.logInfo("In cleanSyncRemoveInfo removed [" + numChangesRemoved + "] change values with TX timestamp before [" + keepAfterStamp
+                    + "]", MODULE);
+
             return ServiceUtil.returnSuccess();
         } catch (GenericEntityException e) {
             Debug.logError(e, "Error cleaning out EntitySyncRemove info: " + e.toString(), MODULE);
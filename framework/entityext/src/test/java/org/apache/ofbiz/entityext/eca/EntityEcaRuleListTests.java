@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entityext.eca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.eca.EntityEcaHandler;
+import org.apache.ofbiz.service.DispatchContext;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class EntityEcaRuleListTests {
+
+    private static Element element(String xml) throws Exception {
+        return UtilXml.readXmlDocument(xml, false).getDocumentElement();
+    }
+
+    private static EntityEcaRule rule(String operation) throws Exception {
+        return new EntityEcaRule(element("<eca entity=\"Product\" operation=\"" + operation + "\" event=\"return\"/>"));
+    }
+
+    @Test
+    public void testRulesByOperation() throws Exception {
+        EntityEcaRule create = rule("create");
+        EntityEcaRule createStore = rule("create-store");
+        EntityEcaRule any = rule("any");
+        EntityEcaRule remove = rule("remove");
+        EntityEcaRule find = rule("find");
+        EntityEcaRuleList rules = new EntityEcaRuleList(Arrays.asList(create, createStore, any, remove, find));
+
+        assertEquals("all rules", Arrays.asList(create, createStore, any, remove, find), rules);
+        assertEquals("create rules", Arrays.asList(create, createStore, any), rules.getRules(EntityEcaHandler.OP_CREATE));
+        assertEquals("store rules", Arrays.asList(createStore, any), rules.getRules(EntityEcaHandler.OP_STORE));
+        assertEquals("remove rules", Arrays.asList(any, remove), rules.getRules(EntityEcaHandler.OP_REMOVE));
+        assertEquals("find rules", Arrays.asList(any, find), rules.getRules(EntityEcaHandler.OP_FIND));
+        assertTrue("no rules", new EntityEcaRuleList(Arrays.asList(create)).getRules(EntityEcaHandler.OP_STORE).isEmpty());
+    }
+
+    @Test
+    public void testAppliesTo() throws Exception {
+        for (String operation : Arrays.asList(EntityEcaHandler.OP_CREATE, EntityEcaHandler.OP_STORE, EntityEcaHandler.OP_REMOVE,
+                EntityEcaHandler.OP_FIND)) {
+            assertTrue("any applies to " + operation, rule("any").appliesTo(operation));
+        }
+        assertTrue("create-store applies to store", rule("create-store").appliesTo(EntityEcaHandler.OP_STORE));
+        assertFalse("create-store does not apply to remove", rule("create-store").appliesTo(EntityEcaHandler.OP_REMOVE));
+        assertFalse("create does not apply to find", rule("create").appliesTo(EntityEcaHandler.OP_FIND));
+    }
+
+    @Test
+    public void testStringEqualsConditionLikeRealCompare() throws Exception {
+        DispatchContext dctx = mock(DispatchContext.class);
+        when(dctx.getClassLoader()).thenReturn(getClass().getClassLoader());
+        List<String> fieldValues = new ArrayList<>(Arrays.asList("PRODUCT_ACTIVE", "PRODUCT_INACTIVE", "", "product_active"));
+        fieldValues.add(null);
+        for (String type : Arrays.asList("String", "java.lang.String", "PlainString")) {
+            for (String operator : Arrays.asList("equals", "not-equals")) {
+                EntityEcaCondition condition = new EntityEcaCondition(element("<condition field-name=\"statusId\" operator=\"" + operator
+                        + "\" value=\"PRODUCT_ACTIVE\" type=\"" + type + "\"/>"), true, false);
+                for (String fieldValue : fieldValues) {
+                    GenericValue value = mock(GenericValue.class);
+                    when(value.get("statusId")).thenReturn(fieldValue);
+                    Boolean expected = ObjectType.doRealCompare(fieldValue, "PRODUCT_ACTIVE", operator, type, "", new ArrayList<>(), null,
+                            dctx.getClassLoader(), true);
+                    assertEquals(type + " " + operator + " [" + fieldValue + "]", expected,
+                            condition.eval(dctx, value, Collections.emptyMap()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entityext.synchronization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.junit.Test;
+
+public class EntitySyncContextTests {
+
+    private static final Timestamp RUN_START = new Timestamp(100000);
+    private static final Timestamp RUN_END = new Timestamp(200000);
+
+    private static GenericValue value(String name, long createdTxStamp, long lastUpdatedTxStamp) {
+        GenericValue value = mock(GenericValue.class, name);
+        when(value.getTimestamp(ModelEntity.CREATE_STAMP_TX_FIELD)).thenReturn(new Timestamp(createdTxStamp));
+        when(value.getTimestamp(ModelEntity.CREATE_STAMP_FIELD)).thenReturn(new Timestamp(createdTxStamp));
+        when(value.getTimestamp(ModelEntity.STAMP_TX_FIELD)).thenReturn(new Timestamp(lastUpdatedTxStamp));
+        when(value.getTimestamp(ModelEntity.STAMP_FIELD)).thenReturn(new Timestamp(lastUpdatedTxStamp));
+        return value;
+    }
+
+    private static List<GenericValue> values(String prefix, int count) {
+        List<GenericValue> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(mock(GenericValue.class, prefix + i));
+        }
+        return values;
+    }
+
+    @Test
+    public void testSortChangedValues() {
+        GenericValue createdThenUpdated = value("createdThenUpdated", 150000, 190000);
+        GenericValue createdFirst = value("createdFirst", 110000, 110000);
+        GenericValue createdThenUpdatedLater = value("createdThenUpdatedLater", 120000, 250000);
+        GenericValue updated = value("updated", 50000, 160000);
+        GenericValue updatedLater = value("updatedLater", 50000, 250000);
+        GenericValue createdLater = value("createdLater", 200000, 200000);
+        List<GenericValue> valuesToCreate = new ArrayList<>();
+        List<GenericValue> valuesToStore = new ArrayList<>();
+
+        EntitySyncContext.sortChangedValues(Arrays.asList(createdThenUpdated, updatedLater, createdFirst, updated, createdLater,
+                createdThenUpdatedLater), RUN_START, RUN_END, valuesToCreate, valuesToStore);
+
+        assertEquals("values created in the split, by created stamp", Arrays.asList(createdFirst, createdThenUpdatedLater,
+                createdThenUpdated), valuesToCreate);
+        assertEquals("values created before and updated in the split", Collections.singletonList(updated), valuesToStore);
+    }
+
+    @Test
+    public void testSplitStoreCallsKeepsOrder() throws Exception {
+        List<GenericValue> valuesToCreate = values("create", 5);
+        List<GenericValue> valuesToStore = values("store", 3);
+        List<GenericEntity> keysToRemove = new ArrayList<>(values("remove", 4));
+        List<GenericEntity> sent = new ArrayList<>();
+        List<Integer> callSizes = new ArrayList<>();
+
+        EntitySyncContext.splitStoreCalls(valuesToCreate, valuesToStore, keysToRemove, 3, (toCreate, toStore, toRemove) -> {
+            callSizes.add(toCreate.size() + toStore.size() + toRemove.size());
+            sent.addAll(toCreate);
+            sent.addAll(toStore);
+            sent.addAll(toRemove);
+        });
+
+        List<GenericEntity> expected = new ArrayList<>(valuesToCreate);
+        expected.addAll(valuesToStore);
+        expected.addAll(keysToRemove);
+        assertEquals("rows sent in order", expected, sent);
+        assertEquals("rows per call", Arrays.asList(3, 3, 3, 3), callSizes);
+    }
+
+    @Test
+    public void testSplitStoreCallsWithoutLimit() throws Exception {
+        List<GenericValue> valuesToCreate = values("create", 5);
+        List<GenericValue> valuesToStore = values("store", 3);
+        List<GenericEntity> keysToRemove = new ArrayList<>(values("remove", 4));
+        List<Integer> callSizes = new ArrayList<>();
+
+        EntitySyncContext.splitStoreCalls(valuesToCreate, valuesToStore, keysToRemove, 0,
+                (toCreate, toStore, toRemove) -> callSizes.add(toCreate.size() + toStore.size() + toRemove.size()));
+        EntitySyncContext.splitStoreCalls(valuesToCreate, valuesToStore, keysToRemove, 12,
+                (toCreate, toStore, toRemove) -> callSizes.add(toCreate.size() + toStore.size() + toRemove.size()));
+
+        assertEquals("one call each", Arrays.asList(12, 12), callSizes);
+    }
+
+    @Test
+    public void testSplitStoreCallsSendsEachRowOnce() throws Exception {
+        List<GenericValue> valuesToStore = values("store", 7);
+        List<GenericEntity> sent = new ArrayList<>();
+
+        EntitySyncContext.splitStoreCalls(Collections.emptyList(), valuesToStore, Collections.emptyList(), 2, (toCreate, toStore, toRemove) -> {
+            assertTrue("no values to create", toCreate.isEmpty());
+            assertTrue("no keys to remove", toRemove.isEmpty());
+            sent.addAll(toStore);
+        });
+
+        assertEquals("values stored", valuesToStore, sent);
+    }
+}
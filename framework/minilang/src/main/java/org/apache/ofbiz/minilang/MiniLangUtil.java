@@ -21,7 +21,10 @@ package org.apache.ofbiz.minilang;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -57,6 +60,9 @@ import org.w3c.dom.Node;
 public final class MiniLangUtil {
 
     private static final String MODULE = MiniLangUtil.class.getName();
+    /** Immutable types whose conversion from a literal does not depend on the time zone. */
+    private static final Set<Class<?>> PRECOMPILE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(String.class,
+            Boolean.class, BigDecimal.class, BigInteger.class, Double.class, Float.class, Long.class, Integer.class, Short.class)));
 
     private static final Set<String> SCRIPT_PREFIXES;
 
@@ -96,6 +102,43 @@ public final class MiniLangUtil {
         return "true".equals(UtilProperties.getPropertyValue("minilang", "autocorrect"));
     }
 
+    /**
+     * Returns <code>true</code> if the Mini-language script engine has been configured to
+     * convert constant typed attribute values once, when the script is parsed.
+     * @return <code>true</code> if the Mini-language script engine has been configured to
+     * pre-convert constant attribute values
+     */
+    public static boolean precompileConstantsOn() {
+        return "true".equals(UtilProperties.getPropertyValue("minilang", "precompile.constants"));
+    }
+
+    /**
+     * Converts a constant attribute value to <code>targetClass</code> at parse time, so the
+     * expression expansion and type conversion are not repeated on every execution. Returns
+     * <code>null</code> when pre-conversion is disabled or not possible - the value contains an
+     * expression, the format is not constant, or the conversion result could depend on the
+     * run-time locale or time zone - in which case the caller must convert at run time.
+     * @param valueFse The attribute value
+     * @param formatFse The optional format attribute
+     * @param targetClass The class to convert to
+     * @return The converted value, or <code>null</code>
+     */
+    public static Object precompileConstant(FlexibleStringExpander valueFse, FlexibleStringExpander formatFse, Class<?> targetClass) {
+        if (!precompileConstantsOn() || targetClass == null || !PRECOMPILE_TYPES.contains(targetClass) || valueFse.isEmpty()
+                || FlexibleStringExpander.containsExpression(valueFse) || FlexibleStringExpander.containsExpression(formatFse)) {
+            return null;
+        }
+        String value = valueFse.expandString(Collections.<String, Object>emptyMap());
+        String format = formatFse.expandString(Collections.<String, Object>emptyMap());
+        try {
+            // We use en locale here so constant (literal) values are converted properly.
+            return convertType(value, targetClass, Locale.ENGLISH, null, format.isEmpty() ? null : format);
+        } catch (Exception e) {
+            // Leave the conversion (and its error reporting) to run time.
+            return null;
+        }
+    }
+
     /**
      * Calls an object method.
      * @param operation A reference to the <code>MethodOperation</code> calling this method
@@ -50,6 +50,8 @@ public final class CompareCondition extends MethodOperation implements Condition
     private final Class<?> targetClass;
     private final String type;
     private final FlexibleStringExpander valueFse;
+    // The value attribute converted to targetClass at parse time, or null if it must be converted at run time.
+    private final Object constantValue;
     // Sub-operations are used only when this is a method operation.
     private final List<MethodOperation> elseSubOps;
     private final List<MethodOperation> subOps;
@@ -87,6 +89,7 @@ public final class CompareCondition extends MethodOperation implements Condition
         }
         this.targetClass = targetClass;
         this.valueFse = FlexibleStringExpander.getInstance(element.getAttribute("value"));
+        this.constantValue = MiniLangUtil.precompileConstant(this.valueFse, this.formatFse, this.targetClass);
         Element childElement = UtilXml.firstChildElement(element);
         if (childElement != null && !"else".equals(childElement.getTagName())) {
             this.subOps = Collections.unmodifiableList(SimpleMethod.readOperations(element, simpleMethod));
@@ -107,6 +110,15 @@ public final class CompareCondition extends MethodOperation implements Condition
             throw new MiniLangRuntimeException("Invalid operator \"" + this.operator + "\"", this);
         }
         Object fieldVal = fieldFma.get(methodContext.getEnvMap());
+        if (this.constantValue != null) {
+            try {
+                return this.compare.doCompare(fieldVal, this.constantValue, this.targetClass, Locale.ENGLISH, methodContext.getTimeZone(),
+                        this.formatFse.getOriginal());
+            } catch (Exception e) {
+                getSimpleMethod().addErrorMessage(methodContext, e.getMessage());
+            }
+            return false;
+        }
         Class<?> targetClass = this.targetClass;
         if (targetClass == null) {
             targetClass = MiniLangUtil.getObjectClassForConversion(fieldVal);
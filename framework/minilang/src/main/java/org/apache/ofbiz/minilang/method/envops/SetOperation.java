@@ -84,6 +84,8 @@ public final class SetOperation extends MethodOperation {
     private final Class<?> targetClass;
     private final String type;
     private final FlexibleStringExpander valueFse;
+    // The value attribute converted to targetClass at parse time, or null if it must be converted at run time.
+    private final Object constantValue;
 
     public SetOperation(Element element, SimpleMethod simpleMethod) throws MiniLangException {
         super(element, simpleMethod);
@@ -125,6 +127,7 @@ public final class SetOperation extends MethodOperation {
             }
         }
         this.targetClass = targetClass;
+        this.constantValue = MiniLangUtil.precompileConstant(this.valueFse, this.formatFse, this.targetClass);
         this.setIfNull = "true".equals(element.getAttribute("set-if-null")); // default to false, anything but true is false
         this.setIfEmpty = !"false".equals(element.getAttribute("set-if-empty")); // default to true, anything but false is true
         if (!fromAttribute.isEmpty() && !this.valueFse.isEmpty()) {
@@ -134,6 +137,13 @@ public final class SetOperation extends MethodOperation {
 
     @Override
     public boolean exec(MethodContext methodContext) throws MiniLangException {
+        if (this.constantValue != null) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Setting field [" + this.fieldFma.toString() + "] to pre-converted value: " + this.constantValue, MODULE);
+            }
+            this.fieldFma.put(methodContext.getEnvMap(), this.constantValue);
+            return true;
+        }
         boolean isConstant = false;
         Object newValue = null;
         if (this.scriptlet != null) {
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.minilang.test;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -27,6 +28,7 @@ import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.minilang.MiniLangUtil;
 import org.apache.ofbiz.minilang.SimpleMethod;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.service.testtools.OFBizTestCase;
@@ -116,4 +118,44 @@ public class MiniLangTests extends OFBizTestCase {
         assertEquals("Plain expression result name set", "someResultValue", context.getResult("constantResultName"));
         assertEquals("Nested expression result name set", "someResultValue", context.getResult("dynamicResultName"));
     }
+
+    /**
+     * Test constant typed values, with and without conversion when the method is parsed.
+     * @throws Exception the exception
+     */
+    public void testPrecompiledConstants() throws Exception {
+        String simpleMethodXml = "<simple-method name=\"testPrecompiledConstants\">"
+                + "  <set field=\"amount\" value=\"10.50\" type=\"BigDecimal\"/>"
+                + "  <set field=\"limit\" value=\"${limitString}\" type=\"BigDecimal\"/>"
+                + "  <if-compare field=\"amount\" operator=\"greater\" value=\"10\" type=\"BigDecimal\">"
+                + "    <set field=\"overTen\" value=\"true\" type=\"Boolean\"/>"
+                + "  </if-compare>"
+                + "  <if-compare field=\"amount\" operator=\"less\" value=\"${limitString}\" type=\"BigDecimal\">"
+                + "    <set field=\"underLimit\" value=\"true\" type=\"Boolean\"/>"
+                + "  </if-compare>"
+                + "</simple-method>";
+        String precompileConstants = UtilProperties.getPropertyValue("minilang", "precompile.constants");
+        try {
+            for (String precompile : UtilMisc.toList("true", "false")) {
+                UtilProperties.setPropertyValueInMemory("minilang", "precompile.constants", precompile);
+                assertEquals("precompile.constants=" + precompile, "true".equals(precompile), MiniLangUtil.precompileConstantsOn());
+                SimpleMethod methodToTest = createSimpleMethod(simpleMethodXml);
+                // the same parsed method run twice, and with another expression value
+                for (String limitString : UtilMisc.toList("20", "20", "5")) {
+                    String message = "precompile.constants=" + precompile + ", limitString=" + limitString + ": ";
+                    MethodContext context = createServiceMethodContext();
+                    context.putEnv("limitString", limitString);
+                    String result = methodToTest.exec(context);
+                    assertEquals(message + "success result", methodToTest.getDefaultSuccessCode(), result);
+                    assertEquals(message + "constant BigDecimal set", new BigDecimal("10.50"), context.getEnv("amount"));
+                    assertEquals(message + "expression BigDecimal set", new BigDecimal(limitString), context.getEnv("limit"));
+                    assertEquals(message + "constant if-compare", Boolean.TRUE, context.getEnv("overTen"));
+                    assertEquals(message + "expression if-compare", "20".equals(limitString) ? Boolean.TRUE : null,
+                            context.getEnv("underLimit"));
+                }
+            }
+        } finally {
+            UtilProperties.setPropertyValueInMemory("minilang", "precompile.constants", precompileConstants);
+        }
+    }
 }
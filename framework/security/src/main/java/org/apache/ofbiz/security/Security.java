@@ -18,8 +18,11 @@
  *******************************************************************************/
 package org.apache.ofbiz.security;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import jakarta.servlet.http.HttpSession;
 
@@ -150,6 +153,44 @@ public interface Security {
      */
     boolean hasRolePermission(String application, String action, String primaryKey, List<String> roles, HttpSession session);
 
+    /**
+     * Checks {@link #hasRolePermission(String, String, String, List, GenericValue)} for many primary keys at once,
+     * for instance for the rows of a list.
+     * <p>The default implementation checks each key in turn. Implementations should answer with as few lookups
+     * as possible.</p>
+     * @param application The name of the application corresponding to the desired permission.
+     * @param action The action on the application corresponding to the desired permission.
+     * @param primaryKeys The primary keys for the role check.
+     * @param roles List of roleTypeId of which the user must validate with (ORed).
+     * @param userLogin The userLogin object for user to check against.
+     * @return The primary keys for which the user has the permission, in the order of <code>primaryKeys</code>
+     */
+    default Set<String> getRolePermittedKeys(String application, String action, Collection<String> primaryKeys, List<String> roles,
+            GenericValue userLogin) {
+        Set<String> permittedKeys = new LinkedHashSet<>();
+        for (String primaryKey : primaryKeys) {
+            if (hasRolePermission(application, action, primaryKey, roles, userLogin)) {
+                permittedKeys.add(primaryKey);
+            }
+        }
+        return permittedKeys;
+    }
+
+    /**
+     * Checks {@link #hasRolePermission(String, String, String, List, HttpSession)} for many primary keys at once.
+     * @param application The name of the application corresponding to the desired permission.
+     * @param action The action on the application corresponding to the desired permission.
+     * @param primaryKeys The primary keys for the role check.
+     * @param roles List of roleTypeId of which the user must validate with (ORed).
+     * @param session The current HTTP session, contains the logged in userLogin as an attribute.
+     * @return The primary keys for which the user has the permission, in the order of <code>primaryKeys</code>
+     */
+    default Set<String> getRolePermittedKeys(String application, String action, Collection<String> primaryKeys, List<String> roles,
+            HttpSession session) {
+        GenericValue userLogin = (GenericValue) session.getAttribute("userLogin");
+        return getRolePermittedKeys(application, action, primaryKeys, roles, userLogin);
+    }
+
     /** Clears any user-related cached data. This method is called by the framework
      *  to indicate a user has logged out. Implementations should clear any cached
      *  data related to the user.
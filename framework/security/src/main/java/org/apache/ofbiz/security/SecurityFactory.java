@@ -18,12 +18,17 @@
  *******************************************************************************/
 package org.apache.ofbiz.security;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
 
 import jakarta.servlet.http.HttpSession;
 
@@ -34,6 +39,7 @@ import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.Cache;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityConditionList;
 import org.apache.ofbiz.entity.condition.EntityExpr;
@@ -85,6 +91,16 @@ public final class SecurityFactory {
 
     private static final class OFBizSecurity implements Security {
 
+        /** Name of the permission objects in the entity object cache */
+        private static final String PERMISSIONS_CACHE_NAME = "security.permissions";
+        /** The most primary keys put in one IN condition of a role query */
+        private static final int MAX_ROLE_QUERY_KEYS = 500;
+        /**
+         * Role memberships found by role queries, by role entity, party, roles and primary key. Role entities are
+         * not watched for changes, so the cache is only used when cache.properties gives it an expire time.
+         */
+        private static final UtilCache<String, Boolean> ROLE_MEMBERSHIP_CACHE = UtilCache.createUtilCache("security.RoleMembershipCache");
+
         private Delegator delegator = null;
 
         private static final Map<String, Map<String, String>> SIMPLE_ROLE_ENT = UtilMisc.toMap(
@@ -99,6 +115,17 @@ public final class SecurityFactory {
             if (userLogin != null) {
                 delegator.getCache().remove("UserLoginSecurityGroup", EntityCondition.makeCondition("userLoginId", EntityOperator.EQUALS,
                         userLogin.getString("userLoginId")));
+                String partyId = userLogin.getString("partyId");
+                if (partyId != null && ROLE_MEMBERSHIP_CACHE.size() > 0) {
+                    for (Map<String, String> simpleRoleMap : SIMPLE_ROLE_ENT.values()) {
+                        String cacheKeyPrefix = simpleRoleMap.get("name") + "::" + partyId + "::";
+                        for (String cacheKey : ROLE_MEMBERSHIP_CACHE.getCacheLineKeys()) {
+                            if (cacheKey.startsWith(cacheKeyPrefix)) {
+                                ROLE_MEMBERSHIP_CACHE.remove(cacheKey);
+                            }
+                        }
+                    }
+                }
             }
         }
 
@@ -124,20 +151,8 @@ public final class SecurityFactory {
         @Override
         public boolean hasEntityPermission(String entity, String action, GenericValue userLogin) {
             if (userLogin == null || entity == null || action == null) return false;
-            String permission = entity.concat(action);
-            String adminPermission = entity.concat("_ADMIN");
-            Iterator<GenericValue> iterator = findUserLoginSecurityGroupByUserLoginId(userLogin.getString("userLoginId"));
-            while (iterator.hasNext()) {
-                GenericValue userLoginSecurityGroup = iterator.next();
-                if (securityGroupPermissionExists(userLoginSecurityGroup.getString("groupId"), permission)) {
-                    return true;
-                }
-                if (securityGroupPermissionExists(userLoginSecurityGroup.getString("groupId"), adminPermission)) {
-                    return true;
-                }
-            }
-
-            return false;
+            Set<String> permissions = getUserPermissions(userLogin.getString("userLoginId"));
+            return permissions.contains(entity.concat(action)) || permissions.contains(entity.concat("_ADMIN"));
         }
 
         @Override
@@ -157,13 +172,7 @@ public final class SecurityFactory {
             if (userLogin == null) {
                 return false;
             }
-            Iterator<GenericValue> iterator = findUserLoginSecurityGroupByUserLoginId(userLogin.getString("userLoginId"));
-            GenericValue userLoginSecurityGroup = null;
-            while (iterator.hasNext()) {
-                userLoginSecurityGroup = iterator.next();
-                if (securityGroupPermissionExists(userLoginSecurityGroup.getString("groupId"), permission)) return true;
-            }
-            return false;
+            return getUserPermissions(userLogin.getString("userLoginId")).contains(permission);
         }
 
         @Override
@@ -175,6 +184,63 @@ public final class SecurityFactory {
             return hasPermission(permission, userLogin);
         }
 
+        /**
+         * Returns the permissions granted to a user login through its security groups.
+         * <p>The set is kept in the entity object cache under the user's <code>UserLoginSecurityGroup</code>
+         * condition, so it is dropped with the other cached security data of the user by writes to
+         * <code>UserLoginSecurityGroup</code> and by {@link #clearUserData(GenericValue)}. It also records
+         * the current generation of <code>SecurityGroupPermission</code>, an object cached under the null
+         * condition that any write to that entity removes, and the time the first from or thru date is
+         * reached. The set is rebuilt when either changes.</p>
+         */
+        private Set<String> getUserPermissions(String userLoginId) {
+            if (userLoginId == null) {
+                return Collections.emptySet();
+            }
+            Cache cache = delegator.getCache();
+            // get the generation before reading the permissions, so a concurrent change makes the result stale
+            Object generation = cache.get("SecurityGroupPermission", null, PERMISSIONS_CACHE_NAME);
+            if (generation == null) {
+                generation = new Object();
+                cache.put("SecurityGroupPermission", null, PERMISSIONS_CACHE_NAME, generation);
+            }
+            EntityCondition condition = EntityCondition.makeCondition("userLoginId", userLoginId);
+            long now = System.currentTimeMillis();
+            UserPermissions userPermissions = cache.get("UserLoginSecurityGroup", condition, PERMISSIONS_CACHE_NAME);
+            if (userPermissions == null || userPermissions.generation != generation || now >= userPermissions.validUntil) {
+                try {
+                    userPermissions = loadUserPermissions(userLoginId, generation, now);
+                } catch (GenericEntityException e) {
+                    Debug.logWarning(e, MODULE);
+                    return Collections.emptySet();
+                }
+                cache.put("UserLoginSecurityGroup", condition, PERMISSIONS_CACHE_NAME, userPermissions);
+            }
+            return userPermissions.permissions;
+        }
+
+        private UserPermissions loadUserPermissions(String userLoginId, Object generation, long now) throws GenericEntityException {
+            UserPermissions userPermissions = new UserPermissions(generation);
+            List<GenericValue> userLoginSecurityGroups = EntityQuery.use(delegator).from("UserLoginSecurityGroup")
+                    .where("userLoginId", userLoginId).queryList();
+            Set<String> groupIds = new HashSet<>();
+            for (GenericValue userLoginSecurityGroup : userLoginSecurityGroups) {
+                if (userPermissions.isActive(userLoginSecurityGroup, now)) {
+                    groupIds.add(userLoginSecurityGroup.getString("groupId"));
+                }
+            }
+            if (!groupIds.isEmpty()) {
+                List<GenericValue> securityGroupPermissions = EntityQuery.use(delegator).select("permissionId", "fromDate", "thruDate")
+                        .from("SecurityGroupPermission").where(EntityCondition.makeCondition("groupId", EntityOperator.IN, groupIds)).queryList();
+                for (GenericValue securityGroupPermission : securityGroupPermissions) {
+                    if (userPermissions.isActive(securityGroupPermission, now)) {
+                        userPermissions.permissions.add(securityGroupPermission.getString("permissionId"));
+                    }
+                }
+            }
+            return userPermissions;
+        }
+
         /**
          * Like hasEntityPermission above, this checks the specified action, as well as for "_ADMIN" to allow for simplified
          * general administration permission, but also checks action_ROLE and validates the user is a member for the
@@ -226,6 +292,11 @@ public final class SecurityFactory {
             String entityName = null;
             EntityCondition condition = null;
             Map<String, String> simpleRoleMap = OFBizSecurity.SIMPLE_ROLE_ENT.get(application);
+            if (primaryKey != null && roles != null && simpleRoleMap != null && simpleRoleMap.get("pkey") != null
+                    && ROLE_MEMBERSHIP_CACHE.getExpireTime() > 0) {
+                // the batch check uses the role membership cache
+                return getRolePermittedKeys(application, action, Collections.singletonList(primaryKey), roles, userLogin).contains(primaryKey);
+            }
             if (simpleRoleMap != null && roles != null) {
                 entityName = simpleRoleMap.get("name");
                 String pkey = simpleRoleMap.get("pkey");
@@ -244,6 +315,76 @@ public final class SecurityFactory {
             return hasRolePermission(application, action, entityName, condition, userLogin);
         }
 
+        @Override
+        public Set<String> getRolePermittedKeys(String application, String action, Collection<String> primaryKeys, List<String> roles,
+                GenericValue userLogin) {
+            if (userLogin == null || primaryKeys.isEmpty()) {
+                return new LinkedHashSet<>();
+            }
+            Map<String, String> simpleRoleMap = OFBizSecurity.SIMPLE_ROLE_ENT.get(application);
+            if (simpleRoleMap == null || simpleRoleMap.get("pkey") == null || roles == null) {
+                return Security.super.getRolePermittedKeys(application, action, primaryKeys, roles, userLogin);
+            }
+            if (hasEntityPermission(application, action, userLogin)) {
+                return new LinkedHashSet<>(primaryKeys);
+            }
+            if (!hasEntityPermission(application + "_ROLE", action, userLogin)) {
+                return new LinkedHashSet<>();
+            }
+            String entityName = simpleRoleMap.get("name");
+            String pkey = simpleRoleMap.get("pkey");
+            String partyId = userLogin.getString("partyId");
+            String cacheKeyPrefix = entityName + "::" + partyId + "::" + roles + "::";
+            boolean useCache = ROLE_MEMBERSHIP_CACHE.getExpireTime() > 0;
+            Set<String> memberKeys = new HashSet<>();
+            List<String> queryKeys = new ArrayList<>();
+            for (String primaryKey : primaryKeys) {
+                if (primaryKey == null) {
+                    continue;
+                }
+                Boolean member = useCache ? ROLE_MEMBERSHIP_CACHE.get(cacheKeyPrefix.concat(primaryKey)) : null;
+                if (member == null) {
+                    queryKeys.add(primaryKey);
+                } else if (member) {
+                    memberKeys.add(primaryKey);
+                }
+            }
+            List<EntityExpr> expressions = new ArrayList<>();
+            for (String role: roles) {
+                expressions.add(EntityCondition.makeCondition("roleTypeId", EntityOperator.EQUALS, role));
+            }
+            EntityConditionList<EntityExpr> exprList = EntityCondition.makeCondition(expressions, EntityOperator.OR);
+            EntityExpr partyExpr = EntityCondition.makeCondition("partyId", partyId);
+            for (int start = 0; start < queryKeys.size(); start += MAX_ROLE_QUERY_KEYS) {
+                List<String> keys = queryKeys.subList(start, Math.min(start + MAX_ROLE_QUERY_KEYS, queryKeys.size()));
+                EntityCondition condition = EntityCondition.makeCondition(exprList, EntityCondition.makeCondition(pkey, EntityOperator.IN, keys),
+                        partyExpr);
+                Set<String> foundKeys = new HashSet<>();
+                try {
+                    List<GenericValue> roleValues = EntityQuery.use(delegator).select(pkey).from(entityName).where(condition).distinct().queryList();
+                    for (GenericValue roleValue : roleValues) {
+                        foundKeys.add(roleValue.getString(pkey));
+                    }
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, "Problems doing role security lookup on entity [" + entityName + "] using [" + condition + "]", MODULE);
+                    continue;
+                }
+                memberKeys.addAll(foundKeys);
+                if (useCache) {
+                    for (String key : keys) {
+                        ROLE_MEMBERSHIP_CACHE.put(cacheKeyPrefix.concat(key), foundKeys.contains(key));
+                    }
+                }
+            }
+            Set<String> permittedKeys = new LinkedHashSet<>();
+            for (String primaryKey : primaryKeys) {
+                if (memberKeys.contains(primaryKey)) {
+                    permittedKeys.add(primaryKey);
+                }
+            }
+            return permittedKeys;
+        }
+
         @Override
         public boolean hasRolePermission(String application, String action, String primaryKey, List<String> roles, HttpSession session) {
             GenericValue userLogin = (GenericValue) session.getAttribute("userLogin");
@@ -287,4 +428,32 @@ public final class SecurityFactory {
             this.delegator = delegator;
         }
     }
+
+    /** The permissions of a user login, valid until <code>validUntil</code> or a new <code>SecurityGroupPermission</code> generation. */
+    private static final class UserPermissions {
+        private final Set<String> permissions = new HashSet<>();
+        private final Object generation;
+        private long validUntil = Long.MAX_VALUE;
+
+        private UserPermissions(Object generation) {
+            this.generation = generation;
+        }
+
+        /** Returns true if the value is active at <code>now</code>, and notes when that changes. */
+        private boolean isActive(GenericValue value, long now) {
+            Timestamp fromDate = value.getTimestamp("fromDate");
+            if (fromDate != null && fromDate.getTime() > now) {
+                validUntil = Math.min(validUntil, fromDate.getTime());
+                return false;
+            }
+            Timestamp thruDate = value.getTimestamp("thruDate");
+            if (thruDate != null) {
+                if (thruDate.getTime() <= now) {
+                    return false;
+                }
+                validUntil = Math.min(validUntil, thruDate.getTime());
+            }
+            return true;
+        }
+    }
 }
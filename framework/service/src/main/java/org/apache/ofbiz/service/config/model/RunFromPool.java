@@ -28,7 +28,13 @@ import org.w3c.dom.Element;
 @ThreadSafe
 public final class RunFromPool {
 
+    public static final String EXECUTOR_PLATFORM = "platform";
+    public static final String EXECUTOR_VIRTUAL = "virtual";
+    public static final int MAX_CONCURRENCY = 100;
+
     private final String name;
+    private final String executor;
+    private final int maxConcurrency;
 
     RunFromPool(Element runFromPoolElement) throws ServiceConfigException {
         String name = runFromPoolElement.getAttribute("name").intern();
@@ -36,9 +42,38 @@ public final class RunFromPool {
             throw new ServiceConfigException("<run-from-pool> element name attribute is empty");
         }
         this.name = name;
+        String executor = runFromPoolElement.getAttribute("executor").intern();
+        if (executor.isEmpty()) {
+            this.executor = EXECUTOR_PLATFORM;
+        } else if (EXECUTOR_PLATFORM.equals(executor) || EXECUTOR_VIRTUAL.equals(executor)) {
+            this.executor = executor;
+        } else {
+            throw new ServiceConfigException("<run-from-pool> element executor attribute value is invalid");
+        }
+        String maxConcurrency = runFromPoolElement.getAttribute("max-concurrency").intern();
+        if (maxConcurrency.isEmpty()) {
+            this.maxConcurrency = MAX_CONCURRENCY;
+        } else {
+            try {
+                this.maxConcurrency = Integer.parseInt(maxConcurrency);
+                if (this.maxConcurrency < 1) {
+                    throw new ServiceConfigException("<run-from-pool> element max-concurrency attribute value is invalid");
+                }
+            } catch (NumberFormatException e) {
+                throw new ServiceConfigException("<run-from-pool> element max-concurrency attribute value is invalid");
+            }
+        }
     }
 
     public String getName() {
         return name;
     }
+
+    public String getExecutor() {
+        return executor;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
 }
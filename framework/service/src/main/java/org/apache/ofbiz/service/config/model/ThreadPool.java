@@ -44,7 +44,11 @@ public final class ThreadPool {
     public static final int PURGE_JOBS_DAYS = 30;
     public static final int QUEUE_SIZE = 100;
     public static final int THREAD_TTL = 120000; // Idle thread lifespan - 2 minutes.
+    public static final String CLAIM_MODE_ROW = "row";
+    public static final String CLAIM_MODE_BATCH = "batch";
+    public static final String CLAIM_MODE_SKIP_LOCKED = "skip-locked";
 
+    private final String claimMode;
     private final int failedRetryMin;
     private final int jobs;
     private final int maxThreads;
@@ -160,6 +164,14 @@ public final class ThreadPool {
                 throw new ServiceConfigException("<thread-pool> element poll-db-millis attribute value is invalid");
             }
         }
+        String claimMode = poolElement.getAttribute("claim-mode").intern();
+        if (claimMode.isEmpty()) {
+            this.claimMode = CLAIM_MODE_ROW;
+        } else if (CLAIM_MODE_ROW.equals(claimMode) || CLAIM_MODE_BATCH.equals(claimMode) || CLAIM_MODE_SKIP_LOCKED.equals(claimMode)) {
+            this.claimMode = claimMode;
+        } else {
+            throw new ServiceConfigException("<thread-pool> element claim-mode attribute value is invalid");
+        }
         List<? extends Element> runFromPoolElementList = UtilXml.childElementList(poolElement, "run-from-pool");
         if (runFromPoolElementList.isEmpty()) {
             this.runFromPools = Collections.emptyList();
@@ -172,6 +184,10 @@ public final class ThreadPool {
         }
     }
 
+    public String getClaimMode() {
+        return claimMode;
+    }
+
     public int getFailedRetryMin() {
         return failedRetryMin;
     }
@@ -27,8 +27,10 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ofbiz.base.config.GenericConfigException;
@@ -50,6 +52,7 @@ import org.apache.ofbiz.entity.serialize.XmlSerializer;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ServiceContainer;
@@ -57,6 +60,7 @@ import org.apache.ofbiz.service.calendar.RecurrenceInfo;
 import org.apache.ofbiz.service.calendar.RecurrenceInfoException;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.RunFromPool;
+import org.apache.ofbiz.service.config.model.ThreadPool;
 
 /**
  * Job manager. The job manager queues and manages jobs. Client code can queue a job to be run immediately
@@ -207,8 +211,10 @@ public final class JobManager {
                 EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
         // limit to just defined pools
         List<String> pools = null;
+        String claimMode = null;
         try {
             pools = getRunPools();
+            claimMode = ServiceConfigUtil.getServiceEngine().getThreadPool().getClaimMode();
         } catch (GenericConfigException e) {
             Debug.logWarning(e, "Unable to get run pools - not running job: ", MODULE);
             return Collections.emptyList();
@@ -231,27 +237,38 @@ public final class JobManager {
                 Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", MODULE);
                 return poll;
             }
-            try (EntityListIterator jobsIterator = EntityQuery.use(delegator)
-                    .from("JobSandbox").where(mainCondition)
-                    .orderBy("priority DESC NULLS LAST", "runTime")
-                    .maxRows(limit).queryIterator()) {
-                GenericValue jobValue = jobsIterator.next();
-                while (jobValue != null) {
-                    // Claim ownership of this value. Using storeByCondition to avoid a race condition.
-                    List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS,
-                            jobValue.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
-                    int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", INSTANCE_ID),
-                            EntityCondition.makeCondition(updateExpression));
-                    if (rowsUpdated == 1) {
-                        poll.add(new PersistedServiceJob(dctx, jobValue, null));
-                        if (poll.size() == limit) {
-                            break;
+            if (ThreadPool.CLAIM_MODE_ROW.equals(claimMode)) {
+                try (EntityListIterator jobsIterator = EntityQuery.use(delegator)
+                        .from("JobSandbox").where(mainCondition)
+                        .orderBy("priority DESC NULLS LAST", "runTime")
+                        .maxRows(limit).queryIterator()) {
+                    GenericValue jobValue = jobsIterator.next();
+                    while (jobValue != null) {
+                        // Claim ownership of this value. Using storeByCondition to avoid a race condition.
+                        List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS,
+                                jobValue.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
+                        int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", INSTANCE_ID),
+                                EntityCondition.makeCondition(updateExpression));
+                        if (rowsUpdated == 1) {
+                            poll.add(new PersistedServiceJob(dctx, jobValue, null));
+                            if (poll.size() == limit) {
+                                break;
+                            }
                         }
+                        jobValue = jobsIterator.next();
                     }
-                    jobValue = jobsIterator.next();
+                } catch (GenericEntityException e) {
+                    Debug.logWarning(e, MODULE);
+                }
+            } else {
+                try {
+                    boolean skipLocked = ThreadPool.CLAIM_MODE_SKIP_LOCKED.equals(claimMode);
+                    for (GenericValue jobValue : claimJobs(mainCondition, limit, skipLocked)) {
+                        poll.add(new PersistedServiceJob(dctx, jobValue, null));
+                    }
+                } catch (GenericEntityException e) {
+                    Debug.logWarning(e, MODULE);
                 }
-            } catch (GenericEntityException e) {
-                Debug.logWarning(e, MODULE);
             }
             TransactionUtil.commit(beganTransaction);
         } catch (Throwable t) {
@@ -298,6 +315,49 @@ public final class JobManager {
         return poll;
     }
 
+    /**
+     * Claims up to <code>limit</code> jobs matching <code>condition</code> for this instance
+     * with a single UPDATE statement and returns the claimed jobs.
+     * <p>When <code>skipLocked</code> is true and the datasource supports it, the candidate rows are
+     * read with SELECT ... FOR UPDATE SKIP LOCKED so pollers on other instances skip them instead
+     * of racing for them. Otherwise a concurrent poller can claim some of the candidates between
+     * the read and the update; those are detected and left out of the result.</p>
+     * <p>Must be called inside a transaction.</p>
+     */
+    private List<GenericValue> claimJobs(EntityCondition condition, int limit, boolean skipLocked) throws GenericEntityException {
+        EntityQuery query = EntityQuery.use(delegator).from("JobSandbox").where(condition)
+                .orderBy("priority DESC NULLS LAST", "runTime")
+                .maxRows(limit);
+        if (skipLocked) {
+            query.skipLocked();
+        }
+        List<GenericValue> candidates = query.queryList();
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        List<String> jobIds = EntityUtil.getFieldListFromEntityList(candidates, "jobId", false);
+        int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", INSTANCE_ID),
+                EntityCondition.makeCondition(UtilMisc.toList(
+                        EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds),
+                        EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null))));
+        if (rowsUpdated == candidates.size()) {
+            return candidates;
+        }
+        // some jobs were claimed by another instance in the meantime, keep only ours
+        List<GenericValue> claimedValues = EntityQuery.use(delegator).select("jobId").from("JobSandbox")
+                .where(EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds),
+                        EntityCondition.makeCondition("runByInstanceId", INSTANCE_ID))
+                .queryList();
+        Set<String> claimedIds = new HashSet<>(EntityUtil.getFieldListFromEntityList(claimedValues, "jobId", false));
+        List<GenericValue> claimed = new ArrayList<>(claimedIds.size());
+        for (GenericValue candidate : candidates) {
+            if (claimedIds.contains(candidate.getString("jobId"))) {
+                claimed.add(candidate);
+            }
+        }
+        return claimed;
+    }
+
     public static List<GenericValue> getJobsToPurge(Delegator delegator, String poolId, String instanceId, int limit, Timestamp purgeTime)
             throws GenericEntityException {
         List<EntityCondition> purgeCondition = UtilMisc.toList(
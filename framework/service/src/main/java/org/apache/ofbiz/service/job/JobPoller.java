@@ -25,7 +25,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
@@ -39,6 +38,7 @@ import org.apache.ofbiz.base.util.Assert;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.service.config.ServiceConfigListener;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
+import org.apache.ofbiz.service.config.model.RunFromPool;
 import org.apache.ofbiz.service.config.model.ServiceConfig;
 import org.apache.ofbiz.service.config.model.ThreadPool;
 
@@ -51,6 +51,7 @@ public final class JobPoller implements ServiceConfigListener {
     private static final AtomicInteger CREATED = new AtomicInteger();
     private static final ConcurrentHashMap<String, JobManager> JOB_MANAGERS = new ConcurrentHashMap<>();
     private static final ThreadPoolExecutor EXECUTOR = createThreadPoolExecutor();
+    private static final Map<String, VirtualThreadJobExecutor> POOL_EXECUTORS = createPoolExecutors();
     private static final JobPoller INSTANCE = new JobPoller();
 
     /**
@@ -84,6 +85,28 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    /** Creates an executor for each <code>&lt;run-from-pool&gt;</code> configured with <code>executor="virtual"</code>. */
+    private static Map<String, VirtualThreadJobExecutor> createPoolExecutors() {
+        Map<String, VirtualThreadJobExecutor> poolExecutors = new HashMap<>();
+        try {
+            ThreadPool threadPool = ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
+            for (RunFromPool runFromPool : threadPool.getRunFromPools()) {
+                if (RunFromPool.EXECUTOR_VIRTUAL.equals(runFromPool.getExecutor())) {
+                    VirtualThreadJobExecutor executor = new VirtualThreadJobExecutor(runFromPool.getName(), runFromPool.getMaxConcurrency(),
+                            createPriorityComparator());
+                    if (!executor.isVirtual()) {
+                        Debug.logWarning("Virtual threads are not supported by this Java runtime, jobs of pool " + runFromPool.getName()
+                                + " will run in platform threads", MODULE);
+                    }
+                    poolExecutors.put(runFromPool.getName(), executor);
+                }
+            }
+        } catch (GenericConfigException e) {
+            Debug.logError(e, "Exception thrown while getting <thread-pool> model, running all pools in the queue service threads: ", MODULE);
+        }
+        return poolExecutors;
+    }
+
     private static Comparator<Runnable> createPriorityComparator() {
         return new Comparator<Runnable>() {
 
@@ -125,6 +148,40 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    private static String sendToPool() {
+        try {
+            return ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool().getSendToPool();
+        } catch (GenericConfigException e) {
+            Debug.logError(e, "Exception thrown while getting <thread-pool> model: ", MODULE);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the executor dedicated to the pool of <code>job</code>, or null if the job runs
+     * in the queue service threads. Jobs without a pool, like non-persisted asynchronous
+     * services, belong to the send-to-pool pool.
+     */
+    private static VirtualThreadJobExecutor getPoolExecutor(Job job) {
+        if (POOL_EXECUTORS.isEmpty()) {
+            return null;
+        }
+        String poolId = job instanceof PersistedServiceJob ? ((PersistedServiceJob) job).getPoolId() : null;
+        if (poolId == null) {
+            poolId = sendToPool();
+        }
+        return poolId != null ? POOL_EXECUTORS.get(poolId) : null;
+    }
+
+    /** Returns the number of jobs waiting to run in all the executors. */
+    private static int queuedJobCount() {
+        int count = EXECUTOR.getQueue().size();
+        for (VirtualThreadJobExecutor executor : POOL_EXECUTORS.values()) {
+            count += executor.getQueue().size();
+        }
+        return count;
+    }
+
     /**
      * Register a {@link JobManager} with the job poller.
      * @param jm The <code>JobManager</code> to register.
@@ -162,7 +219,21 @@ public final class JobPoller implements ServiceConfigListener {
         poolState.put("maxNumberOfInvokerThreads", EXECUTOR.getMaximumPoolSize());
         poolState.put("greatestNumberOfInvokerThreads", EXECUTOR.getLargestPoolSize());
         poolState.put("numberOfCompletedTasks", EXECUTOR.getCompletedTaskCount());
-        BlockingQueue<Runnable> queue = EXECUTOR.getQueue();
+        List<Runnable> queue = new ArrayList<>(EXECUTOR.getQueue());
+        List<Map<String, Object>> poolList = new ArrayList<>();
+        for (VirtualThreadJobExecutor executor : POOL_EXECUTORS.values()) {
+            Map<String, Object> poolInfo = new HashMap<>();
+            poolInfo.put("poolName", executor.getPoolName());
+            poolInfo.put("virtualThreads", executor.isVirtual());
+            poolInfo.put("maxConcurrency", executor.getMaxConcurrency());
+            poolInfo.put("numberOfActiveJobs", executor.getActiveCount());
+            poolInfo.put("greatestNumberOfActiveJobs", executor.getLargestActiveCount());
+            poolInfo.put("numberOfQueuedJobs", executor.getQueue().size());
+            poolInfo.put("numberOfCompletedTasks", executor.getCompletedTaskCount());
+            poolList.add(poolInfo);
+            queue.addAll(executor.getQueue());
+        }
+        poolState.put("poolList", poolList);
         List<Map<String, Object>> taskList = new ArrayList<>();
         Map<String, Object> taskInfo = null;
         for (Runnable task : queue) {
@@ -190,6 +261,12 @@ public final class JobPoller implements ServiceConfigListener {
             EXECUTOR.setCorePoolSize(threadPool.getMinThreads());
             EXECUTOR.setMaximumPoolSize(threadPool.getMaxThreads());
             EXECUTOR.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+            for (RunFromPool runFromPool : threadPool.getRunFromPools()) {
+                VirtualThreadJobExecutor executor = POOL_EXECUTORS.get(runFromPool.getName());
+                if (executor != null) {
+                    executor.setMaxConcurrency(runFromPool.getMaxConcurrency());
+                }
+            }
         }
     }
 
@@ -209,7 +286,12 @@ public final class JobPoller implements ServiceConfigListener {
     public void queueNow(Job job) throws InvalidJobException {
         job.queue();
         try {
-            EXECUTOR.execute(job);
+            VirtualThreadJobExecutor poolExecutor = getPoolExecutor(job);
+            if (poolExecutor != null) {
+                poolExecutor.execute(job);
+            } else {
+                EXECUTOR.execute(job);
+            }
         } catch (Exception e) {
             Debug.logError(e, MODULE);
             job.deQueue();
@@ -225,7 +307,10 @@ public final class JobPoller implements ServiceConfigListener {
         if (jobManagerPollerThread != null) {
             jobManagerPollerThread.interrupt();
         }
-        List<Runnable> queuedJobs = EXECUTOR.shutdownNow();
+        List<Runnable> queuedJobs = new ArrayList<>(EXECUTOR.shutdownNow());
+        for (VirtualThreadJobExecutor executor : POOL_EXECUTORS.values()) {
+            queuedJobs.addAll(executor.shutdownNow());
+        }
         for (Runnable task : queuedJobs) {
             try {
                 Job queuedJob = (Job) task;
@@ -258,7 +343,7 @@ public final class JobPoller implements ServiceConfigListener {
                     Thread.sleep(1000);
                 }
                 while (!EXECUTOR.isShutdown()) {
-                    int remainingCapacity = queueSize() - EXECUTOR.getQueue().size();
+                    int remainingCapacity = queueSize() - queuedJobCount();
                     if (remainingCapacity > 0) {
                         // Build "list of lists"
                         Collection<JobManager> jmCollection = JOB_MANAGERS.values();
@@ -420,6 +420,11 @@ public class PersistedServiceJob extends GenericServiceJob {
         return new Date(startTime);
     }
 
+    /** Returns the pool stored in the JobSandbox.poolId field, or null if the job can run from any pool. */
+    public String getPoolId() {
+        return jobValue.getString("poolId");
+    }
+
     /*
      * Returns the priority stored in the JobSandbox.priority field, if no value is present
      * then it defaults to AbstractJob.getPriority()
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.lang.ThreadSafe;
+import org.apache.ofbiz.base.util.Debug;
+
+/**
+ * Runs the jobs of one job pool in a thread per job, with at most <code>maxConcurrency</code>
+ * jobs running at the same time. Waiting jobs are started in the same order as the
+ * {@link JobPoller} queue: highest priority first, then earliest start time.
+ * <p>Threads are virtual threads when the runtime supports them (Java 21 or later),
+ * otherwise platform threads.</p>
+ */
+@ThreadSafe
+final class VirtualThreadJobExecutor implements Executor {
+
+    private static final String MODULE = VirtualThreadJobExecutor.class.getName();
+
+    private final String poolName;
+    private final ThreadFactory threadFactory;
+    private final boolean virtual;
+    private final PriorityBlockingQueue<Runnable> queue;
+    private final Set<Thread> runningThreads = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger largest = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private volatile int maxConcurrency;
+    private volatile boolean shutdown;
+
+    VirtualThreadJobExecutor(String poolName, int maxConcurrency, Comparator<Runnable> comparator) {
+        this(poolName, maxConcurrency, comparator, createVirtualThreadFactory("OFBiz-JobQueue-" + poolName + "-"));
+    }
+
+    /**
+     * Creates an executor with the given virtual thread factory, or with platform threads if it is null.
+     */
+    VirtualThreadJobExecutor(String poolName, int maxConcurrency, Comparator<Runnable> comparator, ThreadFactory virtualThreadFactory) {
+        this.poolName = poolName;
+        this.maxConcurrency = maxConcurrency;
+        this.queue = new PriorityBlockingQueue<>(maxConcurrency, comparator);
+        ThreadFactory factory = virtualThreadFactory;
+        this.virtual = factory != null;
+        if (factory == null) {
+            AtomicInteger created = new AtomicInteger();
+            factory = runnable -> new Thread(runnable, "OFBiz-JobQueue-" + poolName + "-" + created.getAndIncrement());
+        }
+        this.threadFactory = factory;
+    }
+
+    /** Returns a virtual thread factory, or null if the runtime does not support virtual threads. */
+    static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        try {
+            // Thread.ofVirtual().name(namePrefix, 0).factory(), called reflectively to keep running on Java 17
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable job) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Job pool " + poolName + " is shut down");
+        }
+        queue.add(job);
+        dispatch();
+    }
+
+    /** Starts waiting jobs until the concurrency limit is reached or no job is waiting. */
+    private void dispatch() {
+        while (!shutdown) {
+            int running = active.get();
+            if (running >= maxConcurrency) {
+                return;
+            }
+            if (!active.compareAndSet(running, running + 1)) {
+                continue;
+            }
+            Runnable job = queue.poll();
+            if (job == null) {
+                active.decrementAndGet();
+                // a job queued between the poll and the decrement would otherwise wait for the next completion
+                if (queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            largest.accumulateAndGet(running + 1, Math::max);
+            try {
+                threadFactory.newThread(() -> run(job)).start();
+            } catch (RuntimeException | OutOfMemoryError e) {
+                active.decrementAndGet();
+                queue.add(job);
+                Debug.logError(e, "Unable to start a thread for job pool " + poolName, MODULE);
+                return;
+            }
+        }
+    }
+
+    private void run(Runnable job) {
+        Thread thread = Thread.currentThread();
+        runningThreads.add(thread);
+        try {
+            job.run();
+        } finally {
+            runningThreads.remove(thread);
+            completed.incrementAndGet();
+            active.decrementAndGet();
+            dispatch();
+        }
+    }
+
+    /** Stops starting jobs, interrupts the running ones and returns the jobs that were waiting. */
+    List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> waiting = new ArrayList<>();
+        queue.drainTo(waiting);
+        runningThreads.forEach(Thread::interrupt);
+        return waiting;
+    }
+
+    boolean isShutdown() {
+        return shutdown;
+    }
+
+    String getPoolName() {
+        return poolName;
+    }
+
+    boolean isVirtual() {
+        return virtual;
+    }
+
+    BlockingQueue<Runnable> getQueue() {
+        return queue;
+    }
+
+    int getActiveCount() {
+        return active.get();
+    }
+
+    int getLargestActiveCount() {
+        return largest.get();
+    }
+
+    long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        dispatch();
+    }
+}
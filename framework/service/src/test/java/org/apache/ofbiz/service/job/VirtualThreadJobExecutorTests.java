@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class VirtualThreadJobExecutorTests {
+
+    private static final Comparator<Runnable> SAME_PRIORITY = (job1, job2) -> 0;
+
+    private static void awaitCompleted(VirtualThreadJobExecutor executor, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getCompletedTaskCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("jobs completed", count, executor.getCompletedTaskCount());
+    }
+
+    @Test
+    public void testVirtualThreadFactoryOnlyWhenSupported() {
+        boolean supported = Runtime.version().feature() >= 21;
+        assertEquals("virtual thread factory", supported, VirtualThreadJobExecutor.createVirtualThreadFactory("test-") != null);
+        assertEquals("virtual threads", supported, new VirtualThreadJobExecutor("test", 1, SAME_PRIORITY).isVirtual());
+    }
+
+    @Test
+    public void testFallbackToPlatformThreads() throws Exception {
+        VirtualThreadJobExecutor executor = new VirtualThreadJobExecutor("test", 1, SAME_PRIORITY, null);
+        assertFalse("no virtual threads", executor.isVirtual());
+        AtomicReference<Thread> jobThread = new AtomicReference<>();
+        executor.execute(() -> jobThread.set(Thread.currentThread()));
+        awaitCompleted(executor, 1);
+        assertSame("platform thread", Thread.class, jobThread.get().getClass());
+        assertTrue("thread named after the pool", jobThread.get().getName().startsWith("OFBiz-JobQueue-test-"));
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        VirtualThreadJobExecutor executor = new VirtualThreadJobExecutor("test", 2, SAME_PRIORITY, null);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            executor.execute(() -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+        assertFalse("only two jobs started", started.await(200, TimeUnit.MILLISECONDS));
+        assertEquals("jobs started", 2, 4 - started.getCount());
+        assertEquals("active jobs", 2, executor.getActiveCount());
+        assertEquals("waiting jobs", 4, executor.getQueue().size());
+
+        executor.setMaxConcurrency(4);
+        assertTrue("two more jobs started", started.await(10, TimeUnit.SECONDS));
+        assertEquals("waiting jobs", 2, executor.getQueue().size());
+
+        release.countDown();
+        awaitCompleted(executor, 6);
+        assertEquals("most jobs running at once", 4, mostRunning.get());
+        assertEquals("largest active count", 4, executor.getLargestActiveCount());
+        assertEquals("active jobs", 0, executor.getActiveCount());
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        VirtualThreadJobExecutor executor = new VirtualThreadJobExecutor("test", 1, SAME_PRIORITY, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        Runnable waitingJob = () -> { };
+        executor.execute(waitingJob);
+        assertTrue("first job started", started.await(10, TimeUnit.SECONDS));
+
+        List<Runnable> waiting = executor.shutdownNow();
+        assertEquals("waiting jobs returned", 1, waiting.size());
+        assertSame("waiting job", waitingJob, waiting.get(0));
+        assertTrue("running job interrupted", interrupted.await(10, TimeUnit.SECONDS));
+        try {
+            executor.execute(waitingJob);
+            fail("job accepted after the shutdown");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+}
@@ -230,10 +230,14 @@ public final class ServerHitBin {
                         serverHitBin.set("serverIpAddress", VisitHandler.ADDRESS.getHostAddress());
                         serverHitBin.set("serverHostName", VisitHandler.ADDRESS.getHostName());
                     }
-                    try {
-                        delegator.createSetNextSeqId(serverHitBin);
-                    } catch (GenericEntityException e) {
-                        Debug.logError(e, "Could not save ServerHitBin:", MODULE);
+                    if (ServerHitWriter.isEnabled()) {
+                        ServerHitWriter.enqueue(serverHitBin);
+                    } else {
+                        try {
+                            delegator.createSetNextSeqId(serverHitBin);
+                        } catch (GenericEntityException e) {
+                            Debug.logError(e, "Could not save ServerHitBin:", MODULE);
+                        }
                     }
                 }
             } else {
@@ -497,15 +501,20 @@ public final class ServerHitBin {
                 return;
             }
             String visitId = visit.getString("visitId");
-            visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
-            if (visit == null) {
-                // GenericValue stored in client session does not exist in database.
-                Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", MODULE);
-                return;
-            }
+            boolean async = ServerHitWriter.isEnabled();
+            if (!async) {
+                // when written asynchronously the writer checks the visits of a whole batch at once
+                visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
+                if (visit == null) {
+                    // GenericValue stored in client session does not exist in database.
+                    Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.",
+                            MODULE);
+                    return;
+                }
 
-            Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName="
-                    + this.delegator.getDelegatorName(), MODULE);
+                Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName="
+                        + this.delegator.getDelegatorName(), MODULE);
+            }
 
             GenericValue serverHit = delegator.makeValue("ServerHit");
 
@@ -535,7 +544,11 @@ public final class ServerHitBin {
                 serverHit.set("serverHostName", VisitHandler.ADDRESS.getHostName());
             }
 
-            serverHit.create();
+            if (async) {
+                ServerHitWriter.enqueue(serverHit);
+            } else {
+                serverHit.create();
+            }
         }
     }
 }
@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * <p>Persists <code>ServerHit</code> and <code>ServerHitBin</code> values off the request thread.
+ * <p>Values are queued in a bounded buffer and written by a single daemon thread using JDBC batch
+ * inserts, either when <code>stats.persist.async.flush.size</code> values are pending or every
+ * <code>stats.persist.async.flush.interval.millis</code>. When the buffer is full new values are
+ * dropped and counted rather than blocking the request. The values still pending are written when
+ * the {@link ServerHitWriterContainer} is stopped, the later ones are written directly.
+ */
+public final class ServerHitWriter {
+    private static final String MODULE = ServerHitWriter.class.getName();
+
+    private static final ServerHitWriter INSTANCE = new ServerHitWriter(getIntProperty("stats.persist.async.queue.size", 10000),
+            getIntProperty("stats.persist.async.flush.size", 500), getIntProperty("stats.persist.async.flush.interval.millis", 5000));
+
+    private final int capacity;
+    private final int flushSize;
+    private final long flushInterval;
+    private final BlockingQueue<GenericValue> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile Thread writerThread;
+    private volatile boolean stopped;
+
+    ServerHitWriter(int capacity, int flushSize, long flushInterval) {
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /** Returns true if hits and bins should be queued for the background writer, defaults to false */
+    public static boolean isEnabled() {
+        return "true".equals(UtilProperties.getPropertyValue("serverstats", "stats.persist.async"));
+    }
+
+    /**
+     * Queues a value to be inserted by the background writer. <code>ServerHitBin</code> values
+     * get their sequenced id assigned by the writer.
+     * @param value the value to persist
+     * @return false if the buffer was full and the value has been dropped
+     */
+    public static boolean enqueue(GenericValue value) {
+        if (INSTANCE.stopped) {
+            INSTANCE.flush(Collections.singletonList(value));
+            return true;
+        }
+        INSTANCE.ensureStarted();
+        return INSTANCE.offer(value);
+    }
+
+    /** Stops the background writer and writes the values still pending, called when the server shuts down */
+    public static void shutdown() {
+        INSTANCE.stop();
+    }
+
+    /** Returns the number of values dropped because the buffer was full */
+    public static long getDroppedCount() {
+        return INSTANCE.dropped();
+    }
+
+    /** Returns the number of values successfully written */
+    public static long getWrittenCount() {
+        return INSTANCE.written();
+    }
+
+    /** Returns the number of values waiting to be written */
+    public static int getPendingCount() {
+        return INSTANCE.pending();
+    }
+
+    boolean offer(GenericValue value) {
+        if (queue.offer(value)) {
+            return true;
+        }
+        long droppedCount = dropped.incrementAndGet();
+        if (droppedCount == 1 || droppedCount % 1000 == 0) {
+            Debug.logWarning("ServerHit write buffer is full (" + capacity + "), " + droppedCount + " value(s) dropped so far", MODULE);
+        }
+        return false;
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    long written() {
+        return written.get();
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    private void ensureStarted() {
+        if (writerThread == null) {
+            synchronized (this) {
+                if (writerThread == null) {
+                    Thread thread = new Thread(this::run, "OFBiz-ServerHitWriter");
+                    thread.setDaemon(true);
+                    thread.start();
+                    writerThread = thread;
+                }
+            }
+        }
+    }
+
+    void stop() {
+        stopped = true;
+        Thread thread = writerThread;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(flushInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushPending();
+    }
+
+    /** Writes all the values waiting in the buffer, in batches of the flush size */
+    void flushPending() {
+        List<GenericValue> batch = new ArrayList<>(flushSize);
+        while (queue.drainTo(batch, flushSize) > 0) {
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void run() {
+        List<GenericValue> batch = new ArrayList<>(flushSize);
+        while (!stopped) {
+            try {
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < flushSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    GenericValue value = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (value == null) {
+                        break;
+                    }
+                    batch.add(value);
+                    queue.drainTo(batch, flushSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // stopped, write what has been collected and let stop() write the rest
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Unexpected error writing ServerHit values", MODULE);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<GenericValue> batch) {
+        // group per delegator, the batch insert only works on a single datasource
+        Map<Delegator, List<GenericValue>> byDelegator = new LinkedHashMap<>();
+        for (GenericValue value : batch) {
+            byDelegator.computeIfAbsent(value.getDelegator(), k -> new ArrayList<>()).add(value);
+        }
+        for (Map.Entry<Delegator, List<GenericValue>> entry : byDelegator.entrySet()) {
+            Delegator delegator = entry.getKey();
+            List<GenericValue> values = entry.getValue();
+            try {
+                values = prepare(delegator, values);
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Could not prepare " + values.size() + " ServerHit value(s) for saving", MODULE);
+                continue;
+            }
+            if (values.isEmpty()) {
+                continue;
+            }
+            try {
+                delegator.createAllByBatchProcess(values, false);
+                written.addAndGet(values.size());
+            } catch (GenericEntityException e) {
+                // one bad row fails the whole batch, fall back to single inserts to save the rest
+                Debug.logWarning("Batch insert of " + values.size() + " ServerHit value(s) failed, retrying one by one: " + e.toString(), MODULE);
+                for (GenericValue value : values) {
+                    try {
+                        value.create();
+                        written.incrementAndGet();
+                    } catch (GenericEntityException e2) {
+                        Debug.logWarning("Could not save " + value.getEntityName() + ": " + e2.toString(), MODULE);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns the ServerHitBin sequence ids and removes the ServerHit values whose Visit
+     * does not exist in the database, checking all the visits of the batch in one query.
+     */
+    private static List<GenericValue> prepare(Delegator delegator, List<GenericValue> values) throws GenericEntityException {
+        Set<String> visitIds = new HashSet<>();
+        for (GenericValue value : values) {
+            if ("ServerHit".equals(value.getEntityName())) {
+                visitIds.add(value.getString("visitId"));
+            } else if (value.get("serverHitBinId") == null) {
+                value.setNextSeqId();
+            }
+        }
+        if (visitIds.isEmpty()) {
+            return values;
+        }
+        Set<String> knownVisitIds = new HashSet<>();
+        List<GenericValue> visits = EntityQuery.use(delegator).select("visitId").from("Visit")
+                .where(EntityCondition.makeCondition("visitId", EntityOperator.IN, visitIds)).queryList();
+        for (GenericValue visit : visits) {
+            knownVisitIds.add(visit.getString("visitId"));
+        }
+        if (knownVisitIds.size() == visitIds.size()) {
+            return values;
+        }
+        List<GenericValue> result = new ArrayList<>(values.size());
+        for (GenericValue value : values) {
+            if (!"ServerHit".equals(value.getEntityName()) || knownVisitIds.contains(value.getString("visitId"))) {
+                result.add(value);
+            } else if (Debug.verboseOn()) {
+                Debug.logVerbose("Visit [" + value.getString("visitId") + "] does not exist in the database, not storing server hit.", MODULE);
+            }
+        }
+        return result;
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        int value = UtilProperties.getPropertyAsInteger("serverstats", name, defaultValue);
+        return value > 0 ? value : defaultValue;
+    }
+}
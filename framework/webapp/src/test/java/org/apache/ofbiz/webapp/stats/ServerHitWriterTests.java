@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ServerHitWriterTests {
+
+    private Delegator delegator;
+
+    @Before
+    public void setUp() {
+        delegator = mock(Delegator.class);
+    }
+
+    private GenericValue serverHitBin(String serverHitBinId) {
+        GenericValue value = mock(GenericValue.class);
+        when(value.getDelegator()).thenReturn(delegator);
+        when(value.getEntityName()).thenReturn("ServerHitBin");
+        when(value.get("serverHitBinId")).thenReturn(serverHitBinId);
+        return value;
+    }
+
+    @Test
+    public void testFlushInBatches() throws Exception {
+        ServerHitWriter writer = new ServerHitWriter(10, 3, 60000);
+        for (int i = 0; i < 7; i++) {
+            assertTrue("value " + i + " queued", writer.offer(serverHitBin(Integer.toString(i))));
+        }
+        assertEquals("pending", 7, writer.pending());
+
+        writer.flushPending();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<GenericValue>> batches = ArgumentCaptor.forClass(List.class);
+        verify(delegator, times(3)).createAllByBatchProcess(batches.capture(), eq(false));
+        List<Integer> batchSizes = new ArrayList<>();
+        for (List<GenericValue> batch : batches.getAllValues()) {
+            batchSizes.add(batch.size());
+        }
+        assertEquals("batch sizes", List.of(3, 3, 1), batchSizes);
+        assertEquals("written", 7, writer.written());
+        assertEquals("pending", 0, writer.pending());
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        ServerHitWriter writer = new ServerHitWriter(2, 10, 60000);
+        assertTrue(writer.offer(serverHitBin("1")));
+        assertTrue(writer.offer(serverHitBin("2")));
+        assertFalse("buffer full", writer.offer(serverHitBin("3")));
+        assertFalse("buffer full", writer.offer(serverHitBin("4")));
+        assertEquals("dropped", 2, writer.dropped());
+        assertEquals("pending", 2, writer.pending());
+
+        writer.flushPending();
+        assertEquals("written", 2, writer.written());
+        assertTrue("room again", writer.offer(serverHitBin("5")));
+        assertEquals("dropped", 2, writer.dropped());
+    }
+
+    @Test
+    public void testFallBackToSingleInserts() throws Exception {
+        doThrow(new GenericEntityException("duplicate key")).when(delegator).createAllByBatchProcess(anyList(), eq(false));
+        ServerHitWriter writer = new ServerHitWriter(10, 10, 60000);
+        GenericValue good1 = serverHitBin("1");
+        GenericValue bad = serverHitBin("2");
+        GenericValue good2 = serverHitBin("3");
+        when(bad.create()).thenThrow(new GenericEntityException("duplicate key"));
+        writer.offer(good1);
+        writer.offer(bad);
+        writer.offer(good2);
+
+        writer.flushPending();
+
+        verify(good1).create();
+        verify(bad).create();
+        verify(good2).create();
+        assertEquals("written", 2, writer.written());
+    }
+
+    @Test
+    public void testStopWritesPending() throws Exception {
+        ServerHitWriter writer = new ServerHitWriter(10, 10, 60000);
+        writer.offer(serverHitBin("1"));
+        writer.offer(serverHitBin("2"));
+
+        writer.stop();
+
+        verify(delegator).createAllByBatchProcess(anyList(), eq(false));
+        assertEquals("written", 2, writer.written());
+        assertEquals("pending", 0, writer.pending());
+    }
+}
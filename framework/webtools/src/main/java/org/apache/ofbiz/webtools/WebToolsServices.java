@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringReader;
@@ -32,6 +33,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.Timestamp;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,12 +45,18 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ofbiz.base.concurrent.ConstantFuture;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.location.FlexibleLocation;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
@@ -252,6 +260,7 @@ public class WebToolsServices {
 
         Integer txTimeout = (Integer) context.get("txTimeout");
         Long filePause = (Long) context.get("filePause");
+        Integer threads = (Integer) context.get("threads");
 
         if (txTimeout == null) {
             txTimeout = 7200;
@@ -272,7 +281,7 @@ public class WebToolsServices {
                     return null;
                 }
                 for (File file : fileArray) {
-                    if (file.getName().toUpperCase().endsWith("XML")) {
+                    if (file.getName().toUpperCase().endsWith("XML") || file.getName().toUpperCase().endsWith("XML.GZ")) {
                         files.add(file);
                     }
                 }
@@ -281,6 +290,20 @@ public class WebToolsServices {
                 int initialListSize = files.size();
                 int lastUnprocessedFilesCount = 0;
                 List<File> unprocessedFiles = new LinkedList<>();
+                if (threads != null && threads > 1 && files.size() > 1) {
+                    // a first pass with several threads, the files it could not import are then imported one after another
+                    Map<String, Object> parseEntityXmlFileArgs = UtilMisc.toMap("onlyInserts", onlyInserts,
+                            "createDummyFks", createDummyFks,
+                            "checkDataOnly", checkDataOnly,
+                            "maintainTimeStamps", maintainTimeStamps,
+                            "txTimeout", txTimeout,
+                            "placeholderValues", placeholderValues,
+                            "userLogin", userLogin);
+                    files = importFilesInParallel(dctx, files, threads, parseEntityXmlFileArgs, deleteFiles, messages, locale);
+                    passes++;
+                    messages.add(UtilProperties.getMessage(RESOURCE, "EntityImportPassedFile", UtilMisc.toMap("passes", passes), locale));
+                    unprocessedFiles = files;
+                }
                 while (!files.isEmpty()
                         && files.size() != lastUnprocessedFilesCount) {
                     lastUnprocessedFilesCount = files.size();
@@ -348,6 +371,96 @@ public class WebToolsServices {
         return resp;
     }
 
+    /**
+     * Imports with several threads the files named after an entity, like the files written by entityExportAll. The files are imported
+     * by levels: an entity is imported once the entities it refers to with a foreign key are imported.
+     * @return the files to import one after another: the files not named after an entity, the files of entities in a foreign key
+     * cycle and the files that failed
+     */
+    private static List<File> importFilesInParallel(DispatchContext dctx, List<File> files, int threads, Map<String, Object> parseEntityXmlFileArgs,
+            boolean deleteFiles, List<String> messages, Locale locale) {
+        Delegator delegator = dctx.getDelegator();
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        List<File> unprocessedFiles = new LinkedList<>();
+        Map<String, File> entityFiles = new HashMap<>();
+        for (File file : files) {
+            String entityName = file.getName().replaceFirst("(?i)\\.xml(\\.gz)?$", "");
+            ModelEntity modelEntity = delegator.getModelEntity(entityName);
+            if (modelEntity != null && !(modelEntity instanceof ModelViewEntity) && !entityFiles.containsKey(entityName)) {
+                entityFiles.put(entityName, file);
+            } else {
+                unprocessedFiles.add(file);
+            }
+        }
+
+        ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE), "entity-import", threads, 0, true);
+        while (!entityFiles.isEmpty()) {
+            // the entities of this level only refer to entities already imported or without a file
+            List<String> level = new LinkedList<>();
+            for (String entityName : entityFiles.keySet()) {
+                boolean ready = true;
+                for (ModelRelation relation : delegator.getModelEntity(entityName).getRelationsList(true, false, false)) {
+                    String relEntityName = relation.getRelEntityName();
+                    if (!relEntityName.equals(entityName) && entityFiles.containsKey(relEntityName)) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) {
+                    level.add(entityName);
+                }
+            }
+            if (level.isEmpty()) {
+                // foreign key cycle, leave these to the passes one file after another
+                unprocessedFiles.addAll(entityFiles.values());
+                break;
+            }
+
+            List<File> levelFiles = new LinkedList<>();
+            List<Future<String>> imports = new LinkedList<>();
+            for (String entityName : level) {
+                File file = entityFiles.remove(entityName);
+                levelFiles.add(file);
+                imports.add(executor.submit(() -> {
+                    long startTime = System.currentTimeMillis();
+                    Map<String, Object> args = new HashMap<>(parseEntityXmlFileArgs);
+                    args.put("url", file.toURI().toURL());
+                    Map<String, Object> outputMap = dispatcher.runSync("parseEntityXmlFile", args);
+                    if (ServiceUtil.isError(outputMap)) {
+                        return null;
+                    }
+                    Long numberRead = (Long) outputMap.get("rowProcessed");
+                    long millis = Math.max(System.currentTimeMillis() - startTime, 1);
+                    return UtilProperties.getMessage(RESOURCE, "EntityImportNumberOfEntityToBeProcessed",
+                            UtilMisc.toMap("numberRead", numberRead.toString(), "fileName", file.getName()), locale)
+                            + " (" + millis + " ms, " + (numberRead * 1000 / millis) + " records/s)";
+                }));
+            }
+            Iterator<File> levelFilesIt = levelFiles.iterator();
+            for (Future<String> future : imports) {
+                File file = levelFilesIt.next();
+                String message = null;
+                try {
+                    message = future.get();
+                } catch (ExecutionException | InterruptedException e) {
+                    Debug.logError(e, "Error importing file [" + file.getName() + "]", MODULE);
+                }
+                if (message == null) {
+                    unprocessedFiles.add(file);
+                    messages.add(UtilProperties.getMessage(RESOURCE, "EntityImportFailedFile", UtilMisc.toMap("fileName", file.getName()), locale));
+                    continue;
+                }
+                messages.add(message);
+                if (deleteFiles) {
+                    messages.add(UtilProperties.getMessage(RESOURCE, "EntityImportDeletFile", UtilMisc.toMap("fileName", file.getName()), locale));
+                    file.delete();
+                }
+            }
+        }
+        executor.shutdown();
+        return unprocessedFiles;
+    }
+
     public static Map<String, Object> entityImportReaders(DispatchContext dctx, Map<String, Object> context) {
         String readers = (String) context.get("readers");
         String overrideDelegator = (String) context.get("overrideDelegator");
@@ -509,6 +622,10 @@ public class WebToolsServices {
         if (txTimeout == null) {
             txTimeout = 7200;
         }
+        Integer threadsInt = (Integer) context.get("threads");
+        int threads = threadsInt != null ? threadsInt : 1;
+        // Y from the form, on from a checkbox without value
+        boolean compress = "Y".equals(context.get("compress")) || "on".equals(context.get("compress"));
 
         List<String> results = new LinkedList<>();
 
@@ -526,59 +643,25 @@ public class WebToolsServices {
                 } catch (Exception exc) {
                     return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "EntityImportErrorRetrievingEntityNames", locale));
                 }
+                // with several threads, each entity is exported by one of them
+                ScheduledExecutorService executor = threads > 1
+                        ? ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE), "entity-export", threads, 0, true) : null;
+                List<Future<String>> exports = new ArrayList<>();
                 int fileNumber = 1;
-
                 for (String curEntityName : passedEntityNames) {
-                    long numberWritten = 0;
                     ModelEntity me = delegator.getModelEntity(curEntityName);
                     if (me instanceof ModelViewEntity) {
-                        results.add("[" + fileNumber + "] [vvv] " + curEntityName + " skipping view entity");
+                        exports.add(new ConstantFuture<>("[" + fileNumber + "] [vvv] " + curEntityName + " skipping view entity"));
                         continue;
                     }
-                    List<EntityCondition> conds = new LinkedList<>();
-                    if (UtilValidate.isNotEmpty(fromDate)) {
-                        conds.add(EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
-                    }
-                    EntityQuery eq = EntityQuery.use(delegator).from(curEntityName).where(conds).orderBy(me.getPkFieldNames());
-
-                    try {
-                        boolean beganTx = TransactionUtil.begin();
-                        // some databases don't support cursors, or other problems may happen, so if there is an error here log it and
-                        // move on to get as much as possible. Don't bother writing the file if there's nothing to put into it
-                        try (EntityListIterator values = eq.queryIterator()) {
-                            GenericValue value = values.next();
-                            if (value != null) {
-                                try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
-                                        new File(outdir, curEntityName + ".xml")), "UTF-8")))) {
-                                    writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                                    writer.println("<entity-engine-xml>");
-                                    do {
-                                        value.writeXmlText(writer, "");
-                                        numberWritten++;
-                                        if (numberWritten % 500 == 0) {
-                                            TransactionUtil.commit(beganTx);
-                                            beganTx = TransactionUtil.begin();
-                                        }
-                                        value = values.next();
-                                    } while (value != null);
-                                    writer.println("</entity-engine-xml>");
-                                } catch (UnsupportedEncodingException | FileNotFoundException e) {
-                                    results.add("[" + fileNumber + "] [xxx] Error when writing " + curEntityName + ": " + e);
-                                }
-                                results.add("[" + fileNumber + "] [" + numberWritten + "] " + curEntityName + " wrote " + numberWritten + " records");
-                            } else {
-                                results.add("[" + fileNumber + "] [---] " + curEntityName + " has no records, not writing file");
-                            }
-                            TransactionUtil.commit(beganTx);
-                        } catch (GenericEntityException entityEx) {
-                            results.add("[" + fileNumber + "] [xxx] Error when writing " + curEntityName + ": " + entityEx);
-                            continue;
-                        }
-                        fileNumber++;
-                    } catch (GenericTransactionException e) {
-                        Debug.logError(e, MODULE);
-                        results.add(e.getLocalizedMessage());
-                    }
+                    int curFileNumber = fileNumber++;
+                    exports.add(executor != null
+                            ? executor.submit(() -> exportEntity(delegator, me, outdir, fromDate, compress, curFileNumber))
+                            : new ConstantFuture<>(exportEntity(delegator, me, outdir, fromDate, compress, curFileNumber)));
+                }
+                results.addAll(ExecutionPool.getAllFutures(exports));
+                if (executor != null) {
+                    executor.shutdown();
                 }
             } else {
                 results.add("Path not found or no write access.");
@@ -591,6 +674,64 @@ public class WebToolsServices {
         return resp;
     }
 
+    /**
+     * Exports the values of an entity into an xml file named after the entity, compressed with gzip if asked.
+     * @return the result line of the entity, with the number of values written per second
+     */
+    private static String exportEntity(Delegator delegator, ModelEntity me, File outdir, Timestamp fromDate, boolean compress, int fileNumber) {
+        String curEntityName = me.getEntityName();
+        List<EntityCondition> conds = new LinkedList<>();
+        if (UtilValidate.isNotEmpty(fromDate)) {
+            conds.add(EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+        }
+        EntityQuery eq = EntityQuery.use(delegator).from(curEntityName).where(conds).orderBy(me.getPkFieldNames());
+
+        long startTime = System.currentTimeMillis();
+        long numberWritten = 0;
+        String result;
+        try {
+            boolean beganTx = TransactionUtil.begin();
+            // some databases don't support cursors, or other problems may happen, so if there is an error here log it and
+            // move on to get as much as possible. Don't bother writing the file if there's nothing to put into it
+            try (EntityListIterator values = eq.queryIterator()) {
+                GenericValue value = values.next();
+                if (value != null) {
+                    File outFile = new File(outdir, curEntityName + (compress ? ".xml.gz" : ".xml"));
+                    try (OutputStream out = compress ? new GZIPOutputStream(new FileOutputStream(outFile)) : new FileOutputStream(outFile);
+                            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")))) {
+                        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                        writer.println("<entity-engine-xml>");
+                        do {
+                            value.writeXmlText(writer, "");
+                            numberWritten++;
+                            if (numberWritten % 500 == 0) {
+                                TransactionUtil.commit(beganTx);
+                                beganTx = TransactionUtil.begin();
+                            }
+                            value = values.next();
+                        } while (value != null);
+                        writer.println("</entity-engine-xml>");
+                    } catch (IOException e) {
+                        TransactionUtil.commit(beganTx);
+                        return "[" + fileNumber + "] [xxx] Error when writing " + curEntityName + ": " + e;
+                    }
+                    long millis = Math.max(System.currentTimeMillis() - startTime, 1);
+                    result = "[" + fileNumber + "] [" + numberWritten + "] " + curEntityName + " wrote " + numberWritten + " records in " + millis
+                            + " ms (" + (numberWritten * 1000 / millis) + " records/s)";
+                } else {
+                    result = "[" + fileNumber + "] [---] " + curEntityName + " has no records, not writing file";
+                }
+                TransactionUtil.commit(beganTx);
+            } catch (GenericEntityException entityEx) {
+                result = "[" + fileNumber + "] [xxx] Error when writing " + curEntityName + ": " + entityEx;
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logError(e, MODULE);
+            result = e.getLocalizedMessage();
+        }
+        return result;
+    }
+
     /**
      * Get entity reference data. Returns the number of entities in
      * <code>numberOfEntities</code> and a List of Maps -
@@ -54,6 +54,15 @@ under the License.
                 <input type="text" size="6" value="${txTimeout?default('7200')}" name="txTimeout"/>
                 </td>
                 </tr>
+                <tr>
+                    <td class="label">
+                        <label>${uiLabelMap.WebtoolsParallelThreads}</label>
+                    </td>
+                    <td>
+                        <input type="text" size="6" value="${threads?default('1')}" name="threads"/>
+                        <label><input type="checkbox" name="compress" value="Y" <#if "Y" == compress!>checked="checked"</#if>/>${uiLabelMap.WebtoolsCompressFiles}</label>
+                    </td>
+                </tr>
                 <tr>
                     <td class="label">
                     </td>
@@ -64,6 +64,14 @@ under the License.
                     <input type="text" size="6" value="${filePauseStr?default("0")}" name="filePause"/><br />
                 </td>
             </tr>
+            <tr>
+                <td class="label">
+                    <label>${uiLabelMap.WebtoolsParallelThreads}</label>
+                </td>
+                <td>
+                    <input type="text" size="6" value="${threads?default("1")}" name="threads"/>
+                </td>
+            </tr>
             <tr>
                 <td class="label">
                 </td>
@@ -51,6 +51,7 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.model.ModelReader;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.ModelParam;
@@ -166,6 +167,7 @@ public abstract class ModelForm extends ModelWidget {
     private final List<UpdateArea> onSubmitUpdateAreas;
     private final FlexibleStringExpander overrideListSize;
     private final FlexibleStringExpander paginate;
+    private final FlexibleStringExpander paginateCount;
     private final FlexibleStringExpander paginateFirstLabel;
     private final FlexibleStringExpander paginateIndexField;
     private final FlexibleStringExpander paginateLastLabel;
@@ -598,6 +600,11 @@ public abstract class ModelForm extends ModelWidget {
             paginate = parentModel.paginate;
         }
         this.paginate = paginate;
+        FlexibleStringExpander paginateCount = FlexibleStringExpander.getInstance(formElement.getAttribute("paginate-count"));
+        if (paginateCount.isEmpty() && parentModel != null) {
+            paginateCount = parentModel.paginateCount;
+        }
+        this.paginateCount = paginateCount;
         String skipStart = formElement.getAttribute("skip-start");
         if (skipStart.isEmpty() && parentModel != null) {
             this.skipStart = parentModel.skipStart;
@@ -1310,6 +1317,19 @@ public abstract class ModelForm extends ModelWidget {
         return true;
     }
 
+    /**
+     * Gets how the total number of rows is found for the pager: count, estimate or none.
+     * @param context the context
+     * @return the paginate count, widget.form.paginateCount by default
+     */
+    public String getPaginateCount(Map<String, Object> context) {
+        String paginateCount = this.paginateCount.expandString(context);
+        if (!paginateCount.isEmpty()) {
+            return paginateCount;
+        }
+        return EntityUtilProperties.getPropertyValue("widget", "widget.form.paginateCount", "count", WidgetWorker.getDelegator(context));
+    }
+
     /**
      * Gets paginate first label.
      * @return the paginate first label
@@ -58,13 +58,31 @@ public final class Paginator {
         int viewSize = 0;
         int lowIndex = 0;
         int highIndex = 0;
+        if (modelForm.getPaginate(context)) {
+            viewIndex = getViewIndex(modelForm, context);
+            viewSize = getViewSize(modelForm, context);
+            lowIndex = viewIndex * viewSize;
+            highIndex = (viewIndex + 1) * viewSize;
+        } else {
+            viewIndex = 0;
+            viewSize = ModelForm.MAX_PAGE_SIZE;
+            lowIndex = 0;
+            highIndex = ModelForm.MAX_PAGE_SIZE;
+        }
+        boolean listSizeExact = true;
         int listSize = modelForm.getOverrideListSize(context);
         if (listSize > 0) {
             Debug.logVerbose("If listSize > 0, do nothing", MODULE);
         } else if (entryList instanceof EntityListIterator) {
             EntityListIterator iter = (EntityListIterator) entryList;
             try {
-                listSize = iter.getResultsSizeAfterPartialList();
+                int maxSize = getMaxListSize(modelForm, context, highIndex);
+                if (maxSize >= 0) {
+                    listSize = iter.getResultsSizeUpTo(maxSize);
+                    listSizeExact = listSize <= maxSize;
+                } else {
+                    listSize = iter.getResultsSizeAfterPartialList();
+                }
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Error getting list size", MODULE);
                 listSize = 0;
@@ -77,34 +95,47 @@ public final class Paginator {
                 if (resultMap.containsKey("listSize")) {
                     listSize = (int) resultMap.get("listSize");
                 }
+                if (Boolean.FALSE.equals(resultMap.get("listSizeExact"))) {
+                    listSizeExact = false;
+                }
             }
         } else if (entryList instanceof PagedList) {
             PagedList<?> pagedList = (PagedList<?>) entryList;
             listSize = pagedList.getSize();
         }
-        if (modelForm.getPaginate(context)) {
-            viewIndex = getViewIndex(modelForm, context);
-            viewSize = getViewSize(modelForm, context);
-            lowIndex = viewIndex * viewSize;
-            highIndex = (viewIndex + 1) * viewSize;
-        } else {
-            viewIndex = 0;
-            viewSize = ModelForm.MAX_PAGE_SIZE;
-            lowIndex = 0;
-            highIndex = ModelForm.MAX_PAGE_SIZE;
-        }
         context.put("listSize", listSize);
+        context.put("listSizeExact", listSizeExact);
         context.put("viewIndex", viewIndex);
         context.put("viewSize", viewSize);
         context.put("lowIndex", lowIndex);
         context.put("highIndex", highIndex);
     }
 
+    /**
+     * Returns the number of rows up to which the list size is determined exactly, following the paginate-count
+     * of the form, or -1 to count all the rows.
+     */
+    private static int getMaxListSize(ModelForm modelForm, Map<String, Object> context, int highIndex) {
+        String paginateCount = modelForm.getPaginateCount(context);
+        if ("none".equals(paginateCount)) {
+            return highIndex;
+        } else if ("estimate".equals(paginateCount)) {
+            return Math.max(highIndex, UtilProperties.getPropertyAsInteger("widget", "widget.form.paginateCountEstimateMax", 1000));
+        }
+        return -1;
+    }
+
     public static int getListSize(Map<String, Object> context) {
         Integer value = (Integer) context.get("listSize");
         return value != null ? value : 0;
     }
 
+    /** Returns false when the list size in the context is only a lower bound, see the paginate-count form attribute. */
+    public static boolean isListSizeExact(Map<String, Object> context) {
+        Boolean value = (Boolean) context.get("listSizeExact");
+        return value != null ? value : true;
+    }
+
     public static int getLowIndex(Map<String, Object> context) {
         Integer value = (Integer) context.get("lowIndex");
         return value != null ? value : 0;
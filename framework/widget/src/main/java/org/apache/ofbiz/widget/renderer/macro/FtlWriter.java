@@ -23,6 +23,7 @@ import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.DefaultObjectWrapperBuilder;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
@@ -36,6 +37,7 @@ import org.apache.ofbiz.widget.renderer.macro.renderable.RenderableFtlVisitor;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -46,12 +48,20 @@ import java.util.WeakHashMap;
  */
 public final class FtlWriter {
     private static final String MODULE = FtlWriter.class.getName();
+    private static final String MACRO_VARIABLE = "$macro$";
+    private static final String ARGS_VARIABLE = "$args$";
 
     private final DefaultObjectWrapper defaultObjectWrapper = new DefaultObjectWrapperBuilder(FreeMarkerWorker.VERSION).build();
     private final WeakHashMap<Appendable, Environment> environments = new WeakHashMap<>();
     private final Template macroLibrary;
     private final VisualTheme visualTheme;
 
+    /**
+     * Construct the writer for the given macro library.
+     *
+     * @param macroLibraryPath The location of the FTL macro library.
+     * @param visualTheme      The visual theme to expose to the macros, can be {@code null}.
+     */
     public FtlWriter(final String macroLibraryPath, final VisualTheme visualTheme) throws IOException {
         this.macroLibrary = FreeMarkerWorker.getTemplate(macroLibraryPath);
         this.visualTheme = visualTheme;
@@ -77,9 +87,6 @@ public final class FtlWriter {
     public void processFtlString(Appendable writer, Locale locale, String ftlString) {
         try {
             final Environment environment = getEnvironment(writer, locale);
-            environment.setVariable("visualTheme", FreeMarkerWorker.autoWrap(visualTheme, environment));
-            environment.setVariable("modelTheme",
-                    FreeMarkerWorker.autoWrap(visualTheme.getModelTheme(), environment));
             Reader templateReader = new StringReader(ftlString);
             Template template = new Template(UUID.randomUUID().toString(), templateReader,
                     FreeMarkerWorker.getDefaultOfbizConfig());
@@ -90,11 +97,45 @@ public final class FtlWriter {
         }
     }
 
+    /**
+     * Invoke a macro of the macro library with the given parameters and write the result to the Appendable.
+     * <p>
+     * The macro is looked up in the environment already holding the processed macro library and is called through
+     * an invocation template which is parsed only once, so no FTL source is built or parsed per call.
+     *
+     * @param writer     The Appendable to write the result of the macro invocation to.
+     * @param locale     The locale to use, the default locale if {@code null}.
+     * @param macroName  The name of the macro to invoke.
+     * @param parameters The macro parameters keyed by parameter name, can be {@code null}.
+     */
+    public void executeMacro(final Appendable writer, final Locale locale, final String macroName,
+                             final Map<String, Object> parameters) {
+        try {
+            final Environment environment = getEnvironment(writer, locale);
+            final TemplateModel macro = environment.getVariable(macroName);
+            if (macro == null) {
+                Debug.logError("Macro [" + macroName + "] not found in macro library " + macroLibrary.getName(), MODULE);
+                return;
+            }
+            environment.setVariable(MACRO_VARIABLE, macro);
+            environment.setVariable(ARGS_VARIABLE,
+                    defaultObjectWrapper.wrap(parameters != null ? parameters : Collections.emptyMap()));
+            environment.include(MacroInvocationTemplateHolder.TEMPLATE);
+        } catch (TemplateException | IOException e) {
+            Debug.logError(e, "Error rendering ftl macro: " + macroName, MODULE);
+        }
+    }
+
     private Environment getEnvironment(Appendable writer, Locale locale) throws TemplateException, IOException {
         Environment environment = environments.get(writer);
         if (environment == null) {
             Map<String, Object> input = UtilMisc.toMap("key", null);
             environment = FreeMarkerWorker.renderTemplate(macroLibrary, input, writer);
+            if (visualTheme != null) {
+                environment.setVariable("visualTheme", FreeMarkerWorker.autoWrap(visualTheme, environment));
+                environment.setVariable("modelTheme",
+                        FreeMarkerWorker.autoWrap(visualTheme.getModelTheme(), environment));
+            }
             environments.put(writer, environment);
         }
         if (locale != null) {
@@ -123,18 +164,7 @@ public final class FtlWriter {
 
         @Override
         public void visit(RenderableFtlMacroCall renderableFtlMacroCall) {
-            final String name = renderableFtlMacroCall.getName();
-
-            try {
-                final Environment environment = getEnvironment(writer, null);
-
-                environment.setVariable("$args$" + name,
-                        defaultObjectWrapper.wrap(renderableFtlMacroCall.getParameters()));
-
-                processFtlString(writer, null, String.format("<@%s?with_args($args$%s)/>", name, name));
-            } catch (TemplateException | IOException e) {
-                Debug.logError(e, "Error rendering ftl macro: " + name, MODULE);
-            }
+            executeMacro(writer, null, renderableFtlMacroCall.getName(), renderableFtlMacroCall.getParameters());
         }
 
         @Override
@@ -147,4 +177,22 @@ public final class FtlWriter {
             processFtlString(writer, null, renderableFtlString.getFtlString());
         }
     }
+
+    /**
+     * Lazily parses the template used to invoke any macro held in the {@code $macro$} variable with the arguments
+     * held in the {@code $args$} variable.
+     */
+    private static final class MacroInvocationTemplateHolder {
+        private static final Template TEMPLATE = createTemplate();
+
+        private static Template createTemplate() {
+            try {
+                return new Template(FtlWriter.class.getName() + "#macroInvocation",
+                        "<@" + MACRO_VARIABLE + "?with_args(" + ARGS_VARIABLE + ")/>",
+                        FreeMarkerWorker.getDefaultOfbizConfig());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to parse the macro invocation template", e);
+            }
+        }
+    }
 }
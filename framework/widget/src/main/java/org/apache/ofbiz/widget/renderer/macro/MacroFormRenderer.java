@@ -30,7 +30,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -91,6 +90,7 @@ import org.apache.ofbiz.widget.renderer.UtilHelpText;
 import org.apache.ofbiz.widget.renderer.VisualTheme;
 import org.apache.ofbiz.widget.renderer.macro.renderable.RenderableFtl;
 import org.apache.ofbiz.widget.renderer.macro.renderable.RenderableFtlMacroCall;
+import org.apache.ofbiz.widget.renderer.macro.renderable.RenderableFtlMacroCall.RenderableFtlMacroCallBuilder;
 import org.jsoup.nodes.Element;
 
 /**
@@ -131,10 +131,6 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 : new RenderableFtlFormElementsBuilder(this.visualTheme, rh, request, response, staticContentUrlProvider);
     }
 
-    private static String encodeDoubleQuotes(String htmlString) {
-        return htmlString.replace("\"", "\\\"");
-    }
-
     public boolean getRenderPagination() {
         return this.renderPagination;
     }
@@ -147,21 +143,6 @@ public final class MacroFormRenderer implements FormStringRenderer {
         ftlWriter.processFtl(writer, renderableFtl);
     }
 
-    private void executeMacro(Appendable writer, String macro) {
-        ftlWriter.processFtlString(writer, null, macro);
-    }
-
-    /**
-     * Make locale available before executing macro
-     * @param writer
-     * @param locale
-     * @param macro
-     */
-    @SuppressWarnings("unused")
-    private void executeMacro(Appendable writer, Locale locale, String macro) {
-        ftlWriter.processFtlString(writer, locale, macro);
-    }
-
     private String encode(String value, ModelFormField modelFormField, Map<String, Object> context) {
         if (UtilValidate.isEmpty(value)) {
             return value;
@@ -293,7 +274,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String name = modelFormField.getParameterName(context);
         String event = modelFormField.getEvent();
         String action = modelFormField.getAction(context);
-        StringBuilder items = new StringBuilder();
+        List<Map<String, String>> items = new ArrayList<>();
         String checkBox = checkField.getModelFormField().getAttributeName();
         List<String> checkedByDefault = new ArrayList<String>();
 
@@ -321,7 +302,6 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
 
         List<ModelFormField.OptionValue> allOptionValues = checkField.getAllOptionValues(context, WidgetWorker.getDelegator(context));
-        items.append("[");
         for (ModelFormField.OptionValue optionValue : allOptionValues) {
             boolean checked;
 
@@ -332,48 +312,24 @@ public final class MacroFormRenderer implements FormStringRenderer {
                     checked = checkedByDefault.contains(optionValue.getKey());
                 } else checked = allChecked;
             }
-            String data = String.format(
-                    "{'value':'%s', 'description':'%s', 'checked':'%s'}",
-                    optionValue.getKey(),
-                    encode(optionValue.getDescription(), modelFormField, context),
-                    checked);
-            items.append(data);
-            items.append(",");
-        }
-        if (items.length() > 0) {
-            items.deleteCharAt(items.length() - 1);
-        }
-        items.append("]");
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderCheckField ");
-        sr.append("items=");
-        sr.append(items.toString());
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" currentValue=\"");
-        sr.append(currentValue);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+            items.add(UtilMisc.toMap("value", optionValue.getKey(),
+                    "description", encode(optionValue.getDescription(), modelFormField, context),
+                    "checked", Boolean.toString(checked)));
+        }
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderCheckField")
+                .objectParameter("items", items)
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("id", id)
+                .stringParameter("conditionGroup", conditionGroup)
+                .stringParameter("currentValue", currentValue != null ? currentValue : "")
+                .stringParameter("name", name)
+                .stringParameter("event", event != null ? event : "")
+                .stringParameter("action", action != null ? action : "")
+                .stringParameter("tabindex", tabindex)
+                .booleanParameter("disabled", disabled)
+                .build());
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -389,7 +345,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String name = modelFormField.getParameterName(context);
         String event = modelFormField.getEvent();
         String action = modelFormField.getAction(context);
-        StringBuilder items = new StringBuilder();
+        List<Map<String, String>> items = new ArrayList<>();
         if (UtilValidate.isNotEmpty(modelFormField.getWidgetStyle())) {
             className = modelFormField.getWidgetStyle();
             if (modelFormField.shouldBeRed(context)) {
@@ -398,47 +354,24 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String noCurrentSelectedKey = radioField.getNoCurrentSelectedKey(context);
         String tabindex = modelFormField.getTabindex();
-        items.append("[");
         for (ModelFormField.OptionValue optionValue : allOptionValues) {
-            if (items.length() > 1) {
-                items.append(",");
-            }
-            items.append("{'key':'");
-            items.append(optionValue.getKey());
-            items.append("', 'description':'" + encode(optionValue.getDescription(), modelFormField, context));
-            items.append("'}");
-        }
-        items.append("]");
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderRadioField ");
-        sr.append("items=");
-        sr.append(items.toString());
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" currentValue=\"");
-        sr.append(currentValue);
-        sr.append("\" noCurrentSelectedKey=\"");
-        sr.append(noCurrentSelectedKey);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+            items.add(UtilMisc.toMap("key", optionValue.getKey(),
+                    "description", encode(optionValue.getDescription(), modelFormField, context)));
+        }
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderRadioField")
+                .objectParameter("items", items)
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("currentValue", currentValue != null ? currentValue : "")
+                .stringParameter("noCurrentSelectedKey", noCurrentSelectedKey != null ? noCurrentSelectedKey : "")
+                .stringParameter("name", name)
+                .stringParameter("event", event != null ? event : "")
+                .stringParameter("action", action != null ? action : "")
+                .stringParameter("conditionGroup", conditionGroup)
+                .stringParameter("tabindex", tabindex)
+                .booleanParameter("disabled", disabled)
+                .build());
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -497,50 +430,25 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String tabindex = modelFormField.getTabindex();
         boolean disabled = modelFormField.getDisabled(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderSubmitField ");
-        sr.append("buttonType=\"");
-        sr.append(buttonType);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" title=\"");
-        sr.append(encode(title, modelFormField, context));
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" imgSrc=\"");
-        sr.append(imgSrc);
-        sr.append("\" containerId=\"");
-        if (ajaxEnabled) {
-            sr.append(formId);
-        }
-        sr.append("\" confirmation =\"");
-        sr.append(confirmation);
-        sr.append("\" ajaxUrl=\"");
-        if (ajaxEnabled) {
-            sr.append(ajaxUrl);
-        }
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" closeOnSubmit=\"");
-        sr.append(String.valueOf(!submitField.getPropagateCallback()));
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderSubmitField")
+                .stringParameter("buttonType", buttonType)
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("formName", formName)
+                .stringParameter("title", encode(title, modelFormField, context))
+                .stringParameter("name", name)
+                .stringParameter("id", id)
+                .stringParameter("event", event != null ? event : "")
+                .stringParameter("action", action != null ? action : "")
+                .stringParameter("imgSrc", imgSrc)
+                .stringParameter("containerId", ajaxEnabled ? formId : "")
+                .stringParameter("confirmation", confirmation)
+                .stringParameter("ajaxUrl", ajaxUrl)
+                .stringParameter("tabindex", tabindex)
+                .booleanParameter("disabled", disabled)
+                .stringParameter("closeOnSubmit", String.valueOf(!submitField.getPropagateCallback()))
+                .build());
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -557,18 +465,13 @@ public final class MacroFormRenderer implements FormStringRenderer {
             }
         }
         String title = modelFormField.getTitle(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderResetField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" title=\"");
-        sr.append(title);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderResetField")
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("name", name)
+                .stringParameter("title", title)
+                .build());
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -587,28 +490,16 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String event = modelFormField.getEvent();
         String id = modelFormField.getCurrentContainerId(context);
         boolean disabled = modelFormField.getDisabled(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderHiddenField ");
-        sr.append(" name=\"");
-        sr.append(name);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderHiddenField")
+                .stringParameter("name", name)
+                .stringParameter("conditionGroup", conditionGroup)
+                .stringParameter("value", value)
+                .stringParameter("id", id)
+                .stringParameter("event", event != null ? event : "")
+                .stringParameter("action", action != null ? action : "")
+                .booleanParameter("disabled", disabled)
+                .build());
     }
 
     @Override
@@ -626,7 +517,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         StringBuilder sb = new StringBuilder();
         if (UtilValidate.isNotEmpty(titleText)) {
             if (" ".equals(titleText)) {
-                executeMacro(writer, "<@renderFormatEmptySpace />");
+                renderFormatEmptySpace(writer, context, modelFormField.getModelForm());
             } else {
                 titleText = UtilHttp.encodeAmpersands(titleText);
                 titleText = encode(titleText, modelFormField, context);
@@ -643,26 +534,20 @@ public final class MacroFormRenderer implements FormStringRenderer {
                     StringWriter sr = new StringWriter();
                     makeHyperlinkString(sr, modelFormField.getHeaderLinkStyle(), targetType, targetBuffer.toString(), null, titleText, "",
                             modelFormField, this.request, this.response, context, "");
-                    String title = sr.toString().replace("\"", "\'");
-                    sr = new StringWriter();
-                    sr.append("<@renderHyperlinkTitle ");
-                    sr.append(" name=\"");
-                    sr.append(modelFormField.getModelForm().getName());
-                    sr.append("\" title=\"");
-                    sr.append(encodeDoubleQuotes(title));
-                    sr.append("\" />");
-                    executeMacro(writer, sr.toString());
+                    writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                            .name("renderHyperlinkTitle")
+                            .stringParameter("name", modelFormField.getModelForm().getName())
+                            .stringParameter("title", sr.toString())
+                            .build());
                 } else if (modelFormField.isSortField()) {
                     renderSortField(writer, context, modelFormField, titleText);
                 } else if (modelFormField.isRowSubmit()) {
-                    StringWriter sr = new StringWriter();
-                    sr.append("<@renderHyperlinkTitle ");
-                    sr.append(" name=\"");
-                    sr.append(modelFormField.getModelForm().getName());
-                    sr.append("\" title=\"");
-                    sr.append(titleText);
-                    sr.append("\" showSelectAll=\"Y\"/>");
-                    executeMacro(writer, sr.toString());
+                    writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                            .name("renderHyperlinkTitle")
+                            .stringParameter("name", modelFormField.getModelForm().getName())
+                            .stringParameter("title", titleText)
+                            .stringParameter("showSelectAll", "Y")
+                            .build());
                 } else {
                     sb.append(titleText);
                 }
@@ -676,10 +561,11 @@ public final class MacroFormRenderer implements FormStringRenderer {
                     style = requiredStyle;
                 }
             }
-            StringWriter sr = new StringWriter();
-            sr.append("<@renderFieldTitle ");
-            sr.append(" style=\"");
-            sr.append(style);
+            final RenderableFtlMacroCallBuilder builder = RenderableFtlMacroCall.builder()
+                    .name("renderFieldTitle")
+                    .stringParameter("style", style)
+                    .stringParameter("title", sb.toString())
+                    .stringParameter("id", UtilValidate.isNotEmpty(id) ? id + "_title" : "");
             String displayHelpText = UtilProperties.getPropertyValue("widget", "widget.form.displayhelpText");
             if ("Y".equals(displayHelpText)) {
                 Delegator delegator = WidgetWorker.getDelegator(context);
@@ -687,22 +573,13 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 String entityName = modelFormField.getEntityName();
                 String fieldName = modelFormField.getFieldName();
                 String helpText = UtilHelpText.getEntityFieldDescription(entityName, fieldName, delegator, locale);
-
-                sr.append("\" fieldHelpText=\"");
-                sr.append(encodeDoubleQuotes(helpText));
+                builder.stringParameter("fieldHelpText", helpText);
             }
-            sr.append("\" title=\"");
-            sr.append(sb.toString());
             if (UtilValidate.isNotEmpty(id)) {
-                sr.append("\" id=\"");
-                sr.append(id);
-                sr.append("_title");
                 // Render "for"
-                sr.append("\" for=\"");
-                sr.append(id);
+                builder.stringParameter("for", id);
             }
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            writeFtlElement(writer, builder.build());
         }
     }
 
@@ -753,47 +630,31 @@ public final class MacroFormRenderer implements FormStringRenderer {
         // Generate CSRF name & value for form
         String csrfNameValue = CsrfUtil.getTokenNameNonAjax() + " " + CsrfUtil.generateTokenForNonAjax(request, targ);
 
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormOpen ");
-        sr.append(" linkUrl=\"");
-        sr.append(linkUrl);
-        sr.append("\" formType=\"");
-        sr.append(formType);
-        sr.append("\" targetWindow=\"");
-        sr.append(targetWindow);
-        sr.append("\" containerId=\"");
-        sr.append(containerId);
-        sr.append("\" containerStyle=\"");
-        sr.append(containerStyle);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" focusFieldName=\"");
-        sr.append(focusFieldName);
-        sr.append("\" hasRequiredField=\"");
-        sr.append(hasRequiredField);
-        sr.append("\" viewIndexField=\"");
-        sr.append(viewIndexField);
-        sr.append("\" viewSizeField=\"");
-        sr.append(viewSizeField);
-        sr.append("\" viewIndex=\"");
-        sr.append(Integer.toString(viewIndex));
-        sr.append("\" viewSize=\"");
-        sr.append(Integer.toString(viewSize));
-        sr.append("\" useRowSubmit=");
-        sr.append(Boolean.toString(useRowSubmit));
-        sr.append(" csrfNameValue=\"");
-        sr.append(csrfNameValue);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormOpen")
+                .stringParameter("linkUrl", linkUrl.toString())
+                .stringParameter("formType", formType)
+                .stringParameter("targetWindow", targetWindow)
+                .stringParameter("containerId", containerId)
+                .stringParameter("containerStyle", containerStyle)
+                .stringParameter("autocomplete", autocomplete)
+                .stringParameter("name", name)
+                .stringParameter("focusFieldName", focusFieldName)
+                .stringParameter("hasRequiredField", hasRequiredField)
+                .stringParameter("viewIndexField", viewIndexField)
+                .stringParameter("viewSizeField", viewSizeField)
+                .stringParameter("viewIndex", Integer.toString(viewIndex))
+                .stringParameter("viewSize", Integer.toString(viewSize))
+                .booleanParameter("useRowSubmit", useRowSubmit)
+                .stringParameter("csrfNameValue", csrfNameValue)
+                .build());
     }
 
     @Override
     public void renderFormClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormClose")
+                .build());
         if (modelForm instanceof ModelSingleForm) {
             renderEndingBoundaryComment(writer, "Form Widget - Form Element", modelForm);
         } else {
@@ -821,9 +682,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 // this.renderFormatItemRowCellClose(writer, context, modelForm, submitField);
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderMultiFormClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderMultiFormClose")
+                .build());
         // see if there is anything that needs to be added outside of the multi-form
         Map<String, Object> wholeFormContext = UtilGenerics.cast(context.get("wholeFormContext"));
         Appendable postMultiFormWriter = wholeFormContext != null ? (Appendable) wholeFormContext.get("postMultiFormWriter") : null;
@@ -879,42 +740,29 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 fieldNameList.add(childField.getName());
             }
         }
-        String columnStyleListString =
-                columnStyleList.stream().map(str -> "'" + str + "'").collect(Collectors.joining(", "));
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatListWrapperOpen ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" style=\"");
-        sr.append(FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context));
-        sr.append("\" columnStyles=[");
-        if (UtilValidate.isNotEmpty(columnStyleListString)) {
-            // this is a fix for forms with no fields
-            sr.append(columnStyleListString);
-        }
-        sr.append("] />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatListWrapperOpen")
+                .stringParameter("formName", modelForm.getName())
+                .stringParameter("style", FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context))
+                .objectParameter("columnStyles", columnStyleList)
+                .build());
 
     }
 
     @Override
     public void renderEmptyFormDataMessage(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderEmptyFormDataMessage");
-        sr.append(" message=\"");
-        sr.append(modelForm.getEmptyFormDataMessage(context));
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderEmptyFormDataMessage")
+                .stringParameter("message", modelForm.getEmptyFormDataMessage(context))
+                .build());
     }
 
     @Override
     public void renderFormatListWrapperClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatListWrapperClose");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatListWrapperClose")
+                .stringParameter("formName", modelForm.getName())
+                .build());
         if (this.renderPagination) {
             this.renderNextPrev(writer, context, modelForm);
         }
@@ -927,90 +775,78 @@ public final class MacroFormRenderer implements FormStringRenderer {
 
     @Override
     public void renderFormatHeaderOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderOpen ");
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderOpen")
+                .build());
     }
 
     @Override
     public void renderFormatHeaderClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderClose");
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderClose")
+                .build());
     }
 
     @Override
     public void renderFormatHeaderRowOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String headerStyle = FlexibleStringExpander.expandString(modelForm.getHeaderRowStyle(), context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowOpen ");
-        sr.append(" style=\"");
-        sr.append(headerStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderRowOpen")
+                .stringParameter("style", headerStyle)
+                .build());
     }
 
     @Override
     public void renderFormatHeaderRowClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderRowClose")
+                .build());
     }
 
     @Override
     public void renderFormatHeaderRowCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField,
                                               int positionSpan) throws IOException {
         String areaStyle = modelFormField.getTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowCellOpen ");
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" positionSpan=");
-        sr.append(Integer.toString(positionSpan));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderRowCellOpen")
+                .stringParameter("style", areaStyle)
+                .intParameter("positionSpan", positionSpan)
+                .build());
     }
 
     @Override
     public void renderFormatHeaderRowCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField)
             throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowCellClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderRowCellClose")
+                .build());
     }
 
     @Override
     public void renderFormatHeaderRowFormCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String areaStyle = modelForm.getFormTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowFormCellOpen ");
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderRowFormCellOpen")
+                .stringParameter("style", areaStyle)
+                .build());
     }
 
     @Override
     public void renderFormatHeaderRowFormCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowFormCellClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderRowFormCellClose")
+                .build());
     }
 
     @Override
     public void renderFormatHeaderRowFormCellTitleSeparator(Appendable writer, Map<String, Object> context, ModelForm modelForm,
                                                             ModelFormField modelFormField, boolean isLast) throws IOException {
         String titleStyle = modelFormField.getTitleStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatHeaderRowFormCellTitleSeparator ");
-        sr.append(" style=\"");
-        sr.append(titleStyle);
-        sr.append("\" isLast=");
-        sr.append(Boolean.toString(isLast));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatHeaderRowFormCellTitleSeparator")
+                .stringParameter("style", titleStyle)
+                .booleanParameter("isLast", isLast)
+                .build());
     }
 
     @Override
@@ -1027,130 +863,107 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 oddRowStyle = FlexibleStringExpander.expandString(modelForm.getOddRowStyle(), context);
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowOpen ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" itemIndex=");
-        sr.append(String.valueOf(itemIndex));
-        sr.append(" altRowStyles=\"");
-        sr.append(altRowStyles);
-        sr.append("\" evenRowStyle=\"");
-        sr.append(evenRowStyle);
-        sr.append("\" oddRowStyle=\"");
-        sr.append(oddRowStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatItemRowOpen")
+                .stringParameter("formName", modelForm.getName())
+                .objectParameter("itemIndex", itemIndex)
+                .stringParameter("altRowStyles", altRowStyles)
+                .stringParameter("evenRowStyle", evenRowStyle)
+                .stringParameter("oddRowStyle", oddRowStyle)
+                .build());
     }
 
     @Override
     public void renderFormatItemRowClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowClose ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatItemRowClose")
+                .stringParameter("formName", modelForm.getName())
+                .build());
     }
 
     @Override
     public void renderFormatItemRowCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField,
                                             int positionSpan) throws IOException {
         String areaStyle = modelFormField.getWidgetAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowCellOpen ");
-        sr.append(" fieldName=\"");
-        sr.append(modelFormField.getName());
-        sr.append("\" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" positionSpan=");
-        sr.append(Integer.toString(positionSpan));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatItemRowCellOpen")
+                .stringParameter("fieldName", modelFormField.getName())
+                .stringParameter("style", areaStyle)
+                .intParameter("positionSpan", positionSpan)
+                .build());
     }
 
     @Override
     public void renderFormatItemRowCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField)
             throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowCellClose");
-        sr.append(" fieldName=\"");
-        sr.append(modelFormField.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatItemRowCellClose")
+                .stringParameter("fieldName", modelFormField.getName())
+                .build());
     }
 
     @Override
     public void renderFormatItemRowFormCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String areaStyle = modelForm.getFormTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowFormCellOpen ");
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatItemRowFormCellOpen")
+                .stringParameter("style", areaStyle)
+                .build());
     }
 
     @Override
     public void renderFormatItemRowFormCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowFormCellClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatItemRowFormCellClose")
+                .build());
     }
 
     @Override
     public void renderFormatSingleWrapperOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String style = FlexibleStringExpander.expandString(modelForm.getDefaultTableStyle(), context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatSingleWrapperOpen ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" style=\"");
-        sr.append(style);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatSingleWrapperOpen")
+                .stringParameter("formName", modelForm.getName())
+                .stringParameter("style", style)
+                .build());
     }
 
     @Override
     public void renderFormatSingleWrapperClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatSingleWrapperClose");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatSingleWrapperClose")
+                .stringParameter("formName", modelForm.getName())
+                .build());
     }
 
     @Override
     public void renderFormatFieldRowOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowOpen />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatFieldRowOpen")
+                .build());
     }
 
     @Override
     public void renderFormatFieldRowClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatFieldRowClose")
+                .build());
     }
 
     @Override
     public void renderFormatFieldRowTitleCellOpen(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) throws IOException {
         String style = modelFormField.getTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowTitleCellOpen ");
-        sr.append(" style=\"");
-        sr.append(style);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatFieldRowTitleCellOpen")
+                .stringParameter("style", style)
+                .build());
     }
 
     @Override
     public void renderFormatFieldRowTitleCellClose(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowTitleCellClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatFieldRowTitleCellClose")
+                .build());
     }
 
     @Override
@@ -1161,29 +974,26 @@ public final class MacroFormRenderer implements FormStringRenderer {
     public void renderFormatFieldRowWidgetCellOpen(Appendable writer, Map<String, Object> context, ModelFormField modelFormField, int positions,
                                                    int positionSpan, Integer nextPositionInRow) throws IOException {
         String areaStyle = modelFormField.getWidgetAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowWidgetCellOpen ");
-        sr.append(" positionSpan=");
-        sr.append(Integer.toString(positionSpan));
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatFieldRowWidgetCellOpen")
+                .intParameter("positionSpan", positionSpan)
+                .stringParameter("style", areaStyle)
+                .build());
     }
 
     @Override
     public void renderFormatFieldRowWidgetCellClose(Appendable writer, Map<String, Object> context, ModelFormField modelFormField, int positions,
                                                     int positionSpan, Integer nextPositionInRow) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatFieldRowWidgetCellClose />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatFieldRowWidgetCellClose")
+                .build());
     }
 
     @Override
     public void renderFormatEmptySpace(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatEmptySpace />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFormatEmptySpace")
+                .build());
     }
 
     @Override
@@ -1235,50 +1045,29 @@ public final class MacroFormRenderer implements FormStringRenderer {
         boolean hideIgnoreCase = textFindField.getHideIgnoreCase();
         String tabindex = modelFormField.getTabindex();
         boolean disabled = modelFormField.getDisabled(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderTextFindField ");
-        sr.append(" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" defaultOption=\"");
-        sr.append(defaultOption);
-        sr.append("\" opEquals=\"");
-        sr.append(opEquals);
-        sr.append("\" opBeginsWith=\"");
-        sr.append(opBeginsWith);
-        sr.append("\" opContains=\"");
-        sr.append(opContains);
-        sr.append("\" opIsEmpty=\"");
-        sr.append(opIsEmpty);
-        sr.append("\" opNotEqual=\"");
-        sr.append(opNotEqual);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" titleStyle=\"");
-        sr.append(titleStyle);
-        sr.append("\" hideIgnoreCase=");
-        sr.append(Boolean.toString(hideIgnoreCase));
-        sr.append(" ignCase=");
-        sr.append(Boolean.toString(ignCase));
-        sr.append(" ignoreCase=\"");
-        sr.append(ignoreCase);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderTextFindField")
+                .stringParameter("name", name)
+                .stringParameter("value", value)
+                .stringParameter("defaultOption", defaultOption)
+                .stringParameter("opEquals", opEquals)
+                .stringParameter("opBeginsWith", opBeginsWith)
+                .stringParameter("opContains", opContains)
+                .stringParameter("opIsEmpty", opIsEmpty)
+                .stringParameter("opNotEqual", opNotEqual)
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("size", size)
+                .stringParameter("maxlength", maxlength)
+                .stringParameter("autocomplete", autocomplete)
+                .stringParameter("titleStyle", titleStyle)
+                .booleanParameter("hideIgnoreCase", hideIgnoreCase)
+                .booleanParameter("ignCase", ignCase)
+                .stringParameter("ignoreCase", ignoreCase)
+                .stringParameter("tabindex", tabindex)
+                .stringParameter("conditionGroup", conditionGroup)
+                .booleanParameter("disabled", disabled)
+                .build());
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1325,50 +1114,28 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String defaultOptionThru = rangeFindField.getDefaultOptionThru();
         String tabindex = modelFormField.getTabindex();
         boolean disabled = modelFormField.getDisabled(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderRangeFindField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        if (maxlength != null) {
-            sr.append(Integer.toString(maxlength));
-        }
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" titleStyle=\"");
-        sr.append(titleStyle);
-        sr.append("\" defaultOptionFrom=\"");
-        sr.append(defaultOptionFrom);
-        sr.append("\" opEquals=\"");
-        sr.append(opEquals);
-        sr.append("\" opGreaterThan=\"");
-        sr.append(opGreaterThan);
-        sr.append("\" opGreaterThanEquals=\"");
-        sr.append(opGreaterThanEquals);
-        sr.append("\" opLessThan=\"");
-        sr.append(opLessThan);
-        sr.append("\" opLessThanEquals=\"");
-        sr.append(opLessThanEquals);
-        sr.append("\" value2=\"");
-        sr.append(value2);
-        sr.append("\" defaultOptionThru=\"");
-        sr.append(defaultOptionThru);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderRangeFindField")
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("name", name)
+                .stringParameter("value", value)
+                .stringParameter("size", size)
+                .stringParameter("maxlength", maxlength != null ? Integer.toString(maxlength) : "")
+                .stringParameter("autocomplete", autocomplete)
+                .stringParameter("titleStyle", titleStyle)
+                .stringParameter("defaultOptionFrom", defaultOptionFrom)
+                .stringParameter("opEquals", opEquals)
+                .stringParameter("opGreaterThan", opGreaterThan)
+                .stringParameter("opGreaterThanEquals", opGreaterThanEquals)
+                .stringParameter("opLessThan", opLessThan)
+                .stringParameter("opLessThanEquals", opLessThanEquals)
+                .stringParameter("value2", value2)
+                .stringParameter("defaultOptionThru", defaultOptionThru)
+                .stringParameter("conditionGroup", conditionGroup)
+                .stringParameter("tabindex", tabindex)
+                .booleanParameter("disabled", disabled)
+                .build());
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1449,20 +1216,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
         if (UtilValidate.isEmpty(formName)) {
             formName = FormRenderer.getCurrentFormName(modelForm, context);
         }
-        StringBuilder targetParameterIter = new StringBuilder();
         StringBuilder imgSrc = new StringBuilder();
-        // FIXME: refactor using the StringUtils methods
         List<String> targetParameterList = lookupField.getTargetParameterList(context);
-        targetParameterIter.append("[");
-        for (String targetParameter : targetParameterList) {
-            if (targetParameterIter.length() > 1) {
-                targetParameterIter.append(",");
-            }
-            targetParameterIter.append("'");
-            targetParameterIter.append(targetParameter);
-            targetParameterIter.append("'");
-        }
-        targetParameterIter.append("]");
         this.appendContentUrl(imgSrc, "/images/fieldlookup.gif");
         String ajaxUrl = "";
         if (ajaxEnabled) {
@@ -1502,82 +1257,46 @@ public final class MacroFormRenderer implements FormStringRenderer {
         lastViewName = UtilHttp.getEncodedParameter(lastViewName);
         String tabindex = modelFormField.getTabindex();
         boolean disabled = modelFormField.getDisabled(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderLookupField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append((maxlength != null ? Integer.toString(maxlength) : ""));
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" readonly=");
-        sr.append(Boolean.toString(readonly));
-        sr.append(" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" descriptionFieldName=\"");
-        sr.append(descriptionFieldName);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" fieldFormName=\"");
-        sr.append(lookupFieldFormName);
-        sr.append("\" targetParameterIter=");
-        sr.append(targetParameterIter.toString());
-        sr.append(" imgSrc=\"");
-        sr.append(imgSrc.toString());
-        sr.append("\" ajaxUrl=\"");
-        sr.append(ajaxUrl);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" presentation=\"");
-        sr.append(lookupPresentation);
+        final RenderableFtlMacroCallBuilder builder = RenderableFtlMacroCall.builder()
+                .name("renderLookupField")
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("name", name)
+                .stringParameter("value", value)
+                .stringParameter("size", size)
+                .stringParameter("maxlength", maxlength != null ? Integer.toString(maxlength) : "")
+                .stringParameter("id", id)
+                .stringParameter("event", event != null ? event : "")
+                .stringParameter("action", action != null ? action : "")
+                .booleanParameter("readonly", readonly)
+                .stringParameter("autocomplete", autocomplete)
+                .stringParameter("descriptionFieldName", descriptionFieldName)
+                .stringParameter("formName", formName)
+                .stringParameter("fieldFormName", lookupFieldFormName)
+                .objectParameter("targetParameterIter", targetParameterList)
+                .stringParameter("imgSrc", imgSrc.toString())
+                .stringParameter("ajaxUrl", ajaxUrl)
+                .booleanParameter("ajaxEnabled", ajaxEnabled)
+                .stringParameter("presentation", lookupPresentation);
         if (UtilValidate.isNotEmpty(lookupHeight)) {
-            sr.append("\" height=\"");
-            sr.append(lookupHeight);
+            builder.stringParameter("height", lookupHeight);
         }
         if (UtilValidate.isNotEmpty(lookupWidth)) {
-            sr.append("\" width=\"");
-            sr.append(lookupWidth);
+            builder.stringParameter("width", lookupWidth);
         }
         if (UtilValidate.isNotEmpty(lookupPosition)) {
-            sr.append("\" position=\"");
-            sr.append(lookupPosition);
-        }
-        sr.append("\" fadeBackground=\"");
-        sr.append(fadeBackground);
-        sr.append("\" clearText=\"");
-        sr.append(clearText);
-        sr.append("\" showDescription=\"");
-        sr.append(Boolean.toString(showDescription));
-        sr.append("\" initiallyCollapsed=\"");
-        sr.append(Boolean.toString(isInitiallyCollapsed));
-        sr.append("\" lastViewName=\"");
-        sr.append(lastViewName);
-        sr.append("\" conditionGroup=\"");
-        sr.append(conditionGroup);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" delegatorName=\"");
-        sr.append(((HttpSession) context.get("session")).getAttribute("delegatorName").toString());
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+            builder.stringParameter("position", lookupPosition);
+        }
+        builder.stringParameter("fadeBackground", fadeBackground)
+                .stringParameter("clearText", clearText)
+                .stringParameter("showDescription", Boolean.toString(showDescription))
+                .stringParameter("initiallyCollapsed", Boolean.toString(isInitiallyCollapsed))
+                .stringParameter("lastViewName", lastViewName)
+                .stringParameter("conditionGroup", conditionGroup)
+                .stringParameter("tabindex", tabindex)
+                .booleanParameter("disabled", disabled)
+                .stringParameter("delegatorName", ((HttpSession) context.get("session")).getAttribute("delegatorName").toString());
+        writeFtlElement(writer, builder.build());
         this.addAsterisks(writer, context, modelFormField);
         this.makeHyperlinkString(writer, lookupField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
@@ -1606,6 +1325,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         int viewIndex = Paginator.getViewIndex(modelForm, context);
         int viewSize = Paginator.getViewSize(modelForm, context);
         int listSize = Paginator.getListSize(context);
+        boolean listSizeExact = Paginator.isListSizeExact(context);
         int lowIndex = Paginator.getLowIndex(context);
         int highIndex = Paginator.getHighIndex(context);
         int actualPageSize = Paginator.getActualPageSize(context);
@@ -1617,7 +1337,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
             Debug.logWarning("Could not find uiLabelMap in context", MODULE);
         } else {
             pageLabel = uiLabelMap.get("CommonPage");
-            Map<String, Integer> messageMap = UtilMisc.toMap("lowCount", lowIndex + 1, "highCount", lowIndex + actualPageSize, "total", listSize);
+            // when only a lower bound of the list size is known, the total is shown as at least that many rows, e.g. "1000+"
+            Map<String, Object> messageMap = UtilMisc.<String, Object>toMap("lowCount", lowIndex + 1, "highCount", lowIndex + actualPageSize,
+                    "total", listSizeExact ? listSize : (listSize - 1) + "+");
             commonDisplaying = UtilProperties.getMessage("CommonUiLabels", "CommonDisplaying", messageMap, (Locale) context.get("locale"));
         }
         // for legacy support, the viewSizeParam is VIEW_SIZE and viewIndexParam is VIEW_INDEX when the fields are "viewSize" and "viewIndex"
@@ -1731,8 +1453,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 nextUrl = rh.makeLink(this.request, this.response, urlPath + linkText);
             }
         }
-        // Last button
-        if (highIndex < listSize) {
+        // Last button, only when the list size is known
+        if (highIndex < listSize && listSizeExact) {
             int lastIndex = UtilMisc.getViewLastIndex(listSize, viewSize);
             if (ajaxEnabled) {
                 ajaxLastUrl = MacroCommonRenderer.createAjaxParamsFromUpdateAreas(updateAreas, null,
@@ -1755,74 +1477,39 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 selectSizeUrl = rh.makeLink(this.request, this.response, urlPath + linkText);
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderNextPrev ");
-        sr.append(" paginateStyle=\"");
-        sr.append(paginateStyle);
-        sr.append("\" paginateFirstStyle=\"");
-        sr.append(paginateFirstStyle);
-        sr.append("\" viewIndex=");
-        sr.append(Integer.toString(viewIndex));
-        sr.append(" highIndex=");
-        sr.append(Integer.toString(highIndex));
-        sr.append(" listSize=");
-        sr.append(Integer.toString(listSize));
-        sr.append(" viewSize=");
-        sr.append(Integer.toString(viewSize));
-        sr.append(" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" javaScriptEnabled=");
-        sr.append(Boolean.toString(javaScriptEnabled));
-        sr.append(" ajaxFirstUrl=\"");
-        sr.append(ajaxFirstUrl);
-        sr.append("\" ajaxFirstUrl=\"");
-        sr.append(ajaxFirstUrl);
-        sr.append("\" ajaxFirstUrl=\"");
-        sr.append(ajaxFirstUrl);
-        sr.append("\" firstUrl=\"");
-        sr.append(firstUrl);
-        sr.append("\" paginateFirstLabel=\"");
-        sr.append(paginateFirstLabel);
-        sr.append("\" paginatePreviousStyle=\"");
-        sr.append(paginatePreviousStyle);
-        sr.append("\" ajaxPreviousUrl=\"");
-        sr.append(ajaxPreviousUrl);
-        sr.append("\" previousUrl=\"");
-        sr.append(previousUrl);
-        sr.append("\" paginatePreviousLabel=\"");
-        sr.append(paginatePreviousLabel);
-        sr.append("\" pageLabel=\"");
-        sr.append(pageLabel);
-        sr.append("\" ajaxSelectUrl=\"");
-        sr.append(ajaxSelectUrl);
-        sr.append("\" selectUrl=\"");
-        sr.append(selectUrl);
-        sr.append("\" ajaxSelectSizeUrl=\"");
-        sr.append(ajaxSelectSizeUrl);
-        sr.append("\" selectSizeUrl=\"");
-        sr.append(selectSizeUrl);
-        sr.append("\" commonDisplaying=\"");
-        sr.append(commonDisplaying);
-        sr.append("\" paginateNextStyle=\"");
-        sr.append(paginateNextStyle);
-        sr.append("\" ajaxNextUrl=\"");
-        sr.append(ajaxNextUrl);
-        sr.append("\" nextUrl=\"");
-        sr.append(nextUrl);
-        sr.append("\" paginateNextLabel=\"");
-        sr.append(paginateNextLabel);
-        sr.append("\" paginateLastStyle=\"");
-        sr.append(paginateLastStyle);
-        sr.append("\" ajaxLastUrl=\"");
-        sr.append(ajaxLastUrl);
-        sr.append("\" lastUrl=\"");
-        sr.append(lastUrl);
-        sr.append("\" paginateLastLabel=\"");
-        sr.append(paginateLastLabel);
-        sr.append("\" paginateViewSizeLabel=\"");
-        sr.append(paginateViewSizeLabel);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderNextPrev")
+                .stringParameter("paginateStyle", paginateStyle)
+                .stringParameter("paginateFirstStyle", paginateFirstStyle)
+                .intParameter("viewIndex", viewIndex)
+                .intParameter("highIndex", highIndex)
+                .intParameter("listSize", listSize)
+                .intParameter("viewSize", viewSize)
+                .booleanParameter("ajaxEnabled", ajaxEnabled)
+                .booleanParameter("javaScriptEnabled", javaScriptEnabled)
+                .stringParameter("ajaxFirstUrl", ajaxFirstUrl)
+                .stringParameter("firstUrl", firstUrl)
+                .stringParameter("paginateFirstLabel", paginateFirstLabel)
+                .stringParameter("paginatePreviousStyle", paginatePreviousStyle)
+                .stringParameter("ajaxPreviousUrl", ajaxPreviousUrl)
+                .stringParameter("previousUrl", previousUrl)
+                .stringParameter("paginatePreviousLabel", paginatePreviousLabel)
+                .stringParameter("pageLabel", pageLabel)
+                .stringParameter("ajaxSelectUrl", ajaxSelectUrl)
+                .stringParameter("selectUrl", selectUrl)
+                .stringParameter("ajaxSelectSizeUrl", ajaxSelectSizeUrl)
+                .stringParameter("selectSizeUrl", selectSizeUrl)
+                .stringParameter("commonDisplaying", commonDisplaying)
+                .stringParameter("paginateNextStyle", paginateNextStyle)
+                .stringParameter("ajaxNextUrl", ajaxNextUrl)
+                .stringParameter("nextUrl", nextUrl)
+                .stringParameter("paginateNextLabel", paginateNextLabel)
+                .stringParameter("paginateLastStyle", paginateLastStyle)
+                .stringParameter("ajaxLastUrl", ajaxLastUrl)
+                .stringParameter("lastUrl", lastUrl)
+                .stringParameter("paginateLastLabel", paginateLastLabel)
+                .stringParameter("paginateViewSizeLabel", paginateViewSizeLabel)
+                .build());
     }
 
     @Override
@@ -1852,28 +1539,18 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String tabindex = modelFormField.getTabindex();
         boolean disabled = modelFormField.getDisabled(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFileField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderFileField")
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("name", name)
+                .stringParameter("value", value)
+                .stringParameter("size", size)
+                .stringParameter("maxlength", maxlength)
+                .stringParameter("autocomplete", autocomplete)
+                .stringParameter("tabindex", tabindex)
+                .booleanParameter("disabled", disabled)
+                .build());
         this.makeHyperlinkString(writer, textField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
     }
@@ -1923,30 +1600,19 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
 
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderPasswordField ");
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" autocomplete=\"");
-        sr.append(autocomplete);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderPasswordField")
+                .stringParameter("className", className)
+                .stringParameter("alert", alert)
+                .stringParameter("name", name)
+                .stringParameter("value", value)
+                .stringParameter("size", size)
+                .stringParameter("maxlength", maxlength)
+                .stringParameter("id", id)
+                .stringParameter("autocomplete", autocomplete)
+                .stringParameter("tabindex", tabindex)
+                .booleanParameter("disabled", disabled)
+                .build());
         this.addAsterisks(writer, context, modelFormField);
         this.makeHyperlinkString(writer, passwordField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
@@ -1977,22 +1643,15 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String event = modelFormField.getEvent();
         String action = modelFormField.getAction(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderImageField ");
-        sr.append(" value=\"");
-        sr.append(value);
-        sr.append("\" description=\"");
-        sr.append(encode(description, modelFormField, context));
-        sr.append("\" alternate=\"");
-        sr.append(encode(alternate, modelFormField, context));
-        sr.append("\" style=\"");
-        sr.append(style);
-        sr.append("\" event=\"");
-        sr.append(event == null ? "" : event);
-        sr.append("\" action=\"");
-        sr.append(action == null ? "" : action);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderImageField")
+                .stringParameter("value", value)
+                .stringParameter("description", encode(description, modelFormField, context))
+                .stringParameter("alternate", encode(alternate, modelFormField, context))
+                .stringParameter("style", style)
+                .stringParameter("event", event == null ? "" : event)
+                .stringParameter("action", action == null ? "" : action)
+                .build());
         this.makeHyperlinkString(writer, imageField.getSubHyperlink(), context);
         this.appendTooltip(writer, context, modelFormField);
     }
@@ -2032,22 +1691,15 @@ public final class MacroFormRenderer implements FormStringRenderer {
         if (rightText == null) {
             rightText = "";
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderBanner ");
-        sr.append(" style=\"");
-        sr.append(style);
-        sr.append("\" leftStyle=\"");
-        sr.append(leftStyle);
-        sr.append("\" rightStyle=\"");
-        sr.append(rightStyle);
-        sr.append("\" leftText=\"");
-        sr.append(leftText);
-        sr.append("\" text=\"");
-        sr.append(text);
-        sr.append("\" rightText=\"");
-        sr.append(rightText);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderBanner")
+                .stringParameter("style", style)
+                .stringParameter("leftStyle", leftStyle)
+                .stringParameter("rightStyle", rightStyle)
+                .stringParameter("leftText", leftText)
+                .stringParameter("text", text)
+                .stringParameter("rightText", rightText)
+                .build());
     }
 
     /**
@@ -2058,16 +1710,12 @@ public final class MacroFormRenderer implements FormStringRenderer {
      */
     public void renderBeginningBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) {
         if (this.widgetCommentsEnabled) {
-            StringWriter sr = new StringWriter();
-            sr.append("<@formatBoundaryComment ");
-            sr.append(" boundaryType=\"");
-            sr.append("Begin");
-            sr.append("\" widgetType=\"");
-            sr.append(widgetType);
-            sr.append("\" widgetName=\"");
-            sr.append(modelWidget.getBoundaryCommentName());
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                    .name("formatBoundaryComment")
+                    .stringParameter("boundaryType", "Begin")
+                    .stringParameter("widgetType", widgetType)
+                    .stringParameter("widgetName", modelWidget.getBoundaryCommentName())
+                    .build());
         }
     }
 
@@ -2079,16 +1727,12 @@ public final class MacroFormRenderer implements FormStringRenderer {
      */
     public void renderEndingBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) {
         if (this.widgetCommentsEnabled) {
-            StringWriter sr = new StringWriter();
-            sr.append("<@formatBoundaryComment ");
-            sr.append(" boundaryType=\"");
-            sr.append("End");
-            sr.append("\" widgetType=\"");
-            sr.append(widgetType);
-            sr.append("\" widgetName=\"");
-            sr.append(modelWidget.getBoundaryCommentName());
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                    .name("formatBoundaryComment")
+                    .stringParameter("boundaryType", "End")
+                    .stringParameter("widgetType", widgetType)
+                    .stringParameter("widgetName", modelWidget.getBoundaryCommentName())
+                    .build());
         }
     }
 
@@ -2160,22 +1804,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 linkUrl = rh.makeLink(this.request, this.response, urlPath.concat(UtilCodec.encodeUrl(newQueryString, context)));
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderSortField ");
-        sr.append(" style=\"");
-        sr.append(sortFieldStyle);
-        sr.append("\" title=\"");
-        sr.append(titleText);
-        sr.append("\" linkUrl=\"");
-        sr.append(linkUrl);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        String tooltip = modelFormField.getSortFieldHelpText(context);
-        if (!tooltip.isEmpty()) {
-            sr.append(" tooltip=\"").append(tooltip).append("\"");
-        }
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                .name("renderSortField")
+                .stringParameter("style", sortFieldStyle)
+                .stringParameter("title", titleText)
+                .stringParameter("linkUrl", linkUrl)
+                .booleanParameter("ajaxEnabled", ajaxEnabled)
+                .stringParameter("tooltip", modelFormField.getSortFieldHelpText(context))
+                .build());
     }
 
     private void appendTooltip(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) {
@@ -2354,61 +1990,27 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 width = request.getAttribute("width").toString();
                 height = request.getAttribute("height").toString();
             }
-            StringBuilder targetParameters = new StringBuilder();
-            if (UtilValidate.isNotEmpty(parameterMap)) {
-                targetParameters.append("{");
-                for (Map.Entry<String, String> parameter : parameterMap.entrySet()) {
-                    if (targetParameters.length() > 1) {
-                        targetParameters.append(",");
-                    }
-                    targetParameters.append("'");
-                    targetParameters.append(parameter.getKey());
-                    targetParameters.append("':'");
-                    targetParameters.append(parameter.getValue());
-                    targetParameters.append("'");
-                }
-                targetParameters.append("}");
-            }
-            StringWriter sr = new StringWriter();
-            sr.append("<@makeHyperlinkString ");
-            sr.append("linkStyle=\"");
-            sr.append(linkStyle == null ? "" : linkStyle);
-            sr.append("\" hiddenFormName=\"");
-            sr.append(hiddenFormName);
-            sr.append("\" event=\"");
-            sr.append(event);
-            sr.append("\" action=\"");
-            sr.append(action);
-            sr.append("\" imgSrc=\"");
-            sr.append(imgSrc);
-            sr.append("\" imgTitle=\"");
-            sr.append(imgTitle);
-            sr.append("\" title=\"");
-            sr.append(title);
-            sr.append("\" alternate=\"");
-            sr.append(alt);
-            sr.append("\" targetParameters=\"");
-            sr.append(targetParameters.toString());
-            sr.append("\" linkUrl=\"");
-            sr.append(linkUrl.toString());
-            sr.append("\" targetWindow=\"");
-            sr.append(targetWindow);
-            sr.append("\" description=\"");
-            sr.append(description);
-            sr.append("\" confirmation=\"");
-            sr.append(confirmation);
-            sr.append("\" uniqueItemName=\"");
-            sr.append(uniqueItemName);
-            sr.append("\" height=\"");
-            sr.append(height);
-            sr.append("\" width=\"");
-            sr.append(width);
-            sr.append("\" id=\"");
-            sr.append(id);
-            sr.append("\" text=\"");
-            sr.append(text);
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            writeFtlElement(writer, RenderableFtlMacroCall.builder()
+                    .name("makeHyperlinkString")
+                    .stringParameter("linkStyle", linkStyle == null ? "" : linkStyle)
+                    .stringParameter("hiddenFormName", hiddenFormName)
+                    .stringParameter("event", event)
+                    .stringParameter("action", action)
+                    .stringParameter("imgSrc", imgSrc)
+                    .stringParameter("imgTitle", imgTitle)
+                    .stringParameter("title", title)
+                    .stringParameter("alternate", alt)
+                    .mapParameter("targetParameters", UtilValidate.isNotEmpty(parameterMap) ? parameterMap : null)
+                    .stringParameter("linkUrl", linkUrl.toString())
+                    .stringParameter("targetWindow", targetWindow)
+                    .stringParameter("description", description == null ? "" : description)
+                    .stringParameter("confirmation", confirmation)
+                    .stringParameter("uniqueItemName", uniqueItemName)
+                    .stringParameter("height", height)
+                    .stringParameter("width", width)
+                    .stringParameter("id", id)
+                    .stringParameter("text", text)
+                    .build());
         }
     }
 
@@ -19,10 +19,8 @@
 package org.apache.ofbiz.widget.renderer.macro;
 
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.not;
-import static org.hamcrest.Matchers.startsWith;
 
 import java.io.IOException;
 import java.io.StringWriter;
@@ -290,13 +288,13 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderCheckField(appendable, ImmutableMap.of(), checkField);
-        assertAndGetMacroString("renderCheckField", ImmutableMap.of(
-                "currentValue", "KEY2",
-                "items", ImmutableList.of(
-                        "{'value':'KEY1', 'description':'DESC1', 'checked':'false'}",
-                        "{'value':'KEY2', 'description':'DESC2', 'checked':'true'}",
-                        "{'value':'KEY3', 'description':'DESC3', 'checked':'false'}",
-                        "{'value':'KEY4', 'description':'DESC4', 'checked':'false'}")));
+        assertNamedMacroCallRendered("renderCheckField",
+                MacroCallParameterMatcher.hasNameAndStringValue("currentValue", "KEY2"),
+                hasNameAndValue("items", ImmutableList.of(
+                        ImmutableMap.of("value", "KEY1", "description", "DESC1", "checked", "false"),
+                        ImmutableMap.of("value", "KEY2", "description", "DESC2", "checked", "true"),
+                        ImmutableMap.of("value", "KEY3", "description", "DESC3", "checked", "false"),
+                        ImmutableMap.of("value", "KEY4", "description", "DESC4", "checked", "false"))));
         new Expectations() {
             {
                 modelFormField.getEntry(withNotNull());
@@ -320,12 +318,12 @@ public class MacroFormRendererTest {
             e.printStackTrace();
         }
 
-        assertAndGetMacroString("renderCheckField", ImmutableMap.of(
-                "items", ImmutableList.of(
-                        "{'value':'KEY1', 'description':'DESC1', 'checked':'true'}",
-                        "{'value':'KEY2', 'description':'DESC2', 'checked':'false'}",
-                        "{'value':'KEY3', 'description':'DESC3', 'checked':'true'}",
-                        "{'value':'KEY4', 'description':'DESC4', 'checked':'false'}")));
+        assertNamedMacroCallRendered("renderCheckField",
+                hasNameAndValue("items", ImmutableList.of(
+                        ImmutableMap.of("value", "KEY1", "description", "DESC1", "checked", "true"),
+                        ImmutableMap.of("value", "KEY2", "description", "DESC2", "checked", "false"),
+                        ImmutableMap.of("value", "KEY3", "description", "DESC3", "checked", "true"),
+                        ImmutableMap.of("value", "KEY4", "description", "DESC4", "checked", "false"))));
 
     }
     @Test
@@ -345,10 +343,11 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderRadioField(appendable, ImmutableMap.of(), radioField);
-        assertAndGetMacroString("renderRadioField", ImmutableMap.of(
-                "currentValue", "KEY2",
-                "items", ImmutableList.of("{'key':'KEY1', 'description':'DESC1'}",
-                        "{'key':'KEY2', 'description':'DESC2'}")));
+        assertNamedMacroCallRendered("renderRadioField",
+                MacroCallParameterMatcher.hasNameAndStringValue("currentValue", "KEY2"),
+                hasNameAndValue("items", ImmutableList.of(
+                        ImmutableMap.of("key", "KEY1", "description", "DESC1"),
+                        ImmutableMap.of("key", "KEY2", "description", "DESC2"))));
     }
 
     @Test
@@ -361,7 +360,8 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderSubmitField(appendable, ImmutableMap.of(), submitField);
-        assertAndGetMacroString("renderSubmitField", ImmutableMap.of("title", "BUTTONTITLE"));
+        assertNamedMacroCallRendered("renderSubmitField",
+                MacroCallParameterMatcher.hasNameAndStringValue("title", "BUTTONTITLE"));
     }
 
     @Test
@@ -374,7 +374,8 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderResetField(appendable, ImmutableMap.of(), resetField);
-        assertAndGetMacroString("renderResetField", ImmutableMap.of("title", "BUTTONTITLE"));
+        assertNamedMacroCallRendered("renderResetField",
+                MacroCallParameterMatcher.hasNameAndStringValue("title", "BUTTONTITLE"));
     }
 
     @Test
@@ -387,7 +388,8 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderHiddenField(appendable, ImmutableMap.of(), hiddenField);
-        assertAndGetMacroString("renderHiddenField", ImmutableMap.of("value", "HIDDENVALUE"));
+        assertMacroCallRendered("renderHiddenField",
+                MacroCallParameterMatcher.hasNameAndStringValue("value", "HIDDENVALUE"));
     }
 
     @Test
@@ -400,7 +402,7 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFieldTitle(appendable, ImmutableMap.of(), modelFormField);
-        assertAndGetMacroString("renderFormatEmptySpace");
+        assertMacroCallRendered("renderFormatEmptySpace");
     }
 
     @Test
@@ -413,7 +415,8 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFieldTitle(appendable, ImmutableMap.of(), modelFormField);
-        assertAndGetMacroString("renderFieldTitle", ImmutableMap.of("title", "FIELDTITLE"));
+        assertNamedMacroCallRendered("renderFieldTitle",
+                MacroCallParameterMatcher.hasNameAndStringValue("title", "FIELDTITLE"));
     }
 
     @Test
@@ -426,26 +429,27 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFormOpen(appendable, ImmutableMap.of(), modelSingleForm);
-        assertAndGetMacroString("renderFormOpen", ImmutableMap.of("formType", "single"));
+        assertNamedMacroCallRendered("renderFormOpen",
+                MacroCallParameterMatcher.hasNameAndStringValue("formType", "single"));
     }
 
     @Test
     public void formClosedMacroRendered(@Mocked ModelSingleForm modelSingleForm) throws IOException {
         macroFormRenderer.renderFormClose(appendable, ImmutableMap.of(), modelSingleForm);
-        assertAndGetMacroString("renderFormClose");
+        assertMacroCallRendered("renderFormClose");
     }
 
     @Test
     public void multiFormClosedMacroRendered(@Mocked ModelForm modelForm) throws IOException {
         macroFormRenderer.renderMultiFormClose(appendable, ImmutableMap.of(), modelForm);
-        assertAndGetMacroString("renderMultiFormClose");
+        assertMacroCallRendered("renderMultiFormClose");
     }
 
     @Test
     public void listWrapperOpenMacroRendered(@Mocked ModelSingleForm modelSingleForm) throws IOException {
         macroFormRenderer.setRenderPagination(false);
         macroFormRenderer.renderFormatListWrapperOpen(appendable, new HashMap<>(), modelSingleForm);
-        assertAndGetMacroString("renderFormatListWrapperOpen");
+        assertMacroCallRendered("renderFormatListWrapperOpen");
     }
 
     @Test
@@ -458,14 +462,15 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderEmptyFormDataMessage(appendable, new HashMap<>(), modelSingleForm);
-        assertAndGetMacroString("renderEmptyFormDataMessage", ImmutableMap.of("message", "EMPTY"));
+        assertMacroCallRendered("renderEmptyFormDataMessage",
+                MacroCallParameterMatcher.hasNameAndStringValue("message", "EMPTY"));
     }
 
     @Test
     public void listWrapperCloseMacroRendered(@Mocked ModelSingleForm modelSingleForm) throws IOException {
         macroFormRenderer.setRenderPagination(false);
         macroFormRenderer.renderFormatListWrapperClose(appendable, new HashMap<>(), modelSingleForm);
-        assertAndGetMacroString("renderFormatListWrapperClose");
+        assertMacroCallRendered("renderFormatListWrapperClose");
     }
 
     @Test
@@ -480,10 +485,10 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFormatItemRowOpen(appendable, ImmutableMap.of("itemIndex", 2), modelForm);
-        assertAndGetMacroString("renderFormatItemRowOpen", ImmutableMap.of(
-                "formName", "FORMNAME",
-                "itemIndex", 2,
-                "evenRowStyle", "EVENSTYLE"));
+        assertMacroCallRendered("renderFormatItemRowOpen",
+                MacroCallParameterMatcher.hasNameAndStringValue("formName", "FORMNAME"),
+                MacroCallParameterMatcher.hasNameAndIntegerValue("itemIndex", 2),
+                MacroCallParameterMatcher.hasNameAndStringValue("evenRowStyle", "EVENSTYLE"));
     }
 
     @Test
@@ -499,10 +504,10 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFormatItemRowCellOpen(appendable, ImmutableMap.of(), modelForm, modelFormField, 2);
-        assertAndGetMacroString("renderFormatItemRowCellOpen", ImmutableMap.of(
-                "fieldName", "FIELDNAME",
-                "positionSpan", 2,
-                "style", "AREASTYLE"));
+        assertMacroCallRendered("renderFormatItemRowCellOpen",
+                MacroCallParameterMatcher.hasNameAndStringValue("fieldName", "FIELDNAME"),
+                MacroCallParameterMatcher.hasNameAndIntegerValue("positionSpan", 2),
+                MacroCallParameterMatcher.hasNameAndStringValue("style", "AREASTYLE"));
     }
 
     @Test
@@ -515,7 +520,8 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFormatItemRowFormCellOpen(appendable, ImmutableMap.of(), modelForm);
-        assertAndGetMacroString("renderFormatItemRowFormCellOpen", ImmutableMap.of("style", "AREASTYLE"));
+        assertMacroCallRendered("renderFormatItemRowFormCellOpen",
+                MacroCallParameterMatcher.hasNameAndStringValue("style", "AREASTYLE"));
     }
 
     @Test
@@ -530,9 +536,9 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFormatSingleWrapperOpen(appendable, ImmutableMap.of("styleParam", "ABCD"), modelForm);
-        assertAndGetMacroString("renderFormatSingleWrapperOpen", ImmutableMap.of(
-                "formName", "FORMNAME",
-                "style", "STYLEABCD"));
+        assertMacroCallRendered("renderFormatSingleWrapperOpen",
+                MacroCallParameterMatcher.hasNameAndStringValue("formName", "FORMNAME"),
+                MacroCallParameterMatcher.hasNameAndStringValue("style", "STYLEABCD"));
     }
 
     @Test
@@ -545,9 +551,9 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderFormatFieldRowWidgetCellOpen(appendable, ImmutableMap.of(), modelFormField, 1, 1, null);
-        assertAndGetMacroString("renderFormatFieldRowWidgetCellOpen", ImmutableMap.of(
-                "positionSpan", 1,
-                "style", "AREASTYLE"));
+        assertMacroCallRendered("renderFormatFieldRowWidgetCellOpen",
+                MacroCallParameterMatcher.hasNameAndIntegerValue("positionSpan", 1),
+                MacroCallParameterMatcher.hasNameAndStringValue("style", "AREASTYLE"));
     }
 
     @Test
@@ -574,10 +580,10 @@ public class MacroFormRendererTest {
 
         ImmutableMap<String, Object> context = ImmutableMap.of();
         macroFormRenderer.renderTextFindField(appendable, context, textFindField);
-        assertAndGetMacroString("renderTextFindField", ImmutableMap.of(
-                "name", "FIELDNAME",
-                "className", "WIDGETSTYLE",
-                "alert", "true"));
+        assertNamedMacroCallRendered("renderTextFindField",
+                MacroCallParameterMatcher.hasNameAndStringValue("name", "FIELDNAME"),
+                MacroCallParameterMatcher.hasNameAndStringValue("className", "WIDGETSTYLE"),
+                MacroCallParameterMatcher.hasNameAndStringValue("alert", "true"));
     }
 
     @Test
@@ -610,12 +616,12 @@ public class MacroFormRendererTest {
 
         ImmutableMap<String, Object> context = ImmutableMap.of();
         macroFormRenderer.renderRangeFindField(appendable, context, rangeFindField);
-        assertAndGetMacroString("renderRangeFindField", ImmutableMap.of(
-                "name", "FIELDNAME",
-                "className", "WIDGETSTYLE",
-                "alert", "true",
-                "value", "AAA",
-                "value2", "BBB"));
+        assertNamedMacroCallRendered("renderRangeFindField",
+                MacroCallParameterMatcher.hasNameAndStringValue("name", "FIELDNAME"),
+                MacroCallParameterMatcher.hasNameAndStringValue("className", "WIDGETSTYLE"),
+                MacroCallParameterMatcher.hasNameAndStringValue("alert", "true"),
+                MacroCallParameterMatcher.hasNameAndStringValue("value", "AAA"),
+                MacroCallParameterMatcher.hasNameAndStringValue("value2", "BBB"));
     }
 
     @Test
@@ -642,10 +648,10 @@ public class MacroFormRendererTest {
 
         ImmutableMap<String, Object> context = ImmutableMap.of("session", httpSession);
         macroFormRenderer.renderLookupField(appendable, context, lookupField);
-        assertAndGetMacroString("renderLookupField", ImmutableMap.of(
-                "name", "FIELDNAME",
-                "value", "VALUE",
-                "id", "CONTAINERID"));
+        assertNamedMacroCallRendered("renderLookupField",
+                MacroCallParameterMatcher.hasNameAndStringValue("name", "FIELDNAME"),
+                MacroCallParameterMatcher.hasNameAndStringValue("value", "VALUE"),
+                MacroCallParameterMatcher.hasNameAndStringValue("id", "CONTAINERID"));
     }
 
     @Test
@@ -670,7 +676,7 @@ public class MacroFormRendererTest {
         context.put(paginateSizeField, 30);
         macroFormRenderer.renderNextPrev(appendable, context, modelForm);
 
-        assertAndGetMacroString("renderNextPrev");
+        assertNamedMacroCallRendered("renderNextPrev");
     }
 
     @Test
@@ -694,10 +700,10 @@ public class MacroFormRendererTest {
 
         macroFormRenderer.renderFileField(appendable, ImmutableMap.of(), fileField);
 
-        assertAndGetMacroString("renderFileField", ImmutableMap.of(
-                "name", "FIELDNAME",
-                "value", "VALUE",
-                "className", "WIDGETSTYLE"));
+        assertNamedMacroCallRendered("renderFileField",
+                MacroCallParameterMatcher.hasNameAndStringValue("name", "FIELDNAME"),
+                MacroCallParameterMatcher.hasNameAndStringValue("value", "VALUE"),
+                MacroCallParameterMatcher.hasNameAndStringValue("className", "WIDGETSTYLE"));
     }
 
     @Test
@@ -721,10 +727,10 @@ public class MacroFormRendererTest {
 
         macroFormRenderer.renderPasswordField(appendable, ImmutableMap.of(), passwordField);
 
-        assertAndGetMacroString("renderPasswordField", ImmutableMap.of(
-                "name", "FIELDNAME",
-                "value", "VALUE",
-                "className", "WIDGETSTYLE"));
+        assertNamedMacroCallRendered("renderPasswordField",
+                MacroCallParameterMatcher.hasNameAndStringValue("name", "FIELDNAME"),
+                MacroCallParameterMatcher.hasNameAndStringValue("value", "VALUE"),
+                MacroCallParameterMatcher.hasNameAndStringValue("className", "WIDGETSTYLE"));
     }
 
     @Test
@@ -742,7 +748,8 @@ public class MacroFormRendererTest {
 
         macroFormRenderer.renderImageField(appendable, ImmutableMap.of(), imageField);
 
-        assertAndGetMacroString("renderImageField", ImmutableMap.of("value", "VALUE"));
+        assertNamedMacroCallRendered("renderImageField",
+                MacroCallParameterMatcher.hasNameAndStringValue("value", "VALUE"));
     }
 
     @Test
@@ -792,7 +799,8 @@ public class MacroFormRendererTest {
         final Map<String, Object> context = new HashMap<>();
         macroFormRenderer.renderSortField(appendable, context, modelFormField, "TITLE");
 
-        assertAndGetMacroString("renderSortField", ImmutableMap.of("title", "TITLE"));
+        assertNamedMacroCallRendered("renderSortField",
+                MacroCallParameterMatcher.hasNameAndStringValue("title", "TITLE"));
     }
 
     @Test
@@ -853,7 +861,33 @@ public class MacroFormRendererTest {
         context.put("listSize", 100);
         macroFormRenderer.renderNextPrev(appendable, context, modelForm);
 
-        assertAndGetMacroString("renderNextPrev", ImmutableMap.of("nextUrl", linkFromQbeString));
+        assertNamedMacroCallRendered("renderNextPrev",
+                MacroCallParameterMatcher.hasNameAndStringValue("nextUrl", linkFromQbeString));
+    }
+
+    @Test
+    public void renderNextPrevWithoutLastLinkWhenListSizeNotExact(@Mocked ModelForm modelForm) throws IOException {
+        final String targetService = ""; // Leave empty to avoid CSRF token generation.
+        final String linkUrl = "LinkUrl";
+
+        new Expectations() {
+            {
+                modelForm.getPaginateTarget(withNotNull());
+                result = targetService;
+                requestHandler.makeLink(withNotNull(), withNotNull(), withNotNull());
+                result = linkUrl;
+            }
+        };
+
+        final Map<String, Object> context = new HashMap<>();
+        context.put("listSize", 21);
+        context.put("listSizeExact", false);
+        context.put("highIndex", 20);
+        macroFormRenderer.renderNextPrev(appendable, context, modelForm);
+
+        assertNamedMacroCallRendered("renderNextPrev",
+                MacroCallParameterMatcher.hasNameAndStringValue("nextUrl", linkUrl),
+                MacroCallParameterMatcher.hasNameAndStringValue("lastUrl", ""));
     }
 
     @Test
@@ -882,8 +916,8 @@ public class MacroFormRendererTest {
         context.put("listSize", 100);
         macroFormRenderer.renderSortField(appendable, context, modelFormField, "");
 
-        assertAndGetMacroString("renderSortField", ImmutableMap.of(
-                "linkUrl", new FreemarkerRawString(linkFromQbeString)));
+        assertNamedMacroCallRendered("renderSortField",
+                MacroCallParameterMatcher.hasNameAndStringValue("linkUrl", linkFromQbeString));
     }
 
     @Test
@@ -900,7 +934,9 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderHyperlinkField(appendable, new HashMap<>(), hyperlinkField);
-        assertAndGetMacroString("makeHyperlinkString", ImmutableMap.of("description", description, "title", title));
+        assertNamedMacroCallRendered("makeHyperlinkString",
+                MacroCallParameterMatcher.hasNameAndStringValue("description", description),
+                MacroCallParameterMatcher.hasNameAndStringValue("title", title));
     }
 
     @Test
@@ -916,7 +952,9 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderHyperlinkField(appendable, new HashMap<>(), hyperlinkField);
-        assertAndGetMacroString("makeHyperlinkString", ImmutableMap.of("description", "DESCR…", "title", description));
+        assertNamedMacroCallRendered("makeHyperlinkString",
+                MacroCallParameterMatcher.hasNameAndStringValue("description", "DESCR…"),
+                MacroCallParameterMatcher.hasNameAndStringValue("title", description));
     }
 
     @Test
@@ -934,7 +972,9 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderHyperlinkField(appendable, new HashMap<>(), hyperlinkField);
-        assertAndGetMacroString("makeHyperlinkString", ImmutableMap.of("description", "DESCR…", "title", description));
+        assertNamedMacroCallRendered("makeHyperlinkString",
+                MacroCallParameterMatcher.hasNameAndStringValue("description", "DESCR…"),
+                MacroCallParameterMatcher.hasNameAndStringValue("title", description));
     }
 
     @Test
@@ -972,60 +1012,52 @@ public class MacroFormRendererTest {
         };
 
         macroFormRenderer.renderHyperlinkField(appendable, new HashMap<>(), hyperlinkField);
-        ImmutableMap<String, Object> result = ImmutableMap.<String, Object>builder()
-                .put("title", title)
-                .put("description", description)
-                .put("linkUrl", "Encoded%20Target")
-                .put("id", id)
-                .put("targetParameters", "{'k1':'v1','k2':'v2'}")
-                .put("width", width)
-                .put("confirmation", confirmation)
-                .put("targetWindow", targetWindow)
-                .build();
-        assertAndGetMacroString("makeHyperlinkString", result);
-    }
-
-    private String assertAndGetMacroString(final String expectedName) {
-        return assertAndGetMacroString(expectedName, ImmutableMap.of());
+        assertNamedMacroCallRendered("makeHyperlinkString",
+                MacroCallParameterMatcher.hasNameAndStringValue("title", title),
+                MacroCallParameterMatcher.hasNameAndStringValue("description", description),
+                MacroCallParameterMatcher.hasNameAndStringValue("linkUrl", "Encoded%20Target"),
+                MacroCallParameterMatcher.hasNameAndStringValue("id", id),
+                hasNameAndValue("targetParameters", ImmutableMap.of("k1", "v1", "k2", "v2")),
+                MacroCallParameterMatcher.hasNameAndStringValue("width", width),
+                MacroCallParameterMatcher.hasNameAndStringValue("confirmation", confirmation),
+                MacroCallParameterMatcher.hasNameAndStringValue("targetWindow", targetWindow));
     }
 
-    private String assertAndGetMacroString(final String expectedName, final Map<String, Object> expectedAttributes) {
-        final String[] str = new String[1];
-
+    private void assertMacroCallRendered(final String expectedName, final MacroCallParameterMatcher... parameterMatchers) {
         new Verifications() {
             {
-                List<String> macros = new ArrayList<>();
-                ftlWriter.processFtlString(withNotNull(), withNull(), withCapture(macros));
-
-                assertThat(macros, not(empty()));
-                final String macro = macros.get(0);
-                assertThat(macro, startsWith("<@" + expectedName));
-
-                expectedAttributes.forEach((name, value) -> assertMacroAttribute(macro, name, value));
+                List<RenderableFtl> renderableFtls = new ArrayList<>();
+                ftlWriter.processFtl(withNotNull(), withCapture(renderableFtls));
 
-                str[0] = macro;
+                assertThat(renderableFtls, not(empty()));
+                assertThat(renderableFtls.get(0), MacroCallMatcher.hasNameAndParameters(expectedName, parameterMatchers));
             }
         };
+    }
 
-        return str[0];
+    /**
+     * Assert that a macro with the given name was rendered and that the first such call matches the parameters.
+     * Unlike {@link #assertMacroCallRendered(String, MacroCallParameterMatcher...)}, other macro calls such as
+     * tooltips or asterisks may have been rendered before it.
+     */
+    private void assertNamedMacroCallRendered(final String expectedName, final MacroCallParameterMatcher... parameterMatchers) {
+        new Verifications() {
+            {
+                List<RenderableFtl> renderableFtls = new ArrayList<>();
+                ftlWriter.processFtl(withNotNull(), withCapture(renderableFtls));
+
+                final List<RenderableFtl> namedMacroCalls = renderableFtls.stream()
+                        .filter(renderableFtl -> renderableFtl instanceof RenderableFtlMacroCall
+                                && expectedName.equals(((RenderableFtlMacroCall) renderableFtl).getName()))
+                        .collect(Collectors.toList());
+                assertThat(namedMacroCalls, not(empty()));
+                assertThat(namedMacroCalls.get(0), MacroCallMatcher.hasNameAndParameters(expectedName, parameterMatchers));
+            }
+        };
     }
 
-    private void assertMacroAttribute(final String macro, final String attributeName, final Object attributeValue) {
-        if (attributeValue instanceof Number) {
-            assertThat(macro, containsString(attributeName + "=" + attributeValue));
-        } else if (attributeValue instanceof List<?>) {
-            final String valueString = ((List<?>) attributeValue).stream()
-                    .map(Object::toString)
-                    .collect(Collectors.joining(",", "[", "]"));
-            assertThat(macro, containsString(attributeName + "=" + valueString));
-        } else if (attributeValue instanceof Boolean) {
-            assertThat(macro, containsString(attributeName + "=" + attributeValue));
-        } else if (attributeValue instanceof FreemarkerRawString) {
-            final String valueString = ((FreemarkerRawString) attributeValue).getRawString();
-            assertThat(macro, containsString(attributeName + "=\"" + valueString + "\""));
-        } else {
-            assertThat(macro, containsString(attributeName + "=\"" + attributeValue + "\""));
-        }
+    private static MacroCallParameterMatcher hasNameAndValue(final String name, final Object value) {
+        return new MacroCallParameterMatcher(name, Matchers.equalTo(value));
     }
 
     /**
@@ -1116,16 +1148,4 @@ public class MacroFormRendererTest {
             return name + "_MESSAGE";
         }
     }
-
-    static class FreemarkerRawString {
-        private final String rawString;
-
-        FreemarkerRawString(final String rawString) {
-            this.rawString = rawString;
-        }
-
-        public String getRawString() {
-            return rawString;
-        }
-    }
 }